@@ -0,0 +1,257 @@
+-----------------------------------------------------------
+-----------------------------------------------------------
+----- SCRIPT DE CREATION DE LA BASE H2 EMBARQUEE ----------
+-----------------------------------------------------------
+-----------------------------------------------------------
+
+-- Base locale (développement, tests, mesures) équivalente à celle de
+-- scriptCreaBase.txt : mêmes tables, mêmes séquences, mêmes données de départ.
+-- Les procédures stockées n'existent pas en H2 : les DAO utilisent leur version
+-- Java (model.orm.ProceduresJava) quand bd.dialecte=h2.
+--
+-- Utilisation (cf. dailybank.properties.exemple) :
+--   en mémoire : bd.url=jdbc:h2:mem:dailybank;DB_CLOSE_DELAY=-1;INIT=RUNSCRIPT FROM 'basededonnee/scriptCreaBaseH2.sql'
+--   fichier    : bd.url=jdbc:h2:./dailybank;INIT=RUNSCRIPT FROM 'basededonnee/scriptCreaBaseH2.sql'
+--
+-- INIT est exécuté à chaque nouvelle connexion du pool : le script ne crée que
+-- ce qui n'existe pas et n'insère les données de départ que dans une table vide.
+
+-------------------------------
+------ CREATION DES TABLES ----
+-------------------------------
+
+CREATE TABLE IF NOT EXISTS AgenceBancaire(
+	idAg NUMERIC(3),
+	nomAg VARCHAR(30),
+	adressePostaleAg VARCHAR(50),
+	idEmployeChefAg NUMERIC(3),
+	CONSTRAINT pk_AgenceBancaire PRIMARY KEY (idAg)
+);
+
+CREATE TABLE IF NOT EXISTS Employe(
+	idEmploye NUMERIC(3),
+	nom VARCHAR(25),
+	prenom VARCHAR(15),
+	droitsAccess VARCHAR(50),
+	login VARCHAR(8),
+	motPasse VARCHAR(15),
+	idAg NUMERIC(3) NOT NULL,
+	CONSTRAINT pk_Employe PRIMARY KEY (idEmploye),
+	CONSTRAINT fk_Employe_AgenceBancaire
+		FOREIGN KEY (idAg) REFERENCES AgenceBancaire(idAg)
+);
+
+CREATE TABLE IF NOT EXISTS Client(
+	idNumCli NUMERIC(5),
+	nom VARCHAR(25),
+	prenom VARCHAR(15),
+	adressePostale VARCHAR(50),
+	email VARCHAR(20),
+	telephone CHAR(10),
+	estInactif CHAR(1),
+	idAg NUMERIC(3) NOT NULL,
+	CONSTRAINT pk_Client PRIMARY KEY (idNumCli),
+	CONSTRAINT fk_Client_AgenceBancaire
+		FOREIGN KEY (idAg) REFERENCES AgenceBancaire(idAg),
+	CONSTRAINT ck_Client_estInactif CHECK (estInactif IN ('O', 'N'))
+);
+
+CREATE TABLE IF NOT EXISTS CompteCourant(
+	idNumCompte NUMERIC(5),
+	debitAutorise NUMERIC(4),
+	solde DECIMAL(10,2),
+	idNumCli NUMERIC(5) NOT NULL,
+	estCloture CHAR(1),
+	CONSTRAINT pk_CompteCourant PRIMARY KEY (idNumCompte),
+	CONSTRAINT fk_CpteCourant_Client
+		FOREIGN KEY (idNumCli) REFERENCES Client(idNumCli),
+	CONSTRAINT ck_CpteCour_estCloture CHECK (estCloture IN ('O', 'N'))
+);
+
+CREATE TABLE IF NOT EXISTS TypeOperation(
+	idTypeOp VARCHAR(25),
+	CONSTRAINT pk_TypeOperation PRIMARY KEY (idTypeOp)
+);
+
+-- DATE Oracle = date et heure : TIMESTAMP(0) en H2
+CREATE TABLE IF NOT EXISTS Operation(
+	idOperation NUMERIC(12),
+	montant DECIMAL(8,2),
+	dateOp TIMESTAMP(0) DEFAULT CURRENT_TIMESTAMP(0),
+	dateValeur TIMESTAMP(0),
+	idNumCompte NUMERIC(5) NOT NULL,
+	idTypeOp VARCHAR(25) NOT NULL,
+	CONSTRAINT pk_Operation PRIMARY KEY (idOperation),
+	CONSTRAINT fk_Operation_CompteCourant
+		FOREIGN KEY (idNumCompte) REFERENCES CompteCourant(idNumCompte),
+	CONSTRAINT fk_Operation_TypeOperation
+		FOREIGN KEY (idTypeOp) REFERENCES TypeOperation(idTypeOp)
+);
+
+CREATE TABLE IF NOT EXISTS PrelevementAutomatique(
+	idPrelev NUMERIC(8),
+	montant DECIMAL(8,2),
+	dateRecurrente NUMERIC(2),
+	beneficiaire VARCHAR(50),
+	idNumCompte NUMERIC(5) NOT NULL,
+	CONSTRAINT pk_PrelevAuto PRIMARY KEY (idPrelev),
+	CONSTRAINT fk_PrelevAuto_CompteCourant
+		FOREIGN KEY (idNumCompte) REFERENCES CompteCourant(idNumCompte)
+);
+
+CREATE TABLE IF NOT EXISTS ExecutionPrelevement(
+	idPrelev NUMERIC(8),
+	dateExecution DATE,
+	idNumCompte NUMERIC(5),
+	montant DECIMAL(8,2),
+	CONSTRAINT pk_ExecPrelev PRIMARY KEY (idPrelev, dateExecution),
+	CONSTRAINT fk_ExecPrelev_PrelevAuto
+		FOREIGN KEY (idPrelev) REFERENCES PrelevementAutomatique(idPrelev)
+);
+
+CREATE TABLE IF NOT EXISTS Emprunt(
+	idEmprunt NUMERIC(5),
+	tauxEmp DECIMAL(4,2),
+	capitalEmp NUMERIC(8),
+	dureeEmp NUMERIC(3),
+	dateDebEmp DATE,
+	idNumCli NUMERIC(5) NOT NULL,
+	CONSTRAINT pk_Emprunt PRIMARY KEY (idEmprunt),
+	CONSTRAINT fk_Emprunt_Client
+		FOREIGN KEY (idNumCli) REFERENCES Client(idNumCli)
+);
+
+CREATE TABLE IF NOT EXISTS AssuranceEmprunt(
+	idAss NUMERIC(5),
+	tauxAss DECIMAL(4,2),
+	tauxCouv DECIMAL(5,2),
+	idEmprunt NUMERIC(5) NOT NULL,
+	CONSTRAINT pk_AssuranceEmprunt PRIMARY KEY (idAss),
+	CONSTRAINT fk_AssurEmp_Emprunt
+		FOREIGN KEY (idEmprunt) REFERENCES Emprunt(idEmprunt)
+);
+
+CREATE TABLE IF NOT EXISTS JournalApplique(
+	nomJournal VARCHAR(100),
+	dernierNumero NUMERIC(19),
+	CONSTRAINT pk_JournalApplique PRIMARY KEY (nomJournal)
+);
+
+-- Index de scriptCreaBase.txt. H2 n'a pas d'index sur fonction : les index
+-- des recherches par nom portent sur les colonnes (UPPER(nom) LIKE ? ne les
+-- utilise pas, sans importance sur une base de test)
+CREATE INDEX IF NOT EXISTS idx_Operation_Compte_DateOp ON Operation (idNumCompte, dateOp);
+CREATE INDEX IF NOT EXISTS idx_Operation_Compte_IdOp ON Operation (idNumCompte, idOperation);
+CREATE INDEX IF NOT EXISTS idx_Client_Ag_Nom ON Client (idAg, nom, prenom);
+CREATE INDEX IF NOT EXISTS idx_Employe_Ag_Nom ON Employe (idAg, nom, prenom);
+CREATE INDEX IF NOT EXISTS idx_PrelevAuto_Jour_Compte ON PrelevementAutomatique (dateRecurrente, idNumCompte, idPrelev);
+
+-- Séquences : démarrent après les données de départ ci-dessous
+CREATE SEQUENCE IF NOT EXISTS seq_id_employe START WITH 11 INCREMENT BY 1;
+CREATE SEQUENCE IF NOT EXISTS seq_id_client START WITH 11 INCREMENT BY 1;
+CREATE SEQUENCE IF NOT EXISTS seq_id_compte START WITH 12 INCREMENT BY 1;
+CREATE SEQUENCE IF NOT EXISTS seq_id_operation START WITH 12 INCREMENT BY 1;
+CREATE SEQUENCE IF NOT EXISTS seq_id_prelevAuto START WITH 3 INCREMENT BY 1;
+CREATE SEQUENCE IF NOT EXISTS seq_id_emprunt START WITH 3 INCREMENT BY 1;
+CREATE SEQUENCE IF NOT EXISTS seq_id_assurance START WITH 2 INCREMENT BY 1;
+
+-----------------------------------
+------ REMPLISSAGE DES TABLES -----
+-----------------------------------
+
+-- Chaque table n'est remplie que si elle est vide (INIT relancé à chaque connexion)
+
+INSERT INTO AgenceBancaire (idAg, nomAg, adressePostaleAg)
+SELECT * FROM (VALUES
+	(1, 'Agence Blagnac Centre', '2 rue Pasteur 31700 Blagnac'),
+	(2, 'Agence Vieux Beauzelle', '14 rue de la république, 31700 Beauzelle'),
+	(3, 'Agence Blagnac Ouest', '4 place brassens, 31700 Blagnac')
+) WHERE NOT EXISTS (SELECT 1 FROM AgenceBancaire);
+
+INSERT INTO Employe
+SELECT * FROM (VALUES
+	(1, 'Tuffery', 'Michel', 'chefAgence', 'Tuff', 'Lejeune', 1),
+	(2, 'Crampes', 'Jean-Bernard', 'chefAgence', 'JBC', 'Basse', 2),
+	(3, 'Lepoisson', 'Benoit', 'chefAgence', 'LEP', 'Belote', 3),
+	(4, 'Nonne', 'Laurent', 'guichetier', 'LN', 'Levieux', 1),
+	(5, 'Teste', 'Olivier', 'guichetier', 'OT', 'Lemoyen', 1),
+	(6, 'Peninou', 'André', 'guichetier', 'AP', 'TheVoice', 2),
+	(7, 'Pelleau', 'Fabrice', 'guichetier', 'FP', 'TheEnterprise', 2),
+	(8, 'Demichiel', 'Marianne', 'guichetier', 'MDM', 'TheGiant', 3),
+	(9, 'Redon', 'Laurence', 'guichetier', 'LR', 'MissCobol', 3),
+	(10, 'Pendaries', 'Esther', 'guichetier', 'EP', 'Paganini', 3)
+) WHERE NOT EXISTS (SELECT 1 FROM Employe);
+
+UPDATE AgenceBancaire SET idEmployeChefAg = idAg WHERE idEmployeChefAg IS NULL;
+
+ALTER TABLE AgenceBancaire ADD CONSTRAINT IF NOT EXISTS fk_AgenceBancaire_Emp_ChefAg
+	FOREIGN KEY (idEmployeChefAg) REFERENCES Employe(idEmploye);
+
+INSERT INTO Client
+SELECT * FROM (VALUES
+	(1, 'Gabin', 'Jean', '3 rue t''as de beaux yeux tu sais, 31700 Blagnac', 'gabin@free.fr', '0512345678', 'N', 1),
+	(2, 'Belmondo', 'Jean-Paul', '4 rue des cascades, 31700 Blagnac', 'belmondo@gmail.com', '0598765432', 'N', 1),
+	(3, 'Delon', 'Alain', '34 rue du beau gosse, 31700 Blagnac', 'delon@gmail.com', '0512457896', 'N', 1),
+	(4, 'Ventura', 'Lino', '3 rue des baffes, 31000 Toulouse', 'ventura@free.fr', '0635785215', 'O', 2),
+	(5, 'Montand', 'Yves', '7 avenue de la fille du facteur, 31000 Toulouse', 'montand@free.fr', '0612395415', 'N', 2),
+	(6, 'De Funes', 'Louis', '3 avenue de ma biche, 31700 Beauzelle', 'funes@free.fr', '0648565415', 'N', 2),
+	(7, 'Bourvil', '', '4 impasse de la cuisine au beurre, 31700 Blagnac', 'bourvil@free.fr', '0914265415', 'N', 3),
+	(8, 'Blier', 'Bernard', '134 rue de la ventilation, 31700 Blagnac', 'blier@free.fr', '0514265415', 'N', 3),
+	(9, 'Dépardieu', 'Gérard', '134 rue des valseuses, 102151 Moscou', 'depardieu@kremlin.fr', '0914265415', 'N', 3),
+	(10, 'Réno', 'Jean', '13 rue des nettoyeurs, 31700 Beauzelle', 'reno@yahoo.fr', '0814765415', 'N', 3)
+) WHERE NOT EXISTS (SELECT 1 FROM Client);
+
+INSERT INTO TypeOperation
+SELECT * FROM (VALUES
+	('Dépôt Espèces'),
+	('Retrait Espèces'),
+	('Dépôt Chèque'),
+	('Paiement Chèque'),
+	('Retrait Carte Bleue'),
+	('Paiement Carte Bleue'),
+	('Virement Compte à Compte'),
+	('Prélèvement automatique'),
+	('Prélèvement agios')
+) WHERE NOT EXISTS (SELECT 1 FROM TypeOperation);
+
+-- 1 ou 2 comptes par client (le compte du client inactif 4 est clôturé)
+INSERT INTO CompteCourant
+SELECT * FROM (VALUES
+	(1, -200, 200, 1, 'N'),
+	(2, 0, 200, 1, 'N'),
+	(3, -200, 100, 2, 'N'),
+	(4, -3000, 300, 3, 'N'),
+	(5, -150, 200, 4, 'O'),
+	(6, -800, 50, 5, 'N'),
+	(7, -50, 50, 6, 'N'),
+	(8, -850, 250, 7, 'N'),
+	(9, -100, 300, 8, 'N'),
+	(10, 0, 800, 9, 'N'),
+	(11, 0, 1200, 10, 'N')
+) WHERE NOT EXISTS (SELECT 1 FROM CompteCourant);
+
+-- Versement initial de chaque compte
+INSERT INTO Operation (idOperation, montant, dateValeur, idNumCompte, idTypeOp)
+SELECT idNumCompte, solde, DATEADD(DAY, 2, CURRENT_DATE), idNumCompte, 'Dépôt Espèces'
+FROM CompteCourant WHERE NOT EXISTS (SELECT 1 FROM Operation);
+
+INSERT INTO PrelevementAutomatique
+SELECT * FROM (VALUES
+	(1, 120, 5, 'EDF', 1),
+	(2, 55, 3, 'Free Telecom', 1)
+) WHERE NOT EXISTS (SELECT 1 FROM PrelevementAutomatique);
+
+INSERT INTO Emprunt
+SELECT * FROM (VALUES
+	(1, 4.5, 250000, 240, DATE '2020-09-01', 2),
+	(2, 2.2, 50000, 48, DATE '2020-06-01', 9)
+) WHERE NOT EXISTS (SELECT 1 FROM Emprunt);
+
+INSERT INTO AssuranceEmprunt
+SELECT * FROM (VALUES
+	(1, 0.85, 100, 1)
+) WHERE NOT EXISTS (SELECT 1 FROM AssuranceEmprunt);
+
+COMMIT;
+
+--------- FIN ------------------------------------------------------
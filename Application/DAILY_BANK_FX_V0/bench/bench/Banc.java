@@ -0,0 +1,197 @@
+package bench;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Banc de mesure minimal (sans dépendance) : chauffe puis mesure un appel
+ * pendant une durée fixée, temps de chaque appel conservé.
+ *
+ * Chaque mesure donne le nombre d'appels, le débit (appels / s), la moyenne,
+ * la médiane (p50), le 99e centile (p99), le maximum et les octets alloués
+ * par appel par le thread de mesure (équivalent de -prof gc de JMH, si la JVM
+ * le permet). Les résultats sont écrits en JSON (un objet par mesure, format
+ * proche de celui de JMH) pour comparer deux versions.
+ *
+ * Durées (ms) réglables par -Dbench.chauffeMs=... et -Dbench.mesureMs=...
+ */
+public class Banc {
+
+	/**
+	 * Appel mesuré
+	 */
+	@FunctionalInterface
+	public interface Appel {
+		/**
+		 * @param i numéro de l'appel (0, 1, ...) : permet de varier les données
+		 * @return une valeur dépendant du travail fait (évite qu'il soit éliminé par
+		 *         le compilateur)
+		 */
+		Object executer(int i) throws Exception;
+	}
+
+	/**
+	 * Résultat d'une mesure
+	 */
+	public static class Resultat {
+		public final String nom;
+		public final Map<String, String> parametres;
+		public final int nbAppels;
+		public final double debitParS;
+		public final double moyenneUs;
+		public final double p50Us;
+		public final double p99Us;
+		public final double maxUs;
+		public final double octetsParAppel; // -1 si non mesurable
+
+		Resultat(String nom, Map<String, String> parametres, long[] dureesNs, int nb, long totalNs,
+				double octetsParAppel) {
+			this.nom = nom;
+			this.parametres = parametres;
+			this.nbAppels = nb;
+			Arrays.sort(dureesNs, 0, nb);
+			this.debitParS = nb * 1e9 / Math.max(1, totalNs);
+			long somme = 0;
+			for (int i = 0; i < nb; i++) {
+				somme += dureesNs[i];
+			}
+			this.moyenneUs = somme / 1e3 / Math.max(1, nb);
+			this.p50Us = Banc.centile(dureesNs, nb, 0.50) / 1e3;
+			this.p99Us = Banc.centile(dureesNs, nb, 0.99) / 1e3;
+			this.maxUs = nb == 0 ? 0 : dureesNs[nb - 1] / 1e3;
+			this.octetsParAppel = octetsParAppel;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-46s %-22s %9d appels %12.1f /s  moy %10.1f us  p50 %10.1f us  p99 %10.1f us%s",
+					this.nom, this.parametres, this.nbAppels, this.debitParS, this.moyenneUs, this.p50Us, this.p99Us,
+					this.octetsParAppel < 0 ? "" : String.format("  %10.0f o/appel", this.octetsParAppel));
+		}
+	}
+
+	private final long chauffeMs = Long.getLong("bench.chauffeMs", 1_000);
+	private final long mesureMs = Long.getLong("bench.mesureMs", 3_000);
+	private final ArrayList<Resultat> resultats = new ArrayList<>();
+	private Object puits; // résultats des appels (cf. Appel.executer)
+
+	/**
+	 * Chauffe puis mesure appel.
+	 *
+	 * @param nom        nom de la mesure
+	 * @param parametres paramètres (clé, valeur, clé, valeur, ...)
+	 * @param appel      l'appel mesuré
+	 * @return le résultat (aussi affiché et conservé pour ecrireJson)
+	 * @throws Exception l'exception levée par appel
+	 */
+	public Resultat mesurer(String nom, String[] parametres, Appel appel) throws Exception {
+		Map<String, String> params = new LinkedHashMap<>();
+		for (int p = 0; p + 1 < parametres.length; p += 2) {
+			params.put(parametres[p], parametres[p + 1]);
+		}
+
+		int i = 0;
+		long finChauffe = System.nanoTime() + this.chauffeMs * 1_000_000;
+		while (System.nanoTime() < finChauffe) {
+			this.puits = appel.executer(i++);
+		}
+
+		long[] durees = new long[1024];
+		int nb = 0;
+		long alloueAvant = Banc.octetsAlloues();
+		long debut = System.nanoTime();
+		long fin = debut + this.mesureMs * 1_000_000;
+		long t = debut;
+		while (t < fin) {
+			this.puits = appel.executer(i++);
+			long t2 = System.nanoTime();
+			if (nb == durees.length) {
+				durees = Arrays.copyOf(durees, nb * 2);
+			}
+			durees[nb++] = t2 - t;
+			t = t2;
+		}
+		// (les quelques tableaux durees agrandis pendant la mesure sont comptés)
+		long alloueApres = Banc.octetsAlloues();
+		double octetsParAppel = alloueAvant < 0 ? -1 : (double) (alloueApres - alloueAvant) / nb;
+
+		Resultat r = new Resultat(nom, params, durees, nb, t - debut, octetsParAppel);
+		this.resultats.add(r);
+		System.out.println(r);
+		return r;
+	}
+
+	/**
+	 * @return les résultats des mesures faites
+	 */
+	public ArrayList<Resultat> getResultats() {
+		return this.resultats;
+	}
+
+	/**
+	 * Ecrit les résultats des mesures faites en JSON.
+	 *
+	 * @param fichier fichier créé (remplacé s'il existe)
+	 * @throws IOException
+	 */
+	public void ecrireJson(Path fichier) throws IOException {
+		try (PrintWriter pw = new PrintWriter(Files.newBufferedWriter(fichier, StandardCharsets.UTF_8))) {
+			pw.println("[");
+			for (int r = 0; r < this.resultats.size(); r++) {
+				Resultat res = this.resultats.get(r);
+				pw.print("  {\"benchmark\": " + Banc.chaine(res.nom) + ", \"params\": {");
+				int p = 0;
+				for (Map.Entry<String, String> e : res.parametres.entrySet()) {
+					pw.print((p++ > 0 ? ", " : "") + Banc.chaine(e.getKey()) + ": " + Banc.chaine(e.getValue()));
+				}
+				pw.print("}, \"nbAppels\": " + res.nbAppels);
+				pw.print(String.format(Locale.ROOT,
+						", \"debitParS\": %.3f, \"moyenneUs\": %.3f, \"p50Us\": %.3f, \"p99Us\": %.3f, \"maxUs\": %.3f",
+						res.debitParS, res.moyenneUs, res.p50Us, res.p99Us, res.maxUs));
+				if (res.octetsParAppel >= 0) {
+					pw.print(String.format(Locale.ROOT, ", \"octetsParAppel\": %.1f", res.octetsParAppel));
+				}
+				pw.println("}" + (r < this.resultats.size() - 1 ? "," : ""));
+			}
+			pw.println("]");
+		}
+		System.out.println("Résultats écrits dans " + fichier.toAbsolutePath());
+	}
+
+	@Override
+	public String toString() {
+		return "Banc [chauffeMs=" + this.chauffeMs + ", mesureMs=" + this.mesureMs + ", nbResultats="
+				+ this.resultats.size() + ", puits=" + (this.puits != null) + "]";
+	}
+
+	// Octets alloués par le thread courant depuis son démarrage, -1 si la JVM ne
+	// le mesure pas
+	private static long octetsAlloues() {
+		ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+		if (mx instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) mx).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	private static long centile(long[] triees, int nb, double c) {
+		if (nb == 0) {
+			return 0;
+		}
+		return triees[Math.min(nb - 1, (int) Math.ceil(nb * c) - 1)];
+	}
+
+	private static String chaine(String s) {
+		return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+}
@@ -0,0 +1,110 @@
+package bench;
+
+import java.nio.file.Paths;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import model.data.Emprunt;
+import model.data.LigneEmprunt;
+import model.data.TableauAmortissement;
+
+/**
+ * Mesure du calcul du tableau d'amortissement d'un emprunt (simulation) de 12
+ * à 600 périodes : temps et octets alloués par tableau calculé.
+ *
+ * Compare l'ancien calcul de EmpruntResultatController (un LigneEmprunt par
+ * période dans une ObservableList, puissance recalculée à chaque période) à
+ * model.data.TableauAmortissement (tableaux de double réutilisés d'un appel à
+ * l'autre). Les deux doivent donner les mêmes montants (vérifié avant les
+ * mesures).
+ *
+ * Lancement : java -cp bin:LIBS/*:javafx.base.jar bench.BenchEmprunt
+ * [resultats-emprunt.json]
+ */
+public class BenchEmprunt {
+
+	private static final int[] DUREES_ANS = { 1, 5, 10, 20, 30, 50 }; // 12 à 600 mois
+
+	public static void main(String[] args) throws Exception {
+		String fichier = args.length > 0 ? args[0] : "bench-emprunt.json";
+		Banc banc = new Banc();
+
+		for (int duree : BenchEmprunt.DUREES_ANS) {
+			Emprunt emp = new Emprunt(200_000, duree, 3.5, "mensuelle", 0.3);
+			TableauAmortissement tableau = new TableauAmortissement();
+			BenchEmprunt.verifier(emp, tableau);
+			BenchEmprunt.verifier(new Emprunt(200_000, duree, 3.5, "annuelle", 0.3), new TableauAmortissement());
+
+			String[] p = { "nbPeriodes", "" + duree * 12 };
+			// capital varié à chaque appel : pas de résultat constant
+			banc.mesurer("Emprunt.lignes(LigneEmprunt, ObservableList)", p, i -> {
+				Emprunt e = new Emprunt(200_000 + (i & 1023), duree, 3.5, "mensuelle", 0.3);
+				return BenchEmprunt.getLignes(e).size();
+			});
+			banc.mesurer("TableauAmortissement.calculer", p, i -> {
+				tableau.calculer(200_000 + (i & 1023), duree, 3.5, "mensuelle", 0.3);
+				return tableau.getTotalInterets();
+			});
+		}
+		banc.ecrireJson(Paths.get(fichier));
+	}
+
+	/*
+	 * Ancien calcul, recopié de EmpruntResultatController avant
+	 * TableauAmortissement (displayDialog pour le taux applicable et le nombre de
+	 * périodes, getLignes pour les lignes) : référence des mesures
+	 */
+	static ObservableList<LigneEmprunt> getLignes(Emprunt emprunt) {
+		if (emprunt.periodicite.compareTo("mensuelle") == 0) {
+			emprunt.tauxApplicable = emprunt.taux / 12 / 100;
+			emprunt.tauxApplicable = Math.round(emprunt.tauxApplicable * 1000000.0) / 1000000.0;
+			emprunt.nombrePeriode = emprunt.duree * 12;
+		} else {
+			emprunt.tauxApplicable = emprunt.taux / 100;
+			emprunt.tauxApplicable = Math.round(emprunt.tauxApplicable * 100.0) / 100.0;
+			emprunt.nombrePeriode = emprunt.duree;
+		}
+
+		ObservableList<LigneEmprunt> list = FXCollections.observableArrayList();
+		double tauxApplicable = emprunt.tauxApplicable;
+		double capDebut = emprunt.capital;
+		int nbPeriode = emprunt.nombrePeriode;
+		LigneEmprunt[] tabLignes = new LigneEmprunt[nbPeriode];
+		for (int i = 0; i < nbPeriode; i++) {
+			tabLignes[i] = new LigneEmprunt(0, 0, 0, 0, 0, 0);
+			if (i == 0) {
+				tabLignes[i].setCapDebut(capDebut);
+			} else {
+				tabLignes[i].setCapDebut((double) Math.round((tabLignes[i - 1].getCapFin()) * 100) / 100);
+			}
+			tabLignes[i].setPeriode(i + 1);
+			tabLignes[i].setInteret((double) Math.round((tauxApplicable * tabLignes[i].getCapDebut()) * 100) / 100);
+			tabLignes[i].setMensualite((double) Math
+					.round((capDebut * (tauxApplicable / (1 - Math.pow((1 + tauxApplicable), -nbPeriode)))) * 100)
+					/ 100);
+			tabLignes[i].setPrincipal(
+					(double) Math.round((tabLignes[i].getMensualite() - tabLignes[i].getInteret()) * 100) / 100);
+			tabLignes[i].setCapFin(
+					(double) Math.round((tabLignes[i].getCapDebut() - tabLignes[i].getPrincipal()) * 100) / 100);
+			list.add(tabLignes[i]);
+		}
+		return list;
+	}
+
+	// Les deux calculs donnent les mêmes montants
+	private static void verifier(Emprunt emp, TableauAmortissement tableau) {
+		ObservableList<LigneEmprunt> lignes = BenchEmprunt.getLignes(emp);
+		tableau.calculer(emp.capital, emp.duree, emp.taux, emp.periodicite, emp.tauxAssurance);
+		if (lignes.size() != tableau.getNbPeriodes() || emp.tauxApplicable != tableau.getTauxApplicable()) {
+			throw new IllegalStateException("Nombre de périodes ou taux différent (" + emp.duree + " ans)");
+		}
+		for (int i = 0; i < lignes.size(); i++) {
+			LigneEmprunt l = lignes.get(i);
+			if (l.getCapDebut() != tableau.getCapDebut(i) || l.getInteret() != tableau.getInteret(i)
+					|| l.getPrincipal() != tableau.getPrincipal(i) || l.getMensualite() != tableau.getMensualite()
+					|| l.getCapFin() != tableau.getCapFin(i)) {
+				throw new IllegalStateException("Période " + (i + 1) + " différente (" + emp.duree + " ans)");
+			}
+		}
+	}
+}
@@ -0,0 +1,193 @@
+package bench;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import application.tools.ConstantesIHM;
+import model.data.Client;
+import model.data.CompteCourant;
+import model.data.Operation;
+import model.orm.AccessClient;
+import model.orm.AccessCompteCourant;
+import model.orm.AccessOperation;
+import model.orm.LogToDatabase;
+import model.orm.MoteurSoldes;
+
+/**
+ * Arrêt brutal pendant les débits du moteur de soldes, puis reprise du journal
+ * des opérations : débit confirmé, débit conservé.
+ *
+ * Un second processus (java bench.BenchJournal enfant ...) débite NB_COMPTES
+ * comptes depuis nbGuichets threads par le moteur de soldes, puis s'arrête sans
+ * rien terminer (Runtime.halt) après dureeMs, en pleine écriture. Il affiche
+ * avant l'arrêt les montants débités confirmés à cet instant. Le banc redémarre
+ * alors le moteur (reprise du journal) et vérifie pour chaque compte que tous
+ * les débits confirmés sont en BD et que le solde est égal à la somme des
+ * opérations du compte. Affiche le nombre de débits confirmés par seconde.
+ *
+ * Reprise après une écriture du journal en échec (sans BD) : cf.
+ * model.orm.VerifJournalPanne.
+ *
+ * Nécessite une base H2 dans un fichier (elle doit survivre à l'arrêt du second
+ * processus), h2.jar dans le classpath :
+ *
+ * java -Ddailybank.config=bench.properties -cp bin:LIBS/* bench.BenchJournal
+ * [nbGuichets,dureeMs]
+ *
+ * avec dans bench.properties bd.dialecte=h2 et par exemple
+ * bd.url=jdbc:h2:./bench-journal;INIT=RUNSCRIPT FROM
+ * 'basededonnee/scriptCreaBaseH2.sql'
+ */
+public class BenchJournal {
+
+	private static final int NB_COMPTES = 16;
+	private static final double SOLDE_INITIAL = 1_000_000;
+
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0 && args[0].equals("enfant")) {
+			BenchJournal.enfant(args);
+			return;
+		}
+		String[] p = (args.length > 0 ? args[0] : "8,3000").split(",");
+		int nbGuichets = Integer.parseInt(p[0].trim());
+		long dureeMs = Long.parseLong(p[1].trim());
+
+		System.setProperty("bd.moteurSoldes", "true");
+		String url = LogToDatabase.getConfiguration().getUrl();
+		if (LogToDatabase.getDialecte().avecProceduresStockees() || url.contains(":mem:")) {
+			System.err.println("Base " + url + " : lancer sur une base H2 dans un fichier (cf. BenchJournal)");
+			System.exit(1);
+		}
+
+		// Comptes débités
+		ArrayList<Client> clients = new ArrayList<>();
+		clients.add(new Client(-1, "Journal", "Bench", "1 rue du test 31700 Blagnac", "journal@test.fr",
+				"0000000000", ConstantesIHM.CLIENT_ACTIF, 1));
+		new AccessClient().insertClients(clients);
+		AccessCompteCourant acc = new AccessCompteCourant();
+		ArrayList<String> commande = new ArrayList<>();
+		commande.add(System.getProperty("java.home") + "/bin/java");
+		commande.add("-cp");
+		commande.add(System.getProperty("java.class.path"));
+		commande.add("-Dbd.moteurSoldes=true");
+		if (System.getProperty("dailybank.config") != null) {
+			commande.add("-Ddailybank.config=" + System.getProperty("dailybank.config"));
+		}
+		commande.add(BenchJournal.class.getName());
+		commande.add("enfant");
+		commande.add("" + nbGuichets);
+		commande.add("" + dureeMs);
+		int[] comptes = new int[BenchJournal.NB_COMPTES];
+		for (int c = 0; c < comptes.length; c++) {
+			CompteCourant cc = new CompteCourant(-1, 0, BenchJournal.SOLDE_INITIAL, "N", clients.get(0).idNumCli);
+			acc.insertCompte(cc);
+			comptes[c] = cc.idNumCompte;
+			commande.add("" + cc.idNumCompte);
+		}
+		LogToDatabase.closeConnexion(); // base libérée pour le second processus
+
+		// Débits puis arrêt brutal du second processus
+		Process enfant = new ProcessBuilder(commande).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+		long[] confirmes = new long[comptes.length];
+		long nbConfirmes = -1;
+		try (BufferedReader r = new BufferedReader(
+				new InputStreamReader(enfant.getInputStream(), StandardCharsets.UTF_8))) {
+			String ligne;
+			while ((ligne = r.readLine()) != null) {
+				String[] champs = ligne.split(" ");
+				if (champs[0].equals("confirme")) {
+					confirmes[Integer.parseInt(champs[1])] = Long.parseLong(champs[2]);
+				} else if (champs[0].equals("total")) {
+					nbConfirmes = Long.parseLong(champs[1]);
+				}
+			}
+		}
+		enfant.waitFor();
+		if (nbConfirmes < 0) {
+			throw new IllegalStateException("Second processus arrêté sans résultat (code " + enfant.exitValue() + ")");
+		}
+		System.out.println("Arrêt brutal après " + nbConfirmes + " débits confirmés en " + dureeMs + " ms ("
+				+ nbConfirmes * 1000 / dureeMs + " débits / s, " + nbGuichets + " guichets)");
+
+		// Reprise (au démarrage du moteur) et contrôle
+		try {
+			long debut = System.currentTimeMillis();
+			MoteurSoldes.get();
+			System.out.println("Reprise du journal : " + (System.currentTimeMillis() - debut) + " ms");
+			AccessOperation ao = new AccessOperation();
+			long nbPerdus = 0;
+			for (int c = 0; c < comptes.length; c++) {
+				long soldeBD = Math.round(acc.getCompteCourant(comptes[c]).solde * 100);
+				long sommeOps = 0;
+				for (Operation op : ao.getOperations(comptes[c])) {
+					sommeOps += Math.round(op.montant * 100);
+				}
+				long debiteBD = Math.round(BenchJournal.SOLDE_INITIAL * 100) - soldeBD;
+				if (sommeOps != soldeBD) {
+					throw new IllegalStateException("Compte " + comptes[c] + " : solde en BD " + soldeBD / 100.0
+							+ ", somme des opérations " + sommeOps / 100.0);
+				}
+				if (debiteBD < confirmes[c]) {
+					nbPerdus++;
+					System.err.println("Compte " + comptes[c] + " : " + confirmes[c] / 100.0 + " débités confirmés, "
+							+ debiteBD / 100.0 + " en BD");
+				}
+			}
+			if (nbPerdus > 0) {
+				throw new IllegalStateException(nbPerdus + " comptes ont perdu des débits confirmés");
+			}
+			System.out.println("Débits confirmés tous en BD après reprise, soldes cohérents");
+		} finally {
+			LogToDatabase.closeConnexion();
+		}
+	}
+
+	// Second processus : débits jusqu'à l'arrêt brutal
+	private static void enfant(String[] args) throws Exception {
+		int nbGuichets = Integer.parseInt(args[1]);
+		long dureeMs = Long.parseLong(args[2]);
+		int[] comptes = new int[args.length - 3];
+		AtomicLong[] confirmes = new AtomicLong[comptes.length];
+		for (int c = 0; c < comptes.length; c++) {
+			comptes[c] = Integer.parseInt(args[c + 3]);
+			confirmes[c] = new AtomicLong();
+		}
+		AtomicLong nbConfirmes = new AtomicLong();
+		MoteurSoldes.get(); // reprise éventuelle avant les mesures
+
+		for (int g = 0; g < nbGuichets; g++) {
+			int guichet = g;
+			Thread t = new Thread(() -> {
+				AccessOperation ao = new AccessOperation();
+				try {
+					for (long i = guichet;; i += nbGuichets) {
+						int c = (int) (i % comptes.length);
+						long centimes = 1 + (i * 7919L) % 200;
+						ao.insertDebit(comptes[c], centimes / 100.0, ConstantesIHM.TYPE_OP_2);
+						confirmes[c].addAndGet(centimes);
+						nbConfirmes.incrementAndGet();
+					}
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}, "guichet-" + g);
+			t.setDaemon(true);
+			t.start();
+		}
+
+		Thread.sleep(dureeMs);
+		// Relevé puis arrêt immédiat : les débits confirmés après le relevé sont en
+		// plus (en BD, pas dans le relevé)
+		StringBuilder sb = new StringBuilder();
+		for (int c = 0; c < comptes.length; c++) {
+			sb.append("confirme ").append(c).append(' ').append(confirmes[c].get()).append('\n');
+		}
+		sb.append("total ").append(nbConfirmes.get()).append('\n');
+		System.out.print(sb);
+		System.out.flush();
+		Runtime.getRuntime().halt(0);
+	}
+}
@@ -0,0 +1,222 @@
+package bench;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import application.tools.ConstantesIHM;
+import model.data.Client;
+import model.data.CompteCourant;
+import model.data.NouvellesOperations;
+import model.data.Operation;
+import model.data.Prelevement;
+import model.orm.AccessClient;
+import model.orm.AccessCompteCourant;
+import model.orm.AccessOperation;
+import model.orm.AccessPrelevement;
+import model.orm.HistoriqueOperations;
+import model.orm.LogToDatabase;
+import model.orm.Transaction;
+
+/**
+ * Mesure des appels de DAO les plus fréquents (model.orm) sur une base remplie
+ * de 1 000 à 10 000 000 d'opérations.
+ *
+ * Lancement (base H2 de dailybank.properties.exemple, h2.jar dans le
+ * classpath) :
+ *
+ * java -Ddailybank.config=bench.properties -cp bin:LIBS/* bench.BenchORM
+ * 1000,100000,1000000 resultats-orm.json
+ *
+ * Arguments : tailles de la table Operation (par défaut 1000,100000) et fichier
+ * JSON des résultats (par défaut bench-orm.json). La base est remplie au début
+ * (NB_CLIENTS clients de l'agence 1, un compte chacun, un prélèvement par
+ * compte et par jour du mois) puis complétée en opérations avant chaque
+ * taille (les débits et prélèvements mesurés s'y ajoutent). Refuse de remplir
+ * le serveur Oracle partagé sauf -Dbench.oracle=true.
+ *
+ * Les débits sont aussi mesurés par 10 dans une Transaction (un seul commit).
+ *
+ * Avec -Dbd.historique=répertoire, getOperations(compte) passe par la copie
+ * locale des opérations (cf. HistoriqueOperations) : à comparer aux résultats
+ * sans. getHistorique(compte) y est aussi mesuré (parcours des montants sans
+ * créer les opérations).
+ */
+public class BenchORM {
+
+	private static final int ID_AGENCE = 1;
+	private static final int NB_CLIENTS = 1000;
+	private static final String SYLLABES = "babebibobucacecicocudadedidodufafefifofugagegigogulalelilolumamemimomunanenino";
+
+	private final Banc banc = new Banc();
+	private final AccessOperation ao = new AccessOperation();
+	private final AccessClient ac = new AccessClient();
+	private final AccessCompteCourant acc = new AccessCompteCourant();
+	private final AccessPrelevement ap = new AccessPrelevement();
+
+	private int[] clients;
+	private int[] comptes;
+	private int nbOperations = 0;
+	private int jourPrelevements = 0;
+
+	public static void main(String[] args) throws Exception {
+		int[] tailles = Arrays.stream((args.length > 0 ? args[0] : "1000,100000").split(","))
+				.mapToInt(t -> Integer.parseInt(t.trim())).sorted().toArray();
+		String fichier = args.length > 1 ? args[1] : "bench-orm.json";
+
+		System.out.println(LogToDatabase.getConfiguration());
+		if (LogToDatabase.getDialecte().avecProceduresStockees() && !Boolean.getBoolean("bench.oracle")) {
+			System.err.println("Base Oracle configurée : lancer sur une base locale (bd.dialecte=h2)"
+					+ " ou confirmer par -Dbench.oracle=true");
+			System.exit(1);
+		}
+
+		BenchORM b = new BenchORM();
+		try {
+			b.remplir();
+			for (int taille : tailles) {
+				b.completerOperations(taille);
+				b.mesurer(taille);
+			}
+			b.banc.ecrireJson(Paths.get(fichier));
+		} finally {
+			LogToDatabase.closeConnexion();
+		}
+	}
+
+	// Clients, comptes et prélèvements des mesures
+	private void remplir() throws Exception {
+		long debut = System.currentTimeMillis();
+		ArrayList<Client> clients = new ArrayList<>();
+		for (int c = 0; c < BenchORM.NB_CLIENTS; c++) {
+			String nom = BenchORM.syllabe(c) + BenchORM.syllabe(c / 30) + BenchORM.syllabe(c / 900);
+			nom = Character.toUpperCase(nom.charAt(0)) + nom.substring(1);
+			clients.add(new Client(-1, nom, "Bench", c + " rue du test 31700 Blagnac", "b" + c + "@test.fr",
+					String.format("%010d", c), ConstantesIHM.CLIENT_ACTIF, BenchORM.ID_AGENCE));
+		}
+		this.ac.insertClients(clients);
+
+		this.clients = new int[clients.size()];
+		this.comptes = new int[clients.size()];
+		ArrayList<Prelevement> prelevements = new ArrayList<>();
+		for (int c = 0; c < clients.size(); c++) {
+			CompteCourant cc = new CompteCourant(-1, 0, 500_000, "N", clients.get(c).idNumCli);
+			this.acc.insertCompte(cc);
+			this.clients[c] = clients.get(c).idNumCli;
+			this.comptes[c] = cc.idNumCompte;
+			for (int jour = 1; jour <= 28; jour++) {
+				prelevements.add(new Prelevement(-1, 1, jour, "Bench " + jour, cc.idNumCompte));
+			}
+		}
+		this.ap.insertPrelevements(prelevements);
+		this.nbOperations = clients.size(); // versements initiaux
+		System.out.println("Base remplie : " + clients.size() + " clients et comptes, " + prelevements.size()
+				+ " prélèvements (" + (System.currentTimeMillis() - debut) + " ms)");
+	}
+
+	// Opérations (crédits répartis sur les comptes) jusqu'à taille
+	private void completerOperations(int taille) throws Exception {
+		long debut = System.currentTimeMillis();
+		final int lignesParEnvoi = 100_000;
+		while (this.nbOperations < taille) {
+			int nb = Math.min(lignesParEnvoi, taille - this.nbOperations);
+			StringBuilder sb = new StringBuilder(nb * 32);
+			for (int i = 0; i < nb; i++) {
+				sb.append(this.comptes[(this.nbOperations + i) % this.comptes.length]).append(";1;")
+						.append(ConstantesIHM.TYPE_OP_1).append('\n');
+			}
+			this.ao.importerOperations(new BufferedReader(new StringReader(sb.toString())), 10_000);
+			this.nbOperations += nb;
+		}
+		System.out.println("Table Operation : " + this.nbOperations + " opérations ("
+				+ (System.currentTimeMillis() - debut) + " ms)");
+	}
+
+	private void mesurer(int taille) throws Exception {
+		String[] p = { "nbOperations", "" + taille, "historique",
+				"" + !LogToDatabase.getConfiguration().getRepertoireHistorique().isEmpty() };
+		int nbClients = this.clients.length;
+		LocalDate aujourdhui = LocalDate.now();
+		String mois = "" + aujourdhui.getMonthValue();
+		String annee = "" + aujourdhui.getYear();
+
+		this.banc.mesurer("AccessOperation.getOperations(compte)", p,
+				i -> this.ao.getOperations(this.compte(i)).size());
+		if (this.ao.getHistorique(this.compte(0)) != null) {
+			this.banc.mesurer("AccessOperation.getHistorique(compte)", p, i -> {
+				HistoriqueOperations.Historique h = this.ao.getHistorique(this.compte(i));
+				double total = 0;
+				for (int o = 0; o < h.size(); o++) {
+					total += h.getMontant(o);
+				}
+				return total;
+			});
+		}
+		this.banc.mesurer("AccessOperation.getOperations(compte, mois)", p,
+				i -> this.ao.getOperations(this.compte(i), mois, annee).size());
+		this.banc.mesurer("AccessClient.getClients(tous)", p,
+				i -> this.ac.getClients(BenchORM.ID_AGENCE, -1, "", "").size());
+		this.banc.mesurer("AccessClient.getClients(debutNom)", p,
+				i -> this.ac.getClients(BenchORM.ID_AGENCE, -1, BenchORM.syllabe(i), "").size());
+		this.banc.mesurer("AccessClient.getClients(id)", p,
+				i -> this.ac.getClients(BenchORM.ID_AGENCE, this.clients[i % nbClients], "", "").size());
+		this.banc.mesurer("AccessCompteCourant.getCompteCourant", p,
+				i -> this.acc.getCompteCourant(this.compte(i)));
+		this.banc.mesurer("AccessOperation.insertDebit", p, i -> {
+			this.ao.insertDebit(this.compte(i), 0.01, ConstantesIHM.TYPE_OP_2);
+			return null;
+		});
+		// Mêmes débits par 10, validés en un seul commit (cf. Transaction) : commits
+		// envoyés par appel affichés
+		long commitsAvant = LogToDatabase.getNbCommits();
+		Banc.Resultat lot = this.banc.mesurer("Transaction.executer(10 x insertDebit)", p,
+				i -> Transaction.executer(tx -> {
+					for (int d = 0; d < 10; d++) {
+						this.ao.insertDebit(this.compte(i * 10 + d), 0.01, ConstantesIHM.TYPE_OP_2);
+					}
+					return null;
+				}));
+		System.out.println("  commits par appel (chauffe comprise) : "
+				+ (LogToDatabase.getNbCommits() - commitsAvant) / Math.max(1.0, lot.nbAppels));
+		// Rafraîchissement de l'affichage des opérations d'un compte après un débit :
+		// comptes d'abord chargés en entier (comme à l'ouverture de la fenêtre)
+		int[] dernierId = new int[this.comptes.length];
+		int[] nbConnues = new int[this.comptes.length];
+		for (int c = 0; c < this.comptes.length; c++) {
+			NouvellesOperations n = this.ao.getNouvellesOperations(this.comptes[c], 0, 0);
+			for (Operation op : n.operations) {
+				dernierId[c] = Math.max(dernierId[c], op.idOperation);
+			}
+			nbConnues[c] = n.operations.size();
+		}
+		this.banc.mesurer("AccessOperation.insertDebit + getNouvellesOperations", p, i -> {
+			int c = (int) ((i * 7919L) % this.comptes.length);
+			this.ao.insertDebit(this.comptes[c], 0.01, ConstantesIHM.TYPE_OP_2);
+			NouvellesOperations n = this.ao.getNouvellesOperations(this.comptes[c], dernierId[c], nbConnues[c]);
+			nbConnues[c] = n.toutes ? n.operations.size() : nbConnues[c] + n.operations.size();
+			for (Operation op : n.operations) {
+				dernierId[c] = Math.max(dernierId[c], op.idOperation);
+			}
+			return n.operations.size();
+		});
+		// Un jour différent à chaque appel : chaque exécution a des prélèvements à
+		// faire (NB_CLIENTS par jour du mois, aucun les 29, 30, 31)
+		this.banc.mesurer("AccessPrelevement.executerPrelevements", p, i -> {
+			LocalDate jour = LocalDate.of(2000, 1, 1).plusDays(this.jourPrelevements++);
+			return this.ap.executerPrelevements(jour, 500).executes.size();
+		});
+	}
+
+	// Compte de l'appel i (parcours pseudo aléatoire de tous les comptes)
+	private int compte(int i) {
+		return this.comptes[(int) ((i * 7919L) % this.comptes.length)];
+	}
+
+	private static String syllabe(int n) {
+		int s = n % 30;
+		return BenchORM.SYLLABES.substring(2 * s, 2 * s + 2);
+	}
+}
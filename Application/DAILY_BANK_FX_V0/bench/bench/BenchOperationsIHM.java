@@ -0,0 +1,274 @@
+package bench;
+
+import java.nio.file.Paths;
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import application.DailyBankApp;
+import application.tools.ListeParPages;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.skin.VirtualFlow;
+import javafx.stage.Stage;
+import model.data.Operation;
+
+/**
+ * Mesure de l'affichage des opérations d'un compte (fenêtre de gestion des
+ * opérations) de 10 000 à 1 000 000 d'opérations : temps jusqu'au premier
+ * affichage et durée des images pendant le défilement.
+ *
+ * Compare l'ancien affichage (toutes les opérations dans une ObservableList,
+ * texte Operation.toString() recalculé à chaque mise à jour de cellule) à
+ * application.tools.ListeParPages (pages lues à l'affichage, texte calculé une
+ * fois par ligne, hauteur de ligne fixe) comme dans
+ * OperationsManagementController.
+ *
+ * Sans BD : les opérations sont générées. Pour ListeParPages, chaque page est
+ * lue en tâche de fond (ServiceBD) après latenceMs (requête simulée) ; pour
+ * l'ancien affichage la lecture en BD n'est pas comptée (seule la création des
+ * opérations l'est), ce qui l'avantage.
+ *
+ * - premier affichage : du début du chargement à la fin du layout de la
+ * première image où toutes les lignes visibles ont leur texte (NB_ESSAIS
+ * fenêtres ouvertes) ;
+ * - défilement : nbImages images en défilant de 3 lignes par image, puis
+ * nbImages images en sautant à une ligne au hasard à chaque image (curseur de
+ * la barre de défilement déplacé) : intervalle entre deux images (cadence
+ * réelle, 16,7 ms à 60 images / s) et durée du layout de chaque image (travail
+ * de la ListView et des cellules). Les images dont des lignes visibles sont
+ * encore en attente de lecture sont comptées.
+ *
+ * Nécessite un écran (JavaFX) :
+ *
+ * java -cp bin:LIBS/* --module-path javafx/lib --add-modules javafx.controls
+ * bench.BenchOperationsIHM [10000,1000000] [latenceMs,nbImages]
+ * [resultats-ihm.json]
+ */
+public class BenchOperationsIHM {
+
+	private static final int NB_ESSAIS = 5;
+	private static final int TAILLE_PAGE = 200;
+	private static final int NB_PAGES = 50;
+	private static final double HAUTEUR_LIGNE = 24;
+	private static final String ATTENTE = "...";
+	private static final String[] TYPES = { "Dépôt Espèces", "Retrait Espèces", "Virement Compte à Compte",
+			"Paiement Carte", "Prélèvement" };
+
+	private static long latenceMs;
+	private static int nbImages;
+
+	public static void main(String[] args) throws Exception {
+		int[] tailles = Arrays.stream((args.length > 0 ? args[0] : "10000,1000000").split(","))
+				.mapToInt(t -> Integer.parseInt(t.trim())).toArray();
+		String[] p = (args.length > 1 ? args[1] : "5,300").split(",");
+		BenchOperationsIHM.latenceMs = Long.parseLong(p[0].trim());
+		BenchOperationsIHM.nbImages = Integer.parseInt(p[1].trim());
+		String fichier = args.length > 2 ? args[2] : "bench-operations-ihm.json";
+
+		Platform.startup(() -> {
+		});
+		Platform.setImplicitExit(false);
+		Banc banc = new Banc();
+		try {
+			for (int taille : tailles) {
+				for (boolean parPages : new boolean[] { false, true }) {
+					BenchOperationsIHM.mesurer(banc, taille, parPages);
+				}
+			}
+		} finally {
+			Platform.exit();
+		}
+		banc.ecrireJson(Paths.get(fichier));
+	}
+
+	// Une fenêtre de test : liste, scène et mesures en cours
+	private static class Fenetre {
+		Stage stage;
+		ListView<Operation> lv;
+		long debut;
+		long debutLayout;
+		long dureeLayout; // layout de l'image précédente
+		CompletableFuture<Long> premierAffichage = new CompletableFuture<>();
+	}
+
+	private static void mesurer(Banc banc, int taille, boolean parPages) throws Exception {
+		String nom = parPages ? "ListeParPages" : "ObservableList (toutes les opérations)";
+		LinkedHashMap<String, String> params = new LinkedHashMap<>();
+		params.put("nbOperations", "" + taille);
+		if (parPages) {
+			params.put("latenceMs", "" + BenchOperationsIHM.latenceMs);
+		}
+
+		// Premier affichage
+		long[] premiers = new long[BenchOperationsIHM.NB_ESSAIS];
+		long totalPremiers = 0;
+		Fenetre f = null;
+		for (int e = 0; e < premiers.length; e++) {
+			if (f != null) {
+				Fenetre aFermer = f;
+				BenchOperationsIHM.surFX(() -> aFermer.stage.close());
+			}
+			f = new Fenetre();
+			Fenetre fe = f;
+			BenchOperationsIHM.surFX(() -> BenchOperationsIHM.ouvrir(fe, taille, parPages));
+			premiers[e] = f.premierAffichage.get(60, TimeUnit.SECONDS);
+			totalPremiers += premiers[e];
+		}
+		Banc.Resultat r = new Banc.Resultat(nom + " : premier affichage", params, premiers, premiers.length,
+				totalPremiers, -1);
+		System.out.println(r);
+		banc.getResultats().add(r);
+
+		// Défilement continu puis par sauts
+		for (boolean sauts : new boolean[] { false, true }) {
+			long[] intervalles = new long[BenchOperationsIHM.nbImages];
+			long[] layouts = new long[BenchOperationsIHM.nbImages];
+			int[] nbEnAttente = new int[1];
+			CompletableFuture<Long> fin = new CompletableFuture<>();
+			Fenetre fd = f;
+			BenchOperationsIHM.surFX(() -> BenchOperationsIHM.defiler(fd, taille, sauts, intervalles, layouts,
+					nbEnAttente, fin));
+			long total = fin.get(120, TimeUnit.SECONDS);
+			LinkedHashMap<String, String> paramsDefil = new LinkedHashMap<>(params);
+			paramsDefil.put("defilement", sauts ? "sauts" : "continu");
+			paramsDefil.put("imagesEnAttente", "" + nbEnAttente[0]);
+			Banc.Resultat ri = new Banc.Resultat(nom + " : intervalle entre images", paramsDefil, intervalles,
+					intervalles.length, total, -1);
+			Banc.Resultat rl = new Banc.Resultat(nom + " : layout d'une image", paramsDefil, layouts, layouts.length,
+					total, -1);
+			System.out.println(ri);
+			System.out.println(rl);
+			banc.getResultats().add(ri);
+			banc.getResultats().add(rl);
+		}
+		Fenetre aFermer = f;
+		BenchOperationsIHM.surFX(() -> aFermer.stage.close());
+	}
+
+	// Chargement de la liste et ouverture de la fenêtre (thread JavaFX)
+	private static void ouvrir(Fenetre f, int taille, boolean parPages) {
+		f.debut = System.nanoTime();
+		f.lv = new ListView<>();
+		f.lv.getStyleClass().add("courrierNew");
+		if (parPages) {
+			ListeParPages<Operation> liste = new ListeParPages<>(BenchOperationsIHM.TAILLE_PAGE,
+					BenchOperationsIHM.NB_PAGES, (debut, precedent, nb) -> {
+						try {
+							Thread.sleep(BenchOperationsIHM.latenceMs);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+						return BenchOperationsIHM.operations(debut, Math.min(nb, taille - debut));
+					}, ae -> ae.printStackTrace());
+			liste.reinitialiser(taille);
+			f.lv.setItems(liste);
+			f.lv.setFixedCellSize(BenchOperationsIHM.HAUTEUR_LIGNE);
+			f.lv.setCellFactory(liste.fabriqueCellules(Operation::toString, BenchOperationsIHM.ATTENTE));
+		} else {
+			ObservableList<Operation> liste = FXCollections.observableArrayList();
+			liste.setAll(BenchOperationsIHM.operations(0, taille));
+			f.lv.setItems(liste);
+		}
+		Scene scene = new Scene(f.lv, 647, 219);
+		scene.getStylesheets().add(DailyBankApp.class.getResource("application.css").toExternalForm());
+		scene.addPreLayoutPulseListener(() -> f.debutLayout = System.nanoTime());
+		scene.addPostLayoutPulseListener(() -> {
+			f.dureeLayout = System.nanoTime() - f.debutLayout;
+			if (!f.premierAffichage.isDone() && BenchOperationsIHM.nbLignesEnAttente(f.lv) == 0) {
+				f.premierAffichage.complete(System.nanoTime() - f.debut);
+			}
+		});
+		f.stage = new Stage();
+		f.stage.setScene(scene);
+		f.stage.show();
+	}
+
+	// Défilement d'une image à l'autre (thread JavaFX) : fin reçoit la durée totale
+	private static void defiler(Fenetre f, int taille, boolean sauts, long[] intervalles, long[] layouts,
+			int[] nbEnAttente, CompletableFuture<Long> fin) {
+		VirtualFlow<?> flow = (VirtualFlow<?>) f.lv.lookup(".virtual-flow");
+		Random hasard = new Random(42);
+		f.lv.scrollTo(0);
+		new AnimationTimer() {
+			private int image = -1;
+			private long precedente;
+			private long debut;
+
+			@Override
+			public void handle(long maintenant) {
+				if (this.image >= 0) {
+					intervalles[this.image] = maintenant - this.precedente;
+					layouts[this.image] = f.dureeLayout;
+					if (BenchOperationsIHM.nbLignesEnAttente(f.lv) > 0) {
+						nbEnAttente[0]++;
+					}
+				} else {
+					this.debut = maintenant;
+				}
+				this.image++;
+				this.precedente = maintenant;
+				if (this.image == intervalles.length) {
+					this.stop();
+					fin.complete(maintenant - this.debut);
+					return;
+				}
+				if (sauts) {
+					f.lv.scrollTo(hasard.nextInt(taille));
+				} else {
+					flow.scrollPixels(3 * BenchOperationsIHM.HAUTEUR_LIGNE);
+				}
+			}
+		}.start();
+	}
+
+	// Lignes visibles sans texte (pas encore lues)
+	private static int nbLignesEnAttente(ListView<Operation> lv) {
+		int nb = 0;
+		for (Node n : lv.lookupAll(".list-cell")) {
+			ListCell<?> cellule = (ListCell<?>) n;
+			if (cellule.isVisible() && !cellule.isEmpty() && cellule.getIndex() >= 0
+					&& cellule.getIndex() < lv.getItems().size()
+					&& (cellule.getText() == null || cellule.getText().equals(BenchOperationsIHM.ATTENTE))) {
+				nb++;
+			}
+		}
+		return nb;
+	}
+
+	// Opérations de rang debut à debut + nb - 1 (générées)
+	private static ArrayList<Operation> operations(int debut, int nb) {
+		ArrayList<Operation> ops = new ArrayList<>(nb);
+		long jour = 1_600_000_000_000L;
+		for (int i = debut; i < debut + nb; i++) {
+			long date = jour + i * 60_000L;
+			ops.add(new Operation(i + 1, ((i * 7919L) % 20000 - 10000) / 100.0, new Date(date),
+					new Date(date + 2 * 86_400_000L), 1, BenchOperationsIHM.TYPES[i % BenchOperationsIHM.TYPES.length]));
+		}
+		return ops;
+	}
+
+	// Exécute action sur le thread JavaFX et attend sa fin
+	private static void surFX(Runnable action) throws Exception {
+		CompletableFuture<Void> fait = new CompletableFuture<>();
+		Platform.runLater(() -> {
+			try {
+				action.run();
+				fait.complete(null);
+			} catch (Throwable t) {
+				fait.completeExceptionally(t);
+			}
+		});
+		fait.get(120, TimeUnit.SECONDS);
+	}
+}
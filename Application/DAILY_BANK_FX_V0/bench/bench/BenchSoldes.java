@@ -0,0 +1,209 @@
+package bench;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import application.tools.ConstantesIHM;
+import model.data.Client;
+import model.data.CompteCourant;
+import model.data.Operation;
+import model.orm.AccessClient;
+import model.orm.AccessCompteCourant;
+import model.orm.AccessOperation;
+import model.orm.LogToDatabase;
+import model.orm.MoteurSoldes;
+import model.orm.exception.ManagementRuleViolation;
+
+/**
+ * Débits concurrents (guichets) sur quelques comptes, sans puis avec le moteur
+ * de soldes (bd.moteurSoldes) : latence d'un débit et contrôle des soldes.
+ *
+ * NB_GUICHETS threads débitent en parallèle NB_COMPTES comptes (1 000 de solde,
+ * 100 de découvert autorisé) jusqu'à épuisement : la plupart des débits de la
+ * fin sont refusés. Après les débits (et l'écriture des opérations différées),
+ * vérifie pour chaque compte que le découvert autorisé n'est jamais dépassé,
+ * que le solde en BD est le solde initial moins les débits acceptés et qu'il
+ * est égal à la somme des opérations du compte. Une erreur arrête le banc.
+ *
+ * Chaque mesure est refaite avec des virements de compte à compte (écritures
+ * en BD hors du moteur, cf. MoteurSoldes.ecritureDirecte) faits en continu par
+ * un thread de plus pendant les débits : les virements acceptés entrent dans
+ * le solde attendu.
+ *
+ * Lancement (base H2 de dailybank.properties.exemple, h2.jar dans le
+ * classpath) :
+ *
+ * java -Ddailybank.config=bench.properties -cp bin:LIBS/* bench.BenchSoldes
+ * [nbGuichets,nbComptes,nbDebits] [resultats-soldes.json]
+ *
+ * Refuse de débiter le serveur Oracle partagé sauf -Dbench.oracle=true.
+ */
+public class BenchSoldes {
+
+	private static final double SOLDE_INITIAL = 1000;
+	private static final int DECOUVERT = 100;
+
+	public static void main(String[] args) throws Exception {
+		int[] p = Arrays.stream((args.length > 0 ? args[0] : "8,4,20000").split(","))
+				.mapToInt(t -> Integer.parseInt(t.trim())).toArray();
+		String fichier = args.length > 1 ? args[1] : "bench-soldes.json";
+		int nbGuichets = p[0];
+		int nbComptes = p[1];
+		int nbDebits = p[2];
+
+		Banc banc = new Banc();
+		for (boolean moteur : new boolean[] { false, true }) {
+			System.setProperty("bd.moteurSoldes", "" + moteur);
+			try {
+				if (LogToDatabase.getDialecte().avecProceduresStockees() && !Boolean.getBoolean("bench.oracle")) {
+					System.err.println("Base Oracle configurée : lancer sur une base locale (bd.dialecte=h2)"
+							+ " ou confirmer par -Dbench.oracle=true");
+					System.exit(1);
+				}
+				for (boolean virements : new boolean[] { false, true }) {
+					banc.getResultats().add(BenchSoldes.debiter(moteur, virements, nbGuichets, nbComptes, nbDebits));
+				}
+			} finally {
+				LogToDatabase.closeConnexion(); // configuration relue au tour suivant
+			}
+		}
+		banc.ecrireJson(Paths.get(fichier));
+	}
+
+	private static Banc.Resultat debiter(boolean moteur, boolean virements, int nbGuichets, int nbComptes,
+			int nbDebits) throws Exception {
+		ArrayList<Client> clients = new ArrayList<>();
+		clients.add(new Client(-1, "Soldes", "Bench", "1 rue du test 31700 Blagnac", "soldes@test.fr", "0000000000",
+				ConstantesIHM.CLIENT_ACTIF, 1));
+		new AccessClient().insertClients(clients);
+		AccessCompteCourant acc = new AccessCompteCourant();
+		int[] comptes = new int[nbComptes];
+		for (int c = 0; c < nbComptes; c++) {
+			CompteCourant cc = new CompteCourant(-1, BenchSoldes.DECOUVERT, BenchSoldes.SOLDE_INITIAL, "N",
+					clients.get(0).idNumCli);
+			acc.insertCompte(cc);
+			comptes[c] = cc.idNumCompte;
+		}
+
+		// Débits acceptés et virements acceptés (signés) par compte, en centimes
+		AtomicLong[] debites = new AtomicLong[nbComptes];
+		AtomicLong[] vires = new AtomicLong[nbComptes];
+		for (int c = 0; c < nbComptes; c++) {
+			debites[c] = new AtomicLong();
+			vires[c] = new AtomicLong();
+		}
+		AtomicLong nbVirements = new AtomicLong();
+		AtomicBoolean debitsFinis = new AtomicBoolean(false);
+		AtomicLong nbRefuses = new AtomicLong();
+		int parGuichet = nbDebits / nbGuichets;
+		long[] durees = new long[parGuichet * nbGuichets];
+		Exception[] erreur = new Exception[1];
+		CountDownLatch depart = new CountDownLatch(1);
+		Thread[] guichets = new Thread[nbGuichets];
+		for (int g = 0; g < nbGuichets; g++) {
+			int premier = g * parGuichet;
+			guichets[g] = new Thread(() -> {
+				AccessOperation ao = new AccessOperation();
+				try {
+					depart.await();
+					for (int i = premier; i < premier + parGuichet; i++) {
+						int c = i % nbComptes;
+						long centimes = 1 + (i * 7919L) % 200; // 0,01 à 2,00
+						long t = System.nanoTime();
+						try {
+							ao.insertDebit(comptes[c], centimes / 100.0, ConstantesIHM.TYPE_OP_2);
+							debites[c].addAndGet(centimes);
+						} catch (ManagementRuleViolation e) {
+							nbRefuses.incrementAndGet();
+						}
+						durees[i] = System.nanoTime() - t;
+					}
+				} catch (Exception e) {
+					synchronized (erreur) {
+						erreur[0] = e;
+					}
+				}
+			}, "guichet-" + g);
+			guichets[g].start();
+		}
+		// Virements du compte c au compte c + 1, jusqu'à la fin des débits
+		Thread virement = null;
+		if (virements && nbComptes > 1) {
+			virement = new Thread(() -> {
+				AccessOperation ao = new AccessOperation();
+				try {
+					depart.await();
+					for (int i = 0; !debitsFinis.get(); i++) {
+						int deb = i % nbComptes;
+						int cred = (deb + 1) % nbComptes;
+						long centimes = 500 + (i * 7919L) % 5000; // 5,00 à 54,99
+						try {
+							ao.virer(comptes[deb], comptes[cred], centimes / 100.0);
+							vires[deb].addAndGet(-centimes);
+							vires[cred].addAndGet(centimes);
+							nbVirements.incrementAndGet();
+						} catch (ManagementRuleViolation e) {
+							// découvert autorisé du compte débité atteint
+						}
+					}
+				} catch (Exception e) {
+					synchronized (erreur) {
+						erreur[0] = e;
+					}
+				}
+			}, "virements");
+			virement.start();
+		}
+		long debut = System.nanoTime();
+		depart.countDown();
+		for (Thread t : guichets) {
+			t.join();
+		}
+		long total = System.nanoTime() - debut;
+		debitsFinis.set(true);
+		if (virement != null) {
+			virement.join();
+		}
+		if (erreur[0] != null) {
+			throw erreur[0];
+		}
+		if (moteur) {
+			MoteurSoldes.get().synchroniser();
+		}
+		long dureeEcritureMs = (System.nanoTime() - debut - total) / 1_000_000;
+
+		AccessOperation ao = new AccessOperation();
+		for (int c = 0; c < nbComptes; c++) {
+			long attendu = Math.round(BenchSoldes.SOLDE_INITIAL * 100) - debites[c].get() + vires[c].get();
+			long soldeBD = Math.round(acc.getCompteCourant(comptes[c]).solde * 100);
+			long sommeOps = 0;
+			for (Operation op : ao.getOperations(comptes[c])) {
+				sommeOps += Math.round(op.montant * 100);
+			}
+			if (attendu < -BenchSoldes.DECOUVERT * 100 || soldeBD != attendu || sommeOps != soldeBD) {
+				throw new IllegalStateException("Compte " + comptes[c] + " : solde attendu " + attendu / 100.0
+						+ ", solde en BD " + soldeBD / 100.0 + ", somme des opérations " + sommeOps / 100.0);
+			}
+		}
+		System.out.println((moteur ? "Avec" : "Sans") + " moteur de soldes : soldes vérifiés, " + nbRefuses.get()
+				+ " débits refusés (découvert), " + nbVirements.get() + " virements, écriture différée terminée "
+				+ dureeEcritureMs + " ms après les débits");
+
+		LinkedHashMap<String, String> params = new LinkedHashMap<>();
+		params.put("moteurSoldes", "" + moteur);
+		params.put("virements", "" + virements);
+		params.put("nbGuichets", "" + nbGuichets);
+		params.put("nbComptes", "" + nbComptes);
+		// débit global : tous les guichets (durées individuelles pour moyenne et
+		// centiles)
+		Banc.Resultat r = new Banc.Resultat("AccessOperation.insertDebit (concurrent)", params, durees,
+				durees.length, total, -1);
+		System.out.println(r);
+		return r;
+	}
+}
@@ -0,0 +1,222 @@
+package model.orm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * Reprise du journal des opérations (cf. BenchJournal) après une écriture en
+ * échec : les entrées du paquet en échec, arrivées sur disque mais jamais
+ * confirmées, ne doivent pas être rejouées au redémarrage.
+ *
+ * Deux cas, sans BD : fsync du paquet en échec (fichier ramené à sa taille
+ * d'avant le paquet), puis fsync et retrait du paquet en échec (numéros dans le
+ * fichier des entrées annulées). Dans chaque cas, le journal est rouvert :
+ * lire() ne doit rendre que les entrées confirmées et, dans le second cas, les
+ * numéros suivants ne doivent pas réutiliser ceux du paquet annulé.
+ *
+ * java -cp bin model.orm.VerifJournalPanne
+ */
+public class VerifJournalPanne {
+
+	private static final int NB_CONFIRMEES = 3;
+	private static final int NB_EN_ECHEC = 2;
+
+	public static void main(String[] args) throws Exception {
+		VerifJournalPanne.verifier("fsync en échec, paquet retiré du fichier", false);
+		VerifJournalPanne.verifier("fsync et retrait en échec, paquet annulé", true);
+	}
+
+	private static void verifier(String cas, boolean retraitEnEchec) throws Exception {
+		Path repertoire = Files.createTempDirectory("journal");
+		Path fichier = repertoire.resolve("operations.journal");
+		try {
+			// Entrées confirmées puis paquet en échec
+			CanalEnPanne canal = new CanalEnPanne(FileChannel.open(fichier, StandardOpenOption.CREATE,
+					StandardOpenOption.READ, StandardOpenOption.WRITE));
+			JournalOperations journal = new JournalOperations(fichier, canal, paquet -> {
+			});
+			journal.lire();
+			journal.demarrer(0);
+			for (int i = 0; i < VerifJournalPanne.NB_CONFIRMEES; i++) {
+				journal.attendreDurable(journal.ajouter(1, 100 + i, "Dépôt Espèces").numero);
+			}
+			long tailleConfirmee = canal.size();
+			canal.retraitEnEchec = retraitEnEchec;
+			canal.panne = true;
+			long dernierEnEchec = 0;
+			ArrayList<JournalOperations.Entree> enEchec = new ArrayList<>();
+			for (int i = 0; i < VerifJournalPanne.NB_EN_ECHEC; i++) {
+				enEchec.add(journal.ajouter(1, 200 + i, "Retrait Espèces"));
+			}
+			for (JournalOperations.Entree e : enEchec) {
+				try {
+					journal.attendreDurable(e.numero);
+					throw new IllegalStateException(cas + " : entrée " + e.numero + " confirmée");
+				} catch (IOException attendue) {
+					dernierEnEchec = e.numero;
+				}
+			}
+			if (canal.nbOctetsEnEchec == 0) {
+				throw new IllegalStateException(cas + " : paquet en échec absent du fichier");
+			}
+			journal.fermer();
+			Path annulees = fichier.resolveSibling(fichier.getFileName() + ".annulees");
+			if (retraitEnEchec != Files.exists(annulees)
+					|| !retraitEnEchec && Files.size(fichier) != tailleConfirmee) {
+				throw new IllegalStateException(cas + " : " + Files.size(fichier) + " octets (" + tailleConfirmee
+						+ " confirmés), entrées annulées " + (Files.exists(annulees) ? "" : "non ") + "enregistrées");
+			}
+
+			// Redémarrage
+			journal = new JournalOperations(fichier, paquet -> {
+			});
+			ArrayList<JournalOperations.Entree> relues = journal.lire();
+			if (relues.size() != VerifJournalPanne.NB_CONFIRMEES) {
+				throw new IllegalStateException(cas + " : " + relues.size() + " entrées relues, "
+						+ VerifJournalPanne.NB_CONFIRMEES + " confirmées");
+			}
+			for (JournalOperations.Entree e : relues) {
+				if (e.centimes >= 200) {
+					throw new IllegalStateException(cas + " : entrée en échec " + e.numero + " rejouée");
+				}
+			}
+			journal.demarrer(0);
+			JournalOperations.Entree suivante = journal.ajouter(1, 300, "Dépôt Espèces");
+			journal.attendreDurable(suivante.numero);
+			if (retraitEnEchec && suivante.numero <= dernierEnEchec) { // annulés : jamais réutilisés
+				throw new IllegalStateException(cas + " : numéro " + suivante.numero + " réutilisé");
+			}
+			journal.fermer();
+			System.out.println(cas + " : " + relues.size() + " entrées confirmées relues, "
+					+ VerifJournalPanne.NB_EN_ECHEC + " en échec ignorées (" + canal.nbOctetsEnEchec
+					+ " octets écrits)");
+		} finally {
+			try (java.util.stream.Stream<Path> fichiers = Files.list(repertoire)) {
+				for (Path f : (Iterable<Path>) fichiers::iterator) {
+					Files.delete(f);
+				}
+			}
+			Files.delete(repertoire);
+		}
+	}
+
+	// Canal du journal dont le prochain fsync échoue après l'écriture des octets,
+	// à partir de panne (et tout retrait, à partir de retraitEnEchec)
+	private static class CanalEnPanne extends FileChannel {
+		private final FileChannel canal;
+		volatile boolean panne = false;
+		volatile boolean retraitEnEchec = false;
+		volatile long nbOctetsEnEchec = 0;
+
+		CanalEnPanne(FileChannel canal) {
+			this.canal = canal;
+		}
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			int n = this.canal.write(src);
+			if (this.panne) {
+				this.nbOctetsEnEchec += n;
+			}
+			return n;
+		}
+
+		@Override
+		public void force(boolean metaData) throws IOException {
+			if (this.panne) {
+				this.panne = false; // fsync du paquet seul en échec
+				throw new IOException("fsync en échec (simulé)");
+			}
+			this.canal.force(metaData);
+		}
+
+		@Override
+		public FileChannel truncate(long size) throws IOException {
+			if (this.retraitEnEchec) {
+				throw new IOException("retrait en échec (simulé)");
+			}
+			this.canal.truncate(size);
+			return this;
+		}
+
+		@Override
+		public int read(ByteBuffer dst) throws IOException {
+			return this.canal.read(dst);
+		}
+
+		@Override
+		public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+			return this.canal.read(dsts, offset, length);
+		}
+
+		@Override
+		public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+			return this.canal.write(srcs, offset, length);
+		}
+
+		@Override
+		public long position() throws IOException {
+			return this.canal.position();
+		}
+
+		@Override
+		public FileChannel position(long newPosition) throws IOException {
+			this.canal.position(newPosition);
+			return this;
+		}
+
+		@Override
+		public long size() throws IOException {
+			return this.canal.size();
+		}
+
+		@Override
+		public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+			return this.canal.transferTo(position, count, target);
+		}
+
+		@Override
+		public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+			return this.canal.transferFrom(src, position, count);
+		}
+
+		@Override
+		public int read(ByteBuffer dst, long position) throws IOException {
+			return this.canal.read(dst, position);
+		}
+
+		@Override
+		public int write(ByteBuffer src, long position) throws IOException {
+			return this.canal.write(src, position);
+		}
+
+		@Override
+		public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+			return this.canal.map(mode, position, size);
+		}
+
+		@Override
+		public FileLock lock(long position, long size, boolean shared) throws IOException {
+			return this.canal.lock(position, size, shared);
+		}
+
+		@Override
+		public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+			return this.canal.tryLock(position, size, shared);
+		}
+
+		@Override
+		protected void implCloseChannel() throws IOException {
+			this.canal.close();
+		}
+	}
+}
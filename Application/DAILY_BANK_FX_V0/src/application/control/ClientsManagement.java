@@ -1,41 +1,48 @@
 package application.control;
 
-import java.io.FileNotFoundException;
-import java.nio.file.Paths;
-
 /**
  * Classe qui gère le controleur de la fenetre de gestion des clients (premiere page, liste de clients) et la lance
  */
 
+import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.HashMap;
-
-import com.itextpdf.text.DocumentException;
+import java.util.function.Consumer;
 
 import application.DailyBankApp;
 import application.DailyBankState;
-import application.tools.AlertUtilities;
 import application.tools.EditionMode;
-import application.tools.PdfUtilities;
+import application.tools.GenerateurReleves;
+import application.tools.ServiceBD;
 import application.tools.StageManagement;
 import application.view.ClientsManagementController;
+import javafx.concurrent.Task;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
-import javafx.scene.control.Alert.AlertType;
 import javafx.scene.layout.BorderPane;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import model.data.Client;
-import model.data.Operation;
+import model.data.CompteCourant;
+import model.data.ResultatPrelevements;
 import model.orm.AccessClient;
-import model.orm.AccessOperation;
+import model.orm.AccessCompteCourant;
+import model.orm.AccessPrelevement;
+import model.orm.IndexClients;
+import model.orm.Transaction;
 import model.orm.exception.ApplicationException;
 import model.orm.exception.DatabaseConnexionException;
+import model.orm.exception.ManagementRuleViolation;
+import model.orm.exception.Order;
+import model.orm.exception.Table;
 
 public class ClientsManagement {
 
+	// Nombre de prélèvements automatiques exécutés par transaction
+	private static final int TAILLE_PAGE_PRELEVEMENTS = 1000;
+
 	private Stage primaryStage;
 	private DailyBankState dbs;
+	private ServiceBD.Requete<ArrayList<Client>> rechercheClients = new ServiceBD.Requete<>();
 	private ClientsManagementController cmc;
 
 	/**
@@ -102,24 +109,40 @@ public class ClientsManagement {
 	}
 
 	/**
-	 * Permet de modifier un client en lançant une autre fenêtre de gestion des clients (ClientEditor)
-	 * @param c : le client sélectionné à modifier
-	 * @return : le client avec les informations modifiées
+	 * Désactive un client (estInactif = "O") et clôture ses comptes encore ouverts, en une seule transaction :
+	 * refusé (rien n'est modifié) si l'un d'eux n'est pas soldé
+	 * @param c : le client sélectionné à désactiver
+	 * @return : le client désactivé (null si la désactivation a échoué)
 	 */
 	public Client desactiverClient(Client c) {
 		if(c == null)
 			return null;
 		
+		String estInactifAvant = c.estInactif;
 		try {
 			c.estInactif = "O";
 			
-			AccessClient ac = new AccessClient();
-			ac.updateClient(c);
+			Transaction.executer(tx -> {
+				AccessCompteCourant acc = new AccessCompteCourant();
+				for (CompteCourant cpt : acc.getCompteCourants(c.idNumCli)) {
+					if (cpt.estCloture.equals("O"))
+						continue;
+					if (cpt.solde != 0)
+						throw new ManagementRuleViolation(Table.CompteCourant, Order.UPDATE,
+								"Erreur de règle de gestion : le compte " + cpt.idNumCompte + " n'est pas soldé", null);
+					acc.cloturerCompte(cpt);
+				}
+				AccessClient ac = new AccessClient();
+				ac.updateClient(c);
+				return null;
+			});
 		} catch (DatabaseConnexionException e) {
+			c.estInactif = estInactifAvant;
 			ExceptionDialog ed = new ExceptionDialog(this.primaryStage, this.dbs, e);
 			ed.doExceptionDialog();
 			return null;
 		} catch (ApplicationException ae) {
+			c.estInactif = estInactifAvant;
 			ExceptionDialog ed = new ExceptionDialog(this.primaryStage, this.dbs, ae);
 			ed.doExceptionDialog();
 			return null;
@@ -164,6 +187,10 @@ public class ClientsManagement {
 		cm.doComptesManagementDialog();
 	}
 	
+	/**
+	 * Génère les relevés mensuels (PDF) de tous les comptes ayant des opérations
+	 * sur le mois choisi (ouvre la scene de choix du mois, de l'année et du dossier)
+	 */
 	public void genererReleves() {		
 		GenererRelevePane cep = new GenererRelevePane(this.primaryStage, this.dbs);
 		String[] data = cep.doGenererDialog();
@@ -171,74 +198,83 @@ public class ClientsManagement {
 		if(data[0] == null || data[1] == null || data[2] == null)
 			return;
 		
-		try {
-			AccessOperation acc = new AccessOperation();				
-			
-			String mois = String.format("%02d", Integer.valueOf(data[0]));
-			String annee = data[1];
-			String dest = data[2];
-			
-			ArrayList<Operation> operations = acc.getOperations(mois, annee);
-		
-			HashMap<Integer, ArrayList<Operation>> liste = new HashMap<Integer, ArrayList<Operation>>();
-			
-			for(Operation o : operations) {
-				if(liste.get(o.idNumCompte) == null)
-					liste.put(o.idNumCompte, new ArrayList<Operation>());
+		String mois = String.format("%02d", Integer.valueOf(data[0]));
+		String annee = data[1];
+		String dest = data[2];
 
-				liste.get(o.idNumCompte).add(o);
-			}
-
-			for(int id : liste.keySet()) {							
-				String chemin = Paths.get(dest, "releve_" + id + "_" + mois + "_" + annee + ".pdf").toString();
-			
-				try {
-					PdfUtilities.genererReleve(chemin, id, liste.get(id));
-				} catch (FileNotFoundException | DocumentException e) {
-					AlertUtilities.showAlert(primaryStage, "Erreur", "Impossible de sauvegarder", "Une erreur est survenue lors de la sauvegarde du relevé mensuel", AlertType.ERROR);
-				}
-			}
-			
-		} catch (DatabaseConnexionException e) {
-			ExceptionDialog ed = new ExceptionDialog(this.primaryStage, this.dbs, e);
-			ed.doExceptionDialog();
-			this.primaryStage.close();
-		} catch (ApplicationException ae) {
-			ExceptionDialog ed = new ExceptionDialog(this.primaryStage, this.dbs, ae);
-			ed.doExceptionDialog();
-		}
-		
-		return;
+		// Lecture des opérations et génération des PDF en parallèle, avec suivi et annulation
+		GenerateurReleves generateur = new GenerateurReleves(dest, mois, annee);
+		ProgressionReleves pr = new ProgressionReleves(this.primaryStage, this.dbs, generateur);
+		pr.doProgressionDialog();
 	}
 
 	/**
-	 * Permet de rechercher la liste des comptes en fonction du paramètre de recherché utilisé
+	 * Recherche en tâche de fond une page de la liste des clients. cf. AccessClient > getClientsPage(.)
+	 * numCompte != -1 => recherche sur numCompte
+	 * numCompte == -1 et debutNom non vide => recherche nom/prenom
+	 * numCompte == -1 et debutNom vide => recherche tous les clients
+	 * Une recherche encore en cours est annulée : seul le résultat de la dernière
+	 * recherche est remis
 	 * @param _numCompte : numéro du compte recherché
 	 * @param _debutNom : debut (ou totalité) du nom du client auquel appartient le compte
 	 * @param _debutPrenom : debut (ou totalité) du prénom du client auquel appartient le compte
-	 * @return : une liste de compte correspondants à la recherche
+	 * @param _apres : dernier client de la page précédente (null pour la première page)
+	 * @param _taillePage : nombre maximum de clients de la page
+	 * @param resultat : reçoit (sur le thread JavaFX) les clients de la page
+	 * @return : la tâche de recherche
 	 */
-	public ArrayList<Client> getlisteComptes(int _numCompte, String _debutNom, String _debutPrenom) {
-		ArrayList<Client> listeCli = new ArrayList<>();
-		try {
-			// Recherche des clients en BD. cf. AccessClient > getClients(.)
-			// numCompte != -1 => recherche sur numCompte
-			// numCompte != -1 et debutNom non vide => recherche nom/prenom
-			// numCompte != -1 et debutNom vide => recherche tous les clients
-
+	public Task<ArrayList<Client>> rechercherClients(int _numCompte, String _debutNom, String _debutPrenom,
+			Client _apres, int _taillePage, Consumer<ArrayList<Client>> resultat) {
+		int idAg = this.dbs.getEmpAct().idAg;
+		return this.rechercheClients.lancer(() -> {
 			AccessClient ac = new AccessClient();
-			listeCli = ac.getClients(this.dbs.getEmpAct().idAg, _numCompte, _debutNom, _debutPrenom);
+			return ac.getClientsPage(idAg, _numCompte, _debutNom, _debutPrenom, _apres, _taillePage);
+		}, resultat, ae -> {
+			this.afficherErreur(ae);
+			resultat.accept(new ArrayList<>());
+		});
+	}
 
-		} catch (DatabaseConnexionException e) {
-			ExceptionDialog ed = new ExceptionDialog(this.primaryStage, this.dbs, e);
-			ed.doExceptionDialog();
+	/**
+	 * Recherche pendant la saisie dans l'index en mémoire des clients de l'agence
+	 * (cf. IndexClients > rechercher(.)) : début de mot du nom, du prénom, de
+	 * l'email ou du téléphone, sans tenir compte des accents et en tolérant une
+	 * faute de frappe. La recherche BD en cours éventuelle est annulée.
+	 * @param _texte : texte saisi
+	 * @param _nbMax : nombre maximum de clients retournés
+	 * @return : les clients trouvés, null si l'index n'est pas (encore) chargé
+	 */
+	public ArrayList<Client> rechercherClientsIndex(String _texte, int _nbMax) {
+		IndexClients ic = IndexClients.getIndex(this.dbs.getEmpAct().idAg);
+		if (ic == null) {
+			return null;
+		}
+		this.rechercheClients.annuler();
+		return ic.rechercher(_texte, _nbMax);
+	}
+
+	/**
+	 * Exécute en tâche de fond les prélèvements automatiques du jour (une relance le même jour
+	 * n'exécute pas une seconde fois les prélèvements déjà exécutés)
+	 * @param resultat : reçoit (sur le thread JavaFX) le compte rendu de l'exécution
+	 * @return : la tâche d'exécution
+	 */
+	public Task<ResultatPrelevements> executerPrelevements(Consumer<ResultatPrelevements> resultat) {
+		return ServiceBD.lancer(() -> {
+			AccessPrelevement ap = new AccessPrelevement();
+			return ap.executerPrelevements(LocalDate.now(), ClientsManagement.TAILLE_PAGE_PRELEVEMENTS);
+		}, resultat, ae -> this.afficherErreur(ae));
+	}
+
+	/**
+	 * Affiche une erreur d'accès BD (et ferme la fenetre si la BD est inaccessible)
+	 * @param ae : l'erreur survenue
+	 */
+	private void afficherErreur(ApplicationException ae) {
+		ExceptionDialog ed = new ExceptionDialog(this.primaryStage, this.dbs, ae);
+		ed.doExceptionDialog();
+		if (ae instanceof DatabaseConnexionException) {
 			this.primaryStage.close();
-			listeCli = new ArrayList<>();
-		} catch (ApplicationException ae) {
-			ExceptionDialog ed = new ExceptionDialog(this.primaryStage, this.dbs, ae);
-			ed.doExceptionDialog();
-			listeCli = new ArrayList<>();
 		}
-		return listeCli;
 	}
 }
@@ -9,6 +9,7 @@ import java.nio.file.Paths;
  */
 
 import java.util.ArrayList;
+import java.util.function.Consumer;
 
 import com.itextpdf.text.Document;
 import com.itextpdf.text.DocumentException;
@@ -24,8 +25,10 @@ import application.DailyBankState;
 import application.tools.AlertUtilities;
 import application.tools.EditionMode;
 import application.tools.PdfUtilities;
+import application.tools.ServiceBD;
 import application.tools.StageManagement;
 import application.view.ComptesManagementController;
+import javafx.concurrent.Task;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.scene.control.Alert.AlertType;
@@ -214,25 +217,22 @@ public class ComptesManagement {
 	}
 
 	/**
-	 * Permet d'obtenir la liste des comptes courants d'un client
-	 * @return : la liste des comptes courants
+	 * Charge en tâche de fond la liste des comptes courants du client
+	 * @param resultat : reçoit (sur le thread JavaFX) la liste des comptes courants
+	 * @return : la tâche de chargement
 	 */
-	public ArrayList<CompteCourant> getComptesDunClient() {
-		ArrayList<CompteCourant> listeCpt = new ArrayList<>();
-
-		try {
+	public Task<ArrayList<CompteCourant>> chargerComptesDunClient(Consumer<ArrayList<CompteCourant>> resultat) {
+		int idNumCli = this.clientDesComptes.idNumCli;
+		return ServiceBD.lancer(() -> {
 			AccessCompteCourant acc = new AccessCompteCourant();
-			listeCpt = acc.getCompteCourants(this.clientDesComptes.idNumCli);
-		} catch (DatabaseConnexionException e) {
-			ExceptionDialog ed = new ExceptionDialog(this.primaryStage, this.dbs, e);
-			ed.doExceptionDialog();
-			this.primaryStage.close();
-			listeCpt = new ArrayList<>();
-		} catch (ApplicationException ae) {
+			return acc.getCompteCourants(idNumCli);
+		}, resultat, ae -> {
 			ExceptionDialog ed = new ExceptionDialog(this.primaryStage, this.dbs, ae);
 			ed.doExceptionDialog();
-			listeCpt = new ArrayList<>();
-		}
-		return listeCpt;
+			if (ae instanceof DatabaseConnexionException) {
+				this.primaryStage.close();
+			}
+			resultat.accept(new ArrayList<>());
+		});
 	}
 }
@@ -5,6 +5,7 @@ package application.control;
 
 import application.DailyBankApp;
 import application.DailyBankState;
+import application.tools.ServiceBD;
 import application.view.DailyBankMainFrameController;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
@@ -15,6 +16,9 @@ import model.data.AgenceBancaire;
 import model.data.Employe;
 import model.orm.AccessAgenceBancaire;
 import model.orm.AccessEmploye;
+import model.orm.AccessTypeOperation;
+import model.orm.IndexClients;
+import model.orm.LogORM;
 import model.orm.LogToDatabase;
 import model.orm.exception.ApplicationException;
 import model.orm.exception.DatabaseConnexionException;
@@ -115,6 +119,9 @@ public class DailyBankMainFrame extends Application {
 		this.dbs.setAgAct(null);
 		this.dbs.setEmpAct(null);
 		this.dbs.setChefDAgence(false);
+		AccessAgenceBancaire.getCache().invalider();
+		AccessTypeOperation.getCache().invalider();
+		IndexClients.invalider();
 		try {
 			LogToDatabase.closeConnexion();
 		} catch (DatabaseConnexionException e) {
@@ -152,6 +159,22 @@ public class DailyBankMainFrame extends Application {
 				this.dbs.setChefDAgence(false);
 			}
 		}
+
+		if (this.dbs.getEmpAct() != null) {
+			// Préchargement des données de référence (l'agence est déjà en cache) : les
+			// fenetres qui les utilisent ne font plus de requête
+			ServiceBD.lancer(() -> {
+				AccessTypeOperation.getCache().precharger();
+				return null;
+			}, r -> {
+			}, ae -> LogORM.erreur("Préchargement des types d'opération impossible", ae));
+			// Index des clients de l'agence pour la recherche pendant la saisie (la
+			// recherche passe par la BD tant qu'il n'est pas chargé)
+			int idAg = this.dbs.getEmpAct().idAg;
+			ServiceBD.lancer(() -> IndexClients.charger(idAg),
+					ic -> LogORM.log(LogORM.Niveau.INFO, "Index des clients chargé : " + ic),
+					ae -> LogORM.erreur("Chargement de l'index des clients impossible", ae));
+		}
 	}
 
 	/**
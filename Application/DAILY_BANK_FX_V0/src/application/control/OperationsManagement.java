@@ -5,13 +5,16 @@ package application.control;
  */
 
 import java.util.ArrayList;
+import java.util.function.Consumer;
 
 import application.DailyBankApp;
 import application.DailyBankState;
 import application.tools.CategorieOperation;
-import application.tools.PairsOfValue;
+import application.tools.ListeParPages;
+import application.tools.ServiceBD;
 import application.tools.StageManagement;
 import application.view.OperationsManagementController;
+import javafx.concurrent.Task;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.scene.layout.BorderPane;
@@ -19,8 +22,8 @@ import javafx.stage.Modality;
 import javafx.stage.Stage;
 import model.data.Client;
 import model.data.CompteCourant;
+import model.data.NouvellesOperations;
 import model.data.Operation;
-import model.orm.AccessCompteCourant;
 import model.orm.AccessOperation;
 import model.orm.exception.ApplicationException;
 import model.orm.exception.DatabaseConnexionException;
@@ -32,6 +35,7 @@ public class OperationsManagement {
 	private OperationsManagementController omc;
 	private Client clientDuCompte;
 	private CompteCourant compteConcerne;
+	private ServiceBD.Requete<NouvellesOperations> chargementOperations = new ServiceBD.Requete<>();
 
 	/**
 	 * Constructeur de la classe (permet de paramétrer la fenetre)
@@ -159,8 +163,8 @@ public class OperationsManagement {
 		if (op != null) {
 			try {
 				AccessOperation ao = new AccessOperation();
-				ao.insertDebit(this.compteConcerne.idNumCompte, op[0].montant, op[0].idTypeOp);
-				ao.insertCredit(op[1].idNumCompte, op[1].montant, op[1].idTypeOp);
+				// Débit et crédit en une seule transaction (procédure Virer)
+				ao.virer(this.compteConcerne.idNumCompte, op[1].idNumCompte, op[0].montant);
 
 			} catch (DatabaseConnexionException e) {
 				ExceptionDialog ed = new ExceptionDialog(this.primaryStage, this.dbs, e);
@@ -177,32 +181,58 @@ public class OperationsManagement {
 	}
 
 	/**
-	 * Permet d'obtenir la liste des opérations en fonction d'un compte courant
-	 * @return : une paire de valeur comprenant le compte et sa liste d'opérations
+	 * Relit en tâche de fond le compte (solde) et les opérations enregistrées
+	 * depuis le chargement précédent (cf. AccessOperation.getNouvellesOperations).
+	 * Si les opérations déjà affichées ne sont plus à jour, seul leur nombre est relu
+	 * (elles sont relues par pages, cf. listeOperations).
+	 * Un chargement encore en cours est annulé : seul le dernier est remis
+	 * @param dernierIdOperation : plus grand idOperation déjà affiché (0 si aucun)
+	 * @param nbOperationsAffichees : nombre d'opérations déjà affichées
+	 * @param resultat : reçoit (sur le thread JavaFX) le compte relu et ses nouvelles opérations
+	 * @return : la tâche de chargement
 	 */
-	public PairsOfValue<CompteCourant, ArrayList<Operation>>  operationsEtSoldeDunCompte() {
-		ArrayList<Operation> listeOP = new ArrayList<>();
-
-		try {
-			// Relecture BD du solde du compte
-			AccessCompteCourant acc = new AccessCompteCourant();
-			this.compteConcerne = acc.getCompteCourant(this.compteConcerne.idNumCompte);
+	public Task<NouvellesOperations> chargerOperationsEtSoldeDunCompte(int dernierIdOperation,
+			int nbOperationsAffichees, Consumer<NouvellesOperations> resultat) {
+		int idNumCompte = this.compteConcerne.idNumCompte;
+		return this.chargementOperations.lancer(() -> {
+			AccessOperation ao = new AccessOperation();
+			return ao.getNouvellesOperations(idNumCompte, dernierIdOperation, nbOperationsAffichees, false);
+		}, nouvelles -> {
+			this.compteConcerne = nouvelles.compte;
+			resultat.accept(nouvelles);
+		}, ae -> {
+			this.afficherErreur(ae);
+			resultat.accept(new NouvellesOperations(this.compteConcerne, new ArrayList<>(), false,
+					nbOperationsAffichees, dernierIdOperation));
+		});
+	}
 
-			// lecture BD de la liste des opérations du compte de l'utilisateur
+	/**
+	 * Liste des opérations du compte lues par pages, à leur affichage (cf.
+	 * AccessOperation.getOperationsPage : dans la copie locale des opérations si
+	 * elle est activée, sinon en BD). Vide : sa taille est donnée par
+	 * chargerOperationsEtSoldeDunCompte
+	 * @param taillePage : nombre d'opérations lues par page
+	 * @param nbPagesMax : nombre maximum de pages gardées en mémoire
+	 * @return : la liste (items de la ListView des opérations)
+	 */
+	public ListeParPages<Operation> listeOperations(int taillePage, int nbPagesMax) {
+		int idNumCompte = this.compteConcerne.idNumCompte;
+		return new ListeParPages<>(taillePage, nbPagesMax, (debut, precedent, nb) -> {
 			AccessOperation ao = new AccessOperation();
-			listeOP = ao.getOperations(this.compteConcerne.idNumCompte);
+			return ao.getOperationsPage(idNumCompte, debut, precedent, nb);
+		}, ae -> this.afficherErreur(ae));
+	}
 
-		} catch (DatabaseConnexionException e) {
-			ExceptionDialog ed = new ExceptionDialog(this.primaryStage, this.dbs, e);
-			ed.doExceptionDialog();
+	/**
+	 * Affiche une erreur d'accès BD (et ferme la fenetre si la BD est inaccessible)
+	 * @param ae : l'erreur survenue
+	 */
+	private void afficherErreur(ApplicationException ae) {
+		ExceptionDialog ed = new ExceptionDialog(this.primaryStage, this.dbs, ae);
+		ed.doExceptionDialog();
+		if (ae instanceof DatabaseConnexionException) {
 			this.primaryStage.close();
-			listeOP = new ArrayList<>();
-		} catch (ApplicationException ae) {
-			ExceptionDialog ed = new ExceptionDialog(this.primaryStage, this.dbs, ae);
-			ed.doExceptionDialog();
-			listeOP = new ArrayList<>();
 		}
-		System.out.println(this.compteConcerne.solde);
-		return new PairsOfValue<>(this.compteConcerne, listeOP);
 	}
-}
\ No newline at end of file
+}
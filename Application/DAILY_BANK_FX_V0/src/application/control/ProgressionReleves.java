@@ -0,0 +1,60 @@
+package application.control;
+
+/**
+ * Classe qui gère le controleur de la fenetre de progression de la génération des relevés mensuels et la lance
+ */
+
+import application.DailyBankApp;
+import application.DailyBankState;
+import application.tools.GenerateurReleves;
+import application.tools.StageManagement;
+import application.view.ProgressionRelevesController;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Scene;
+import javafx.scene.layout.BorderPane;
+import javafx.stage.Modality;
+import javafx.stage.Stage;
+
+public class ProgressionReleves {
+
+	private Stage primaryStage;
+	private ProgressionRelevesController controller;
+
+	/**
+	 * Constructeur de la classe (permet de paramétrer la fenetre)
+	 * @param _parentStage : la scene qui appelle cette scene
+	 * @param _dbstate : la session de l'utilisateur connecté
+	 * @param _generateur : la génération à lancer et à suivre
+	 */
+	public ProgressionReleves(Stage _parentStage, DailyBankState _dbstate, GenerateurReleves _generateur) {
+
+		try {
+			FXMLLoader loader = new FXMLLoader(ProgressionRelevesController.class.getResource("progressionreleves.fxml"));
+			BorderPane root = loader.load();
+
+			Scene scene = new Scene(root, root.getPrefWidth()+20, root.getPrefHeight()+10);
+			scene.getStylesheets().add(DailyBankApp.class.getResource("application.css").toExternalForm());
+
+			this.primaryStage = new Stage();
+			this.primaryStage.initModality(Modality.WINDOW_MODAL);
+			this.primaryStage.initOwner(_parentStage);
+			StageManagement.manageCenteringStage(_parentStage, this.primaryStage);
+			this.primaryStage.setScene(scene);
+			this.primaryStage.setTitle("Génération des relevés mensuels");
+			this.primaryStage.setResizable(false);
+
+			this.controller = loader.getController();
+			this.controller.initContext(this.primaryStage, _dbstate, _generateur);
+
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Lance la génération et affiche sa progression jusqu'à la fermeture de la fenetre
+	 */
+	public void doProgressionDialog() {
+		this.controller.displayDialog();
+	}
+}
@@ -0,0 +1,215 @@
+package application.tools;
+
+import java.io.FileNotFoundException;
+import java.nio.file.Paths;
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import com.itextpdf.text.DocumentException;
+
+import model.data.Operation;
+import model.orm.AccessOperation;
+import model.orm.exception.DataAccessException;
+import model.orm.exception.DatabaseConnexionException;
+
+/**
+ * Génération en parallèle des relevés mensuels de tous les comptes.
+ *
+ * Le thread appelant lit les opérations du mois (curseur trié par compte) et
+ * soumet les opérations de chaque compte à un pool borné de threads qui
+ * génèrent les PDF. Le nombre de comptes lus et non encore générés est borné :
+ * la lecture attend quand les générateurs PDF sont en retard. La génération
+ * peut être annulée à tout moment.
+ */
+public class GenerateurReleves {
+
+	// Nombre d'opérations lues par aller-retour BD
+	private static final int TAILLE_FETCH = 500;
+
+	private final String dest;
+	private final String mois;
+	private final String annee;
+	private final int nbThreads;
+	private final int tailleFile;
+
+	private volatile boolean annule = false;
+	private volatile int nbComptes = 0;
+	private final AtomicInteger nbGeneres = new AtomicInteger();
+	private final AtomicInteger nbTraites = new AtomicInteger();
+	private final List<Integer> comptesEnErreur = Collections.synchronizedList(new ArrayList<>());
+	private long debutNs;
+	private long finNs;
+
+	// Opérations du compte en cours de lecture (thread de lecture uniquement)
+	private ArrayList<Operation> operationsEnCours;
+
+	/**
+	 * @param dest       dossier de destination des relevés
+	 * @param mois       mois des relevés (format MM)
+	 * @param annee      année des relevés
+	 * @param nbThreads  nombre de relevés générés en parallèle
+	 * @param tailleFile nombre de comptes lus en attente de génération au delà
+	 *                   duquel la lecture est suspendue
+	 */
+	public GenerateurReleves(String dest, String mois, String annee, int nbThreads, int tailleFile) {
+		this.dest = dest;
+		this.mois = mois;
+		this.annee = annee;
+		this.nbThreads = Math.max(1, nbThreads);
+		this.tailleFile = Math.max(1, tailleFile);
+	}
+
+	/**
+	 * @param dest  dossier de destination des relevés
+	 * @param mois  mois des relevés (format MM)
+	 * @param annee année des relevés
+	 */
+	public GenerateurReleves(String dest, String mois, String annee) {
+		this(dest, mois, annee, Runtime.getRuntime().availableProcessors(),
+				2 * Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Lance la génération et attend qu'elle soit terminée (ou annulée).
+	 *
+	 * @param progression appelée (depuis un thread de génération) après chaque
+	 *                    relevé traité avec (nombre traités, nombre total)
+	 * @throws DataAccessException
+	 * @throws DatabaseConnexionException
+	 */
+	public void executer(BiConsumer<Integer, Integer> progression)
+			throws DataAccessException, DatabaseConnexionException {
+		AccessOperation ao = new AccessOperation();
+		Date debut = AccessOperation.premierJourDuMois(this.mois, this.annee);
+		Date fin = AccessOperation.premierJourDuMoisSuivant(this.mois, this.annee);
+
+		this.debutNs = System.nanoTime();
+		this.nbComptes = ao.getNbComptesAvecOperations(debut, fin);
+
+		ExecutorService generateurs = Executors.newFixedThreadPool(this.nbThreads, r -> {
+			Thread t = new Thread(r, "GenerateurReleves");
+			t.setDaemon(true);
+			return t;
+		});
+		Semaphore places = new Semaphore(this.nbThreads + this.tailleFile);
+
+		this.operationsEnCours = new ArrayList<>();
+
+		try {
+			ao.forEachOperation(debut, fin, GenerateurReleves.TAILLE_FETCH, o -> {
+				if (this.annule) {
+					throw new CancellationException();
+				}
+				if (!this.operationsEnCours.isEmpty() && this.operationsEnCours.get(0).idNumCompte != o.idNumCompte) {
+					this.soumettre(generateurs, places, this.operationsEnCours, progression);
+					this.operationsEnCours = new ArrayList<>();
+				}
+				this.operationsEnCours.add(o);
+			});
+			if (!this.annule && !this.operationsEnCours.isEmpty()) {
+				this.soumettre(generateurs, places, this.operationsEnCours, progression);
+			}
+		} catch (CancellationException e) {
+			// Annulation demandée : on attend seulement les relevés en cours
+		} finally {
+			generateurs.shutdown();
+			try {
+				generateurs.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			} catch (InterruptedException e) {
+				this.annule = true;
+				generateurs.shutdownNow();
+				Thread.currentThread().interrupt();
+			}
+			this.finNs = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Soumet la génération du relevé d'un compte, en attendant une place libre.
+	 */
+	private void soumettre(ExecutorService generateurs, Semaphore places, ArrayList<Operation> operations,
+			BiConsumer<Integer, Integer> progression) {
+		try {
+			places.acquire();
+		} catch (InterruptedException e) {
+			this.annule = true;
+			Thread.currentThread().interrupt();
+			throw new CancellationException();
+		}
+		generateurs.execute(() -> {
+			try {
+				if (!this.annule) {
+					this.genererReleveCompte(operations);
+					progression.accept(this.nbTraites.incrementAndGet(), this.nbComptes);
+				}
+			} finally {
+				places.release();
+			}
+		});
+	}
+
+	private void genererReleveCompte(ArrayList<Operation> operations) {
+		int id = operations.get(0).idNumCompte;
+		String chemin = Paths.get(this.dest, "releve_" + id + "_" + this.mois + "_" + this.annee + ".pdf").toString();
+
+		try {
+			PdfUtilities.genererReleve(chemin, id, operations);
+			this.nbGeneres.incrementAndGet();
+		} catch (FileNotFoundException | DocumentException | RuntimeException e) {
+			// Erreur inattendue comprise : le compte est signalé et la génération
+			// continue (la progression atteint quand même nbComptes)
+			this.comptesEnErreur.add(id);
+		}
+	}
+
+	/**
+	 * Demande l'arrêt de la génération : plus aucun relevé n'est commencé.
+	 */
+	public void annuler() {
+		this.annule = true;
+	}
+
+	public boolean isAnnule() {
+		return this.annule;
+	}
+
+	/**
+	 * @return nombre de comptes ayant des opérations sur le mois
+	 */
+	public int getNbComptes() {
+		return this.nbComptes;
+	}
+
+	/**
+	 * @return nombre de relevés générés avec succès
+	 */
+	public int getNbGeneres() {
+		return this.nbGeneres.get();
+	}
+
+	/**
+	 * @return numéros des comptes dont le relevé n'a pu être sauvegardé
+	 */
+	public List<Integer> getComptesEnErreur() {
+		synchronized (this.comptesEnErreur) {
+			return new ArrayList<>(this.comptesEnErreur);
+		}
+	}
+
+	/**
+	 * @return débit de la génération (relevés par seconde)
+	 */
+	public double getRelevesParSeconde() {
+		long duree = (this.finNs == 0 ? System.nanoTime() : this.finNs) - this.debutNs;
+		return duree <= 0 ? 0 : this.nbGeneres.get() / (duree / 1_000_000_000.0);
+	}
+}
@@ -0,0 +1,307 @@
+package application.tools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import javafx.collections.ObservableListBase;
+import javafx.concurrent.Task;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.util.Callback;
+import model.orm.exception.ApplicationException;
+
+/**
+ * Liste (items d'une ListView) dont les éléments sont lus par pages, à la
+ * demande, quand la ListView les affiche.
+ *
+ * La ListView ne crée des cellules que pour les lignes visibles et ne demande
+ * (get) que leurs éléments : une page absente est alors lue en tâche de fond
+ * (ServiceBD) et get rend null en attendant (cellule « en chargement »), puis
+ * les lignes de la page sont signalées modifiées à son arrivée. Seules les
+ * nbPagesMax pages les plus récemment affichées restent en mémoire, avec le
+ * texte de leurs lignes, calculé au premier affichage (fabriqueCellules).
+ *
+ * La taille de la liste est fixée (reinitialiser) ou augmentée (ajouter) par
+ * l'appelant, sans lecture. A utiliser uniquement sur le thread JavaFX.
+ *
+ * @param <T> type des éléments
+ */
+public class ListeParPages<T> extends ObservableListBase<T> {
+
+	// Nombre maximum de pages en cours de lecture : au delà, la plus ancienne
+	// demande (lignes déjà dépassées par le défilement) est abandonnée
+	private static final int NB_LECTURES_MAX = 3;
+
+	/**
+	 * Lecture d'une page (hors du thread JavaFX).
+	 *
+	 * @param <T> type des éléments
+	 */
+	@FunctionalInterface
+	public interface Chargeur<T> {
+		/**
+		 * @param debut     rang du premier élément de la page
+		 * @param precedent élément de rang debut - 1 s'il est en mémoire, null sinon
+		 *                  (permet une lecture par clé)
+		 * @param nb        nombre d'éléments de la page
+		 * @return les éléments (moins de nb : fin de la liste)
+		 */
+		ArrayList<T> charger(int debut, T precedent, int nb) throws ApplicationException;
+	}
+
+	// Page en mémoire : éléments et texte de chaque élément (null tant qu'il n'a
+	// pas été affiché)
+	private static class Page<T> {
+		final ArrayList<T> elements;
+		final ArrayList<String> textes;
+
+		Page(ArrayList<T> elements) {
+			this.elements = elements;
+			this.textes = new ArrayList<>(Collections.nCopies(elements.size(), null));
+		}
+	}
+
+	private final int taillePage;
+	private final Chargeur<T> chargeur;
+	private final Consumer<ApplicationException> echec;
+	private final LinkedHashMap<Integer, Page<T>> pages;
+	private final LinkedHashMap<Integer, Task<ArrayList<T>>> lectures = new LinkedHashMap<>();
+	private int taille = 0;
+	// Incrémenté à chaque réinitialisation : les pages lues avant sont ignorées
+	private int generation = 0;
+	// Après une erreur de lecture, plus de lecture jusqu'à la réinitialisation
+	private boolean enErreur = false;
+	private long nbPagesLues = 0;
+
+	/**
+	 * @param taillePage nombre d'éléments par page
+	 * @param nbPagesMax nombre maximum de pages en mémoire (au moins les pages
+	 *                   visibles)
+	 * @param chargeur   lecture d'une page
+	 * @param echec      appelée (thread JavaFX) si la lecture d'une page échoue
+	 */
+	public ListeParPages(int taillePage, int nbPagesMax, Chargeur<T> chargeur, Consumer<ApplicationException> echec) {
+		this.taillePage = taillePage;
+		this.chargeur = chargeur;
+		this.echec = echec;
+		this.pages = new LinkedHashMap<Integer, Page<T>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Page<T>> plusAncienne) {
+				return this.size() > nbPagesMax;
+			}
+		};
+	}
+
+	@Override
+	public int size() {
+		return this.taille;
+	}
+
+	/**
+	 * @return l'élément de rang index s'il est en mémoire, sinon null (sa page est
+	 *         alors demandée)
+	 */
+	@Override
+	public T get(int index) {
+		if (index < 0 || index >= this.taille) {
+			throw new IndexOutOfBoundsException("Index " + index + ", taille " + this.taille);
+		}
+		int numPage = index / this.taillePage;
+		Page<T> page = this.pages.get(numPage);
+		if (page == null) {
+			this.lirePage(numPage);
+			return null;
+		}
+		int rang = index % this.taillePage;
+		return rang < page.elements.size() ? page.elements.get(rang) : null;
+	}
+
+	/**
+	 * @return l'élément de rang index s'il est en mémoire, null sinon (sans
+	 *         lecture)
+	 */
+	public T getSiLu(int index) {
+		Page<T> page = this.pages.get(index / this.taillePage);
+		int rang = index % this.taillePage;
+		return page != null && index < this.taille && rang < page.elements.size() ? page.elements.get(rang) : null;
+	}
+
+	/**
+	 * @param index  rang de l'élément
+	 * @param format calcul du texte d'un élément
+	 * @return le texte de l'élément de rang index (calculé une seule fois tant
+	 *         que sa page est en mémoire), null s'il n'est pas encore lu
+	 */
+	public String getTexte(int index, Function<T, String> format) {
+		T element = this.get(index);
+		if (element == null) {
+			return null;
+		}
+		ArrayList<String> textes = this.pages.get(index / this.taillePage).textes;
+		int rang = index % this.taillePage;
+		String texte = textes.get(rang);
+		if (texte == null) {
+			texte = format.apply(element);
+			textes.set(rang, texte);
+		}
+		return texte;
+	}
+
+	/**
+	 * Vide la liste et lui donne une nouvelle taille : les éléments seront lus à
+	 * leur affichage. Les lectures en cours sont abandonnées.
+	 *
+	 * @param nouvelleTaille nombre d'éléments
+	 */
+	public void reinitialiser(int nouvelleTaille) {
+		this.generation++;
+		for (Task<ArrayList<T>> lecture : this.lectures.values()) {
+			lecture.cancel(false);
+		}
+		this.lectures.clear();
+		this.pages.clear();
+		this.enErreur = false;
+		int ancienneTaille = this.taille;
+		this.taille = nouvelleTaille;
+		// Suppression puis ajout (et non remplacement) : la ListView ne reprend que
+		// ses cellules visibles, pas chaque ligne remplacée
+		if (ancienneTaille > 0) {
+			this.beginChange();
+			this.nextRemove(0, Collections.nCopies(ancienneTaille, null));
+			this.endChange();
+		}
+		if (nouvelleTaille > 0) {
+			this.beginChange();
+			this.nextAdd(0, nouvelleTaille);
+			this.endChange();
+		}
+	}
+
+	/**
+	 * Ajoute des éléments en fin de liste (déjà lus : ils sont placés dans la
+	 * dernière page si elle est en mémoire).
+	 *
+	 * @param nouveaux éléments ajoutés
+	 */
+	public void ajouter(ArrayList<T> nouveaux) {
+		if (nouveaux.isEmpty()) {
+			return;
+		}
+		int debut = this.taille;
+		Task<ArrayList<T>> lecture = this.lectures.remove(debut / this.taillePage);
+		if (lecture != null) {
+			lecture.cancel(false); // page lue sans les nouveaux éléments
+		}
+		for (T element : nouveaux) {
+			int numPage = this.taille / this.taillePage;
+			int rang = this.taille % this.taillePage;
+			Page<T> page = this.pages.get(numPage);
+			if (page == null && rang == 0) {
+				page = new Page<>(new ArrayList<>());
+				this.pages.put(numPage, page);
+			}
+			if (page != null && page.elements.size() == rang) {
+				page.elements.add(element);
+				page.textes.add(null);
+			} else if (page != null) {
+				this.pages.remove(numPage); // page incomplète : relue à l'affichage
+			}
+			this.taille++;
+		}
+		this.beginChange();
+		this.nextAdd(debut, this.taille);
+		this.endChange();
+	}
+
+	// Lecture en tâche de fond de la page numPage (si elle n'est pas déjà en cours)
+	private void lirePage(int numPage) {
+		if (this.enErreur || this.lectures.containsKey(numPage)) {
+			return;
+		}
+		if (this.lectures.size() >= ListeParPages.NB_LECTURES_MAX) {
+			Iterator<Task<ArrayList<T>>> plusAncienne = this.lectures.values().iterator();
+			plusAncienne.next().cancel(false);
+			plusAncienne.remove();
+		}
+		int debut = numPage * this.taillePage;
+		int nb = Math.min(this.taillePage, this.taille - debut);
+		T precedent = debut > 0 ? this.getSiLu(debut - 1) : null;
+		int generationLecture = this.generation;
+		Task<ArrayList<T>> lecture = ServiceBD.lancer(() -> this.chargeur.charger(debut, precedent, nb),
+				elements -> this.recevoirPage(generationLecture, numPage, elements), ae -> {
+					if (generationLecture == this.generation) {
+						this.lectures.remove(numPage);
+						this.enErreur = true;
+						this.echec.accept(ae);
+					}
+				});
+		this.lectures.put(numPage, lecture);
+	}
+
+	// Page lue : en mémoire, et ses lignes signalées modifiées (cellules
+	// redessinées)
+	private void recevoirPage(int generationLecture, int numPage, ArrayList<T> elements) {
+		if (generationLecture != this.generation) {
+			return;
+		}
+		this.lectures.remove(numPage);
+		this.pages.put(numPage, new Page<>(elements));
+		this.nbPagesLues++;
+		int debut = numPage * this.taillePage;
+		int fin = Math.min(debut + elements.size(), this.taille);
+		if (fin > debut) {
+			this.beginChange();
+			this.nextReplace(debut, fin, Collections.nCopies(fin - debut, null));
+			this.endChange();
+		}
+	}
+
+	/**
+	 * Cellules d'une ListView affichant cette liste : texte calculé une fois par
+	 * élément (getTexte), texteAttente tant que l'élément n'est pas lu.
+	 *
+	 * @param format       calcul du texte d'un élément
+	 * @param texteAttente texte d'une ligne en cours de lecture
+	 * @return la fabrique de cellules (ListView.setCellFactory)
+	 */
+	public Callback<ListView<T>, ListCell<T>> fabriqueCellules(Function<T, String> format, String texteAttente) {
+		return lv -> new ListCell<T>() {
+			@Override
+			protected void updateItem(T item, boolean empty) {
+				super.updateItem(item, empty);
+				int index = this.getIndex();
+				if (empty || index < 0 || index >= ListeParPages.this.taille) {
+					this.setText(null);
+				} else {
+					String texte = ListeParPages.this.getTexte(index, format);
+					this.setText(texte != null ? texte : texteAttente);
+				}
+			}
+		};
+	}
+
+	// Egalité de la liste elle-même, sans comparer (donc lire) tous ses éléments
+	@Override
+	public boolean equals(Object o) {
+		return this == o;
+	}
+
+	@Override
+	public int hashCode() {
+		return System.identityHashCode(this);
+	}
+
+	@Override
+	public String toString() {
+		return "ListeParPages [taille=" + this.taille + ", taillePage=" + this.taillePage + ", nbPagesEnMemoire="
+				+ this.pages.size() + ", nbLecturesEnCours=" + this.lectures.size() + ", nbPagesLues="
+				+ this.nbPagesLues + "]";
+	}
+}
@@ -0,0 +1,136 @@
+package application.tools;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import javafx.concurrent.Task;
+import javafx.scene.Node;
+import javafx.scene.control.ListView;
+import javafx.scene.control.ProgressIndicator;
+import model.orm.LogORM;
+import model.orm.exception.ApplicationException;
+import model.orm.exception.Order;
+import model.orm.exception.Table;
+
+/**
+ * Exécution des accès BD (DAO de model.orm) hors du thread JavaFX.
+ *
+ * Les accès sont exécutés par un pool dédié de threads ; le résultat (ou
+ * l'erreur) est ensuite remis au thread JavaFX, qui est donc le seul à
+ * manipuler les composants de la fenêtre. Une requête lente ne fige plus
+ * l'application.
+ */
+public class ServiceBD {
+
+	// Nombre d'accès BD exécutés en parallèle (au plus une connexion du pool chacun)
+	private static final int NB_THREADS = 4;
+
+	private static final AtomicInteger numThread = new AtomicInteger();
+
+	private static final ExecutorService executeur = Executors.newFixedThreadPool(ServiceBD.NB_THREADS, r -> {
+		Thread t = new Thread(r, "ServiceBD-" + ServiceBD.numThread.incrementAndGet());
+		t.setDaemon(true);
+		return t;
+	});
+
+	/**
+	 * Accès BD à exécuter hors du thread JavaFX.
+	 *
+	 * @param <T> type du résultat
+	 */
+	@FunctionalInterface
+	public interface AccesBD<T> {
+		T executer() throws ApplicationException;
+	}
+
+	private ServiceBD() {
+	}
+
+	/**
+	 * Lance un accès BD en tâche de fond.
+	 *
+	 * @param acces  l'accès à exécuter (hors du thread JavaFX : ne doit pas toucher
+	 *               aux composants graphiques)
+	 * @param succes appelée sur le thread JavaFX avec le résultat
+	 * @param echec  appelée sur le thread JavaFX en cas d'erreur (une erreur
+	 *               imprévue est remise dans une ApplicationException)
+	 * @return la tâche lancée (permet d'annuler ou de suivre l'exécution)
+	 */
+	public static <T> Task<T> lancer(AccesBD<T> acces, Consumer<T> succes, Consumer<ApplicationException> echec) {
+		Task<T> tache = new Task<T>() {
+			@Override
+			protected T call() throws Exception {
+				return acces.executer();
+			}
+		};
+		tache.setOnSucceeded(e -> succes.accept(tache.getValue()));
+		tache.setOnFailed(e -> {
+			Throwable t = tache.getException();
+			if (t instanceof ApplicationException) {
+				echec.accept((ApplicationException) t);
+			} else {
+				// Erreur imprévue (bug, driver) : remise comme une erreur d'accès pour que
+				// la fenêtre ne reste pas en attente
+				LogORM.erreur("Accès BD en tâche de fond en échec", t);
+				echec.accept(new ApplicationException(Table.NONE, Order.OTHER, "Erreur inattendue", t));
+			}
+		});
+		ServiceBD.executeur.execute(tache);
+		return tache;
+	}
+
+	/**
+	 * Affiche une roue d'attente dans une liste (vide) tant que la tâche
+	 * s'exécute.
+	 *
+	 * @param liste la liste alimentée par la tâche
+	 * @param tache la tâche de chargement
+	 */
+	public static void indicateurChargement(ListView<?> liste, Task<?> tache) {
+		Node vide = liste.getPlaceholder() instanceof ProgressIndicator ? null : liste.getPlaceholder();
+		ProgressIndicator attente = new ProgressIndicator();
+		attente.setMaxSize(40, 40);
+		liste.setPlaceholder(attente);
+		tache.runningProperty().addListener((obs, avant, enCours) -> {
+			if (!enCours && liste.getPlaceholder() == attente) {
+				liste.setPlaceholder(vide);
+			}
+		});
+	}
+
+	/**
+	 * Requête dont seul le dernier lancement compte (recherche par exemple) :
+	 * lancer une nouvelle requête annule la précédente, dont le résultat est
+	 * alors ignoré.
+	 *
+	 * @param <T> type du résultat
+	 */
+	public static class Requete<T> {
+
+		private Task<T> enCours = null;
+
+		/**
+		 * Annule la requête en cours éventuelle puis lance acces.
+		 *
+		 * @see ServiceBD#lancer(AccesBD, Consumer, Consumer)
+		 */
+		public Task<T> lancer(AccesBD<T> acces, Consumer<T> succes, Consumer<ApplicationException> echec) {
+			this.annuler();
+			this.enCours = ServiceBD.lancer(acces, succes, echec);
+			return this.enCours;
+		}
+
+		/**
+		 * Annule la requête en cours éventuelle. Elle n'est pas interrompue en BD
+		 * (la connexion reste utilisable) mais son résultat n'est pas remis.
+		 */
+		public void annuler() {
+			if (this.enCours != null) {
+				this.enCours.cancel(false);
+				this.enCours = null;
+			}
+		}
+	}
+}
@@ -10,13 +10,16 @@ import java.util.ResourceBundle;
 
 import application.DailyBankState;
 import application.control.ClientsManagement;
-import application.control.ExceptionDialog;
 import application.tools.AlertUtilities;
+import application.tools.ServiceBD;
+import javafx.animation.PauseTransition;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.Button;
+import javafx.scene.control.ListCell;
 import javafx.scene.control.ListView;
 import javafx.scene.control.SelectionMode;
 import javafx.scene.control.TextField;
@@ -25,14 +28,25 @@ import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
 import javafx.stage.Stage;
 import javafx.stage.WindowEvent;
+import javafx.util.Duration;
 import model.data.Client;
-import model.orm.AccessPrelevement;
-import model.orm.exception.ApplicationException;
-import model.orm.exception.DataAccessException;
-import model.orm.exception.DatabaseConnexionException;
+import model.data.ResultatPrelevements;
 
 public class ClientsManagementController implements Initializable {
 
+	// Délai sans frappe au delà duquel la recherche est lancée
+	private static final Duration DELAI_SAISIE_RECHERCHE = Duration.millis(300);
+
+	// Nombre de clients lus par page, et nombre de clients restant à afficher en
+	// dessous duquel la page suivante est lue
+	private static final int TAILLE_PAGE_CLIENTS = 50;
+	private static final int MARGE_PAGE_CLIENTS = 10;
+	// Nombre maximum de clients affichés par une recherche dans l'index en mémoire
+	private static final int NB_MAX_CLIENTS_INDEX = 200;
+
+	// Nombre maximum de prélèvements rejetés détaillés dans le compte rendu
+	private static final int NB_REJETS_AFFICHES = 20;
+
 	// Etat application
 	private DailyBankState dbs;
 	private ClientsManagement cm;
@@ -42,6 +56,17 @@ public class ClientsManagementController implements Initializable {
 
 	// Données de la fenêtre
 	private ObservableList<Client> olc;
+	private PauseTransition saisieRecherche;
+
+	// Recherche en cours (lecture des clients par pages)
+	private int rechNumCompte = -1;
+	private String rechDebutNom = "";
+	private String rechDebutPrenom = "";
+	private Client dernierClientLu = null;
+	private boolean toutLu = true;
+	private Task<ArrayList<Client>> chargementPage = null;
+	// Exécution des prélèvements en cours (bouton désactivé jusqu'à sa fin)
+	private Task<ResultatPrelevements> executionPrelevements = null;
 
 	// Manipulation de la fenêtre
 	/**
@@ -67,6 +92,26 @@ public class ClientsManagementController implements Initializable {
 		this.lvClients.getFocusModel().focus(-1);
 		this.lvClients.getSelectionModel().selectedItemProperty().addListener(e -> this.validateComponentState());
 		this.validateComponentState();
+
+		// Page suivante chargée quand l'affichage approche de la fin de la liste
+		this.lvClients.setCellFactory(lv -> new ListCell<Client>() {
+			@Override
+			protected void updateItem(Client item, boolean empty) {
+				super.updateItem(item, empty);
+				this.setText(empty || item == null ? null : item.toString());
+				if (!empty && this.getIndex() >= ClientsManagementController.this.olc.size()
+						- ClientsManagementController.MARGE_PAGE_CLIENTS) {
+					ClientsManagementController.this.chargerPageSuivante();
+				}
+			}
+		});
+
+		// Recherche lancée automatiquement quand l'utilisateur a fini de taper
+		this.saisieRecherche = new PauseTransition(ClientsManagementController.DELAI_SAISIE_RECHERCHE);
+		this.saisieRecherche.setOnFinished(e -> this.doRechercher());
+		this.txtNum.textProperty().addListener(e -> this.saisieRecherche.playFromStart());
+		this.txtNom.textProperty().addListener(e -> this.saisieRecherche.playFromStart());
+		this.txtPrenom.textProperty().addListener(e -> this.saisieRecherche.playFromStart());
 	}
 
 	/**
@@ -112,6 +157,7 @@ public class ClientsManagementController implements Initializable {
 
 	@FXML
 	private void doCancel() {
+		this.saisieRecherche.stop();
 		this.primaryStage.close();
 	}
 	
@@ -122,37 +168,48 @@ public class ClientsManagementController implements Initializable {
 	
 	@FXML
 	private void doExecPrelevements() {
-		String result=null;
 		boolean continuer = AlertUtilities.confirmYesCancel(primaryStage, "Exécuter les prélèvements", "Exécuter les prélèvements automatiques aujourd'hui ", "êtes-vous sûr de vouloir exécuter tous les prélèvements \nautomatiques de ce jour ?", AlertType.CONFIRMATION);
 		if(continuer) {
-			try {
-				AccessPrelevement ap=new AccessPrelevement();
-				result=ap.executePrelevement();
-			} catch (DatabaseConnexionException exc) {
-				ExceptionDialog ed = new ExceptionDialog(this.primaryStage, this.dbs, exc);
-				ed.doExceptionDialog();
-				this.primaryStage.close();
-			} catch (DataAccessException e) {
-				ExceptionDialog ed = new ExceptionDialog(this.primaryStage, this.dbs, e);
-				ed.doExceptionDialog();
-				this.primaryStage.close();
-			}
-			if (result!=null) {
-				result="   "+result.replaceAll(" - ", "\n");
+			this.executionPrelevements = this.cm.executerPrelevements(resultat -> {
+				String bilan = resultat.executes.size() + " prélèvement(s) exécuté(s) pour un total de "
+						+ String.format("%.02f", resultat.montantTotal) + " €";
+				if (resultat.nbDejaExecutes > 0) {
+					bilan += "\n" + resultat.nbDejaExecutes + " prélèvement(s) déjà exécuté(s) aujourd'hui";
+				}
+				if (resultat.rejets.isEmpty()) {
+					AlertUtilities.showAlert(this.primaryStage, "Exécution des prélèvements automatiques", "Prélèvements exécutés", bilan, AlertType.INFORMATION);
+					return;
+				}
+				// Détail limité aux premiers rejets (la liste complète peut être très longue)
+				StringBuilder detail = new StringBuilder(bilan);
+				detail.append("\n").append(resultat.rejets.size()).append(" prélèvement(s) non exécuté(s) :");
+				for (int i = 0; i < Math.min(resultat.rejets.size(), ClientsManagementController.NB_REJETS_AFFICHES); i++) {
+					detail.append("\n   ").append(resultat.rejets.get(i));
+				}
+				if (resultat.rejets.size() > ClientsManagementController.NB_REJETS_AFFICHES) {
+					detail.append("\n   ...");
+				}
 				Alert alert = new Alert(AlertType.WARNING);
+				alert.initOwner(this.primaryStage);
 				alert.setTitle("Erreur d'exécution des prélèvements automatiques");
-				alert.setHeaderText("Certains compte ne sont pas assez approvisionnés pour éxécuter les prélèvements");
-				alert.setContentText(result);
-				System.out.println(result);
+				alert.setHeaderText("Certains prélèvements n'ont pas pu être exécutés");
+				alert.setContentText(detail.toString());
 				alert.getDialogPane().setMinHeight(Region.USE_PREF_SIZE);
 				alert.show();
-			}
+			});
+			this.validateComponentState();
+			this.executionPrelevements.runningProperty().addListener((obs, avant, enCours) -> {
+				if (!enCours) {
+					this.validateComponentState();
+				}
+			});
 		}
 		
 	}
 
 	@FXML
 	private void doRechercher() {
+		this.saisieRecherche.stop();
 		int numCompte;
 		try {
 			String nc = this.txtNum.getText();
@@ -186,15 +243,51 @@ public class ClientsManagementController implements Initializable {
 		// numCompte != -1 => recherche sur numCompte
 		// numCompte != -1 et debutNom non vide => recherche nom/prenom
 		// numCompte != -1 et debutNom vide => recherche tous les clients
-		ArrayList<Client> listeCli;
-		listeCli = this.cm.getlisteComptes(numCompte, debutNom, debutPrenom);
-
+		// La recherche s'exécute en tâche de fond ; une nouvelle recherche annule la précédente.
+		// Seule la première page est lue ici, les suivantes au fil du défilement
 		this.olc.clear();
-		for (Client cli : listeCli) {
-			this.olc.add(cli);
+		this.validateComponentState();
+		this.chargementPage = null; // la page en cours de l'ancienne recherche est annulée par la nouvelle
+
+		// Recherche par nom/prénom : servie par l'index en mémoire s'il est chargé
+		// (immédiat, sans accents ni faute de frappe), sinon par la BD
+		if (numCompte == -1 && !debutNom.equals("")) {
+			ArrayList<Client> trouves = this.cm.rechercherClientsIndex(debutNom + " " + this.txtPrenom.getText(),
+					ClientsManagementController.NB_MAX_CLIENTS_INDEX);
+			if (trouves != null) {
+				this.toutLu = true;
+				this.olc.setAll(trouves);
+				this.validateComponentState();
+				return;
+			}
 		}
 
-		this.validateComponentState();
+		this.rechNumCompte = numCompte;
+		this.rechDebutNom = debutNom;
+		this.rechDebutPrenom = debutPrenom;
+		this.dernierClientLu = null;
+		this.toutLu = false;
+		this.chargerPageSuivante();
+	}
+
+	/**
+	 * Charge la page suivante de la recherche en cours (si elle n'est pas déjà
+	 * entièrement lue ni en cours de chargement)
+	 */
+	private void chargerPageSuivante() {
+		if (this.toutLu || (this.chargementPage != null && this.chargementPage.isRunning())) {
+			return;
+		}
+		this.chargementPage = this.cm.rechercherClients(this.rechNumCompte, this.rechDebutNom, this.rechDebutPrenom,
+				this.dernierClientLu, ClientsManagementController.TAILLE_PAGE_CLIENTS, page -> {
+					this.olc.addAll(page);
+					if (!page.isEmpty()) {
+						this.dernierClientLu = page.get(page.size() - 1);
+					}
+					this.toutLu = page.size() < ClientsManagementController.TAILLE_PAGE_CLIENTS;
+					this.validateComponentState();
+				});
+		ServiceBD.indicateurChargement(this.lvClients, this.chargementPage);
 	}
 
 	@FXML
@@ -256,6 +349,7 @@ public class ClientsManagementController implements Initializable {
 			this.btnComptesClient.setDisable(true);
 			this.btnDesactClient.setDisable(true);
 		}
-		this.btnExecPrelevements.setDisable(!estChefDagence);
+		boolean prelevementsEnCours = this.executionPrelevements != null && !this.executionPrelevements.isDone();
+		this.btnExecPrelevements.setDisable(!estChefDagence || prelevementsEnCours);
 	}
 }
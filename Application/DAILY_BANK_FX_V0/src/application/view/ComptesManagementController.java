@@ -7,8 +7,10 @@ import java.util.ResourceBundle;
 import application.DailyBankState;
 import application.control.ComptesManagement;
 import application.tools.AlertUtilities;
+import application.tools.ServiceBD;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.Button;
@@ -166,12 +168,12 @@ public class ComptesManagementController implements Initializable {
 	}
 
 	private void loadList() {
-		ArrayList<CompteCourant> listeCpt;
-		listeCpt = this.cm.getComptesDunClient();
 		this.olCompteCourant.clear();
-		for (CompteCourant co : listeCpt) {
-			this.olCompteCourant.add(co);
-		}
+		Task<ArrayList<CompteCourant>> tache = this.cm.chargerComptesDunClient(listeCpt -> {
+			this.olCompteCourant.setAll(listeCpt);
+			this.validateComponentState();
+		});
+		ServiceBD.indicateurChargement(this.lvComptes, tache);
 	}
 
 	private void validateComponentState() {
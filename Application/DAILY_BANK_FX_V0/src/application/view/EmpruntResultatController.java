@@ -20,6 +20,7 @@ import javafx.stage.Stage;
 import javafx.stage.WindowEvent;
 import model.data.Emprunt;
 import model.data.LigneEmprunt;
+import model.data.TableauAmortissement;
 
 public class EmpruntResultatController implements Initializable {
 
@@ -54,15 +55,8 @@ public class EmpruntResultatController implements Initializable {
 	public void displayDialog(Emprunt emp) {
 		this.emprunt=emp;
 		this.lblTitre.setText("Capital emprunté : "+this.emprunt.capital+"\tDurée : "+this.emprunt.duree+"\tTaux annuel : "+this.emprunt.taux+"\tPeriodicité : "+this.emprunt.periodicite);
-		if (this.emprunt.periodicite.compareTo("mensuelle")==0) {
-			this.emprunt.tauxApplicable = this.emprunt.taux/12/100;
-			this.emprunt.tauxApplicable = Math.round(this.emprunt.tauxApplicable*1000000.0)/1000000.0;
-			this.emprunt.nombrePeriode = this.emprunt.duree*12;
-		} else {
-			this.emprunt.tauxApplicable = this.emprunt.taux/100;
-			this.emprunt.tauxApplicable = Math.round(this.emprunt.tauxApplicable*100.0)/100.0;
-			this.emprunt.nombrePeriode = this.emprunt.duree;
-		}
+		// Calcul du tableau (renseigne aussi tauxApplicable et nombrePeriode)
+		TableauAmortissement tableau = new TableauAmortissement().calculer(this.emprunt);
 		this.lblTitre2.setText("Taux applicable : "+this.emprunt.tauxApplicable+"\t\tNombre de période : "+this.emprunt.nombrePeriode);
 
 		TableView<LigneEmprunt> table = this.tvLE;
@@ -85,7 +79,7 @@ public class EmpruntResultatController implements Initializable {
 		capFin.setCellValueFactory(new PropertyValueFactory<>("capFin"));
 
 		// Liste observable des lignes d'emprunt
-		ObservableList<LigneEmprunt> list = getLignes();
+		ObservableList<LigneEmprunt> list = getLignes(tableau);
 		table.setItems(list);
 
 		table.getColumns().addAll(periode, capDebut, interet, principal, mensualite, capFin);
@@ -100,12 +94,11 @@ public class EmpruntResultatController implements Initializable {
 			this.valeurTauxAssurance.setText(""+tauxAssurance);
 			this.titreMensualite.setVisible(true);
 			this.valeurMensualite.setVisible(true);
-			double mensualiteAssurance = tauxAssurance/100*this.emprunt.capital/12;
-			this.valeurMensualite.setText(""+mensualiteAssurance);
+			this.valeurMensualite.setText(""+tableau.getAssuranceParPeriode());
 			this.titreDuree.setVisible(true);
 			this.valeurDuree.setVisible(true);
 			this.valeurDuree.setText(""+this.emprunt.nombrePeriode);
-			this.valeurTotAssurance.setText(""+this.emprunt.nombrePeriode*mensualiteAssurance);
+			this.valeurTotAssurance.setText(""+tableau.getTotalAssurance());
 		}
 
 
@@ -114,35 +107,15 @@ public class EmpruntResultatController implements Initializable {
 
 	/** Fonction permettant de récupérer les lignes de la simulation
 	 * 
+	 * @param tableau : tableau d'amortissement calculé
 	 * @return observableList des lignes
 	 */
-	private ObservableList<LigneEmprunt> getLignes() {
+	private ObservableList<LigneEmprunt> getLignes(TableauAmortissement tableau) {
 		ObservableList<LigneEmprunt> list = FXCollections.observableArrayList();
-		
-		double tauxApplicable = this.emprunt.tauxApplicable;
-		double capDebut = this.emprunt.capital;
-		int nbPeriode = this.emprunt.nombrePeriode;
-		LigneEmprunt [] tabLignes = new LigneEmprunt [nbPeriode];
-		for (int i=0; i<nbPeriode; i++) {
-			tabLignes[i] = new LigneEmprunt(0, 0, 0, 0, 0, 0);
-			if (i==0) {
-				tabLignes[i].setCapDebut(capDebut);
-			} else {
-				
-				tabLignes[i].setCapDebut((double)Math.round((tabLignes[i-1].getCapFin())*100)/100);
-			}
-			tabLignes[i].setPeriode(i+1);
-			tabLignes[i].setInteret((double)Math.round((tauxApplicable*tabLignes[i].getCapDebut())*100)/100);
-			tabLignes[i].setMensualite ((double)Math.round((capDebut*(tauxApplicable/(1-Math.pow((1+tauxApplicable),-nbPeriode))))*100)/100);
-			tabLignes[i].setPrincipal((double)Math.round((tabLignes[i].getMensualite()-tabLignes[i].getInteret())*100)/100);
-			tabLignes[i].setCapFin((double)Math.round((tabLignes[i].getCapDebut()-tabLignes[i].getPrincipal())*100)/100);
-			list.add(tabLignes[i]);
+		for (int i=0; i<tableau.getNbPeriodes(); i++) {
+			list.add(tableau.getLigne(i));
 		}
-		
-		
-
 		return list;
-
 	}
 
 	// Gestion du stage
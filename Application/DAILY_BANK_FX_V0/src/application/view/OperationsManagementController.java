@@ -5,16 +5,15 @@ package application.view;
  */
 
 import java.net.URL;
-import java.util.ArrayList;
 import java.util.Locale;
 import java.util.ResourceBundle;
 
 import application.DailyBankState;
 import application.control.OperationsManagement;
+import application.tools.ListeParPages;
 import application.tools.NoSelectionModel;
-import application.tools.PairsOfValue;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
+import application.tools.ServiceBD;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.Button;
@@ -24,10 +23,19 @@ import javafx.stage.Stage;
 import javafx.stage.WindowEvent;
 import model.data.Client;
 import model.data.CompteCourant;
+import model.data.NouvellesOperations;
 import model.data.Operation;
 
 public class OperationsManagementController implements Initializable {
 
+	// Opérations lues par page (à l'affichage) et nombre maximum de pages en
+	// mémoire : seules les lignes visibles sont lues et mises en forme, quel que
+	// soit le nombre d'opérations du compte
+	private static final int TAILLE_PAGE_OPERATIONS = 200;
+	private static final int NB_PAGES_OPERATIONS = 50;
+	// Hauteur fixe des lignes : la ListView n'a pas à mesurer les cellules
+	private static final double HAUTEUR_LIGNE = 24;
+
 	// Etat application
 	private DailyBankState dbs;
 	private OperationsManagement om;
@@ -38,7 +46,9 @@ public class OperationsManagementController implements Initializable {
 	// Données de la fenêtre
 	private Client clientDuCompte;
 	private CompteCourant compteConcerne;
-	private ObservableList<Operation> olOperation;
+	private ListeParPages<Operation> olOperation;
+	// Plus grand idOperation de olOperation (opérations à charger : les suivantes)
+	private int dernierIdOperation;
 	
 	private boolean debitExceptionnel;
 
@@ -59,14 +69,18 @@ public class OperationsManagementController implements Initializable {
 		this.clientDuCompte = client;
 		this.compteConcerne = compte;
 		this.debitExceptionnel = false;
+		this.dernierIdOperation = 0;
 		this.configure();
 	}
 
 	private void configure() {
 		this.primaryStage.setOnCloseRequest(e -> this.closeWindow(e));
 
-		this.olOperation = FXCollections.observableArrayList();
+		this.olOperation = this.om.listeOperations(OperationsManagementController.TAILLE_PAGE_OPERATIONS,
+				OperationsManagementController.NB_PAGES_OPERATIONS);
 		this.lvOperations.setItems(this.olOperation);
+		this.lvOperations.setFixedCellSize(OperationsManagementController.HAUTEUR_LIGNE);
+		this.lvOperations.setCellFactory(this.olOperation.fabriqueCellules(Operation::toString, "..."));
 		this.lvOperations.setSelectionModel(new NoSelectionModel<Operation>());
 		this.lvOperations.getSelectionModel().selectedItemProperty().addListener(e -> this.validateComponentState());
 		this.validateComponentState();
@@ -171,17 +185,22 @@ public class OperationsManagementController implements Initializable {
 	}
 	
 	/** Mets à jour les informations affichées (infos du clients, des opérations, du solde, débit autorisé, etc...)
-	 * 
+	 *  Seules les opérations enregistrées depuis la mise à jour précédente sont chargées
 	 */
 	private void updateInfoCompteClient() {
+		Task<NouvellesOperations> tache;
 
-		PairsOfValue<CompteCourant, ArrayList<Operation>> opesEtCompte;
-
-		opesEtCompte = this.om.operationsEtSoldeDunCompte();
+		tache = this.om.chargerOperationsEtSoldeDunCompte(this.dernierIdOperation, this.olOperation.size(),
+				nouvelles -> this.afficherInfoCompteClient(nouvelles));
+		ServiceBD.indicateurChargement(this.lvOperations, tache);
+	}
 
-		ArrayList<Operation> listeOP;
-		this.compteConcerne = opesEtCompte.getLeft();
-		listeOP = opesEtCompte.getRight();
+	/** Affiche les informations relues du compte et ajoute ses nouvelles opérations à la liste
+	 * 
+	 * @param nouvelles : le compte relu et ses opérations enregistrées depuis la mise à jour précédente
+	 */
+	private void afficherInfoCompteClient(NouvellesOperations nouvelles) {
+		this.compteConcerne = nouvelles.compte;
 
 		String info;
 		info = this.clientDuCompte.nom + "  " + this.clientDuCompte.prenom + "  (id : " + this.clientDuCompte.idNumCli
@@ -193,10 +212,21 @@ public class OperationsManagementController implements Initializable {
 				+ String.format(Locale.ENGLISH, "%8d", this.compteConcerne.debitAutorise);
 		this.lblInfosCompte.setText(info);
 
-		this.olOperation.clear();
-		for (Operation op : listeOP) {
-			this.olOperation.add(op);
+		int nbAffichees = this.olOperation.size();
+		Operation derniere = nbAffichees > 0 ? this.olOperation.getSiLu(nbAffichees - 1) : null;
+		if (nouvelles.toutes) {
+			this.olOperation.reinitialiser(nouvelles.nbOperations);
+		} else if (nouvelles.operations.isEmpty()) {
+			return;
+		} else if (nbAffichees == 0
+				|| (derniere != null && !nouvelles.operations.get(0).dateOp.before(derniere.dateOp))) {
+			// Cas courant : opérations du jour, à la suite de la liste
+			this.olOperation.ajouter(nouvelles.operations);
+		} else {
+			// Opération datée avant la dernière affichée (ou dernière pas en mémoire) :
+			// liste relue par pages à l'affichage
+			this.olOperation.reinitialiser(nouvelles.nbOperations);
 		}
-
+		this.dernierIdOperation = nouvelles.dernierIdOperation;
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,149 @@
+package application.view;
+
+/**
+ * Fenetre de progression de la génération des relevés mensuels
+ */
+
+import java.net.URL;
+import java.util.List;
+import java.util.ResourceBundle;
+
+import application.DailyBankState;
+import application.control.ExceptionDialog;
+import application.tools.GenerateurReleves;
+import javafx.concurrent.Task;
+import javafx.fxml.FXML;
+import javafx.fxml.Initializable;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.stage.Stage;
+import javafx.stage.WindowEvent;
+import model.orm.exception.ApplicationException;
+
+public class ProgressionRelevesController implements Initializable {
+
+	// Etat application
+	private DailyBankState dbs;
+
+	// Fenêtre physique
+	private Stage primaryStage;
+
+	// Données de la fenêtre
+	private GenerateurReleves generateur;
+	private Task<Void> tache;
+
+	// Manipulation de la fenêtre
+	/**
+	 * Définit les variables de la fenetre
+	 * 
+	 * @param _primaryStage : scene
+	 * @param _dbstate : données de la session de l'utilisateur
+	 * @param _generateur : la génération à lancer
+	 */
+	public void initContext(Stage _primaryStage, DailyBankState _dbstate, GenerateurReleves _generateur) {
+		this.primaryStage = _primaryStage;
+		this.dbs = _dbstate;
+		this.generateur = _generateur;
+		this.configure();
+	}
+
+	private void configure() {
+		this.primaryStage.setOnCloseRequest(e -> this.closeWindow(e));
+	}
+
+	/**
+	 * Lance la génération en tâche de fond et affiche la fenetre jusqu'à sa fermeture
+	 */
+	public void displayDialog() {
+		this.tache = new Task<Void>() {
+			@Override
+			protected Void call() throws Exception {
+				ProgressionRelevesController.this.generateur.executer((traites, total) -> {
+					this.updateProgress(traites, total);
+					this.updateMessage("Relevés générés : " + traites + " / " + total);
+				});
+				return null;
+			}
+		};
+
+		this.progression.progressProperty().bind(this.tache.progressProperty());
+		this.tache.messageProperty().addListener((obs, ancien, nouveau) -> {
+			if (this.tache.isRunning() && !this.generateur.isAnnule()) {
+				this.lblMessage.setText(nouveau);
+			}
+		});
+		this.tache.setOnSucceeded(e -> this.terminer());
+		this.tache.setOnFailed(e -> {
+			this.terminer();
+			Throwable t = this.tache.getException();
+			if (t instanceof ApplicationException) {
+				ExceptionDialog ed = new ExceptionDialog(this.primaryStage, this.dbs, (ApplicationException) t);
+				ed.doExceptionDialog();
+			} else {
+				this.lblMessage.setText("Erreur : " + t);
+			}
+		});
+
+		Thread t = new Thread(this.tache, "ProgressionReleves");
+		t.setDaemon(true);
+		t.start();
+
+		this.primaryStage.showAndWait();
+	}
+
+	// Affiche le bilan de la génération
+	private void terminer() {
+		this.progression.progressProperty().unbind();
+		this.progression.setProgress(1);
+		this.btnAnnuler.setDisable(true);
+		this.btnFermer.setDisable(false);
+
+		String bilan = (this.generateur.isAnnule() ? "Génération annulée : " : "Génération terminée : ")
+				+ this.generateur.getNbGeneres() + " / " + this.generateur.getNbComptes() + " relevés ("
+				+ String.format("%.1f", this.generateur.getRelevesParSeconde()) + " relevés/s)";
+		List<Integer> enErreur = this.generateur.getComptesEnErreur();
+		if (!enErreur.isEmpty()) {
+			bilan += "\nImpossible de sauvegarder les relevés des comptes " + enErreur;
+		}
+		this.lblMessage.setText(bilan);
+	}
+
+	// Gestion du stage
+	private Object closeWindow(WindowEvent e) {
+		if (this.tache != null && this.tache.isRunning()) {
+			this.doAnnuler();
+			e.consume();
+		}
+		return null;
+	}
+
+	// Attributs de la scene + actions
+	@FXML
+	private ProgressBar progression;
+	@FXML
+	private Label lblMessage;
+	@FXML
+	private Button btnAnnuler;
+	@FXML
+	private Button btnFermer;
+
+	/**
+	 * Redéfinition de la fonction initialize
+	 */
+	@Override
+	public void initialize(URL location, ResourceBundle resources) {
+	}
+
+	@FXML
+	private void doAnnuler() {
+		this.generateur.annuler();
+		this.btnAnnuler.setDisable(true);
+		this.lblMessage.setText("Annulation en cours (fin des relevés commencés)...");
+	}
+
+	@FXML
+	private void doFermer() {
+		this.primaryStage.close();
+	}
+}
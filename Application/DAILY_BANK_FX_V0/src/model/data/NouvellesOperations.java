@@ -0,0 +1,37 @@
+package model.data;
+
+import java.util.ArrayList;
+
+/**
+ * Opérations d'un compte enregistrées depuis une lecture précédente, avec le
+ * compte relu (solde) (cf. AccessOperation.getNouvellesOperations)
+ */
+public class NouvellesOperations {
+
+	public CompteCourant compte;
+	public ArrayList<Operation> operations;
+	// Vrai si les opérations déjà lues ne sont plus à jour : operations contient
+	// alors toutes les opérations du compte (ou aucune si elles n'ont pas été
+	// relues), qui remplacent la liste précédente au lieu de la compléter
+	public boolean toutes;
+	// Nombre d'opérations du compte et plus grand idOperation (0 si aucune)
+	public int nbOperations;
+	public int dernierIdOperation;
+
+	public NouvellesOperations(CompteCourant compte, ArrayList<Operation> operations, boolean toutes,
+			int nbOperations, int dernierIdOperation) {
+		super();
+		this.compte = compte;
+		this.operations = operations;
+		this.toutes = toutes;
+		this.nbOperations = nbOperations;
+		this.dernierIdOperation = dernierIdOperation;
+	}
+
+	@Override
+	public String toString() {
+		return "NouvellesOperations [idNumCompte=" + this.compte.idNumCompte + ", nbLues=" + this.operations.size()
+				+ ", toutes=" + this.toutes + ", nbOperations=" + this.nbOperations + ", dernierIdOperation="
+				+ this.dernierIdOperation + "]";
+	}
+}
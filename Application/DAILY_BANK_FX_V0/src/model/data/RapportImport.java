@@ -0,0 +1,57 @@
+package model.data;
+
+import java.util.ArrayList;
+
+/**
+ * Compte rendu d'un import d'opérations en masse (cf.
+ * AccessOperation.importerOperations)
+ */
+public class RapportImport {
+
+	/**
+	 * Ligne du fichier importé refusée
+	 */
+	public static class Rejet {
+
+		public int numLigne;
+		public String ligne;
+		public String motif;
+
+		public Rejet(int numLigne, String ligne, String motif) {
+			super();
+			this.numLigne = numLigne;
+			this.ligne = ligne;
+			this.motif = motif;
+		}
+
+		@Override
+		public String toString() {
+			return "Ligne " + this.numLigne + " [" + this.ligne + "] : " + this.motif;
+		}
+	}
+
+	public int nbLignes;
+	public int nbAcceptees;
+	public ArrayList<Rejet> rejets;
+	public long dureeMs;
+
+	public RapportImport() {
+		this.nbLignes = 0;
+		this.nbAcceptees = 0;
+		this.rejets = new ArrayList<>();
+		this.dureeMs = 0;
+	}
+
+	/**
+	 * @return débit de l'import (opérations acceptées par seconde)
+	 */
+	public double getOperationsParSeconde() {
+		return this.dureeMs <= 0 ? 0 : this.nbAcceptees * 1000.0 / this.dureeMs;
+	}
+
+	@Override
+	public String toString() {
+		return "RapportImport [nbLignes=" + this.nbLignes + ", nbAcceptees=" + this.nbAcceptees + ", nbRejets="
+				+ this.rejets.size() + ", dureeMs=" + this.dureeMs + "]";
+	}
+}
@@ -0,0 +1,53 @@
+package model.data;
+
+import java.util.ArrayList;
+
+/**
+ * Compte rendu de l'exécution des prélèvements automatiques d'un jour (cf.
+ * AccessPrelevement.executerPrelevements)
+ */
+public class ResultatPrelevements {
+
+	/**
+	 * Prélèvement non exécuté
+	 */
+	public static class Rejet {
+
+		public Prelevement prelevement;
+		public String motif;
+
+		public Rejet(Prelevement prelevement, String motif) {
+			super();
+			this.prelevement = prelevement;
+			this.motif = motif;
+		}
+
+		@Override
+		public String toString() {
+			return "Prélèvement " + this.prelevement.idPrelev + " (" + this.prelevement.beneficiaire + ", "
+					+ String.format("%.02f", this.prelevement.montant) + ") sur le compte "
+					+ this.prelevement.idNumCompte + " : " + this.motif;
+		}
+	}
+
+	public ArrayList<Prelevement> executes;
+	public ArrayList<Rejet> rejets;
+	public int nbDejaExecutes;
+	public double montantTotal;
+	public long dureeMs;
+
+	public ResultatPrelevements() {
+		this.executes = new ArrayList<>();
+		this.rejets = new ArrayList<>();
+		this.nbDejaExecutes = 0;
+		this.montantTotal = 0;
+		this.dureeMs = 0;
+	}
+
+	@Override
+	public String toString() {
+		return "ResultatPrelevements [nbExecutes=" + this.executes.size() + ", nbRejets=" + this.rejets.size()
+				+ ", nbDejaExecutes=" + this.nbDejaExecutes + ", montantTotal="
+				+ String.format("%.02f", this.montantTotal) + ", dureeMs=" + this.dureeMs + "]";
+	}
+}
@@ -0,0 +1,202 @@
+package model.data;
+
+/**
+ * Tableau d'amortissement d'un emprunt à mensualités (échéances) constantes,
+ * calculé sans JavaFX (simulation à l'écran, traitements par lots).
+ *
+ * Les lignes sont rangées dans des tableaux de double réutilisés d'un calcul à
+ * l'autre (agrandis si besoin) : un calcul ne crée aucun objet, un même
+ * TableauAmortissement peut servir à des milliers de simulations. Non
+ * synchronisé : un TableauAmortissement par thread.
+ *
+ * Montants arrondis au centime à chaque période, comme affichés. Taux
+ * applicable : taux annuel / 12 arrondi à 6 décimales en périodicité
+ * mensuelle, taux annuel arrondi à 2 décimales en périodicité annuelle.
+ */
+public class TableauAmortissement {
+
+	public static final String PERIODICITE_MENSUELLE = "mensuelle";
+	public static final String PERIODICITE_ANNUELLE = "annuelle";
+
+	private int nbPeriodes;
+	private double tauxApplicable;
+	private double mensualite;
+	private double assuranceParPeriode;
+	private double totalInterets;
+
+	private double[] capDebut = new double[0];
+	private double[] interet = new double[0];
+	private double[] principal = new double[0];
+	private double[] capFin = new double[0];
+
+	/**
+	 * Calcule le tableau d'un emprunt et renseigne emp.tauxApplicable et
+	 * emp.nombrePeriode.
+	 *
+	 * @param emp l'emprunt simulé
+	 * @return this (lignes : getCapDebut(i), getInteret(i), ...)
+	 */
+	public TableauAmortissement calculer(Emprunt emp) {
+		this.calculer(emp.capital, emp.duree, emp.taux, emp.periodicite, emp.tauxAssurance);
+		emp.tauxApplicable = this.tauxApplicable;
+		emp.nombrePeriode = this.nbPeriodes;
+		return this;
+	}
+
+	/**
+	 * Calcule le tableau d'amortissement.
+	 *
+	 * @param capital       capital emprunté
+	 * @param duree         durée en années
+	 * @param taux          taux annuel en % (ex : 3.5)
+	 * @param periodicite   PERIODICITE_MENSUELLE ou PERIODICITE_ANNUELLE
+	 * @param tauxAssurance taux annuel de l'assurance en % du capital (0 si pas
+	 *                      d'assurance)
+	 * @return this (lignes : getCapDebut(i), getInteret(i), ...)
+	 */
+	public TableauAmortissement calculer(double capital, int duree, double taux, String periodicite,
+			double tauxAssurance) {
+		int periodesParAn;
+		if (TableauAmortissement.PERIODICITE_MENSUELLE.equals(periodicite)) {
+			periodesParAn = 12;
+			this.tauxApplicable = Math.round(taux / 12 / 100 * 1000000.0) / 1000000.0;
+		} else {
+			periodesParAn = 1;
+			this.tauxApplicable = Math.round(taux / 100 * 100.0) / 100.0;
+		}
+		int n = duree * periodesParAn;
+		this.nbPeriodes = n;
+		if (this.capDebut.length < n) {
+			this.capDebut = new double[n];
+			this.interet = new double[n];
+			this.principal = new double[n];
+			this.capFin = new double[n];
+		}
+
+		double t = this.tauxApplicable;
+		// Echéance constante, calculée une fois pour toutes les périodes
+		this.mensualite = TableauAmortissement.arrondi(capital * (t / (1 - Math.pow(1 + t, -n))));
+		this.assuranceParPeriode = tauxAssurance / 100 * capital / periodesParAn;
+
+		double cap = capital;
+		double interets = 0;
+		for (int i = 0; i < n; i++) {
+			double inter = TableauAmortissement.arrondi(t * cap);
+			double princ = TableauAmortissement.arrondi(this.mensualite - inter);
+			double fin = TableauAmortissement.arrondi(cap - princ);
+			this.capDebut[i] = cap;
+			this.interet[i] = inter;
+			this.principal[i] = princ;
+			this.capFin[i] = fin;
+			interets += inter;
+			cap = fin;
+		}
+		this.totalInterets = TableauAmortissement.arrondi(interets);
+		return this;
+	}
+
+	/**
+	 * @return nombre de périodes (lignes) du dernier calcul
+	 */
+	public int getNbPeriodes() {
+		return this.nbPeriodes;
+	}
+
+	/**
+	 * @return taux appliqué à chaque période (ex : 0.002917)
+	 */
+	public double getTauxApplicable() {
+		return this.tauxApplicable;
+	}
+
+	/**
+	 * @return montant à rembourser à chaque période (hors assurance)
+	 */
+	public double getMensualite() {
+		return this.mensualite;
+	}
+
+	/**
+	 * @return montant de l'assurance à chaque période
+	 */
+	public double getAssuranceParPeriode() {
+		return this.assuranceParPeriode;
+	}
+
+	/**
+	 * @return montant total de l'assurance sur la durée de l'emprunt
+	 */
+	public double getTotalAssurance() {
+		return this.assuranceParPeriode * this.nbPeriodes;
+	}
+
+	/**
+	 * @return montant total des intérêts sur la durée de l'emprunt
+	 */
+	public double getTotalInterets() {
+		return this.totalInterets;
+	}
+
+	/**
+	 * @param i période, de 0 à getNbPeriodes() - 1
+	 * @return capital restant dû en début de période
+	 */
+	public double getCapDebut(int i) {
+		this.verifierPeriode(i);
+		return this.capDebut[i];
+	}
+
+	/**
+	 * @param i période, de 0 à getNbPeriodes() - 1
+	 * @return intérêts de la période
+	 */
+	public double getInteret(int i) {
+		this.verifierPeriode(i);
+		return this.interet[i];
+	}
+
+	/**
+	 * @param i période, de 0 à getNbPeriodes() - 1
+	 * @return capital remboursé pendant la période
+	 */
+	public double getPrincipal(int i) {
+		this.verifierPeriode(i);
+		return this.principal[i];
+	}
+
+	/**
+	 * @param i période, de 0 à getNbPeriodes() - 1
+	 * @return capital restant dû en fin de période
+	 */
+	public double getCapFin(int i) {
+		this.verifierPeriode(i);
+		return this.capFin[i];
+	}
+
+	/**
+	 * @param i période, de 0 à getNbPeriodes() - 1
+	 * @return la ligne i du tableau (nouvel objet, pour l'affichage)
+	 */
+	public LigneEmprunt getLigne(int i) {
+		this.verifierPeriode(i);
+		return new LigneEmprunt(i + 1, this.capDebut[i], this.interet[i], this.principal[i], this.mensualite,
+				this.capFin[i]);
+	}
+
+	private void verifierPeriode(int i) {
+		if (i < 0 || i >= this.nbPeriodes) {
+			throw new IndexOutOfBoundsException("Période " + i + " hors du tableau (" + this.nbPeriodes + " périodes)");
+		}
+	}
+
+	private static double arrondi(double montant) {
+		return (double) Math.round(montant * 100) / 100;
+	}
+
+	@Override
+	public String toString() {
+		return "TableauAmortissement [nbPeriodes=" + this.nbPeriodes + ", tauxApplicable=" + this.tauxApplicable
+				+ ", mensualite=" + this.mensualite + ", assuranceParPeriode=" + this.assuranceParPeriode
+				+ ", totalInterets=" + this.totalInterets + "]";
+	}
+}
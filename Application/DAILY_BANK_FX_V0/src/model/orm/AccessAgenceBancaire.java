@@ -5,6 +5,7 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 
 import model.data.AgenceBancaire;
 import model.orm.exception.DataAccessException;
@@ -24,8 +25,13 @@ import model.orm.exception.Table;
 
 public class AccessAgenceBancaire {
 
+	// Agences : données de référence quasiment jamais modifiées (cf. getAgenceBancaire, appelé à chaque connexion)
+	private static final CacheReference<LinkedHashMap<Integer, AgenceBancaire>> cache = new CacheReference<>(
+			"AgenceBancaire", AccessAgenceBancaire::chargerAgenceBancaires, CacheReference.DUREE_VALIDITE_DEFAUT_MS);
+
 	/**
-	 * Recherche de toutes les agences bancaires.
+	 * Recherche de toutes les agences bancaires (servies depuis le cache, cf.
+	 * getCache()).
 	 *
 	 * @return Liste des AgenceBancaire existantes
 	 * @throws DataAccessException
@@ -33,33 +39,15 @@ public class AccessAgenceBancaire {
 	 */
 	public ArrayList<AgenceBancaire> getAgenceBancaires() throws DataAccessException, DatabaseConnexionException {
 		ArrayList<AgenceBancaire> alResult = new ArrayList<>();
-
-		try {
-			Connection con = LogToDatabase.getConnexion();
-			Statement st = con.createStatement();
-			String query = "SELECT * FROM AgenceBancaire ORDER BY nomAg";
-			ResultSet rs = st.executeQuery(query);
-			while (rs.next()) {
-				int idAg = rs.getInt("idAg");
-				String nomAg = rs.getString("nomAg");
-				nomAg = (nomAg == null ? "" : nomAg);
-				String adressePostaleAg = rs.getString("adressePostaleAg");
-				adressePostaleAg = (adressePostaleAg == null ? "" : adressePostaleAg);
-				int idEmployeChefAg = rs.getInt("idEmployeChefAg");
-
-				alResult.add(new AgenceBancaire(idAg, nomAg, adressePostaleAg, idEmployeChefAg));
-			}
-			rs.close();
-			st.close();
-		} catch (SQLException e) {
-			throw new DataAccessException(Table.AgenceBancaire, Order.SELECT, "Erreur accès AgenceBancaire", e);
+		for (AgenceBancaire ag : AccessAgenceBancaire.cache.get().values()) {
+			alResult.add(new AgenceBancaire(ag));
 		}
-
 		return alResult;
 	}
 
 	/**
-	 * Recherche AgenceBancaire par son id.
+	 * Recherche AgenceBancaire par son id (servie depuis le cache, cf.
+	 * getCache()).
 	 *
 	 * @return une AgenceBancaire ou null si non trouvé
 	 * @param idAg id de l'agence recherchée (clé primaire)
@@ -69,41 +57,50 @@ public class AccessAgenceBancaire {
 	 */
 	public AgenceBancaire getAgenceBancaire(int idAg)
 			throws DataAccessException, DatabaseConnexionException, RowNotFoundOrTooManyRowsException {
-		AgenceBancaire a;
+		AgenceBancaire ag = AccessAgenceBancaire.cache.get().get(idAg);
+		return ag == null ? null : new AgenceBancaire(ag);
+	}
+
+	/**
+	 * @return le cache des AgenceBancaire (invalidation, statistiques)
+	 */
+	public static CacheReference<LinkedHashMap<Integer, AgenceBancaire>> getCache() {
+		return AccessAgenceBancaire.cache;
+	}
+
+	/**
+	 * Lecture en BD de toutes les agences bancaires, par nom (chargement du
+	 * cache).
+	 */
+	private static LinkedHashMap<Integer, AgenceBancaire> chargerAgenceBancaires()
+			throws DataAccessException, DatabaseConnexionException {
+		LinkedHashMap<Integer, AgenceBancaire> alResult = new LinkedHashMap<>();
 
 		try {
 			Connection con = LogToDatabase.getConnexion();
 			Statement st = con.createStatement();
-			String query = "SELECT * FROM AgenceBancaire" + " where idAg = " + idAg;
+			String query = "SELECT * FROM AgenceBancaire ORDER BY nomAg";
+			long chrono = LogORM.debutRequete();
 			ResultSet rs = st.executeQuery(query);
-			if (rs.next()) {
-				int idAgTRouve = rs.getInt("idAg");
+			LogORM.finRequete(query, chrono);
+			while (rs.next()) {
+				int idAg = rs.getInt("idAg");
 				String nomAg = rs.getString("nomAg");
 				nomAg = (nomAg == null ? "" : nomAg);
 				String adressePostaleAg = rs.getString("adressePostaleAg");
 				adressePostaleAg = (adressePostaleAg == null ? "" : adressePostaleAg);
 				int idEmployeChefAg = rs.getInt("idEmployeChefAg");
 
-				a = new AgenceBancaire(idAgTRouve, nomAg, adressePostaleAg, idEmployeChefAg);
-			} else {
-				rs.close();
-				st.close();
-				return null;
-			}
-
-			if (rs.next()) {
-				rs.close();
-				st.close();
-				throw new RowNotFoundOrTooManyRowsException(Table.AgenceBancaire, Order.SELECT,
-						"Recherche anormale (en trouve au moins 2)", null, 2);
+				alResult.put(idAg, new AgenceBancaire(idAg, nomAg, adressePostaleAg, idEmployeChefAg));
 			}
 			rs.close();
 			st.close();
-
 		} catch (SQLException e) {
 			throw new DataAccessException(Table.AgenceBancaire, Order.SELECT, "Erreur accès AgenceBancaire", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
 		}
 
-		return a;
+		return alResult;
 	}
 }
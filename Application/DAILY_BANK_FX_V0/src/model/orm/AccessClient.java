@@ -15,6 +15,11 @@ import model.orm.exception.Table;
 
 public class AccessClient {
 
+	// Prédicat de recherche par début de nom et de prénom : exactement les
+	// expressions de l'index idx_Client_Ag_UpperNom / idx_Employe_Ag_UpperNom
+	// (cf. scriptCreaBase.txt), les motifs étant construits par motifDebut(.)
+	static final String RECHERCHE_NOM_PRENOM = " AND UPPER(nom) LIKE ? ESCAPE '\\' AND UPPER(prenom) LIKE ? ESCAPE '\\'";
+
 	public AccessClient() {
 	}
 
@@ -24,6 +29,8 @@ public class AccessClient {
 	 * On recherche : - un client précis si idNumCli <> -1 - des clients par début
 	 * nom/prénom si debutNom donné - tous les clients de idAg sinon
 	 *
+	 * Pour une agence importante, préférer getClientsPage.
+	 *
 	 * @param idAg        : id de l'agence dont on cherche les clients
 	 * @param idNumCli    : vaut -1 si il n'est pas spécifié sinon numéro recherché
 	 * @param debutNom    : vaut "" si il n'est pas spécifié sinon sera le
@@ -35,67 +42,103 @@ public class AccessClient {
 	 */
 	public ArrayList<Client> getClients(int idAg, int idNumCli, String debutNom, String debutPrenom)
 			throws DataAccessException, DatabaseConnexionException {
+		return this.getClientsPage(idAg, idNumCli, debutNom, debutPrenom, null, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Recherche paginée des clients (cf. getClients pour les critères).
+	 *
+	 * Les clients sont triés par (nom, idNumCli) et une page reprend juste après
+	 * le dernier client de la page précédente (pagination par clé, sans OFFSET) :
+	 * le coût d'une page ne dépend pas de sa position ni de la taille de
+	 * l'agence.
+	 *
+	 * @param idAg        : id de l'agence dont on cherche les clients
+	 * @param idNumCli    : vaut -1 si il n'est pas spécifié sinon numéro recherché
+	 * @param debutNom    : vaut "" si il n'est pas spécifié sinon sera le
+	 *                    nom/prenom recherchés
+	 * @param debutPrenom cf. @param debutNom
+	 * @param apres       : dernier client de la page précédente (null pour la
+	 *                    première page)
+	 * @param taillePage  : nombre maximum de clients retournés
+	 * @return La page de clients (moins de taillePage clients : dernière page)
+	 * @throws DataAccessException
+	 * @throws DatabaseConnexionException
+	 */
+	public ArrayList<Client> getClientsPage(int idAg, int idNumCli, String debutNom, String debutPrenom,
+			Client apres, int taillePage) throws DataAccessException, DatabaseConnexionException {
 		ArrayList<Client> alResult = new ArrayList<>();
 
 		try {
 			Connection con = LogToDatabase.getConnexion();
 
 			PreparedStatement pst;
+			int numParam = 1;
 
-			String query;
+			String query = "SELECT * FROM Client where idAg = ?";
 			if (idNumCli != -1) {
-				query = "SELECT * FROM Client where idAg = ?";
 				query += " AND idNumCli = ?";
-				query += " ORDER BY nom";
-				pst = con.prepareStatement(query);
-				pst.setInt(1, idAg);
-				pst.setInt(2, idNumCli);
+			} else if (!debutNom.equals("")) {
+				debutNom = AccessClient.motifDebut(debutNom);
+				debutPrenom = AccessClient.motifDebut(debutPrenom);
+				query += AccessClient.RECHERCHE_NOM_PRENOM;
+			}
+			Dialecte dialecte = LogToDatabase.getDialecte();
+			if (apres != null) {
+				// Comparaison dans le même ordre que le ORDER BY (cf. Dialecte.cleTri)
+				query += " AND (" + dialecte.cleTri("nom") + " > " + dialecte.cleTri("?") + " OR ("
+						+ dialecte.cleTri("nom") + " = " + dialecte.cleTri("?") + " AND idNumCli > ?))";
+			}
+			query += " ORDER BY nom, idNumCli";
+			if (taillePage != Integer.MAX_VALUE) {
+				query = dialecte.premieresLignes(query);
+			}
 
+			pst = LogToDatabase.prepareStatement(con, query);
+			pst.setInt(numParam++, idAg);
+			if (idNumCli != -1) {
+				pst.setInt(numParam++, idNumCli);
 			} else if (!debutNom.equals("")) {
-				debutNom = debutNom.toUpperCase() + "%";
-				debutPrenom = debutPrenom.toUpperCase() + "%";
-				query = "SELECT * FROM Client where idAg = ?";
-				query += " AND UPPER(nom) like ?" + " AND UPPER(prenom) like ?";
-				query += " ORDER BY nom";
-				pst = con.prepareStatement(query);
-				pst.setInt(1, idAg);
-				pst.setString(2, debutNom);
-				pst.setString(3, debutPrenom);
-			} else {
-				query = "SELECT * FROM Client where idAg = ?";
-				query += " ORDER BY nom";
-				pst = con.prepareStatement(query);
-				pst.setInt(1, idAg);
+				pst.setString(numParam++, debutNom);
+				pst.setString(numParam++, debutPrenom);
+			}
+			if (apres != null) {
+				pst.setString(numParam++, apres.nom);
+				pst.setString(numParam++, apres.nom);
+				pst.setInt(numParam++, apres.idNumCli);
+			}
+			if (taillePage != Integer.MAX_VALUE) {
+				pst.setInt(numParam++, taillePage);
 			}
-			System.err.println(query + " nom : " + debutNom + " prenom : " + debutPrenom + "#");
 
+			long chrono = LogORM.debutRequete();
 			ResultSet rs = pst.executeQuery();
+			LogORM.finRequete(query, chrono);
 			while (rs.next()) {
-				int idNumCliTR = rs.getInt("idNumCli");
-				String nom = rs.getString("nom");
-				String prenom = rs.getString("prenom");
-				String adressePostale = rs.getString("adressePostale");
-				adressePostale = (adressePostale == null ? "" : adressePostale);
-				String email = rs.getString("email");
-				email = (email == null ? "" : email);
-				String telephone = rs.getString("telephone");
-				telephone = (telephone == null ? "" : telephone);
-				String estInactif = rs.getString("estInactif");
-				int idAgCli = rs.getInt("idAg");
-
-				alResult.add(
-						new Client(idNumCliTR, nom, prenom, adressePostale, email, telephone, estInactif, idAgCli));
-				System.out.println(alResult);
+				alResult.add(this.lireClient(rs));
 			}
 			rs.close();
-			pst.close();
 		} catch (SQLException e) {
 			throw new DataAccessException(Table.Client, Order.SELECT, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
 		}
 
 		return alResult;
 	}
 
+	/**
+	 * Motif LIKE "commence par debut" sans tenir compte de la casse (à comparer à
+	 * UPPER(colonne)). Les caractères spéciaux de LIKE saisis sont protégés : le
+	 * motif n'a jamais de joker en tête et reste utilisable par l'index.
+	 *
+	 * @param debut début recherché
+	 * @return le motif (ex : "dupont" -> "DUPONT%")
+	 */
+	static String motifDebut(String debut) {
+		return debut.toUpperCase().replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+	}
+
 	/**
 	 * Recherche de client par son id.
 	 *
@@ -112,9 +155,11 @@ public class AccessClient {
 		try {
 			Connection con = LogToDatabase.getConnexion();
 			String query = "SELECT * FROM Client where" + " idNumCli = ?";
-			PreparedStatement pst = con.prepareStatement(query);
+			PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
 			pst.setInt(1, idCli);
+			long chrono = LogORM.debutRequete();
 			ResultSet rs = pst.executeQuery();
+			LogORM.finRequete(query, chrono);
 
 			if (rs.next()) {
 				// Trouvé ...
@@ -134,22 +179,21 @@ public class AccessClient {
 			} else {
 				// Non trouvé ...
 				rs.close();
-				pst.close();
 				return null;
 			}
 
 			if (rs.next()) {
 				// Plus de 2 ? Bizarre ...
 				rs.close();
-				pst.close();
 				throw new RowNotFoundOrTooManyRowsException(Table.Client, Order.SELECT,
 						"Recherche anormale (en trouve au moins 2)", null, 2);
 			}
 			rs.close();
-			pst.close();
 			return clientTrouve;
 		} catch (SQLException e) {
 			throw new DataAccessException(Table.Client, Order.SELECT, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
 		}
 	}
 
@@ -167,9 +211,9 @@ public class AccessClient {
 
 			Connection con = LogToDatabase.getConnexion();
 
-			String query = "INSERT INTO CLIENT VALUES (" + "seq_id_client.NEXTVAL" + ", " + "?" + ", " + "?" + ", "
+			String query = "INSERT INTO CLIENT VALUES (" + LogToDatabase.getDialecte().nextval("seq_id_client") + ", " + "?" + ", " + "?" + ", "
 					+ "?" + ", " + "?" + ", " + "?" + ", " + "?" + ", " + "?" + ")";
-			PreparedStatement pst = con.prepareStatement(query);
+			PreparedStatement pst = LogToDatabase.prepareStatement(con, query, new String[] { "idNumCli" });
 			pst.setString(1, client.nom);
 			pst.setString(2, client.prenom);
 			pst.setString(3, client.adressePostale);
@@ -178,33 +222,88 @@ public class AccessClient {
 			pst.setString(6, "" + client.estInactif.charAt(0));
 			pst.setInt(7, client.idAg);
 
-			System.err.println(query);
-
+			long chrono = LogORM.debutRequete();
 			int result = pst.executeUpdate();
-			pst.close();
+			LogORM.finRequete(query, chrono);
 
 			if (result != 1) {
-				con.rollback();
+				LogToDatabase.rollback(con);
 				throw new RowNotFoundOrTooManyRowsException(Table.Client, Order.INSERT,
 						"Insert anormal (insert de moins ou plus d'une ligne)", null, result);
 			}
 
-			query = "SELECT seq_id_client.CURRVAL from DUAL";
-
-			System.err.println(query);
-			PreparedStatement pst2 = con.prepareStatement(query);
-
-			ResultSet rs = pst2.executeQuery();
+			// id pris dans la séquence, rendu par l'INSERT lui-même (pas de CURRVAL)
+			ResultSet rs = pst.getGeneratedKeys();
 			rs.next();
 			int numCliBase = rs.getInt(1);
-
-			con.commit();
 			rs.close();
-			pst2.close();
+
+			LogToDatabase.commit(con);
 
 			client.idNumCli = numCliBase;
+			IndexClients.clientModifie(client);
+		} catch (SQLException e) {
+			throw new DataAccessException(Table.Client, Order.INSERT, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
+		}
+	}
+
+	/**
+	 * Insertion en masse de clients (ex : reprise des clients d'une autre
+	 * banque) en une seule transaction.
+	 *
+	 * Les ids sont réservés dans la séquence par lot (un aller-retour pour
+	 * LogToDatabase.TAILLE_LOT_INSERT lignes) puis les lignes sont envoyées par
+	 * lot (JDBC batch) : deux aller-retours par lot au lieu de deux par ligne.
+	 * Si une insertion échoue, aucune ligne n'est insérée.
+	 *
+	 * @param clients IN/OUT Tous les attributs IN sauf idNumCli en OUT
+	 * @throws DataAccessException
+	 * @throws DatabaseConnexionException
+	 */
+	public void insertClients(ArrayList<Client> clients) throws DataAccessException, DatabaseConnexionException {
+		if (clients.isEmpty()) {
+			return;
+		}
+		try {
+			Connection con = LogToDatabase.getConnexion();
+
+			String query = "INSERT INTO CLIENT VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+			PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
+			pst.clearBatch(); // ordre pris dans le cache : lot éventuel d'un appel interrompu vidé
+
+			int[] ids = new int[clients.size()];
+			for (int debutLot = 0; debutLot < clients.size(); debutLot += LogToDatabase.TAILLE_LOT_INSERT) {
+				int finLot = Math.min(debutLot + LogToDatabase.TAILLE_LOT_INSERT, clients.size());
+				int[] idsLot = LogToDatabase.reserverIds(con, "seq_id_client", finLot - debutLot);
+				for (int i = debutLot; i < finLot; i++) {
+					Client client = clients.get(i);
+					ids[i] = idsLot[i - debutLot];
+					pst.setInt(1, ids[i]);
+					pst.setString(2, client.nom);
+					pst.setString(3, client.prenom);
+					pst.setString(4, client.adressePostale);
+					pst.setString(5, client.email);
+					pst.setString(6, client.telephone);
+					pst.setString(7, "" + client.estInactif.charAt(0));
+					pst.setInt(8, client.idAg);
+					pst.addBatch();
+				}
+				long chrono = LogORM.debutRequete();
+				pst.executeBatch();
+				LogORM.finRequete(query, chrono);
+			}
+			LogToDatabase.commit(con);
+
+			for (int i = 0; i < ids.length; i++) {
+				clients.get(i).idNumCli = ids[i];
+				IndexClients.clientModifie(clients.get(i));
+			}
 		} catch (SQLException e) {
 			throw new DataAccessException(Table.Client, Order.INSERT, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
 		}
 	}
 
@@ -229,7 +328,7 @@ public class AccessClient {
 					+ "? , " + "email = " + "? , " + "telephone = " + "? , " + "estInactif = " + "? " + " "
 					+ "WHERE idNumCli = ? ";
 
-			PreparedStatement pst = con.prepareStatement(query);
+			PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
 			pst.setString(1, client.nom);
 			pst.setString(2, client.prenom);
 			pst.setString(3, client.adressePostale);
@@ -238,18 +337,43 @@ public class AccessClient {
 			pst.setString(6, "" + client.estInactif.charAt(0));
 			pst.setInt(7, client.idNumCli);
 
-			System.err.println(query);
-
+			long chrono = LogORM.debutRequete();
 			int result = pst.executeUpdate();
-			pst.close();
+			LogORM.finRequete(query, chrono);
 			if (result != 1) {
-				con.rollback();
+				LogToDatabase.rollback(con);
 				throw new RowNotFoundOrTooManyRowsException(Table.Client, Order.UPDATE,
 						"Update anormal (update de moins ou plus d'une ligne)", null, result);
 			}
-			con.commit();
+			LogToDatabase.commit(con);
+			IndexClients.clientModifie(client);
 		} catch (SQLException e) {
 			throw new DataAccessException(Table.Client, Order.UPDATE, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
 		}
 	}
+
+	/**
+	 * Construit un Client à partir de la ligne courante de rs.
+	 *
+	 * @param rs ResultSet positionné sur une ligne de la table Client
+	 * @return le Client lu
+	 * @throws SQLException
+	 */
+	private Client lireClient(ResultSet rs) throws SQLException {
+		int idNumCli = rs.getInt("idNumCli");
+		String nom = rs.getString("nom");
+		String prenom = rs.getString("prenom");
+		String adressePostale = rs.getString("adressePostale");
+		adressePostale = (adressePostale == null ? "" : adressePostale);
+		String email = rs.getString("email");
+		email = (email == null ? "" : email);
+		String telephone = rs.getString("telephone");
+		telephone = (telephone == null ? "" : telephone);
+		String estInactif = rs.getString("estInactif");
+		int idAgCli = rs.getInt("idAg");
+
+		return new Client(idNumCli, nom, prenom, adressePostale, email, telephone, estInactif, idAgCli);
+	}
 }
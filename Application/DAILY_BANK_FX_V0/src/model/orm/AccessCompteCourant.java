@@ -6,6 +6,8 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 import model.data.CompteCourant;
 import model.orm.exception.DataAccessException;
@@ -17,6 +19,10 @@ import model.orm.exception.Table;
 
 public class AccessCompteCourant {
 
+	// Nombre (fixe) de paramètres de la liste IN de verrouillerComptes : la requête
+	// garde toujours le même texte (cf. StatementCache)
+	private static final int TAILLE_IN_COMPTES = 100;
+
 	public AccessCompteCourant() {
 	}
 
@@ -31,17 +37,19 @@ public class AccessCompteCourant {
 	public ArrayList<CompteCourant> getCompteCourants(int idNumCli)
 			throws DataAccessException, DatabaseConnexionException {
 		ArrayList<CompteCourant> alResult = new ArrayList<>();
+		MoteurSoldes.avantLecture();
 
 		try {
 			Connection con = LogToDatabase.getConnexion();
 			String query = "SELECT * FROM CompteCourant where idNumCli = ?";
 			query += " ORDER BY idNumCompte";
 
-			PreparedStatement pst = con.prepareStatement(query);
+			PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
 			pst.setInt(1, idNumCli);
-			System.err.println(query);
 
+			long chrono = LogORM.debutRequete();
 			ResultSet rs = pst.executeQuery();
+			LogORM.finRequete(query, chrono);
 			while (rs.next()) {
 				int idNumCompte = rs.getInt("idNumCompte");
 				int debitAutorise = rs.getInt("debitAutorise");
@@ -52,9 +60,10 @@ public class AccessCompteCourant {
 				alResult.add(new CompteCourant(idNumCompte, debitAutorise, solde, estCloture, idNumCliTROUVE));
 			}
 			rs.close();
-			pst.close();
 		} catch (SQLException e) {
 			throw new DataAccessException(Table.CompteCourant, Order.SELECT, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
 		}
 
 		return alResult;
@@ -71,6 +80,7 @@ public class AccessCompteCourant {
 	 */
 	public CompteCourant getCompteCourant(int idNumCompte)
 			throws RowNotFoundOrTooManyRowsException, DataAccessException, DatabaseConnexionException {
+		MoteurSoldes.avantLecture(idNumCompte);
 		try {
 			CompteCourant cc;
 
@@ -78,12 +88,12 @@ public class AccessCompteCourant {
 
 			String query = "SELECT * FROM CompteCourant where" + " idNumCompte = ?";
 
-			PreparedStatement pst = con.prepareStatement(query);
+			PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
 			pst.setInt(1, idNumCompte);
 
-			System.err.println(query);
-
+			long chrono = LogORM.debutRequete();
 			ResultSet rs = pst.executeQuery();
+			LogORM.finRequete(query, chrono);
 
 			if (rs.next()) {
 				int idNumCompteTROUVE = rs.getInt("idNumCompte");
@@ -95,7 +105,6 @@ public class AccessCompteCourant {
 				cc = new CompteCourant(idNumCompteTROUVE, debitAutorise, solde, estCloture, idNumCliTROUVE);
 			} else {
 				rs.close();
-				pst.close();
 				return null;
 			}
 
@@ -104,10 +113,11 @@ public class AccessCompteCourant {
 						"Recherche anormale (en trouve au moins 2)", null, 2);
 			}
 			rs.close();
-			pst.close();
 			return cc;
 		} catch (SQLException e) {
 			throw new DataAccessException(Table.CompteCourant, Order.SELECT, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
 		}
 	}
 
@@ -127,6 +137,8 @@ public class AccessCompteCourant {
 	public void updateCompteCourant(CompteCourant cc) throws RowNotFoundOrTooManyRowsException, DataAccessException,
 			DatabaseConnexionException, ManagementRuleViolation {
 		try {
+			Connection con = LogToDatabase.getConnexion();
+			MoteurSoldes.ecritureDirecte(cc.idNumCompte);
 
 			CompteCourant cAvant = this.getCompteCourant(cc.idNumCompte);
 			if (cc.debitAutorise > 0) {
@@ -136,26 +148,26 @@ public class AccessCompteCourant {
 				throw new ManagementRuleViolation(Table.CompteCourant, Order.UPDATE,
 						"Erreur de règle de gestion : solde à découvert", null);
 			}
-			Connection con = LogToDatabase.getConnexion();
 
 			String query = "UPDATE CompteCourant SET " + "debitAutorise = ? " + "WHERE idNumCompte = ?";
 
-			PreparedStatement pst = con.prepareStatement(query);
+			PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
 			pst.setInt(1, cc.debitAutorise);
 			pst.setInt(2, cc.idNumCompte);
 
-			System.err.println(query);
-
+			long chrono = LogORM.debutRequete();
 			int result = pst.executeUpdate();
-			pst.close();
+			LogORM.finRequete(query, chrono);
 			if (result != 1) {
-				con.rollback();
+				LogToDatabase.rollback(con);
 				throw new RowNotFoundOrTooManyRowsException(Table.CompteCourant, Order.UPDATE,
 						"Update anormal (update de moins ou plus d'une ligne)", null, result);
 			}
-			con.commit();
+			LogToDatabase.commit(con);
 		} catch (SQLException e) {
 			throw new DataAccessException(Table.CompteCourant, Order.UPDATE, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
 		}
 	}
 	
@@ -175,25 +187,35 @@ public class AccessCompteCourant {
 
 			compte.debitAutorise = -compte.debitAutorise;
 
-			CallableStatement call;
+			int res;
+			if (LogToDatabase.getDialecte().avecProceduresStockees()) {
+				CallableStatement call;
 
-			String q = "{call CreerCompte (?, ?, ?, ?)}";
-			call = con.prepareCall(q);
-			call.setInt(1, compte.debitAutorise);
-			call.setDouble(2, compte.solde);
-			call.setInt(3, compte.idNumCli);
-			call.registerOutParameter(4, java.sql.Types.INTEGER);
+				String q = "{call CreerCompte (?, ?, ?, ?)}";
+				call = LogToDatabase.prepareCall(con, q);
+				call.setInt(1, compte.debitAutorise);
+				call.setDouble(2, compte.solde);
+				call.setInt(3, compte.idNumCli);
+				call.registerOutParameter(4, java.sql.Types.INTEGER);
 
-			call.execute();
+				long chrono = LogORM.debutRequete();
+				call.execute();
+				LogORM.finRequete(q, chrono);
 
-			int res = call.getInt(4);
+				res = call.getInt(4);
+			} else {
+				res = ProceduresJava.creerCompte(con, compte.debitAutorise, compte.solde, compte.idNumCli);
+			}
 			
 			if (res == -1)
 				throw new ManagementRuleViolation(Table.Operation, Order.INSERT, "Erreur : le solde doit être supérieur à 50", null);
 			
+			LogToDatabase.commit(con);
 			compte.idNumCompte = res;
 		} catch (SQLException e) {
 			throw new DataAccessException(Table.Client, Order.INSERT, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
 		}
 	}
 	
@@ -209,24 +231,66 @@ public class AccessCompteCourant {
 	DatabaseConnexionException, ManagementRuleViolation {
 		try {
 			Connection con = LogToDatabase.getConnexion();
+			MoteurSoldes.ecritureDirecte(compte.idNumCompte);
 		
 			String query = "UPDATE CompteCourant SET estCloture = 'O' WHERE solde = 0 AND idNumCompte = ?";
 		
-			PreparedStatement pst = con.prepareStatement(query);
+			PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
 			pst.setInt(1, compte.idNumCompte);
-		
-			System.err.println(query);
-		
+
+			long chrono = LogORM.debutRequete();
 			int result = pst.executeUpdate();
-			pst.close();
+			LogORM.finRequete(query, chrono);
 			if (result != 1) {
-				con.rollback();
+				LogToDatabase.rollback(con);
 				throw new RowNotFoundOrTooManyRowsException(Table.CompteCourant, Order.UPDATE,
 						"Update anormal (update de moins ou plus d'une ligne)", null, result);
 			}
-			con.commit();
+			LogToDatabase.commit(con);
 		} catch (SQLException e) {
 			throw new DataAccessException(Table.CompteCourant, Order.UPDATE, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
+		}
+	}
+
+	/**
+	 * Verrouille (SELECT ... FOR UPDATE) et lit des comptes, dans la transaction
+	 * en cours sur con. Utilisé par les traitements par lots qui mettent à jour
+	 * les soldes : les comptes sont verrouillés par numéro croissant (même ordre
+	 * pour tous les traitements : pas d'interblocage entre eux).
+	 *
+	 * @param con connexion de la transaction en cours (cf.
+	 *            LogToDatabase.getConnexion())
+	 * @param ids numéros des comptes, triés
+	 * @return les comptes trouvés, par numéro (un numéro inexistant est absent)
+	 * @throws SQLException
+	 */
+	static TreeMap<Integer, CompteCourant> verrouillerComptes(Connection con, TreeSet<Integer> ids)
+			throws SQLException {
+		TreeMap<Integer, CompteCourant> comptes = new TreeMap<>();
+		if (ids.isEmpty()) {
+			return comptes;
+		}
+
+		String query = "SELECT idNumCompte, debitAutorise, solde, estCloture, idNumCli FROM CompteCourant"
+				+ " WHERE idNumCompte IN (?" + ", ?".repeat(AccessCompteCourant.TAILLE_IN_COMPTES - 1) + ")"
+				+ " ORDER BY idNumCompte FOR UPDATE";
+		PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
+		ArrayList<Integer> liste = new ArrayList<>(ids);
+		for (int i = 0; i < liste.size(); i += AccessCompteCourant.TAILLE_IN_COMPTES) {
+			for (int j = 0; j < AccessCompteCourant.TAILLE_IN_COMPTES; j++) {
+				// Liste complétée en répétant le dernier numéro du paquet
+				pst.setInt(j + 1, liste.get(Math.min(i + j, liste.size() - 1)));
+			}
+			ResultSet rs = pst.executeQuery();
+			while (rs.next()) {
+				int idNumCompte = rs.getInt("idNumCompte");
+				comptes.put(idNumCompte, new CompteCourant(idNumCompte, rs.getInt("debitAutorise"),
+						rs.getDouble("solde"), rs.getString("estCloture"), rs.getInt("idNumCli")));
+			}
+			rs.close();
 		}
+		return comptes;
 	}
-}
\ No newline at end of file
+}
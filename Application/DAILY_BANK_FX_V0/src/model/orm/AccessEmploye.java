@@ -36,13 +36,13 @@ public class AccessEmploye {
 			Connection con = LogToDatabase.getConnexion();
 			String query = "SELECT * FROM Employe WHERE" + " login = ?" + " AND motPasse = ?";
 
-			PreparedStatement pst = con.prepareStatement(query);
+			PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
 			pst.setString(1, login);
 			pst.setString(2, password);
 
+			long chrono = LogORM.debutRequete();
 			ResultSet rs = pst.executeQuery();
-
-			System.err.println(query);
+			LogORM.finRequete(query, chrono);
 
 			if (rs.next()) {
 				int idEmployeTrouve = rs.getInt("idEmploye");
@@ -57,7 +57,6 @@ public class AccessEmploye {
 						idAgEmploye);
 			} else {
 				rs.close();
-				pst.close();
 				// Non trouvé
 				return null;
 			}
@@ -65,15 +64,15 @@ public class AccessEmploye {
 			if (rs.next()) {
 				// Trouvé plus de 1 ... bizarre ...
 				rs.close();
-				pst.close();
 				throw new RowNotFoundOrTooManyRowsException(Table.Employe, Order.SELECT,
 						"Recherche anormale (en trouve au moins 2)", null, 2);
 			}
 			rs.close();
-			pst.close();
 			return employeTrouve;
 		} catch (SQLException e) {
 			throw new DataAccessException(Table.Employe, Order.SELECT, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
 		}
 	}
 	
@@ -97,27 +96,27 @@ public class AccessEmploye {
 			String query = "UPDATE EMPLOYE SET " + "nom = " + "? , " + "prenom = " + "? , " + "droitsAccess = "
 					+ "? , " + "login = " + "? , " + "motPasse = "+"? "  + "WHERE idEmploye = ? ";
 
-			PreparedStatement pst = con.prepareStatement(query);
+			PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
 			pst.setString(1, employe.nom);
 			pst.setString(2, employe.prenom);
 			pst.setString(3, employe.droitsAccess);
 			pst.setString(4, employe.login);
 			pst.setString(5, employe.motPasse);
 			pst.setInt(6, employe.idEmploye);
-			
-
-			System.err.println(query);
 
+			long chrono = LogORM.debutRequete();
 			int result = pst.executeUpdate();
-			pst.close();
+			LogORM.finRequete(query, chrono);
 			if (result != 1) {
-				con.rollback();
+				LogToDatabase.rollback(con);
 				throw new RowNotFoundOrTooManyRowsException(Table.Employe, Order.UPDATE,
 						"Update anormal (update de moins ou plus d'une ligne)", null, result);
 			}
-			con.commit();
+			LogToDatabase.commit(con);
 		} catch (SQLException e) {
 			throw new DataAccessException(Table.Employe, Order.UPDATE, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
 		}
 	}
 	
@@ -135,9 +134,9 @@ public class AccessEmploye {
 
 			Connection con = LogToDatabase.getConnexion();
 
-			String query = "INSERT INTO EMPLOYE VALUES (" + "seq_id_employe.NEXTVAL" + ", " + "?" + ", " + "?" + ", "
+			String query = "INSERT INTO EMPLOYE VALUES (" + LogToDatabase.getDialecte().nextval("seq_id_employe") + ", " + "?" + ", " + "?" + ", "
 					+ "?" + ", " + "?" + ", " + "?" + ", " + "?" + ")";
-			PreparedStatement pst = con.prepareStatement(query);
+			PreparedStatement pst = LogToDatabase.prepareStatement(con, query, new String[] { "idEmploye" });
 			pst.setString(1, employe.nom);
 			pst.setString(2, employe.prenom);
 			pst.setString(3, employe.droitsAccess);
@@ -145,37 +144,88 @@ public class AccessEmploye {
 			pst.setString(5, employe.motPasse);
 			pst.setInt(6, employe.idAg);
 
-
-			System.err.println(query);
-
+			long chrono = LogORM.debutRequete();
 			int result = pst.executeUpdate();
-			pst.close();
+			LogORM.finRequete(query, chrono);
 
 			if (result != 1) {
-				con.rollback();
+				LogToDatabase.rollback(con);
 				throw new RowNotFoundOrTooManyRowsException(Table.Employe, Order.INSERT,
 						"Insert anormal (insert de moins ou plus d'une ligne)", null, result);
 			}
 
-			query = "SELECT seq_id_employe.CURRVAL from DUAL";
-
-			System.err.println(query);
-			PreparedStatement pst2 = con.prepareStatement(query);
-
-			ResultSet rs = pst2.executeQuery();
+			// id pris dans la séquence, rendu par l'INSERT lui-même (pas de CURRVAL)
+			ResultSet rs = pst.getGeneratedKeys();
 			rs.next();
 			int numEmplBase = rs.getInt(1);
-
-			con.commit();
 			rs.close();
-			pst2.close();
+
+			LogToDatabase.commit(con);
 			
 			employe.idEmploye = numEmplBase;
 		} catch (SQLException e) {
 			throw new DataAccessException(Table.Employe, Order.INSERT, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
 		}
 	}
 	
+	/**
+	 * Insertion en masse d'employés (ex : reprise du personnel d'une nouvelle
+	 * agence) en une seule transaction.
+	 *
+	 * Les ids sont réservés dans la séquence par lot (un aller-retour pour
+	 * LogToDatabase.TAILLE_LOT_INSERT lignes) puis les lignes sont envoyées par
+	 * lot (JDBC batch) : deux aller-retours par lot au lieu de deux par ligne.
+	 * Si une insertion échoue, aucune ligne n'est insérée.
+	 *
+	 * @param employes IN/OUT Tous les attributs IN sauf idEmploye en OUT
+	 * @throws DataAccessException
+	 * @throws DatabaseConnexionException
+	 */
+	public void insertEmployes(ArrayList<Employe> employes) throws DataAccessException, DatabaseConnexionException {
+		if (employes.isEmpty()) {
+			return;
+		}
+		try {
+			Connection con = LogToDatabase.getConnexion();
+
+			String query = "INSERT INTO EMPLOYE VALUES (?, ?, ?, ?, ?, ?, ?)";
+			PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
+			pst.clearBatch(); // ordre pris dans le cache : lot éventuel d'un appel interrompu vidé
+
+			int[] ids = new int[employes.size()];
+			for (int debutLot = 0; debutLot < employes.size(); debutLot += LogToDatabase.TAILLE_LOT_INSERT) {
+				int finLot = Math.min(debutLot + LogToDatabase.TAILLE_LOT_INSERT, employes.size());
+				int[] idsLot = LogToDatabase.reserverIds(con, "seq_id_employe", finLot - debutLot);
+				for (int i = debutLot; i < finLot; i++) {
+					Employe employe = employes.get(i);
+					ids[i] = idsLot[i - debutLot];
+					pst.setInt(1, ids[i]);
+					pst.setString(2, employe.nom);
+					pst.setString(3, employe.prenom);
+					pst.setString(4, employe.droitsAccess);
+					pst.setString(5, employe.login);
+					pst.setString(6, employe.motPasse);
+					pst.setInt(7, employe.idAg);
+					pst.addBatch();
+				}
+				long chrono = LogORM.debutRequete();
+				pst.executeBatch();
+				LogORM.finRequete(query, chrono);
+			}
+			LogToDatabase.commit(con);
+
+			for (int i = 0; i < ids.length; i++) {
+				employes.get(i).idEmploye = ids[i];
+			}
+		} catch (SQLException e) {
+			throw new DataAccessException(Table.Employe, Order.INSERT, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
+		}
+	}
+
 	/**
 	 * Suppression d'un employé.
 	 *
@@ -191,30 +241,25 @@ public class AccessEmploye {
 			Connection con = LogToDatabase.getConnexion();
 
 			String query = "DELETE FROM EMPLOYE WHERE idEmploye=?";
-			PreparedStatement pst = con.prepareStatement(query);
+			PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
 			pst.setInt(1, employe.idEmploye);
 
-
-			System.err.println(query);
-
+			long chrono = LogORM.debutRequete();
 			int result = pst.executeUpdate();
-			pst.close();
+			LogORM.finRequete(query, chrono);
 
 			if (result != 1) {
-				con.rollback();
+				LogToDatabase.rollback(con);
 				throw new RowNotFoundOrTooManyRowsException(Table.Employe, Order.DELETE,
 						"Delete anormal (delete de moins ou plus d'une ligne)", null, result);
 			}
 
-			query = "SELECT seq_id_employe.CURRVAL from DUAL";
-
-			System.err.println(query);
-			PreparedStatement pst2 = con.prepareStatement(query);
-
-			con.commit();
+			LogToDatabase.commit(con);
 			
 		} catch (SQLException e) {
 			throw new DataAccessException(Table.Employe, Order.INSERT, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
 		}
 	}
 	
@@ -246,30 +291,31 @@ public class AccessEmploye {
 				query = "SELECT * FROM Employe where idAg = ?";
 				query += " AND idEmploye = ?";
 				query += " ORDER BY nom";
-				pst = con.prepareStatement(query);
+				pst = LogToDatabase.prepareStatement(con, query);
 				pst.setInt(1, idAg);
 				pst.setInt(2, idEmploye);
 				
 
 			} else if (!debutNom.equals("")) {
-				debutNom = debutNom.toUpperCase() + "%";
-				debutPrenom = debutPrenom.toUpperCase() + "%";
+				debutNom = AccessClient.motifDebut(debutNom);
+				debutPrenom = AccessClient.motifDebut(debutPrenom);
 				query = "SELECT * FROM Employe where idAg = ?";
-				query += " AND UPPER(nom) like ?" + " AND UPPER(prenom) like ?";
+				query += AccessClient.RECHERCHE_NOM_PRENOM;
 				query += " ORDER BY nom";
-				pst = con.prepareStatement(query);
+				pst = LogToDatabase.prepareStatement(con, query);
 				pst.setInt(1, idAg);
 				pst.setString(2, debutNom);
 				pst.setString(3, debutPrenom);
 			} else {
 				query = "SELECT * FROM Employe where idAg = ?";
 				query += " ORDER BY nom";
-				pst = con.prepareStatement(query);
+				pst = LogToDatabase.prepareStatement(con, query);
 				pst.setInt(1, idAg);
 			}
-			System.err.println(query + " nom : " + debutNom + " prenom : " + debutPrenom + "#");
 
+			long chrono = LogORM.debutRequete();
 			ResultSet rs = pst.executeQuery();
+			LogORM.finRequete(query, chrono);
 			while (rs.next()) {
 				int idNumEmpTR = rs.getInt("idEmploye");
 				String nom = rs.getString("nom");
@@ -283,9 +329,10 @@ public class AccessEmploye {
 						new Employe(idNumEmpTR, nom, prenom, droitAccess, login, motdepasse, idAgEmp));
 			}
 			rs.close();
-			pst.close();
 		} catch (SQLException e) {
 			throw new DataAccessException(Table.Employe, Order.SELECT, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
 		}
 
 		return alResult;
@@ -1,15 +1,26 @@
 package model.orm;
 
+import java.io.BufferedReader;
+import java.io.IOException;
 import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
 
+import model.data.CompteCourant;
+import model.data.NouvellesOperations;
 import model.data.Operation;
+import model.data.RapportImport;
+import model.data.TypeOperation;
 import model.orm.exception.DataAccessException;
 import model.orm.exception.DatabaseConnexionException;
 import model.orm.exception.ManagementRuleViolation;
@@ -22,26 +33,54 @@ public class AccessOperation {
 	public AccessOperation() {
 	}
 
+	/**
+	 * Historique des opérations d'un compte, lu directement dans la copie locale
+	 * des opérations (cf. HistoriqueOperations : seules les nouvelles opérations
+	 * sont lues en BD), sans créer d'objet par opération.
+	 *
+	 * @param idNumCompte id du compte
+	 * @return l'historique du compte, null si la copie locale n'est pas activée
+	 *         (lire alors en BD, ex : getOperations(idNumCompte))
+	 * @throws DataAccessException
+	 * @throws DatabaseConnexionException
+	 */
+	public HistoriqueOperations.Historique getHistorique(int idNumCompte)
+			throws DataAccessException, DatabaseConnexionException {
+		HistoriqueOperations historique = HistoriqueOperations.get();
+		return historique == null ? null : historique.getHistorique(idNumCompte);
+	}
+
 	/**
 	 * Recherche de toutes les opérations d'un compte.
 	 *
+	 * Lues dans la copie locale des opérations si elle est activée (cf.
+	 * getHistorique, à préférer pour parcourir un long historique sans créer
+	 * toutes les opérations).
+	 *
 	 * @param idNumCompte id du compte dont on cherche toutes les opérations
 	 * @return Toutes les opérations du compte, liste vide si pas d'opération
 	 * @throws DataAccessException
 	 * @throws DatabaseConnexionException
 	 */
 	public ArrayList<Operation> getOperations(int idNumCompte) throws DataAccessException, DatabaseConnexionException {
+		HistoriqueOperations.Historique historique = this.getHistorique(idNumCompte);
+		if (historique != null) {
+			return historique.getOperations();
+		}
 		ArrayList<Operation> alResult = new ArrayList<>();
+		MoteurSoldes.avantLecture(idNumCompte);
 
 		try {
 			Connection con = LogToDatabase.getConnexion();
 			String query = "SELECT * FROM Operation where idNumCompte = ?";
-			query += " ORDER BY dateOp";
+			query += " ORDER BY dateOp, idOperation";
 
-			PreparedStatement pst = con.prepareStatement(query);
+			PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
 			pst.setInt(1, idNumCompte);
 
+			long chrono = LogORM.debutRequete();
 			ResultSet rs = pst.executeQuery();
+			LogORM.finRequete(query, chrono);
 			while (rs.next()) {
 				int idOperation = rs.getInt("idOperation");
 				double montant = rs.getDouble("montant");
@@ -53,10 +92,231 @@ public class AccessOperation {
 				alResult.add(new Operation(idOperation, montant, dateOp, dateValeur, idNumCompteTrouve, idTypeOp));
 			}
 			rs.close();
-			pst.close();
 			return alResult;
 		} catch (SQLException e) {
 			throw new DataAccessException(Table.Operation, Order.SELECT, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
+		}
+	}
+
+	/**
+	 * Recherche des opérations d'un compte enregistrées depuis une lecture
+	 * précédente (rafraîchissement d'un affichage), et du compte (solde).
+	 *
+	 * @see #getNouvellesOperations(int, int, int, boolean)
+	 */
+	public NouvellesOperations getNouvellesOperations(int idNumCompte, int dernierIdOperation, int nbConnues)
+			throws RowNotFoundOrTooManyRowsException, DataAccessException, DatabaseConnexionException {
+		return this.getNouvellesOperations(idNumCompte, dernierIdOperation, nbConnues, true);
+	}
+
+	/**
+	 * Recherche des opérations d'un compte enregistrées depuis une lecture
+	 * précédente (rafraîchissement d'un affichage), et du compte (solde).
+	 *
+	 * Seules les opérations d'idOperation supérieur à dernierIdOperation sont
+	 * lues (index (idNumCompte, idOperation)). Le nombre d'opérations
+	 * d'idOperation inférieur ou égal est ensuite comparé à nbConnues : s'il
+	 * diffère (opération validée en BD après une opération de numéro supérieur,
+	 * opération supprimée), les opérations déjà lues ne sont plus à jour, comme
+	 * au premier chargement (nbConnues = 0) : toutes les opérations du compte
+	 * sont relues (getOperations(idNumCompte)) si relireToutes est vrai, sinon
+	 * seuls leur nombre et le plus grand idOperation sont lus (affichage par
+	 * pages, cf. getOperationsPage).
+	 *
+	 * Si la copie locale des opérations est activée (cf. getHistorique), le
+	 * compte y est mis à jour et les opérations, leur nombre et le plus grand
+	 * idOperation y sont lus.
+	 *
+	 * @param idNumCompte        id du compte
+	 * @param dernierIdOperation plus grand idOperation déjà lu (0 si aucun)
+	 * @param nbConnues          nombre d'opérations déjà lues
+	 * @param relireToutes       vrai pour relire toutes les opérations si les
+	 *                           opérations déjà lues ne sont plus à jour
+	 * @return Le compte relu et ses nouvelles opérations triées par (dateOp,
+	 *         idOperation) (toutes ses opérations, ou aucune, si toutes est vrai)
+	 * @throws RowNotFoundOrTooManyRowsException
+	 * @throws DataAccessException
+	 * @throws DatabaseConnexionException
+	 */
+	public NouvellesOperations getNouvellesOperations(int idNumCompte, int dernierIdOperation, int nbConnues,
+			boolean relireToutes)
+			throws RowNotFoundOrTooManyRowsException, DataAccessException, DatabaseConnexionException {
+		HistoriqueOperations.Historique historique = this.getHistorique(idNumCompte);
+		if (historique != null) {
+			// Nouvelles opérations en fin d'historique : parcours depuis la fin jusqu'à
+			// la première déjà lue. Une nouvelle opération placée avant (dateOp
+			// antérieure) est comptée avec les anciennes : leur nombre diffère alors de
+			// nbConnues, comme en BD
+			int debut = historique.size();
+			while (debut > 0 && historique.getIdOperation(debut - 1) > dernierIdOperation) {
+				debut--;
+			}
+			ArrayList<Operation> nouvelles = new ArrayList<>(historique.size() - debut);
+			for (int i = debut; i < historique.size(); i++) {
+				nouvelles.add(historique.getOperation(i));
+			}
+			boolean toutes = nbConnues == 0 || debut != nbConnues;
+			if (toutes) {
+				nouvelles = relireToutes ? historique.getOperations() : new ArrayList<>();
+			}
+			return new NouvellesOperations(this.lireCompte(idNumCompte), nouvelles, toutes, historique.size(),
+					historique.getDernierIdOperation());
+		}
+
+		ArrayList<Operation> alResult = new ArrayList<>();
+		MoteurSoldes.avantLecture(idNumCompte);
+
+		try {
+			Connection con = LogToDatabase.getConnexion();
+			boolean toutes = nbConnues == 0;
+			int nbOperations = nbConnues;
+			int dernierId = dernierIdOperation;
+			if (!toutes) {
+				String query = "SELECT * FROM Operation WHERE idNumCompte = ? AND idOperation > ? ORDER BY dateOp, idOperation";
+
+				PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
+				pst.setInt(1, idNumCompte);
+				pst.setInt(2, dernierIdOperation);
+
+				long chrono = LogORM.debutRequete();
+				ResultSet rs = pst.executeQuery();
+				LogORM.finRequete(query, chrono);
+				while (rs.next()) {
+					Operation op = AccessOperation.lireOperation(rs);
+					dernierId = Math.max(dernierId, op.idOperation);
+					alResult.add(op);
+				}
+				rs.close();
+				nbOperations += alResult.size();
+
+				// Contrôle après la lecture : une opération de numéro déjà dépassé validée
+				// entre les deux requêtes est vue ici (ou au prochain rafraîchissement)
+				query = "SELECT COUNT(*) FROM Operation WHERE idNumCompte = ? AND idOperation <= ?";
+				pst = LogToDatabase.prepareStatement(con, query);
+				pst.setInt(1, idNumCompte);
+				pst.setInt(2, dernierIdOperation);
+
+				chrono = LogORM.debutRequete();
+				rs = pst.executeQuery();
+				LogORM.finRequete(query, chrono);
+				rs.next();
+				toutes = rs.getInt(1) != nbConnues;
+				rs.close();
+			}
+			if (toutes && relireToutes) {
+				alResult = this.getOperations(idNumCompte);
+				nbOperations = alResult.size();
+				dernierId = 0;
+				for (Operation op : alResult) {
+					dernierId = Math.max(dernierId, op.idOperation);
+				}
+			} else if (toutes) {
+				alResult = new ArrayList<>();
+				String query = "SELECT COUNT(*), MAX(idOperation) FROM Operation WHERE idNumCompte = ?";
+				PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
+				pst.setInt(1, idNumCompte);
+
+				long chrono = LogORM.debutRequete();
+				ResultSet rs = pst.executeQuery();
+				LogORM.finRequete(query, chrono);
+				rs.next();
+				nbOperations = rs.getInt(1);
+				dernierId = rs.getInt(2); // 0 si NULL (aucune opération)
+				rs.close();
+			}
+			return new NouvellesOperations(this.lireCompte(idNumCompte), alResult, toutes, nbOperations, dernierId);
+		} catch (SQLException e) {
+			throw new DataAccessException(Table.Operation, Order.SELECT, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
+		}
+	}
+
+	// Compte relu avec ses opérations (getNouvellesOperations)
+	private CompteCourant lireCompte(int idNumCompte)
+			throws RowNotFoundOrTooManyRowsException, DataAccessException, DatabaseConnexionException {
+		CompteCourant compte = new AccessCompteCourant().getCompteCourant(idNumCompte);
+		if (compte == null) {
+			throw new RowNotFoundOrTooManyRowsException(Table.CompteCourant, Order.SELECT,
+					"Recherche anormale (compte inexistant)", null, 0);
+		}
+		return compte;
+	}
+
+	/**
+	 * Recherche paginée des opérations d'un compte, triées par (dateOp,
+	 * idOperation) (affichage par pages d'un compte de beaucoup d'opérations).
+	 *
+	 * Si l'opération précédant la page est connue, la page reprend juste après
+	 * elle (pagination par clé, index (idNumCompte, dateOp)) : le coût d'une page
+	 * ne dépend pas de sa position. Sinon les debut premières opérations sont
+	 * sautées (cf. Dialecte.lignes).
+	 *
+	 * Si la copie locale des opérations est activée et contient le compte (mis à
+	 * jour par getNouvellesOperations), la page y est lue sans requête.
+	 *
+	 * @param idNumCompte id du compte
+	 * @param debut       rang (à partir de 0) de la première opération de la page
+	 * @param apres       opération de rang debut - 1 si elle est connue, null
+	 *                    sinon
+	 * @param taillePage  nombre maximum d'opérations retournées
+	 * @return La page d'opérations (moins de taillePage opérations : dernière
+	 *         page)
+	 * @throws DataAccessException
+	 * @throws DatabaseConnexionException
+	 */
+	public ArrayList<Operation> getOperationsPage(int idNumCompte, int debut, Operation apres, int taillePage)
+			throws DataAccessException, DatabaseConnexionException {
+		ArrayList<Operation> alResult = new ArrayList<>();
+		HistoriqueOperations historique = HistoriqueOperations.get();
+		HistoriqueOperations.Historique copie = historique == null ? null
+				: historique.getHistoriqueCopie(idNumCompte);
+		if (copie != null && debut < copie.size()) {
+			for (int i = debut; i < Math.min(debut + taillePage, copie.size()); i++) {
+				alResult.add(copie.getOperation(i));
+			}
+			return alResult;
+		}
+		MoteurSoldes.avantLecture(idNumCompte);
+
+		try {
+			Connection con = LogToDatabase.getConnexion();
+			Dialecte dialecte = LogToDatabase.getDialecte();
+			String query = "SELECT * FROM Operation WHERE idNumCompte = ?";
+			if (apres != null) {
+				// dateOp de apres relue en BD : Operation.dateOp n'a pas l'heure
+				String dateApres = "(SELECT dateOp FROM Operation WHERE idOperation = ?)";
+				query += " AND (dateOp > " + dateApres + " OR (dateOp = " + dateApres + " AND idOperation > ?))";
+			}
+			query += " ORDER BY dateOp, idOperation";
+			query = apres != null ? dialecte.premieresLignes(query) : dialecte.lignes(query);
+
+			PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
+			int numParam = 1;
+			pst.setInt(numParam++, idNumCompte);
+			if (apres != null) {
+				pst.setInt(numParam++, apres.idOperation);
+				pst.setInt(numParam++, apres.idOperation);
+				pst.setInt(numParam++, apres.idOperation);
+				pst.setInt(numParam++, taillePage);
+			} else {
+				dialecte.parametresLignes(pst, numParam, debut, taillePage);
+			}
+
+			long chrono = LogORM.debutRequete();
+			ResultSet rs = pst.executeQuery();
+			LogORM.finRequete(query, chrono);
+			while (rs.next()) {
+				alResult.add(AccessOperation.lireOperation(rs));
+			}
+			rs.close();
+			return alResult;
+		} catch (SQLException e) {
+			throw new DataAccessException(Table.Operation, Order.SELECT, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
 		}
 	}
 
@@ -71,71 +331,202 @@ public class AccessOperation {
 	 * @throws DatabaseConnexionException
 	 */
 	public ArrayList<Operation> getOperations(int idNumCompte, String mois, String annee) throws DataAccessException, DatabaseConnexionException {
+		return this.getOperations(idNumCompte, AccessOperation.premierJourDuMois(mois, annee),
+				AccessOperation.premierJourDuMoisSuivant(mois, annee));
+	}
+
+	/**
+	 * Recherche de toutes les opérations d'un compte entre deux dates.
+	 *
+	 * Le filtre porte directement sur dateOp (dateOp >= debut AND dateOp < fin) :
+	 * la BD peut utiliser l'index (idNumCompte, dateOp).
+	 *
+	 * @param idNumCompte id du compte dont on cherche toutes les opérations
+	 * @param debut       date de début (incluse)
+	 * @param fin         date de fin (exclue)
+	 * @return Toutes les opérations du compte sur [debut, fin[, liste vide si pas
+	 *         d'opération
+	 * @throws DataAccessException
+	 * @throws DatabaseConnexionException
+	 */
+	public ArrayList<Operation> getOperations(int idNumCompte, Date debut, Date fin) throws DataAccessException, DatabaseConnexionException {
 		ArrayList<Operation> alResult = new ArrayList<>();
+		MoteurSoldes.avantLecture(idNumCompte);
 
 		try {
 			Connection con = LogToDatabase.getConnexion();
-			String query = "SELECT * FROM Operation where idNumCompte = ? AND TO_CHAR(dateOp, 'MM/YYYY') = ? ORDER BY dateOp";
+			String query = "SELECT * FROM Operation where idNumCompte = ? AND dateOp >= ? AND dateOp < ? ORDER BY dateOp, idOperation";
 			
-			PreparedStatement pst = con.prepareStatement(query);
+			PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
 			pst.setInt(1, idNumCompte);
-			pst.setString(2, mois + "/" + annee);
+			pst.setDate(2, debut);
+			pst.setDate(3, fin);
 
+			long chrono = LogORM.debutRequete();
 			ResultSet rs = pst.executeQuery();
+			LogORM.finRequete(query, chrono);
 			while (rs.next()) {
-				int idOperation = rs.getInt("idOperation");
-				double montant = rs.getDouble("montant");
-				Date dateOp = rs.getDate("dateOp");
-				Date dateValeur = rs.getDate("dateValeur");
-				int idNumCompteTrouve = rs.getInt("idNumCompte");
-				String idTypeOp = rs.getString("idTypeOp");
-
-				alResult.add(new Operation(idOperation, montant, dateOp, dateValeur, idNumCompteTrouve, idTypeOp));
+				alResult.add(AccessOperation.lireOperation(rs));
 			}
 			rs.close();
-			pst.close();
 			return alResult;
 		} catch (SQLException e) {
 			throw new DataAccessException(Table.Operation, Order.SELECT, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
 		}
 	}
 
 	/**
 	 * Recherche de toutes les opérations d'une mois donné.
 	 *
-	 * @param idNumCompte id du compte dont on cherche toutes les opérations
 	 * @param mois le mois concerné
 	 * @param annee l'année concernée
-	 * @return Toutes les opérations du compte, liste vide si pas d'opération
+	 * @return Toutes les opérations du mois, liste vide si pas d'opération
 	 * @throws DataAccessException
 	 * @throws DatabaseConnexionException
 	 */
 	public ArrayList<Operation> getOperations(String mois, String annee) throws DataAccessException, DatabaseConnexionException {
+		return this.getOperations(AccessOperation.premierJourDuMois(mois, annee),
+				AccessOperation.premierJourDuMoisSuivant(mois, annee));
+	}
+
+	/**
+	 * Recherche de toutes les opérations (tous comptes) entre deux dates.
+	 *
+	 * @param debut date de début (incluse)
+	 * @param fin   date de fin (exclue)
+	 * @return Toutes les opérations sur [debut, fin[, liste vide si pas
+	 *         d'opération
+	 * @throws DataAccessException
+	 * @throws DatabaseConnexionException
+	 */
+	public ArrayList<Operation> getOperations(Date debut, Date fin) throws DataAccessException, DatabaseConnexionException {
 		ArrayList<Operation> alResult = new ArrayList<>();
+		MoteurSoldes.avantLecture();
 
 		try {
 			Connection con = LogToDatabase.getConnexion();
-			String query = "SELECT * FROM Operation WHERE TO_CHAR(dateOp, 'MM/YYYY') = ? ORDER BY dateOp";
+			String query = "SELECT * FROM Operation WHERE dateOp >= ? AND dateOp < ? ORDER BY dateOp, idOperation";
 			
-			PreparedStatement pst = con.prepareStatement(query);
-			pst.setString(1, mois + "/" + annee);
+			PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
+			pst.setDate(1, debut);
+			pst.setDate(2, fin);
 
+			long chrono = LogORM.debutRequete();
 			ResultSet rs = pst.executeQuery();
+			LogORM.finRequete(query, chrono);
 			while (rs.next()) {
-				int idOperation = rs.getInt("idOperation");
-				double montant = rs.getDouble("montant");
-				Date dateOp = rs.getDate("dateOp");
-				Date dateValeur = rs.getDate("dateValeur");
-				int idNumCompteTrouve = rs.getInt("idNumCompte");
-				String idTypeOp = rs.getString("idTypeOp");
-
-				alResult.add(new Operation(idOperation, montant, dateOp, dateValeur, idNumCompteTrouve, idTypeOp));
+				alResult.add(AccessOperation.lireOperation(rs));
 			}
 			rs.close();
-			pst.close();
 			return alResult;
 		} catch (SQLException e) {
 			throw new DataAccessException(Table.Operation, Order.SELECT, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
+		}
+	}
+
+	/**
+	 * Parcours de toutes les opérations d'un mois donné, sans les charger en
+	 * mémoire.
+	 *
+	 * cf. forEachOperation(Date, Date, int, Consumer)
+	 *
+	 * @param mois         le mois concerné
+	 * @param annee        l'année concernée
+	 * @param tailleFetch  nombre de lignes ramenées par aller-retour avec la BD
+	 * @param consommateur traitement appelé pour chaque opération lue
+	 * @return le nombre d'opérations parcourues
+	 * @throws DataAccessException
+	 * @throws DatabaseConnexionException
+	 */
+	public int forEachOperation(String mois, String annee, int tailleFetch, Consumer<Operation> consommateur)
+			throws DataAccessException, DatabaseConnexionException {
+		return this.forEachOperation(AccessOperation.premierJourDuMois(mois, annee),
+				AccessOperation.premierJourDuMoisSuivant(mois, annee), tailleFetch, consommateur);
+	}
+
+	/**
+	 * Parcours de toutes les opérations entre deux dates, sans les charger en
+	 * mémoire.
+	 *
+	 * Les opérations sont lues par paquets de tailleFetch lignes et transmises une
+	 * à une à consommateur au fur et à mesure de la lecture, triées par compte
+	 * puis par date : toutes les opérations d'un compte sont consécutives.
+	 *
+	 * @param debut        date de début (incluse)
+	 * @param fin          date de fin (exclue)
+	 * @param tailleFetch  nombre de lignes ramenées par aller-retour avec la BD
+	 * @param consommateur traitement appelé pour chaque opération lue
+	 * @return le nombre d'opérations parcourues
+	 * @throws DataAccessException
+	 * @throws DatabaseConnexionException
+	 */
+	public int forEachOperation(Date debut, Date fin, int tailleFetch, Consumer<Operation> consommateur)
+			throws DataAccessException, DatabaseConnexionException {
+		int nbOperations = 0;
+		MoteurSoldes.avantLecture();
+
+		try {
+			Connection con = LogToDatabase.getConnexion();
+			String query = "SELECT * FROM Operation WHERE dateOp >= ? AND dateOp < ? ORDER BY idNumCompte, dateOp, idOperation";
+
+			PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
+			pst.setFetchSize(tailleFetch);
+			pst.setDate(1, debut);
+			pst.setDate(2, fin);
+
+			long chrono = LogORM.debutRequete();
+			ResultSet rs = pst.executeQuery();
+			LogORM.finRequete(query, chrono);
+			try {
+				while (rs.next()) {
+					consommateur.accept(AccessOperation.lireOperation(rs));
+					nbOperations++;
+				}
+			} finally {
+				rs.close();
+			}
+			return nbOperations;
+		} catch (SQLException e) {
+			throw new DataAccessException(Table.Operation, Order.SELECT, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
+		}
+	}
+
+	/**
+	 * Nombre de comptes ayant au moins une opération entre deux dates.
+	 *
+	 * @param debut date de début (incluse)
+	 * @param fin   date de fin (exclue)
+	 * @return le nombre de comptes concernés
+	 * @throws DataAccessException
+	 * @throws DatabaseConnexionException
+	 */
+	public int getNbComptesAvecOperations(Date debut, Date fin) throws DataAccessException, DatabaseConnexionException {
+		MoteurSoldes.avantLecture();
+		try {
+			Connection con = LogToDatabase.getConnexion();
+			String query = "SELECT COUNT(DISTINCT idNumCompte) FROM Operation WHERE dateOp >= ? AND dateOp < ?";
+
+			PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
+			pst.setDate(1, debut);
+			pst.setDate(2, fin);
+
+			long chrono = LogORM.debutRequete();
+			ResultSet rs = pst.executeQuery();
+			LogORM.finRequete(query, chrono);
+			rs.next();
+			int nbComptes = rs.getInt(1);
+			rs.close();
+			return nbComptes;
+		} catch (SQLException e) {
+			throw new DataAccessException(Table.Operation, Order.SELECT, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
 		}
 	}
 
@@ -151,15 +542,18 @@ public class AccessOperation {
 	public Operation getOperation(int idOperation)
 			throws RowNotFoundOrTooManyRowsException, DataAccessException, DatabaseConnexionException {
 		Operation operationTrouvee;
+		MoteurSoldes.avantLecture();
 
 		try {
 			Connection con = LogToDatabase.getConnexion();
 			String query = "SELECT * FROM Operation  where" + " idOperation = ?";
 
-			PreparedStatement pst = con.prepareStatement(query);
+			PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
 			pst.setInt(1, idOperation);
 
+			long chrono = LogORM.debutRequete();
 			ResultSet rs = pst.executeQuery();
+			LogORM.finRequete(query, chrono);
 
 			if (rs.next()) {
 				int idOperationTrouve = rs.getInt("idOperation");
@@ -173,21 +567,20 @@ public class AccessOperation {
 						idTypeOp);
 			} else {
 				rs.close();
-				pst.close();
 				return null;
 			}
 
 			if (rs.next()) {
 				rs.close();
-				pst.close();
 				throw new RowNotFoundOrTooManyRowsException(Table.Operation, Order.SELECT,
 						"Recherche anormale (en trouve au moins 2)", null, 2);
 			}
 			rs.close();
-			pst.close();
 			return operationTrouvee;
 		} catch (SQLException e) {
 			throw new DataAccessException(Table.Operation, Order.SELECT, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
 		}
 	}
 
@@ -195,7 +588,8 @@ public class AccessOperation {
 	 * Enregistrement d'un débit.
 	 *
 	 * Se fait par procédure stockée : - Vérifie que le débitAutorisé n'est pas
-	 * dépassé - Enregistre l'opération - Met à jour le solde du compte.
+	 * dépassé - Enregistre l'opération - Met à jour le solde du compte. Par le
+	 * moteur de soldes s'il est activé (cf. MoteurSoldes).
 	 *
 	 * @param idNumCompte compte débité
 	 * @param montant     montant débité
@@ -206,32 +600,106 @@ public class AccessOperation {
 	 */
 	public void insertDebit(int idNumCompte, double montant, String typeOp)
 			throws DatabaseConnexionException, ManagementRuleViolation, DataAccessException {
+		if (AccessOperation.parMoteurSoldes(idNumCompte, -montant, typeOp, true)) {
+			return;
+		}
 		try {
 			Connection con = LogToDatabase.getConnexion();
-			CallableStatement call;
+			int res;
+
+			if (LogToDatabase.getDialecte().avecProceduresStockees()) {
+				CallableStatement call;
 
-			String q = "{call Debiter (?, ?, ?, ?)}";
-			// les ? correspondent aux paramètres : cf. déf procédure (4 paramètres)
-			call = con.prepareCall(q);
-			// Paramètres in
-			call.setInt(1, idNumCompte);
-			// 1 -> valeur du premier paramètre, cf. déf procédure
-			call.setDouble(2, montant);
-			call.setString(3, typeOp);
-			// Paramètres out
-			call.registerOutParameter(4, java.sql.Types.INTEGER);
-			// 4 type du quatrième paramètre qui est déclaré en OUT, cf. déf procédure
+				String q = "{call Debiter (?, ?, ?, ?)}";
+				// les ? correspondent aux paramètres : cf. déf procédure (4 paramètres)
+				call = LogToDatabase.prepareCall(con, q);
+				// Paramètres in
+				call.setInt(1, idNumCompte);
+				// 1 -> valeur du premier paramètre, cf. déf procédure
+				call.setDouble(2, montant);
+				call.setString(3, typeOp);
+				// Paramètres out
+				call.registerOutParameter(4, java.sql.Types.INTEGER);
+				// 4 type du quatrième paramètre qui est déclaré en OUT, cf. déf procédure
 
-			call.execute();
+				long chrono = LogORM.debutRequete();
+				call.execute();
+				LogORM.finRequete(q, chrono);
 
-			int res = call.getInt(4);
+				res = call.getInt(4);
+			} else {
+				res = ProceduresJava.debiter(con, idNumCompte, montant, typeOp);
+			}
 
 			if (res != 0) { // Erreur applicative
 				throw new ManagementRuleViolation(Table.Operation, Order.INSERT,
 						"Erreur de règle de gestion : découvert autorisé dépassé", null);
 			}
+			LogToDatabase.commit(con);
+		} catch (SQLException e) {
+			throw new DataAccessException(Table.Operation, Order.INSERT, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
+		}
+	}
+
+	/**
+	 * Enregistrement d'un virement de compte à compte.
+	 *
+	 * Le débit, le crédit et la mise à jour des 2 soldes sont faits en un seul
+	 * appel par la procédure stockée Virer, dans une seule transaction : soit les
+	 * 2 opérations sont enregistrées, soit aucune.
+	 *
+	 * @param idNumCompteDeb  compte débité
+	 * @param idNumCompteCred compte crédité
+	 * @param montant         montant viré (positif)
+	 * @throws DatabaseConnexionException
+	 * @throws ManagementRuleViolation    Si découvert autorisé dépassé sur le
+	 *                                    compte débité ou compte clôturé
+	 * @throws DataAccessException
+	 */
+	public void virer(int idNumCompteDeb, int idNumCompteCred, double montant)
+			throws DatabaseConnexionException, ManagementRuleViolation, DataAccessException {
+		try {
+			Connection con = LogToDatabase.getConnexion();
+			MoteurSoldes.ecritureDirecte(idNumCompteDeb, idNumCompteCred);
+			int res;
+
+			if (LogToDatabase.getDialecte().avecProceduresStockees()) {
+				CallableStatement call;
+
+				String q = "{call Virer (?, ?, ?, ?)}";
+				// les ? correspondent aux paramètres : cf. déf procédure (4 paramètres)
+				call = LogToDatabase.prepareCall(con, q);
+				// Paramètres in
+				call.setInt(1, idNumCompteDeb);
+				call.setInt(2, idNumCompteCred);
+				call.setDouble(3, montant);
+				// Paramètres out
+				call.registerOutParameter(4, java.sql.Types.INTEGER);
+
+				long chrono = LogORM.debutRequete();
+				call.execute();
+				LogORM.finRequete(q, chrono);
+
+				res = call.getInt(4);
+			} else {
+				res = ProceduresJava.virer(con, idNumCompteDeb, idNumCompteCred, montant);
+			}
+
+			if (res == -1) { // Erreur applicative
+				throw new ManagementRuleViolation(Table.Operation, Order.INSERT,
+						"Erreur de règle de gestion : découvert autorisé dépassé", null);
+			}
+			if (res != 0) {
+				throw new ManagementRuleViolation(Table.Operation, Order.INSERT,
+						"Erreur de règle de gestion : virement impossible (compte clôturé ou identique)", null);
+			}
+			LogToDatabase.commit(con);
 		} catch (SQLException e) {
 			throw new DataAccessException(Table.Operation, Order.INSERT, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
 		}
 	}
 
@@ -248,28 +716,44 @@ public class AccessOperation {
 	 */
 	public void insertDebitExceptionnel(int idNumCompte, double montant, String typeOp)
 			throws DatabaseConnexionException, DataAccessException {
+		try {
+			if (AccessOperation.parMoteurSoldes(idNumCompte, montant, typeOp, false)) {
+				return;
+			}
+		} catch (ManagementRuleViolation e) {
+			// pas de contrôle du découvert : n'arrive pas
+			throw new DataAccessException(Table.Operation, Order.INSERT, "Erreur accès", e);
+		}
 		try {
 			Connection con = LogToDatabase.getConnexion();
-			CallableStatement call;
 
-			String q = "{call Debiterexceptionnel (?, ?, ?, ?)}";
-			// les ? correspondent aux paramètres : cf. déf procédure (4 paramètres)
-			call = con.prepareCall(q);
-			// Paramètres in
-			call.setInt(1, idNumCompte);
-			// 1 -> valeur du premier paramètre, cf. déf procédure
-			call.setDouble(2, montant);
-			call.setString(3, typeOp);
-			// Paramètres out
-			call.registerOutParameter(4, java.sql.Types.INTEGER);
-			// 4 type du quatrième paramètre qui est déclaré en OUT, cf. déf procédure
+			if (LogToDatabase.getDialecte().avecProceduresStockees()) {
+				CallableStatement call;
 
-			call.execute();
+				String q = "{call Debiterexceptionnel (?, ?, ?, ?)}";
+				// les ? correspondent aux paramètres : cf. déf procédure (4 paramètres)
+				call = LogToDatabase.prepareCall(con, q);
+				// Paramètres in
+				call.setInt(1, idNumCompte);
+				// 1 -> valeur du premier paramètre, cf. déf procédure
+				call.setDouble(2, montant);
+				call.setString(3, typeOp);
+				// Paramètres out
+				call.registerOutParameter(4, java.sql.Types.INTEGER);
+				// 4 type du quatrième paramètre qui est déclaré en OUT, cf. déf procédure
 
-			int res = call.getInt(4);
+				long chrono = LogORM.debutRequete();
+				call.execute();
+				LogORM.finRequete(q, chrono);
+			} else {
+				ProceduresJava.debiterExceptionnel(con, idNumCompte, montant, typeOp);
+			}
 
+			LogToDatabase.commit(con);
 		} catch (SQLException e) {
 			throw new DataAccessException(Table.Operation, Order.INSERT, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
 		}
 	}
 
@@ -287,26 +771,272 @@ public class AccessOperation {
 	 */
 	public void insertCredit(int idNumCompte, double montant, String typeOp)
 			throws DatabaseConnexionException, ManagementRuleViolation, DataAccessException {
+		if (AccessOperation.parMoteurSoldes(idNumCompte, montant, typeOp, false)) {
+			return;
+		}
 		try {
 			Connection con = LogToDatabase.getConnexion();
-			CallableStatement call;
-
-			String q = "{call Debiter (?, ?, ?, ?)}";
-			// les ? correspondent aux paramètres : cf. déf procédure (4 paramètres)
-			call = con.prepareCall(q);
-			// Paramètres in
-			call.setInt(1, idNumCompte);
-			// 1 -> valeur du premier paramètre, cf. déf procédure
-			call.setDouble(2, -montant);
-			call.setString(3, typeOp);
-			// Paramètres out
-			call.registerOutParameter(4, java.sql.Types.INTEGER);
-			// 4 type du quatrième paramètre qui est déclaré en OUT, cf. déf procédure
-
-			call.execute();
+
+			if (LogToDatabase.getDialecte().avecProceduresStockees()) {
+				CallableStatement call;
+
+				String q = "{call Debiter (?, ?, ?, ?)}";
+				// les ? correspondent aux paramètres : cf. déf procédure (4 paramètres)
+				call = LogToDatabase.prepareCall(con, q);
+				// Paramètres in
+				call.setInt(1, idNumCompte);
+				// 1 -> valeur du premier paramètre, cf. déf procédure
+				call.setDouble(2, -montant);
+				call.setString(3, typeOp);
+				// Paramètres out
+				call.registerOutParameter(4, java.sql.Types.INTEGER);
+				// 4 type du quatrième paramètre qui est déclaré en OUT, cf. déf procédure
+
+				long chrono = LogORM.debutRequete();
+				call.execute();
+				LogORM.finRequete(q, chrono);
+			} else {
+				ProceduresJava.debiter(con, idNumCompte, -montant, typeOp);
+			}
+			LogToDatabase.commit(con);
 		} catch (SQLException e) {
 			throw new DataAccessException(Table.Operation, Order.INSERT, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
+		}
+	}
+
+	/**
+	 * Opération faite par le moteur de soldes s'il est activé, hors Transaction
+	 * (une Transaction doit pouvoir être annulée : écriture directe en BD).
+	 *
+	 * @param montant  montant signé de l'opération
+	 * @param controle vrai pour contrôler le découvert autorisé
+	 * @return vrai si l'opération a été faite par le moteur
+	 * @throws ManagementRuleViolation si découvert autorisé dépassé
+	 */
+	private static boolean parMoteurSoldes(int idNumCompte, double montant, String typeOp, boolean controle)
+			throws ManagementRuleViolation, DataAccessException, DatabaseConnexionException {
+		MoteurSoldes moteur = MoteurSoldes.get();
+		if (moteur == null) {
+			return false;
 		}
+		if (LogToDatabase.isTransactionOuverte()) {
+			MoteurSoldes.ecritureDirecte(idNumCompte);
+			return false;
+		}
+		if (!controle) {
+			moteur.crediter(idNumCompte, montant, typeOp);
+		} else if (!moteur.debiter(idNumCompte, -montant, typeOp)) {
+			throw new ManagementRuleViolation(Table.Operation, Order.INSERT,
+					"Erreur de règle de gestion : découvert autorisé dépassé", null);
+		}
+		return true;
+	}
+
+	/**
+	 * Import en masse d'opérations (fichier de règlements cartes par exemple).
+	 *
+	 * Format d'une ligne : idNumCompte;montant;idTypeOp (montant signé : négatif
+	 * pour un débit, décimale . ou ,). Lignes vides et lignes commençant par #
+	 * ignorées.
+	 *
+	 * Les lignes sont traitées par lots de tailleLot, un lot = une transaction :
+	 * les comptes du lot sont verrouillés et lus (FOR UPDATE), chaque ligne est
+	 * contrôlée dans l'ordre du fichier (compte existant et non clôturé, type
+	 * d'opération connu, découvert autorisé respecté pour un débit), puis les
+	 * opérations acceptées et les nouveaux soldes sont écrits par lots JDBC
+	 * (executeBatch) avant le commit. Une ligne refusée n'empêche pas les autres.
+	 *
+	 * @param source    les lignes à importer
+	 * @param tailleLot nombre de lignes par transaction
+	 * @return compte rendu de l'import (lignes acceptées, lignes refusées et motif)
+	 * @throws IOException                si la lecture de source échoue (les lots
+	 *                                    précédents restent enregistrés)
+	 * @throws DataAccessException        (le lot en cours est annulé, les lots
+	 *                                    précédents restent enregistrés)
+	 * @throws DatabaseConnexionException
+	 */
+	public RapportImport importerOperations(BufferedReader source, int tailleLot)
+			throws IOException, DataAccessException, DatabaseConnexionException {
+		RapportImport rapport = new RapportImport();
+		long debut = System.currentTimeMillis();
+		tailleLot = Math.max(1, tailleLot);
+
+		HashSet<String> typesOperation = new HashSet<>();
+		for (TypeOperation to : new AccessTypeOperation().getTypeOperations()) {
+			typesOperation.add(to.idTypeOp);
+		}
+
+		ArrayList<Operation> lot = new ArrayList<>();
+		ArrayList<Integer> numLignes = new ArrayList<>();
+		ArrayList<String> lignes = new ArrayList<>();
+		String ligne;
+		int numLigne = 0;
+		while ((ligne = source.readLine()) != null) {
+			numLigne++;
+			String contenu = ligne.trim();
+			if (contenu.isEmpty() || contenu.startsWith("#")) {
+				continue;
+			}
+			rapport.nbLignes++;
+
+			String[] champs = contenu.split(";");
+			Operation op;
+			try {
+				if (champs.length != 3) {
+					throw new NumberFormatException();
+				}
+				op = new Operation(-1, Double.parseDouble(champs[1].trim().replace(',', '.')), null, null,
+						Integer.parseInt(champs[0].trim()), champs[2].trim());
+			} catch (NumberFormatException e) {
+				rapport.rejets.add(new RapportImport.Rejet(numLigne, ligne, "Format invalide (idNumCompte;montant;idTypeOp)"));
+				continue;
+			}
+			if (op.montant == 0 || Double.isNaN(op.montant) || Double.isInfinite(op.montant)) {
+				rapport.rejets.add(new RapportImport.Rejet(numLigne, ligne, "Montant invalide"));
+				continue;
+			}
+			if (!typesOperation.contains(op.idTypeOp)) {
+				rapport.rejets.add(new RapportImport.Rejet(numLigne, ligne, "Type d'opération inconnu"));
+				continue;
+			}
+
+			lot.add(op);
+			numLignes.add(numLigne);
+			lignes.add(ligne);
+			if (lot.size() == tailleLot) {
+				this.importerLot(lot, numLignes, lignes, rapport);
+				lot.clear();
+				numLignes.clear();
+				lignes.clear();
+			}
+		}
+		if (!lot.isEmpty()) {
+			this.importerLot(lot, numLignes, lignes, rapport);
+		}
+
+		rapport.dureeMs = System.currentTimeMillis() - debut;
+		return rapport;
+	}
+
+	/**
+	 * Enregistre un lot d'opérations importées en une transaction (cf.
+	 * importerOperations).
+	 */
+	private void importerLot(ArrayList<Operation> lot, ArrayList<Integer> numLignes, ArrayList<String> lignes,
+			RapportImport rapport) throws DataAccessException, DatabaseConnexionException {
+		try {
+			Connection con = LogToDatabase.getConnexion();
+
+			// Verrouillage et lecture des comptes du lot
+			TreeSet<Integer> ids = new TreeSet<>();
+			for (Operation op : lot) {
+				ids.add(op.idNumCompte);
+			}
+			MoteurSoldes.ecritureDirecte(ids.stream().mapToInt(Integer::intValue).toArray());
+			TreeMap<Integer, CompteCourant> comptes = AccessCompteCourant.verrouillerComptes(con, ids);
+
+			// Contrôle des lignes dans l'ordre du fichier, soldes tenus à jour en mémoire
+			String query = "INSERT INTO Operation (idOperation, montant, dateValeur, idNumCompte, idTypeOp)"
+					+ " VALUES (" + LogToDatabase.getDialecte().nextval("seq_id_operation") + ", ?, "
+					+ LogToDatabase.getDialecte().dateValeur() + ", ?, ?)";
+			PreparedStatement pstOp = LogToDatabase.prepareStatement(con, query);
+			pstOp.clearBatch(); // ordre pris dans le cache : lot éventuel d'un appel interrompu vidé
+			int nbAcceptees = 0;
+			ArrayList<RapportImport.Rejet> rejets = new ArrayList<>();
+			TreeMap<Integer, CompteCourant> comptesModifies = new TreeMap<>();
+			for (int i = 0; i < lot.size(); i++) {
+				Operation op = lot.get(i);
+				CompteCourant cc = comptes.get(op.idNumCompte);
+				String motif = null;
+				if (cc == null) {
+					motif = "Compte inexistant";
+				} else if (cc.estCloture.equals("O")) {
+					motif = "Compte clôturé";
+				} else if (op.montant < 0 && cc.solde + op.montant < cc.debitAutorise) {
+					motif = "Découvert autorisé dépassé";
+				}
+				if (motif != null) {
+					rejets.add(new RapportImport.Rejet(numLignes.get(i), lignes.get(i), motif));
+					continue;
+				}
+				cc.solde += op.montant;
+				comptesModifies.put(cc.idNumCompte, cc);
+				pstOp.setDouble(1, op.montant);
+				pstOp.setInt(2, op.idNumCompte);
+				pstOp.setString(3, op.idTypeOp);
+				pstOp.addBatch();
+				nbAcceptees++;
+			}
+
+			if (nbAcceptees > 0) {
+				long chrono = LogORM.debutRequete();
+				pstOp.executeBatch();
+				LogORM.finRequete(query, chrono);
+
+				query = "UPDATE CompteCourant SET solde = ? WHERE idNumCompte = ?";
+				PreparedStatement pstSolde = LogToDatabase.prepareStatement(con, query);
+				pstSolde.clearBatch();
+				for (CompteCourant cc : comptesModifies.values()) {
+					pstSolde.setDouble(1, cc.solde);
+					pstSolde.setInt(2, cc.idNumCompte);
+					pstSolde.addBatch();
+				}
+				chrono = LogORM.debutRequete();
+				pstSolde.executeBatch();
+				LogORM.finRequete(query, chrono);
+			}
+			LogToDatabase.commit(con);
+
+			rapport.nbAcceptees += nbAcceptees;
+			rapport.rejets.addAll(rejets);
+		} catch (SQLException e) {
+			throw new DataAccessException(Table.Operation, Order.INSERT, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
+		}
+	}
+
+	/**
+	 * Construit une Operation à partir de la ligne courante de rs.
+	 *
+	 * @param rs ResultSet positionné sur une ligne de la table Operation
+	 * @return l'Operation lue
+	 * @throws SQLException
+	 */
+	static Operation lireOperation(ResultSet rs) throws SQLException {
+		int idOperation = rs.getInt("idOperation");
+		double montant = rs.getDouble("montant");
+		Date dateOp = rs.getDate("dateOp");
+		Date dateValeur = rs.getDate("dateValeur");
+		int idNumCompte = rs.getInt("idNumCompte");
+		String idTypeOp = rs.getString("idTypeOp");
+
+		return new Operation(idOperation, montant, dateOp, dateValeur, idNumCompte, idTypeOp);
+	}
+
+	/**
+	 * Premier jour d'un mois donné.
+	 *
+	 * @param mois  le mois (1 à 12, ex : "03")
+	 * @param annee l'année (ex : "2022")
+	 * @return la date du 1er du mois à 0h
+	 */
+	public static Date premierJourDuMois(String mois, String annee) {
+		return Date.valueOf(LocalDate.of(Integer.parseInt(annee), Integer.parseInt(mois), 1));
+	}
+
+	/**
+	 * Premier jour du mois suivant un mois donné (borne exclue d'une recherche
+	 * mensuelle).
+	 *
+	 * @param mois  le mois (1 à 12, ex : "12")
+	 * @param annee l'année (ex : "2022")
+	 * @return la date du 1er du mois suivant à 0h
+	 */
+	public static Date premierJourDuMoisSuivant(String mois, String annee) {
+		return Date.valueOf(LocalDate.of(Integer.parseInt(annee), Integer.parseInt(mois), 1).plusMonths(1));
 	}
 
 	/**
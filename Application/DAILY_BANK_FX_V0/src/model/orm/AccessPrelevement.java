@@ -1,13 +1,18 @@
 package model.orm;
 
-import java.sql.CallableStatement;
 import java.sql.Connection;
+import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
+import model.data.CompteCourant;
 import model.data.Prelevement;
+import model.data.ResultatPrelevements;
 import model.orm.exception.DataAccessException;
 import model.orm.exception.DatabaseConnexionException;
 import model.orm.exception.ManagementRuleViolation;
@@ -35,7 +40,7 @@ public class AccessPrelevement {
 			Connection con = LogToDatabase.getConnexion();
 			String query = "SELECT * FROM Prelevementautomatique where idNumCompte = ?";
 
-			PreparedStatement pst = con.prepareStatement(query);
+			PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
 			pst.setInt(1, idNumCompte);
 
 			ResultSet rs = pst.executeQuery();
@@ -49,37 +54,163 @@ public class AccessPrelevement {
 				alResult.add(new Prelevement(idPrelevement, montant, dateRecurrente, beneficiaire, idNumCompteConcerne));
 			}
 			rs.close();
-			pst.close();
 			return alResult;
 		} catch (SQLException e) {
 			throw new DataAccessException(Table.PrelevementAutomatique, Order.SELECT, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
 		}
 	}
 	
 	/**
+	 * Exécution des prélèvements automatiques d'un jour (ceux dont le jour de
+	 * prélèvement est le jour du mois de jour).
+	 *
+	 * Les prélèvements sont lus par pages de taillePage, triés par compte. Une
+	 * page = une transaction : les comptes de la page sont verrouillés et lus,
+	 * chaque prélèvement est accepté si le compte n'est pas clôturé et si le
+	 * découvert autorisé n'est pas dépassé (soldes tenus à jour en mémoire), puis
+	 * les opérations, les exécutions (table ExecutionPrelevement) et les nouveaux
+	 * soldes sont écrits par lots JDBC avant le commit.
+	 *
+	 * Un prélèvement exécuté est enregistré dans ExecutionPrelevement : relancer
+	 * l'exécution du même jour ne le prélève pas une seconde fois (seuls les
+	 * prélèvements rejetés sont retentés).
+	 *
+	 * @param jour       jour d'exécution
+	 * @param taillePage nombre de prélèvements par transaction
+	 * @return compte rendu de l'exécution (prélèvements exécutés, rejetés avec
+	 *         leur motif, totaux)
+	 * @throws DataAccessException        (la page en cours est annulée, les pages
+	 *                                    précédentes restent enregistrées)
+	 * @throws DatabaseConnexionException
 	 */
-	public String executePrelevement()
+	public ResultatPrelevements executerPrelevements(LocalDate jour, int taillePage)
 			throws DataAccessException, DatabaseConnexionException {
-		try {
+		ResultatPrelevements resultat = new ResultatPrelevements();
+		long debut = System.currentTimeMillis();
+		Date dateExecution = Date.valueOf(jour);
+		taillePage = Math.max(1, taillePage);
 
+		try {
 			Connection con = LogToDatabase.getConnexion();
-			CallableStatement call;
-
-			String q = "{call ExecuterPrelevAuto (?)}";
-			call = con.prepareCall(q);
-			// Paramètres out
-			call.registerOutParameter(1, java.sql.Types.VARCHAR);
 
-			call.execute();
+			String query = "SELECT COUNT(*) FROM ExecutionPrelevement WHERE dateExecution = ?";
+			PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
+			pst.setDate(1, dateExecution);
+			ResultSet rs = pst.executeQuery();
+			rs.next();
+			resultat.nbDejaExecutes = rs.getInt(1);
+			rs.close();
 
-			if (call.getString(1)!=null) { 
-				return call.getString(1);
-			}
-			return null;
-			
+			// Page suivante : reprise après le dernier (compte, prélèvement) lu
+			Dialecte dialecte = LogToDatabase.getDialecte();
+			query = dialecte.premieresLignes(
+					"SELECT p.idPrelev, p.montant, p.dateRecurrente, p.beneficiaire, p.idNumCompte"
+					+ " FROM PrelevementAutomatique p"
+					+ " WHERE p.dateRecurrente = ?"
+					+ " AND (p.idNumCompte > ? OR (p.idNumCompte = ? AND p.idPrelev > ?))"
+					+ " AND NOT EXISTS (SELECT 1 FROM ExecutionPrelevement e"
+					+ " WHERE e.idPrelev = p.idPrelev AND e.dateExecution = ?)"
+					+ " ORDER BY p.idNumCompte, p.idPrelev");
+			PreparedStatement pstPage = LogToDatabase.prepareStatement(con, query);
+			query = "INSERT INTO Operation (idOperation, montant, dateValeur, idNumCompte, idTypeOp)"
+					+ " VALUES (" + dialecte.nextval("seq_id_operation") + ", ?, " + dialecte.dateValeur()
+					+ ", ?, 'Prélèvement automatique')";
+			PreparedStatement pstOp = LogToDatabase.prepareStatement(con, query);
+			query = "INSERT INTO ExecutionPrelevement (idPrelev, dateExecution, idNumCompte, montant)"
+					+ " VALUES (?, ?, ?, ?)";
+			PreparedStatement pstExec = LogToDatabase.prepareStatement(con, query);
+			query = "UPDATE CompteCourant SET solde = ? WHERE idNumCompte = ?";
+			PreparedStatement pstSolde = LogToDatabase.prepareStatement(con, query);
+
+			int dernierCompte = -1;
+			int dernierPrelev = -1;
+			ArrayList<Prelevement> page;
+			do {
+				pstPage.setInt(1, jour.getDayOfMonth());
+				pstPage.setInt(2, dernierCompte);
+				pstPage.setInt(3, dernierCompte);
+				pstPage.setInt(4, dernierPrelev);
+				pstPage.setDate(5, dateExecution);
+				pstPage.setInt(6, taillePage);
+				page = new ArrayList<>();
+				TreeSet<Integer> ids = new TreeSet<>();
+				rs = pstPage.executeQuery();
+				while (rs.next()) {
+					Prelevement p = new Prelevement(rs.getInt("idPrelev"), rs.getDouble("montant"),
+							rs.getInt("dateRecurrente"), rs.getString("beneficiaire"), rs.getInt("idNumCompte"));
+					page.add(p);
+					ids.add(p.idNumCompte);
+				}
+				rs.close();
+				if (page.isEmpty()) {
+					break;
+				}
+				dernierCompte = page.get(page.size() - 1).idNumCompte;
+				dernierPrelev = page.get(page.size() - 1).idPrelev;
+
+				MoteurSoldes.ecritureDirecte(ids.stream().mapToInt(Integer::intValue).toArray());
+				TreeMap<Integer, CompteCourant> comptes = AccessCompteCourant.verrouillerComptes(con, ids);
+				ArrayList<Prelevement> executes = new ArrayList<>();
+				ArrayList<ResultatPrelevements.Rejet> rejets = new ArrayList<>();
+				// Ordres pris dans le cache : lot éventuel d'un appel interrompu vidé
+				pstOp.clearBatch();
+				pstExec.clearBatch();
+				pstSolde.clearBatch();
+				for (Prelevement p : page) {
+					CompteCourant cc = comptes.get(p.idNumCompte);
+					if (cc.estCloture.equals("O")) {
+						rejets.add(new ResultatPrelevements.Rejet(p, "Compte clôturé"));
+					} else if (cc.solde - p.montant < cc.debitAutorise) {
+						rejets.add(new ResultatPrelevements.Rejet(p, "Découvert autorisé dépassé"));
+					} else {
+						cc.solde -= p.montant;
+						executes.add(p);
+
+						pstOp.setDouble(1, -p.montant);
+						pstOp.setInt(2, p.idNumCompte);
+						pstOp.addBatch();
+						pstExec.setInt(1, p.idPrelev);
+						pstExec.setDate(2, dateExecution);
+						pstExec.setInt(3, p.idNumCompte);
+						pstExec.setDouble(4, p.montant);
+						pstExec.addBatch();
+					}
+				}
+
+				if (!executes.isEmpty()) {
+					// L'exécution d'abord : une exécution concurrente du même jour
+					// échoue ici (clé primaire) avant tout débit
+					pstExec.executeBatch();
+					pstOp.executeBatch();
+					TreeSet<Integer> debites = new TreeSet<>();
+					for (Prelevement p : executes) {
+						debites.add(p.idNumCompte);
+					}
+					for (int idNumCompte : debites) {
+						pstSolde.setDouble(1, comptes.get(idNumCompte).solde);
+						pstSolde.setInt(2, idNumCompte);
+						pstSolde.addBatch();
+					}
+					pstSolde.executeBatch();
+				}
+				LogToDatabase.commit(con);
+
+				resultat.executes.addAll(executes);
+				resultat.rejets.addAll(rejets);
+				for (Prelevement p : executes) {
+					resultat.montantTotal += p.montant;
+				}
+			} while (page.size() == taillePage);
 		} catch (SQLException e) {
 			throw new DataAccessException(Table.PrelevementAutomatique, Order.INSERT, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
 		}
+
+		resultat.dureeMs = System.currentTimeMillis() - debut;
+		return resultat;
 	}
 	
 	/**
@@ -96,44 +227,94 @@ public class AccessPrelevement {
 
 			Connection con = LogToDatabase.getConnexion();
 
-			String query = "INSERT INTO PRELEVEMENTAUTOMATIQUE VALUES (" + "seq_id_prelevAuto.NEXTVAL" + ", " + "?" + ", " + "?" + ", "
+			String query = "INSERT INTO PRELEVEMENTAUTOMATIQUE VALUES (" + LogToDatabase.getDialecte().nextval("seq_id_prelevAuto") + ", " + "?" + ", " + "?" + ", "
 					+ "?" + ", " + "?" + ")";
-			PreparedStatement pst = con.prepareStatement(query);
+			PreparedStatement pst = LogToDatabase.prepareStatement(con, query, new String[] { "idPrelev" });
 			pst.setDouble(1, prelevement.montant);
 			pst.setInt(2, prelevement.jour);
 			pst.setString(3, prelevement.beneficiaire);
 			pst.setInt(4, prelevement.idNumCompte);
 
-			System.err.println(query);
-
+			long chrono = LogORM.debutRequete();
 			int result = pst.executeUpdate();
-			pst.close();
+			LogORM.finRequete(query, chrono);
 
 			if (result != 1) {
-				con.rollback();
+				LogToDatabase.rollback(con);
 				throw new RowNotFoundOrTooManyRowsException(Table.PrelevementAutomatique, Order.INSERT,
 						"Insert anormal (insert de moins ou plus d'une ligne)", null, result);
 			}
 
-			query = "SELECT seq_id_prelevAuto.CURRVAL from DUAL";
-
-			System.err.println(query);
-			PreparedStatement pst2 = con.prepareStatement(query);
-
-			ResultSet rs = pst2.executeQuery();
+			// id pris dans la séquence, rendu par l'INSERT lui-même (pas de CURRVAL)
+			ResultSet rs = pst.getGeneratedKeys();
 			rs.next();
 			int numPrelBase = rs.getInt(1);
-
-			con.commit();
 			rs.close();
-			pst2.close();
+
+			LogToDatabase.commit(con);
 			
 			prelevement.idPrelev = numPrelBase;
 		} catch (SQLException e) {
 			throw new DataAccessException(Table.PrelevementAutomatique, Order.INSERT, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
 		}
 	}
 	
+	/**
+	 * Insertion en masse de prélèvements automatiques (ex : reprise des
+	 * prélèvements des clients d'une autre banque) en une seule transaction.
+	 *
+	 * Les ids sont réservés dans la séquence par lot (un aller-retour pour
+	 * LogToDatabase.TAILLE_LOT_INSERT lignes) puis les lignes sont envoyées par
+	 * lot (JDBC batch) : deux aller-retours par lot au lieu de deux par ligne.
+	 * Si une insertion échoue, aucune ligne n'est insérée.
+	 *
+	 * @param prelevements IN/OUT Tous les attributs IN sauf idPrelev en OUT
+	 * @throws DataAccessException
+	 * @throws DatabaseConnexionException
+	 */
+	public void insertPrelevements(ArrayList<Prelevement> prelevements) throws DataAccessException, DatabaseConnexionException {
+		if (prelevements.isEmpty()) {
+			return;
+		}
+		try {
+			Connection con = LogToDatabase.getConnexion();
+
+			String query = "INSERT INTO PRELEVEMENTAUTOMATIQUE VALUES (?, ?, ?, ?, ?)";
+			PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
+			pst.clearBatch(); // ordre pris dans le cache : lot éventuel d'un appel interrompu vidé
+
+			int[] ids = new int[prelevements.size()];
+			for (int debutLot = 0; debutLot < prelevements.size(); debutLot += LogToDatabase.TAILLE_LOT_INSERT) {
+				int finLot = Math.min(debutLot + LogToDatabase.TAILLE_LOT_INSERT, prelevements.size());
+				int[] idsLot = LogToDatabase.reserverIds(con, "seq_id_prelevAuto", finLot - debutLot);
+				for (int i = debutLot; i < finLot; i++) {
+					Prelevement prelevement = prelevements.get(i);
+					ids[i] = idsLot[i - debutLot];
+					pst.setInt(1, ids[i]);
+					pst.setDouble(2, prelevement.montant);
+					pst.setInt(3, prelevement.jour);
+					pst.setString(4, prelevement.beneficiaire);
+					pst.setInt(5, prelevement.idNumCompte);
+					pst.addBatch();
+				}
+				long chrono = LogORM.debutRequete();
+				pst.executeBatch();
+				LogORM.finRequete(query, chrono);
+			}
+			LogToDatabase.commit(con);
+
+			for (int i = 0; i < ids.length; i++) {
+				prelevements.get(i).idPrelev = ids[i];
+			}
+		} catch (SQLException e) {
+			throw new DataAccessException(Table.PrelevementAutomatique, Order.INSERT, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
+		}
+	}
+
 	/**
 	 * Méthode pour modifier un prélèvement dans la base de données
 	 * 
@@ -149,23 +330,24 @@ public class AccessPrelevement {
 
 			String query = "UPDATE PRELEVEMENTAUTOMATIQUE SET " + "montant = " + "? , " + "daterecurrente = " + "? " + "WHERE idPrelev = ? ";
 
-			PreparedStatement pst = con.prepareStatement(query);
+			PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
 			pst.setDouble(1, prelevement.montant);
 			pst.setInt(2, prelevement.jour);
 			pst.setInt(3, prelevement.idPrelev);
 
-			System.err.println(query);
-
+			long chrono = LogORM.debutRequete();
 			int result = pst.executeUpdate();
-			pst.close();
+			LogORM.finRequete(query, chrono);
 			if (result != 1) {
-				con.rollback();
+				LogToDatabase.rollback(con);
 				throw new RowNotFoundOrTooManyRowsException(Table.PrelevementAutomatique, Order.UPDATE,
 						"Update anormal (update de moins ou plus d'une ligne)", null, result);
 			}
-			con.commit();
+			LogToDatabase.commit(con);
 		} catch (SQLException e) {
 			throw new DataAccessException(Table.PrelevementAutomatique, Order.UPDATE, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
 		}
 	}
 	
@@ -184,29 +366,25 @@ public class AccessPrelevement {
 			Connection con = LogToDatabase.getConnexion();
 
 			String query = "DELETE FROM PRELEVEMENTAUTOMATIQUE WHERE idPrelev=?";
-			PreparedStatement pst = con.prepareStatement(query);
+			PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
 			pst.setInt(1, prelevement.idPrelev);
 
-			System.err.println(query);
-
+			long chrono = LogORM.debutRequete();
 			int result = pst.executeUpdate();
-			pst.close();
+			LogORM.finRequete(query, chrono);
 
 			if (result != 1) {
-				con.rollback();
+				LogToDatabase.rollback(con);
 				throw new RowNotFoundOrTooManyRowsException(Table.PrelevementAutomatique, Order.DELETE,
 						"Delete anormal (delete de moins ou plus d'une ligne)", null, result);
 			}
 
-			query = "SELECT seq_id_prelevAuto.CURRVAL from DUAL";
-
-			System.err.println(query);
-			PreparedStatement pst2 = con.prepareStatement(query);
-
-			con.commit();
+			LogToDatabase.commit(con);
 			
 		} catch (SQLException e) {
 			throw new DataAccessException(Table.PrelevementAutomatique, Order.INSERT, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
 		}
 	}
 }
@@ -14,11 +14,16 @@ import model.orm.exception.Table;
 
 public class AccessTypeOperation {
 
+	// Types d'opération : données de référence quasiment jamais modifiées
+	private static final CacheReference<ArrayList<TypeOperation>> cache = new CacheReference<>("TypeOperation",
+			AccessTypeOperation::chargerTypeOperations, CacheReference.DUREE_VALIDITE_DEFAUT_MS);
+
 	public AccessTypeOperation() {
 	}
 
 	/**
-	 * Recherche tous les TypeOpertion existants.
+	 * Recherche tous les TypeOpertion existants (servis depuis le cache, cf.
+	 * getCache()).
 	 *
 	 * @return Liste de tous les TypeOperation existant
 	 * @throws DataAccessException
@@ -26,25 +31,46 @@ public class AccessTypeOperation {
 	 */
 	public ArrayList<TypeOperation> getTypeOperations() throws DataAccessException, DatabaseConnexionException {
 		ArrayList<TypeOperation> alResult = new ArrayList<>();
+		for (TypeOperation to : AccessTypeOperation.cache.get()) {
+			alResult.add(new TypeOperation(to));
+		}
+		return alResult;
+	}
+
+	/**
+	 * @return le cache des TypeOperation (invalidation, statistiques)
+	 */
+	public static CacheReference<ArrayList<TypeOperation>> getCache() {
+		return AccessTypeOperation.cache;
+	}
+
+	/**
+	 * Lecture en BD de tous les TypeOperation (chargement du cache).
+	 */
+	private static ArrayList<TypeOperation> chargerTypeOperations()
+			throws DataAccessException, DatabaseConnexionException {
+		ArrayList<TypeOperation> alResult = new ArrayList<>();
 
 		try {
 			Connection con = LogToDatabase.getConnexion();
 			String query = "SELECT * FROM TypeOperation ORDER BY idTypeOp";
 
-			System.err.println(query);
 
-			PreparedStatement pst = con.prepareStatement(query);
+			PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
 
+			long chrono = LogORM.debutRequete();
 			ResultSet rs = pst.executeQuery();
+			LogORM.finRequete(query, chrono);
 			while (rs.next()) {
 				String idTypeOp = rs.getString("idTypeOp");
 
 				alResult.add(new TypeOperation(idTypeOp));
 			}
 			rs.close();
-			pst.close();
 		} catch (SQLException e) {
 			throw new DataAccessException(Table.TypeOperation, Order.SELECT, "Erreur accès", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
 		}
 
 		return alResult;
@@ -0,0 +1,125 @@
+package model.orm;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import model.orm.exception.DataAccessException;
+import model.orm.exception.DatabaseConnexionException;
+
+/**
+ * Cache en lecture d'une donnée de référence (table quasiment jamais modifiée,
+ * ex : TypeOperation, AgenceBancaire).
+ *
+ * La donnée est chargée en BD au premier accès puis servie depuis la mémoire
+ * jusqu'à expiration de sa durée de validité ou invalidation explicite. Le
+ * chargement est fait sous verrou : des accès simultanés sur un cache vide ne
+ * déclenchent qu'une seule requête.
+ *
+ * La valeur en cache est partagée : elle ne doit pas être modifiée (les DAO
+ * retournent des copies).
+ *
+ * @param <T> type de la donnée en cache
+ */
+public class CacheReference<T> {
+
+	// Durée de validité par défaut d'une donnée en cache
+	public static final long DUREE_VALIDITE_DEFAUT_MS = 30 * 60_000;
+
+	/**
+	 * Chargement de la donnée en BD
+	 *
+	 * @param <T> type de la donnée chargée
+	 */
+	@FunctionalInterface
+	public interface Chargement<T> {
+		T charger() throws DataAccessException, DatabaseConnexionException;
+	}
+
+	private final String nom;
+	private final Chargement<T> chargement;
+	private final long dureeValiditeMs;
+
+	private T valeur = null;
+	private long dateChargementMs = 0;
+
+	private final AtomicLong nbHits = new AtomicLong();
+	private final AtomicLong nbMisses = new AtomicLong();
+
+	/**
+	 * @param nom             nom du cache (affichage des statistiques)
+	 * @param chargement      chargement de la donnée en BD
+	 * @param dureeValiditeMs durée au delà de laquelle la donnée est rechargée
+	 */
+	public CacheReference(String nom, Chargement<T> chargement, long dureeValiditeMs) {
+		this.nom = nom;
+		this.chargement = chargement;
+		this.dureeValiditeMs = dureeValiditeMs;
+	}
+
+	/**
+	 * Retourne la donnée, chargée en BD si absente ou expirée.
+	 *
+	 * @return la donnée (à ne pas modifier)
+	 * @throws DataAccessException
+	 * @throws DatabaseConnexionException
+	 */
+	public synchronized T get() throws DataAccessException, DatabaseConnexionException {
+		if (this.valeur != null && System.currentTimeMillis() - this.dateChargementMs < this.dureeValiditeMs) {
+			this.nbHits.incrementAndGet();
+			return this.valeur;
+		}
+		this.nbMisses.incrementAndGet();
+		this.valeur = this.chargement.charger();
+		this.dateChargementMs = System.currentTimeMillis();
+		return this.valeur;
+	}
+
+	/**
+	 * Charge la donnée si elle n'est pas déjà en cache (ex : au démarrage).
+	 *
+	 * @throws DataAccessException
+	 * @throws DatabaseConnexionException
+	 */
+	public synchronized void precharger() throws DataAccessException, DatabaseConnexionException {
+		if (this.valeur == null) {
+			this.valeur = this.chargement.charger();
+			this.dateChargementMs = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Vide le cache : le prochain accès relira la BD (à appeler après une
+	 * modification de la table).
+	 */
+	public synchronized void invalider() {
+		this.valeur = null;
+	}
+
+	/**
+	 * @return nombre d'accès servis depuis le cache
+	 */
+	public long getNbSucces() {
+		return this.nbHits.get();
+	}
+
+	/**
+	 * @return nombre d'accès ayant nécessité une lecture BD
+	 */
+	public long getNbEchecs() {
+		return this.nbMisses.get();
+	}
+
+	/**
+	 * @return proportion (entre 0 et 1) des accès servis depuis le cache
+	 */
+	public double getTauxSucces() {
+		long hits = this.nbHits.get();
+		long total = hits + this.nbMisses.get();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	@Override
+	public String toString() {
+		return "CacheReference [" + this.nom + " : succes=" + this.getNbSucces() + ", echecs=" + this.getNbEchecs()
+				+ ", tauxSucces=" + String.format("%.2f", this.getTauxSucces()) + "]";
+	}
+}
@@ -0,0 +1,149 @@
+package model.orm;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+/**
+ * Paramètres d'accès à la BD, lus dans un fichier de propriétés externe (pas
+ * de recompilation pour changer de base).
+ *
+ * Fichier lu : celui indiqué par -Ddailybank.config=chemin, sinon
+ * dailybank.properties dans le répertoire courant s'il existe. Sans fichier (ou
+ * pour une propriété absente), les valeurs par défaut sont celles du serveur
+ * Oracle de l'IUT. Une propriété système (-Dbd.url=...) est prioritaire sur le
+ * fichier.
+ *
+ * Propriétés : bd.dialecte (oracle | h2), bd.url, bd.utilisateur,
+ * bd.motDePasse, bd.driver (par défaut celui du dialecte), bd.pool.tailleMin,
+ * bd.pool.tailleMax, bd.pool.attenteMaxMs, bd.pool.inactiviteMaxMs,
+ * bd.pool.validationMs, bd.pool.cacheRequetes, bd.moteurSoldes (true | false,
+ * par défaut false : cf. MoteurSoldes, seulement si l'application est seule à
+ * modifier les soldes), bd.moteurSoldes.journal (fichier du journal des
+ * opérations du moteur), bd.historique (répertoire de la copie locale des
+ * opérations, cf. HistoriqueOperations ; vide par défaut : pas de copie).
+ */
+public class ConfigurationBD {
+
+	public static final String FICHIER_DEFAUT = "dailybank.properties";
+
+	private final Properties proprietes = new Properties();
+	private final String origine;
+
+	private ConfigurationBD(String origine) {
+		this.origine = origine;
+	}
+
+	/**
+	 * Lit la configuration (cf. description de la classe).
+	 *
+	 * @return la configuration
+	 */
+	public static ConfigurationBD charger() {
+		String chemin = System.getProperty("dailybank.config");
+		if (chemin == null && new File(ConfigurationBD.FICHIER_DEFAUT).isFile()) {
+			chemin = ConfigurationBD.FICHIER_DEFAUT;
+		}
+		if (chemin == null) {
+			return new ConfigurationBD("valeurs par défaut");
+		}
+		ConfigurationBD config = new ConfigurationBD(chemin);
+		try (InputStream in = new FileInputStream(chemin)) {
+			config.proprietes.load(new InputStreamReader(in, StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			LogORM.erreur("Configuration BD " + chemin + " illisible, valeurs par défaut utilisées", e);
+		}
+		return config;
+	}
+
+	private String get(String cle, String defaut) {
+		String v = System.getProperty(cle);
+		if (v == null) {
+			v = this.proprietes.getProperty(cle);
+		}
+		// une valeur vide est conservée (ex : mot de passe vide de H2)
+		return v == null ? defaut : v.trim();
+	}
+
+	private long getLong(String cle, long defaut) {
+		String v = this.get(cle, null);
+		if (v == null || v.isEmpty()) {
+			return defaut;
+		}
+		try {
+			return Long.parseLong(v);
+		} catch (NumberFormatException e) {
+			LogORM.log(LogORM.Niveau.WARN, "Configuration BD : " + cle + "=" + v + " invalide, " + defaut + " utilisé");
+			return defaut;
+		}
+	}
+
+	public Dialecte getDialecte() {
+		String nom = this.get("bd.dialecte", "");
+		return Dialecte.get(nom.isEmpty() ? "oracle" : nom);
+	}
+
+	public String getUrl() {
+		return this.get("bd.url", "jdbc:oracle:thin:@oracle.iut-blagnac.fr:1521:db11g");
+	}
+
+	public String getUtilisateur() {
+		return this.get("bd.utilisateur", "G2B1");
+	}
+
+	public String getMotDePasse() {
+		return this.get("bd.motDePasse", "Iut2022S2");
+	}
+
+	public String getDriver() {
+		String driver = this.get("bd.driver", "");
+		return driver.isEmpty() ? this.getDialecte().getDriver() : driver;
+	}
+
+	public int getTailleMinPool() {
+		return (int) this.getLong("bd.pool.tailleMin", 1);
+	}
+
+	public int getTailleMaxPool() {
+		return (int) this.getLong("bd.pool.tailleMax", 8);
+	}
+
+	public long getDelaiAttenteMaxMs() {
+		return this.getLong("bd.pool.attenteMaxMs", 10_000);
+	}
+
+	public long getDelaiInactiviteMaxMs() {
+		return this.getLong("bd.pool.inactiviteMaxMs", 5 * 60_000);
+	}
+
+	public long getPeriodeValidationMs() {
+		return this.getLong("bd.pool.validationMs", 30_000);
+	}
+
+	public int getTailleCacheRequetes() {
+		return (int) this.getLong("bd.pool.cacheRequetes", 32);
+	}
+
+	public boolean isMoteurSoldes() {
+		return Boolean.parseBoolean(this.get("bd.moteurSoldes", "false"));
+	}
+
+	public String getJournalOperations() {
+		String fichier = this.get("bd.moteurSoldes.journal", "");
+		return fichier.isEmpty() ? "dailybank-operations.journal" : fichier;
+	}
+
+	public String getRepertoireHistorique() {
+		return this.get("bd.historique", "");
+	}
+
+	@Override
+	public String toString() {
+		return "ConfigurationBD [" + this.origine + " : dialecte=" + this.get("bd.dialecte", "oracle") + ", url="
+				+ this.getUrl() + ", utilisateur=" + this.getUtilisateur() + "]";
+	}
+}
@@ -0,0 +1,512 @@
+package model.orm;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import model.orm.exception.DatabaseConnexionException;
+
+/**
+ * Pool borné de connexions à la BD.
+ *
+ * Les connexions sont empruntées (borrowConnexion) puis restituées
+ * (releaseConnexion). Le pool garde entre tailleMin et tailleMax connexions
+ * ouvertes. Une tâche de fond valide périodiquement les connexions inactives,
+ * ferme celles inactives depuis trop longtemps (au-dessus de tailleMin) et
+ * recrée les connexions manquantes : aucune validation n'est faite à l'emprunt.
+ *
+ * Connexions paramétrées SANS COMMIT AUTOMATIQUE.
+ */
+public class ConnexionPool {
+
+	// Paramétrage de la connexion
+	private final String url;
+	private final String user;
+	private final String passwd;
+
+	// Paramétrage du pool
+	private final int tailleMin;
+	private final int tailleMax;
+	private final long delaiAttenteMaxMs;
+	private final long delaiInactiviteMaxMs;
+	private final int tailleCacheRequetes;
+
+	// Etat du pool (protégé par verrou)
+	private final ReentrantLock verrou = new ReentrantLock();
+	private final Condition connexionDisponible = this.verrou.newCondition();
+	private final ArrayDeque<ConnexionInactive> inactives = new ArrayDeque<>();
+	private int nbActives = 0;
+	private int nbEnPreparation = 0; // en cours de création ou de validation
+	private boolean estFerme = false;
+
+	// Statistiques (protégées par verrou)
+	private long nbEmprunts = 0;
+	private long nbTimeouts = 0;
+	private long attenteTotaleNs = 0;
+	private long attenteMaxNs = 0;
+
+	private final ScheduledExecutorService maintenance;
+
+	// Cache des requêtes préparées de chaque connexion ouverte
+	private final ConcurrentHashMap<Connection, StatementCache> caches = new ConcurrentHashMap<>();
+
+	/**
+	 * Connexion inactive (dans le pool) et date de sa dernière restitution.
+	 */
+	private static class ConnexionInactive {
+		final Connection con;
+		final long depuisMs;
+
+		ConnexionInactive(Connection con, long depuisMs) {
+			this.con = con;
+			this.depuisMs = depuisMs;
+		}
+	}
+
+	/**
+	 * @param url                  url JDBC de la BD
+	 * @param user                 utilisateur BD
+	 * @param passwd               mot de passe BD
+	 * @param tailleMin            nombre minimum de connexions gardées ouvertes
+	 * @param tailleMax            nombre maximum de connexions ouvertes
+	 * @param delaiAttenteMaxMs    attente maximum d'un emprunt (ms)
+	 * @param delaiInactiviteMaxMs durée d'inactivité au delà de laquelle une
+	 *                             connexion est fermée (ms)
+	 * @param periodeValidationMs  période de la tâche de validation/éviction (ms)
+	 * @param tailleCacheRequetes  nombre de requêtes préparées gardées en cache
+	 *                             par connexion
+	 */
+	public ConnexionPool(String url, String user, String passwd, int tailleMin, int tailleMax, long delaiAttenteMaxMs,
+			long delaiInactiviteMaxMs, long periodeValidationMs, int tailleCacheRequetes) {
+		if (tailleMin < 0 || tailleMax < 1 || tailleMin > tailleMax) {
+			throw new IllegalArgumentException("Tailles de pool incorrectes : min=" + tailleMin + " max=" + tailleMax);
+		}
+		this.url = url;
+		this.user = user;
+		this.passwd = passwd;
+		this.tailleMin = tailleMin;
+		this.tailleMax = tailleMax;
+		this.delaiAttenteMaxMs = delaiAttenteMaxMs;
+		this.delaiInactiviteMaxMs = delaiInactiviteMaxMs;
+		this.tailleCacheRequetes = tailleCacheRequetes;
+
+		this.maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "ConnexionPool-maintenance");
+			t.setDaemon(true);
+			return t;
+		});
+		this.maintenance.scheduleWithFixedDelay(this::maintenir, periodeValidationMs, periodeValidationMs,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Emprunt d'une connexion.
+	 *
+	 * Retourne une connexion inactive si possible, en crée une nouvelle si le
+	 * pool n'est pas plein, attend sinon (au plus delaiAttenteMaxMs).
+	 *
+	 * @return Une connexion à la base de donnée SANS commit automatique
+	 * @throws DatabaseConnexionException pool fermé, timeout ou connexion
+	 *                                    impossible
+	 */
+	public Connection borrowConnexion() throws DatabaseConnexionException {
+		long debut = System.nanoTime();
+		long resteNs = TimeUnit.MILLISECONDS.toNanos(this.delaiAttenteMaxMs);
+
+		this.verrou.lock();
+		try {
+			while (true) {
+				if (this.estFerme) {
+					throw new DatabaseConnexionException("Pool de connexions fermé", null);
+				}
+				ConnexionInactive ci = this.inactives.pollFirst();
+				if (ci != null) {
+					this.nbActives++;
+					this.noterEmprunt(debut);
+					return ci.con;
+				}
+				if (this.getTailleCouranteSansVerrou() < this.tailleMax) {
+					this.nbEnPreparation++;
+					break;
+				}
+				if (resteNs <= 0) {
+					this.nbTimeouts++;
+					throw new DatabaseConnexionException("Timeout sur connexion (pool plein : " + this.tailleMax + ")",
+							null);
+				}
+				try {
+					resteNs = this.connexionDisponible.awaitNanos(resteNs);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new DatabaseConnexionException("Attente de connexion interrompue", e);
+				}
+			}
+		} finally {
+			this.verrou.unlock();
+		}
+
+		// Création hors verrou (aller-retour réseau)
+		Connection con;
+		try {
+			con = this.nouvelleConnexion();
+		} catch (DatabaseConnexionException e) {
+			this.verrou.lock();
+			try {
+				this.nbEnPreparation--;
+				this.connexionDisponible.signal();
+			} finally {
+				this.verrou.unlock();
+			}
+			throw e;
+		}
+
+		this.verrou.lock();
+		try {
+			this.nbEnPreparation--;
+			this.nbActives++;
+			this.noterEmprunt(debut);
+		} finally {
+			this.verrou.unlock();
+		}
+		return con;
+	}
+
+	/**
+	 * Restitution d'une connexion empruntée.
+	 *
+	 * Une éventuelle transaction non validée est annulée. Une connexion fermée ou
+	 * en erreur n'est pas remise dans le pool.
+	 *
+	 * @param con connexion obtenue par borrowConnexion()
+	 */
+	public void releaseConnexion(Connection con) {
+		if (con == null) {
+			return;
+		}
+		boolean reutilisable;
+		try {
+			reutilisable = !con.isClosed();
+			if (reutilisable && !con.getAutoCommit()) {
+				con.rollback();
+			}
+		} catch (SQLException e) {
+			reutilisable = false;
+		}
+
+		boolean aFermer = !reutilisable;
+		this.verrou.lock();
+		try {
+			this.nbActives--;
+			if (this.estFerme) {
+				aFermer = true;
+			} else if (reutilisable) {
+				this.inactives.offerFirst(new ConnexionInactive(con, System.currentTimeMillis()));
+			}
+			this.connexionDisponible.signal();
+		} finally {
+			this.verrou.unlock();
+		}
+		if (aFermer) {
+			this.fermerSilencieusement(con);
+		}
+	}
+
+	/**
+	 * Fermeture du pool : ferme les connexions inactives, les connexions actives
+	 * seront fermées à leur restitution.
+	 */
+	public void close() {
+		ArrayList<Connection> aFermer = new ArrayList<>();
+		this.verrou.lock();
+		try {
+			this.estFerme = true;
+			for (ConnexionInactive ci : this.inactives) {
+				aFermer.add(ci.con);
+			}
+			this.inactives.clear();
+			this.connexionDisponible.signalAll();
+		} finally {
+			this.verrou.unlock();
+		}
+		this.maintenance.shutdownNow();
+		for (Connection con : aFermer) {
+			this.fermerSilencieusement(con);
+		}
+	}
+
+	/**
+	 * Tâche de fond : validation des connexions inactives, éviction des
+	 * connexions inactives depuis trop longtemps, remise à tailleMin.
+	 */
+	private void maintenir() {
+		ArrayList<ConnexionInactive> aValider = new ArrayList<>();
+		ArrayList<Connection> aFermer = new ArrayList<>();
+		long maintenant = System.currentTimeMillis();
+
+		this.verrou.lock();
+		try {
+			if (this.estFerme) {
+				return;
+			}
+			int taille = this.getTailleCouranteSansVerrou();
+			// Les plus anciennes sont en fin de file
+			Iterator<ConnexionInactive> it = this.inactives.descendingIterator();
+			while (it.hasNext()) {
+				ConnexionInactive ci = it.next();
+				it.remove();
+				if (taille > this.tailleMin && maintenant - ci.depuisMs > this.delaiInactiviteMaxMs) {
+					aFermer.add(ci.con);
+					taille--;
+				} else {
+					aValider.add(ci);
+				}
+			}
+			this.nbEnPreparation += aValider.size();
+		} finally {
+			this.verrou.unlock();
+		}
+
+		for (Connection con : aFermer) {
+			this.fermerSilencieusement(con);
+		}
+
+		for (ConnexionInactive ci : aValider) {
+			Connection con = ci.con;
+			boolean valide;
+			try {
+				valide = con.isValid(2);
+			} catch (SQLException e) {
+				valide = false;
+			}
+			if (!valide) {
+				this.fermerSilencieusement(con);
+			}
+			this.verrou.lock();
+			try {
+				this.nbEnPreparation--;
+				if (valide && !this.estFerme) {
+					this.inactives.offerLast(ci);
+					this.connexionDisponible.signal();
+				} else if (valide) {
+					this.fermerSilencieusement(con);
+				}
+			} finally {
+				this.verrou.unlock();
+			}
+		}
+
+		this.completerTailleMin();
+	}
+
+	/**
+	 * Crée les connexions manquantes pour atteindre tailleMin.
+	 */
+	private void completerTailleMin() {
+		while (true) {
+			this.verrou.lock();
+			try {
+				if (this.estFerme || this.getTailleCouranteSansVerrou() >= this.tailleMin) {
+					return;
+				}
+				this.nbEnPreparation++;
+			} finally {
+				this.verrou.unlock();
+			}
+
+			Connection con = null;
+			try {
+				con = this.nouvelleConnexion();
+			} catch (DatabaseConnexionException e) {
+				// BD indisponible : on réessaiera au prochain passage
+			}
+
+			this.verrou.lock();
+			try {
+				this.nbEnPreparation--;
+				if (con == null) {
+					return;
+				}
+				if (this.estFerme) {
+					this.fermerSilencieusement(con);
+					return;
+				}
+				this.inactives.offerLast(new ConnexionInactive(con, System.currentTimeMillis()));
+				this.connexionDisponible.signal();
+			} finally {
+				this.verrou.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Ouvre une connexion dédiée, hors du pool : elle ne compte pas dans
+	 * tailleMax et n'attend jamais une connexion libre. Réservée à un thread
+	 * dont les autres attendent le travail (cf. MoteurSoldes), à fermer par
+	 * fermerConnexionHorsPool().
+	 *
+	 * @return Une connexion à la base de donnée SANS commit automatique
+	 * @throws DatabaseConnexionException pool fermé ou connexion impossible
+	 */
+	public Connection ouvrirConnexionHorsPool() throws DatabaseConnexionException {
+		this.verrou.lock();
+		try {
+			if (this.estFerme) {
+				throw new DatabaseConnexionException("Pool de connexions fermé", null);
+			}
+		} finally {
+			this.verrou.unlock();
+		}
+		return this.nouvelleConnexion();
+	}
+
+	/**
+	 * Ferme une connexion ouverte par ouvrirConnexionHorsPool().
+	 *
+	 * @param con connexion dédiée
+	 */
+	public void fermerConnexionHorsPool(Connection con) {
+		if (con != null) {
+			this.fermerSilencieusement(con);
+		}
+	}
+
+	private Connection nouvelleConnexion() throws DatabaseConnexionException {
+		try {
+			Connection con = DriverManager.getConnection(this.url, this.user, this.passwd);
+			con.setAutoCommit(false);
+			this.caches.put(con, new StatementCache(con, this.tailleCacheRequetes));
+			return con;
+		} catch (SQLTimeoutException e) {
+			throw new DatabaseConnexionException("Timeout sur connexion", e);
+		} catch (SQLException e) {
+			throw new DatabaseConnexionException("Connexion Impossible", e);
+		}
+	}
+
+	private void noterEmprunt(long debutNs) {
+		long attente = System.nanoTime() - debutNs;
+		this.nbEmprunts++;
+		this.attenteTotaleNs += attente;
+		if (attente > this.attenteMaxNs) {
+			this.attenteMaxNs = attente;
+		}
+	}
+
+	private int getTailleCouranteSansVerrou() {
+		return this.nbActives + this.inactives.size() + this.nbEnPreparation;
+	}
+
+	/**
+	 * Cache des requêtes préparées d'une connexion du pool.
+	 *
+	 * @param con connexion empruntée à ce pool
+	 * @return le cache de con, null si con n'appartient pas (ou plus) au pool
+	 */
+	public StatementCache getStatementCache(Connection con) {
+		return this.caches.get(con);
+	}
+
+	private void fermerSilencieusement(Connection con) {
+		StatementCache cache = this.caches.remove(con);
+		if (cache != null) {
+			cache.clear();
+		}
+		try {
+			con.close();
+		} catch (SQLException e) {
+			// Let's continue
+		}
+	}
+
+	// Métriques du pool
+
+	/**
+	 * @return nombre de connexions actuellement empruntées
+	 */
+	public int getNbActives() {
+		this.verrou.lock();
+		try {
+			return this.nbActives;
+		} finally {
+			this.verrou.unlock();
+		}
+	}
+
+	/**
+	 * @return nombre de connexions inactives disponibles dans le pool
+	 */
+	public int getNbInactives() {
+		this.verrou.lock();
+		try {
+			return this.inactives.size();
+		} finally {
+			this.verrou.unlock();
+		}
+	}
+
+	/**
+	 * @return nombre total d'emprunts réussis
+	 */
+	public long getNbEmprunts() {
+		this.verrou.lock();
+		try {
+			return this.nbEmprunts;
+		} finally {
+			this.verrou.unlock();
+		}
+	}
+
+	/**
+	 * @return nombre d'emprunts ayant échoué sur timeout
+	 */
+	public long getNbTimeouts() {
+		this.verrou.lock();
+		try {
+			return this.nbTimeouts;
+		} finally {
+			this.verrou.unlock();
+		}
+	}
+
+	/**
+	 * @return temps d'attente moyen d'un emprunt (ms)
+	 */
+	public double getAttenteMoyenneMs() {
+		this.verrou.lock();
+		try {
+			return this.nbEmprunts == 0 ? 0 : this.attenteTotaleNs / 1_000_000.0 / this.nbEmprunts;
+		} finally {
+			this.verrou.unlock();
+		}
+	}
+
+	/**
+	 * @return temps d'attente maximum d'un emprunt (ms)
+	 */
+	public double getAttenteMaxMs() {
+		this.verrou.lock();
+		try {
+			return this.attenteMaxNs / 1_000_000.0;
+		} finally {
+			this.verrou.unlock();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "ConnexionPool [actives=" + this.getNbActives() + ", inactives=" + this.getNbInactives() + ", emprunts="
+				+ this.getNbEmprunts() + ", attenteMoy=" + String.format("%.3f", this.getAttenteMoyenneMs())
+				+ "ms, attenteMax=" + String.format("%.3f", this.getAttenteMaxMs()) + "ms, timeouts="
+				+ this.getNbTimeouts() + ", min=" + this.tailleMin + ", max=" + this.tailleMax + "]";
+	}
+}
@@ -0,0 +1,209 @@
+package model.orm;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Particularités SQL d'un moteur de BD (dialecte), pour que les DAO
+ * fonctionnent sur le serveur Oracle comme sur une base H2 embarquée (tests et
+ * mesures en local, sans réseau).
+ *
+ * Seules les constructions propres à Oracle utilisées par les DAO sont
+ * concernées ; le reste du SQL des DAO est standard.
+ */
+public abstract class Dialecte {
+
+	/**
+	 * Serveur Oracle (11g) : procédures stockées du script scriptCreaBase.txt
+	 */
+	public static class Oracle extends Dialecte {
+
+		@Override
+		public String getDriver() {
+			return "oracle.jdbc.driver.OracleDriver";
+		}
+
+		@Override
+		public boolean avecProceduresStockees() {
+			return true;
+		}
+
+		@Override
+		public String nextval(String sequence) {
+			return sequence + ".NEXTVAL";
+		}
+
+		@Override
+		public String dateValeur() {
+			return "sysdate + 2";
+		}
+
+		@Override
+		public String premieresLignes(String query) {
+			return "SELECT * FROM (" + query + ") WHERE ROWNUM <= ?";
+		}
+
+		@Override
+		public String lignes(String query) {
+			return "SELECT * FROM (SELECT p.*, ROWNUM numLigne FROM (" + query
+					+ ") p WHERE ROWNUM <= ?) WHERE numLigne > ?";
+		}
+
+		@Override
+		public int parametresLignes(PreparedStatement pst, int numParam, int debut, int nb) throws SQLException {
+			pst.setInt(numParam++, debut + nb);
+			pst.setInt(numParam++, debut);
+			return numParam;
+		}
+
+		@Override
+		public String cleTri(String expression) {
+			// Comparaison selon le tri de la session (NLS_SORT), comme le ORDER BY
+			return "NLSSORT(" + expression + ")";
+		}
+
+		@Override
+		public String reserverIds(String sequence) {
+			return "SELECT " + sequence + ".NEXTVAL FROM DUAL CONNECT BY LEVEL <= ?";
+		}
+	}
+
+	/**
+	 * Base H2 embarquée (en mémoire ou fichier, cf. scriptCreaBaseH2.sql) : pas
+	 * de procédures stockées, remplacées par ProceduresJava
+	 */
+	public static class H2 extends Dialecte {
+
+		@Override
+		public String getDriver() {
+			return "org.h2.Driver";
+		}
+
+		@Override
+		public boolean avecProceduresStockees() {
+			return false;
+		}
+
+		@Override
+		public String nextval(String sequence) {
+			return "NEXT VALUE FOR " + sequence;
+		}
+
+		@Override
+		public String dateValeur() {
+			return "DATEADD(DAY, 2, CURRENT_DATE)";
+		}
+
+		@Override
+		public String premieresLignes(String query) {
+			return query + " LIMIT ?";
+		}
+
+		@Override
+		public String lignes(String query) {
+			return query + " LIMIT ? OFFSET ?";
+		}
+
+		@Override
+		public int parametresLignes(PreparedStatement pst, int numParam, int debut, int nb) throws SQLException {
+			pst.setInt(numParam++, nb);
+			pst.setInt(numParam++, debut);
+			return numParam;
+		}
+
+		@Override
+		public String cleTri(String expression) {
+			return expression;
+		}
+
+		@Override
+		public String reserverIds(String sequence) {
+			return "SELECT NEXT VALUE FOR " + sequence + " FROM SYSTEM_RANGE(1, ?)";
+		}
+	}
+
+	/**
+	 * @param nom nom du dialecte ("oracle" ou "h2")
+	 * @return le dialecte
+	 * @throws IllegalArgumentException si le dialecte est inconnu
+	 */
+	public static Dialecte get(String nom) {
+		switch (nom.toLowerCase()) {
+		case "oracle":
+			return new Oracle();
+		case "h2":
+			return new H2();
+		default:
+			throw new IllegalArgumentException("Dialecte de BD inconnu : " + nom);
+		}
+	}
+
+	/**
+	 * @return classe du driver JDBC par défaut
+	 */
+	public abstract String getDriver();
+
+	/**
+	 * @return vrai si les procédures stockées (Debiter, Virer, ...) existent en BD,
+	 *         faux s'il faut utiliser leur version Java (ProceduresJava)
+	 */
+	public abstract boolean avecProceduresStockees();
+
+	/**
+	 * @param sequence nom de la séquence
+	 * @return expression SQL de la valeur suivante de la séquence
+	 */
+	public abstract String nextval(String sequence);
+
+	/**
+	 * @return expression SQL de la date de valeur d'une opération (date du jour +
+	 *         2 jours)
+	 */
+	public abstract String dateValeur();
+
+	/**
+	 * @param query requête triée
+	 * @return requête limitée aux n premières lignes de query (n : dernier
+	 *         paramètre ?)
+	 */
+	public abstract String premieresLignes(String query);
+
+	/**
+	 * @param query requête triée
+	 * @return requête limitée aux lignes de query d'un intervalle [debut, debut +
+	 *         nb[ (deux derniers paramètres ?, cf. parametresLignes). Les lignes
+	 *         sautées sont lues par la BD : préférer la pagination par clé
+	 *         (cleTri) quand la ligne précédente est connue
+	 */
+	public abstract String lignes(String query);
+
+	/**
+	 * Renseigne les deux paramètres ajoutés par lignes(query).
+	 *
+	 * @param pst      requête préparée à partir de lignes(query)
+	 * @param numParam numéro du premier des deux paramètres
+	 * @param debut    nombre de lignes sautées
+	 * @param nb       nombre maximum de lignes rendues
+	 * @return numéro du paramètre suivant
+	 * @throws SQLException
+	 */
+	public abstract int parametresLignes(PreparedStatement pst, int numParam, int debut, int nb) throws SQLException;
+
+	/**
+	 * @param expression colonne ou paramètre ? de type chaîne
+	 * @return expression à comparer (&lt;, =, &gt;) dans le même ordre que le ORDER
+	 *         BY sur la colonne (pagination par clé)
+	 */
+	public abstract String cleTri(String expression);
+
+	/**
+	 * @param sequence nom de la séquence
+	 * @return requête rendant n valeurs de la séquence (n : paramètre ?)
+	 */
+	public abstract String reserverIds(String sequence);
+
+	@Override
+	public String toString() {
+		return this.getClass().getSimpleName();
+	}
+}
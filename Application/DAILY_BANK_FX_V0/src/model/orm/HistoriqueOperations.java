@@ -0,0 +1,566 @@
+package model.orm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import model.data.Operation;
+import model.orm.exception.DataAccessException;
+import model.orm.exception.DatabaseConnexionException;
+import model.orm.exception.Order;
+import model.orm.exception.Table;
+
+/**
+ * Copie locale des opérations des comptes consultés (historique), pour ne plus
+ * relire en BD toutes les opérations d'un compte à chaque affichage. La BD
+ * reste la référence : la copie peut être supprimée à tout moment (répertoire
+ * bd.historique), elle est reconstruite au fil des consultations.
+ *
+ * Stockage en colonnes (un fichier par colonne de Operation : idOperation,
+ * montant en centimes, dateOp, dateValeur, idNumCompte, code de idTypeOp),
+ * projetés en mémoire (FileChannel.map) et complétés en fin de fichier. Un
+ * index par compte (numéros des lignes du compte, triés par dateOp) est
+ * reconstruit à l'ouverture. Les lectures (Historique) se font directement
+ * dans les fichiers projetés, sans copie ni objet par ligne.
+ *
+ * A chaque consultation d'un compte (getHistorique), seules ses opérations
+ * d'idOperation supérieur à la dernière copiée sont lues en BD, avec le nombre
+ * total d'opérations du compte : s'il ne correspond pas (opération validée en
+ * BD après une opération de numéro supérieur), les opérations du compte sont
+ * toutes relues. Les lectures en BD se font sous le verrou du compte (verrous
+ * répartis par numéro de compte) : seul l'ajout dans les fichiers bloque les
+ * consultations des autres comptes.
+ *
+ * La fenêtre des opérations d'un compte y lit son nombre d'opérations et ses
+ * nouvelles opérations (AccessOperation.getNouvellesOperations) puis ses pages
+ * (AccessOperation.getOperationsPage, cf. getHistoriqueCopie).
+ *
+ * Activé par bd.historique=répertoire (cf. ConfigurationBD). Après un arrêt
+ * sans fermeture (LogToDatabase.closeConnexion()), la copie est recréée vide.
+ */
+public class HistoriqueOperations {
+
+	private static final int MAGIC = 0x44424849; // "DBHI"
+	private static final int VERSION = 1;
+	private static final int CAPACITE_MIN = 1 << 16; // lignes
+	private static final long DATE_NULLE = Long.MIN_VALUE;
+
+	// Colonnes : fichier operations.<nom>, octets par ligne
+	private static final int ID = 0, MONTANT = 1, DATE_OP = 2, DATE_VALEUR = 3, COMPTE = 4, TYPE = 5;
+	private static final String[] NOMS = { "idOperation", "montant", "dateOp", "dateValeur", "idNumCompte",
+			"idTypeOp" };
+	private static final int[] LARGEURS = { 4, 8, 8, 8, 4, 2 };
+
+	// Nombre de verrous de comptes (puissance de 2) : verrou d'un compte =
+	// numéro & masque
+	private static final int NB_VERROUS = 64;
+
+	private static volatile HistoriqueOperations historique = null;
+	// Copie non activée ou ouverture impossible (BD seule) jusqu'à arreter() :
+	// get() ne prend alors aucun verrou
+	private static volatile boolean desactive = false;
+
+	/*
+	 * Lignes d'un compte, triées par dateOp puis idOperation
+	 */
+	private static class IndexCompte {
+		int[] lignes = new int[16];
+		int nb = 0;
+		int dernierId = 0;
+		Historique vue = null; // dernier Historique rendu, tant que rien n'est ajouté
+	}
+
+	private final Path repertoire;
+	private final FileChannel canalEntete;
+	private final FileLock verrouRepertoire;
+	private final MappedByteBuffer entete; // MAGIC, VERSION, nbLignes, propre
+	private final FileChannel[] canaux = new FileChannel[HistoriqueOperations.NOMS.length];
+	private final MappedByteBuffer[] colonnes = new MappedByteBuffer[HistoriqueOperations.NOMS.length];
+	private final Path fichierTypes;
+	private final ArrayList<String> types = new ArrayList<>();
+	private final HashMap<String, Integer> codesTypes = new HashMap<>();
+	private final HashMap<Integer, IndexCompte> index = new HashMap<>();
+	// Un compte n'est lu en BD et complété que par un thread à la fois
+	private final ReentrantLock[] verrous = new ReentrantLock[HistoriqueOperations.NB_VERROUS];
+	private int capacite;
+	private int nbLignes;
+
+	private HistoriqueOperations(Path repertoire) throws IOException {
+		this.repertoire = repertoire;
+		for (int i = 0; i < HistoriqueOperations.NB_VERROUS; i++) {
+			this.verrous[i] = new ReentrantLock();
+		}
+		Files.createDirectories(repertoire);
+		this.canalEntete = HistoriqueOperations.ouvrir(repertoire.resolve("operations.entete"));
+		this.verrouRepertoire = this.canalEntete.tryLock();
+		if (this.verrouRepertoire == null) {
+			this.canalEntete.close();
+			throw new IOException("Historique " + repertoire + " utilisé par une autre application");
+		}
+		this.entete = this.canalEntete.map(FileChannel.MapMode.READ_WRITE, 0, 32);
+		this.fichierTypes = repertoire.resolve("operations.types");
+
+		// Copie conservée seulement si fermée proprement et complète
+		boolean valide = this.entete.getInt(0) == HistoriqueOperations.MAGIC
+				&& this.entete.getInt(4) == HistoriqueOperations.VERSION && this.entete.getInt(16) == 1;
+		long nb = valide ? this.entete.getLong(8) : 0;
+		for (int c = 0; c < this.canaux.length; c++) {
+			this.canaux[c] = HistoriqueOperations.ouvrir(repertoire.resolve("operations." + HistoriqueOperations.NOMS[c]));
+			valide = valide && this.canaux[c].size() >= nb * HistoriqueOperations.LARGEURS[c];
+		}
+		if (valide && Files.exists(this.fichierTypes)) {
+			for (String type : Files.readAllLines(this.fichierTypes, StandardCharsets.UTF_8)) {
+				this.codesTypes.put(type, this.types.size());
+				this.types.add(type);
+			}
+		} else {
+			nb = 0;
+			Files.write(this.fichierTypes, new byte[0]);
+		}
+		this.nbLignes = (int) nb;
+		int cap = HistoriqueOperations.CAPACITE_MIN;
+		while (cap < this.nbLignes) {
+			cap *= 2;
+		}
+		this.mapper(cap);
+
+		int nbMortes = this.indexer();
+		if (nbMortes > this.nbLignes / 2) {
+			// Surtout des lignes remplacées (comptes relus) : copie recréée vide
+			this.index.clear();
+			this.nbLignes = 0;
+		}
+
+		this.entete.putInt(0, HistoriqueOperations.MAGIC);
+		this.entete.putInt(4, HistoriqueOperations.VERSION);
+		this.entete.putLong(8, this.nbLignes);
+		this.entete.putInt(16, 0); // ouvert : non valide jusqu'à fermer()
+		this.entete.force();
+	}
+
+	/**
+	 * @return la copie locale (ouverte au premier appel), null si elle n'est pas
+	 *         activée (bd.historique) ou si elle ne peut pas être ouverte (lire
+	 *         alors en BD)
+	 */
+	public static HistoriqueOperations get() {
+		HistoriqueOperations h = HistoriqueOperations.historique;
+		if (h != null || HistoriqueOperations.desactive) {
+			return h;
+		}
+		synchronized (HistoriqueOperations.class) {
+			if (HistoriqueOperations.historique != null || HistoriqueOperations.desactive) {
+				return HistoriqueOperations.historique;
+			}
+			String rep = LogToDatabase.getConfiguration().getRepertoireHistorique();
+			if (rep.isEmpty()) {
+				HistoriqueOperations.desactive = true;
+				return null;
+			}
+			try {
+				HistoriqueOperations.historique = new HistoriqueOperations(Paths.get(rep));
+			} catch (IOException e) {
+				HistoriqueOperations.desactive = true;
+				LogORM.erreur("Historique local " + rep + " inutilisable, opérations lues en BD", e);
+			}
+			return HistoriqueOperations.historique;
+		}
+	}
+
+	/**
+	 * Ferme la copie locale (si elle est ouverte). Appelé par
+	 * LogToDatabase.closeConnexion().
+	 */
+	static void arreter() {
+		HistoriqueOperations h;
+		synchronized (HistoriqueOperations.class) {
+			h = HistoriqueOperations.historique;
+			HistoriqueOperations.historique = null;
+			HistoriqueOperations.desactive = false; // configuration relue au prochain get()
+		}
+		if (h != null) {
+			h.fermer();
+		}
+	}
+
+	/**
+	 * Opérations d'un compte, triées par dateOp puis idOperation (comme
+	 * AccessOperation.getOperations(idNumCompte)), après lecture en BD des
+	 * opérations pas encore copiées.
+	 *
+	 * @param idNumCompte id du compte
+	 * @return l'historique du compte (vide si pas d'opération)
+	 * @throws DataAccessException
+	 * @throws DatabaseConnexionException
+	 */
+	public Historique getHistorique(int idNumCompte) throws DataAccessException, DatabaseConnexionException {
+		MoteurSoldes.avantLecture(idNumCompte);
+		ReentrantLock verrou = this.verrous[idNumCompte & (HistoriqueOperations.NB_VERROUS - 1)];
+		verrou.lock();
+		try {
+			// Index du compte modifié seulement sous son verrou : nb et dernierId ne
+			// changent pas pendant les lectures en BD
+			int nbCopiees = -1;
+			int dernierId = 0;
+			synchronized (this) {
+				IndexCompte ic = this.index.get(idNumCompte);
+				if (ic != null) {
+					nbCopiees = ic.nb;
+					dernierId = ic.dernierId;
+				}
+			}
+
+			Connection con = LogToDatabase.getConnexion();
+			ArrayList<Operation> lues = null;
+			if (nbCopiees >= 0) {
+				String query = "SELECT COUNT(*) FROM Operation WHERE idNumCompte = ?";
+				PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
+				pst.setInt(1, idNumCompte);
+				long chrono = LogORM.debutRequete();
+				ResultSet rs = pst.executeQuery();
+				LogORM.finRequete(query, chrono);
+				rs.next();
+				int nbBD = rs.getInt(1);
+				rs.close();
+
+				lues = nbBD == nbCopiees ? new ArrayList<>()
+						: this.lire(con, "SELECT * FROM Operation WHERE idNumCompte = ? AND idOperation > ?"
+								+ " ORDER BY idOperation", idNumCompte, dernierId);
+				if (nbCopiees + lues.size() != nbBD) {
+					lues = null;
+				}
+			}
+			boolean toutes = lues == null;
+			if (toutes) {
+				lues = this.lire(con,
+						"SELECT * FROM Operation WHERE idNumCompte = ? ORDER BY dateOp, idOperation", idNumCompte,
+						null);
+			}
+
+			synchronized (this) {
+				IndexCompte ic = this.index.get(idNumCompte);
+				if (toutes) {
+					if (ic != null) {
+						this.oublier(idNumCompte);
+					}
+					ic = new IndexCompte();
+					this.index.put(idNumCompte, ic);
+				}
+				this.ajouter(ic, lues);
+				return this.vue(idNumCompte, ic);
+			}
+		} catch (SQLException e) {
+			throw new DataAccessException(Table.Operation, Order.SELECT, "Erreur accès", e);
+		} catch (IOException e) {
+			throw new DataAccessException(Table.Operation, Order.SELECT,
+					"Historique local " + this.repertoire + " : écriture impossible", e);
+		} finally {
+			LogToDatabase.releaseConnexion();
+			verrou.unlock();
+		}
+	}
+
+	/**
+	 * Opérations d'un compte telles que copiées à sa dernière consultation
+	 * (getHistorique), sans lecture en BD (ex : pages d'un historique dont le
+	 * nombre d'opérations vient d'être lu par getHistorique).
+	 *
+	 * @param idNumCompte id du compte
+	 * @return l'historique copié du compte, null s'il n'est pas dans la copie
+	 *         locale
+	 */
+	public synchronized Historique getHistoriqueCopie(int idNumCompte) {
+		IndexCompte ic = this.index.get(idNumCompte);
+		return ic == null ? null : this.vue(idNumCompte, ic);
+	}
+
+	// Historique du compte dans son état actuel (réutilisé tant qu'aucune
+	// opération n'est ajoutée au compte)
+	private Historique vue(int idNumCompte, IndexCompte ic) {
+		if (ic.vue == null) {
+			ic.vue = new Historique(idNumCompte, this.colonnes.clone(), Arrays.copyOf(ic.lignes, ic.nb),
+					ic.dernierId, this.types.toArray(new String[0]));
+		}
+		return ic.vue;
+	}
+
+	// Opérations du compte lues par query (paramètres : idNumCompte puis apresId
+	// s'il n'est pas null)
+	private ArrayList<Operation> lire(Connection con, String query, int idNumCompte, Integer apresId)
+			throws SQLException {
+		ArrayList<Operation> ops = new ArrayList<>();
+		PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
+		pst.setInt(1, idNumCompte);
+		if (apresId != null) {
+			pst.setInt(2, apresId);
+		}
+		long chrono = LogORM.debutRequete();
+		ResultSet rs = pst.executeQuery();
+		LogORM.finRequete(query, chrono);
+		while (rs.next()) {
+			ops.add(AccessOperation.lireOperation(rs));
+		}
+		rs.close();
+		return ops;
+	}
+
+	// Ajout d'opérations d'un compte en fin de fichiers
+	private void ajouter(IndexCompte ic, ArrayList<Operation> ops) throws IOException {
+		if (ops.isEmpty()) {
+			return;
+		}
+		ic.vue = null;
+		if ((long) this.nbLignes + ops.size() > this.capacite) {
+			long cap = this.capacite;
+			while (cap < (long) this.nbLignes + ops.size()) {
+				cap *= 2;
+			}
+			if (cap * 8 > Integer.MAX_VALUE) {
+				throw new IOException("Historique local plein (" + this.nbLignes + " opérations)");
+			}
+			this.mapper((int) cap);
+		}
+		for (Operation op : ops) {
+			int l = this.nbLignes++;
+			this.colonnes[HistoriqueOperations.ID].putInt(l * 4, op.idOperation);
+			this.colonnes[HistoriqueOperations.MONTANT].putLong(l * 8, Math.round(op.montant * 100));
+			this.colonnes[HistoriqueOperations.DATE_OP].putLong(l * 8,
+					op.dateOp == null ? HistoriqueOperations.DATE_NULLE : op.dateOp.getTime());
+			this.colonnes[HistoriqueOperations.DATE_VALEUR].putLong(l * 8,
+					op.dateValeur == null ? HistoriqueOperations.DATE_NULLE : op.dateValeur.getTime());
+			this.colonnes[HistoriqueOperations.COMPTE].putInt(l * 4, op.idNumCompte);
+			this.colonnes[HistoriqueOperations.TYPE].putShort(l * 2, (short) this.codeType(op.idTypeOp));
+			this.placer(ic, l);
+		}
+		this.entete.putLong(8, this.nbLignes);
+	}
+
+	// Ligne l ajoutée à l'index du compte, à sa place dans l'ordre des dateOp
+	// puis des idOperation (même ordre que les requêtes)
+	private void placer(IndexCompte ic, int l) {
+		if (ic.nb == ic.lignes.length) {
+			ic.lignes = Arrays.copyOf(ic.lignes, ic.nb * 2);
+		}
+		ByteBuffer dates = this.colonnes[HistoriqueOperations.DATE_OP];
+		ByteBuffer ids = this.colonnes[HistoriqueOperations.ID];
+		long date = dates.getLong(l * 8);
+		int id = ids.getInt(l * 4);
+		int i = ic.nb++;
+		while (i > 0) {
+			int precedente = ic.lignes[i - 1];
+			long datePrecedente = dates.getLong(precedente * 8);
+			if (datePrecedente < date || datePrecedente == date && ids.getInt(precedente * 4) < id) {
+				break;
+			}
+			ic.lignes[i] = precedente;
+			i--;
+		}
+		ic.lignes[i] = l;
+		ic.dernierId = Math.max(ic.dernierId, id);
+	}
+
+	// Lignes d'un compte à relire : marquées supprimées (idNumCompte = -1)
+	private void oublier(int idNumCompte) {
+		IndexCompte ic = this.index.remove(idNumCompte);
+		for (int i = 0; i < ic.nb; i++) {
+			this.colonnes[HistoriqueOperations.COMPTE].putInt(ic.lignes[i] * 4, -1);
+		}
+	}
+
+	// Index des comptes reconstruit à partir des fichiers, rend le nombre de
+	// lignes supprimées
+	private int indexer() {
+		int nbMortes = 0;
+		for (int l = 0; l < this.nbLignes; l++) {
+			int compte = this.colonnes[HistoriqueOperations.COMPTE].getInt(l * 4);
+			if (compte < 0) {
+				nbMortes++;
+				continue;
+			}
+			this.placer(this.index.computeIfAbsent(compte, c -> new IndexCompte()), l);
+		}
+		return nbMortes;
+	}
+
+	private int codeType(String idTypeOp) throws IOException {
+		if (idTypeOp == null) {
+			return -1;
+		}
+		Integer code = this.codesTypes.get(idTypeOp);
+		if (code == null) {
+			Files.write(this.fichierTypes, (idTypeOp + "\n").getBytes(StandardCharsets.UTF_8),
+					StandardOpenOption.APPEND);
+			code = this.types.size();
+			this.codesTypes.put(idTypeOp, code);
+			this.types.add(idTypeOp);
+		}
+		return code;
+	}
+
+	private void mapper(int cap) throws IOException {
+		for (int c = 0; c < this.canaux.length; c++) {
+			this.colonnes[c] = this.canaux[c].map(FileChannel.MapMode.READ_WRITE, 0,
+					(long) cap * HistoriqueOperations.LARGEURS[c]);
+		}
+		this.capacite = cap;
+	}
+
+	private synchronized void fermer() {
+		try {
+			for (MappedByteBuffer col : this.colonnes) {
+				col.force();
+			}
+			this.entete.putLong(8, this.nbLignes);
+			this.entete.putInt(16, 1);
+			this.entete.force();
+			this.verrouRepertoire.release();
+			for (FileChannel canal : this.canaux) {
+				canal.close();
+			}
+			this.canalEntete.close();
+		} catch (IOException e) {
+			LogORM.erreur("Historique local " + this.repertoire + " : fermeture", e);
+		}
+	}
+
+	private static FileChannel ouvrir(Path fichier) throws IOException {
+		return FileChannel.open(fichier, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "HistoriqueOperations [" + this.repertoire + ", nbLignes=" + this.nbLignes + ", nbComptes="
+				+ this.index.size() + ", nbTypes=" + this.types.size() + "]";
+	}
+
+	/**
+	 * Opérations d'un compte à un instant donné, lues directement dans la copie
+	 * locale (aucune copie des opérations, aucun objet créé pour les getters
+	 * autres que getDateOp, getDateValeur et getOperation).
+	 *
+	 * Ne change pas : les opérations ajoutées ensuite sont dans un nouvel
+	 * Historique (getHistorique).
+	 */
+	public static class Historique {
+
+		private final int idNumCompte;
+		private final ByteBuffer[] colonnes;
+		private final int[] lignes;
+		private final int dernierIdOperation;
+		private final String[] types;
+
+		Historique(int idNumCompte, ByteBuffer[] colonnes, int[] lignes, int dernierIdOperation, String[] types) {
+			this.idNumCompte = idNumCompte;
+			this.colonnes = colonnes;
+			this.lignes = lignes;
+			this.dernierIdOperation = dernierIdOperation;
+			this.types = types;
+		}
+
+		/**
+		 * @return nombre d'opérations du compte
+		 */
+		public int size() {
+			return this.lignes.length;
+		}
+
+		/**
+		 * @return plus grand idOperation du compte (0 si aucune opération)
+		 */
+		public int getDernierIdOperation() {
+			return this.dernierIdOperation;
+		}
+
+		/**
+		 * @param i rang de l'opération (0 : plus ancienne dateOp)
+		 * @return idOperation de l'opération i
+		 */
+		public int getIdOperation(int i) {
+			return this.colonnes[HistoriqueOperations.ID].getInt(this.lignes[i] * 4);
+		}
+
+		/**
+		 * @param i rang de l'opération
+		 * @return montant de l'opération i
+		 */
+		public double getMontant(int i) {
+			return this.colonnes[HistoriqueOperations.MONTANT].getLong(this.lignes[i] * 8) / 100.0;
+		}
+
+		/**
+		 * @param i rang de l'opération
+		 * @return dateOp de l'opération i en ms (cf. java.util.Date.getTime())
+		 */
+		public long getDateOpMs(int i) {
+			return this.colonnes[HistoriqueOperations.DATE_OP].getLong(this.lignes[i] * 8);
+		}
+
+		/**
+		 * @param i rang de l'opération
+		 * @return dateOp de l'opération i (null si non renseignée)
+		 */
+		public Date getDateOp(int i) {
+			return Historique.date(this.getDateOpMs(i));
+		}
+
+		/**
+		 * @param i rang de l'opération
+		 * @return dateValeur de l'opération i (null si non renseignée)
+		 */
+		public Date getDateValeur(int i) {
+			return Historique.date(this.colonnes[HistoriqueOperations.DATE_VALEUR].getLong(this.lignes[i] * 8));
+		}
+
+		/**
+		 * @param i rang de l'opération
+		 * @return idTypeOp de l'opération i
+		 */
+		public String getIdTypeOp(int i) {
+			int code = this.colonnes[HistoriqueOperations.TYPE].getShort(this.lignes[i] * 2);
+			return code < 0 ? null : this.types[code];
+		}
+
+		/**
+		 * @param i rang de l'opération
+		 * @return l'opération i (nouvel objet)
+		 */
+		public Operation getOperation(int i) {
+			return new Operation(this.getIdOperation(i), this.getMontant(i), this.getDateOp(i),
+					this.getDateValeur(i), this.idNumCompte, this.getIdTypeOp(i));
+		}
+
+		/**
+		 * @return toutes les opérations (un nouvel objet et deux Date par opération :
+		 *         préférer les accès par rang pour un long historique), triées par
+		 *         dateOp
+		 */
+		public ArrayList<Operation> getOperations() {
+			ArrayList<Operation> ops = new ArrayList<>(this.lignes.length);
+			for (int i = 0; i < this.lignes.length; i++) {
+				ops.add(this.getOperation(i));
+			}
+			return ops;
+		}
+
+		private static Date date(long ms) {
+			return ms == HistoriqueOperations.DATE_NULLE ? null : new Date(ms);
+		}
+	}
+}
@@ -0,0 +1,364 @@
+package model.orm;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import model.data.Client;
+import model.orm.exception.DataAccessException;
+import model.orm.exception.DatabaseConnexionException;
+
+/**
+ * Index en mémoire des clients d'une agence pour la recherche pendant la
+ * saisie (nom, prénom, email, téléphone).
+ *
+ * Chaque champ est découpé en mots normalisés (majuscules, sans accents, sans
+ * ponctuation ; chiffres seuls pour le téléphone). Les mots sont rangés dans un
+ * arbre trié (mot -> clients) : les mots commençant par un préfixe forment un
+ * intervalle de l'arbre, trouvé sans parcourir les autres. Un index de
+ * trigrammes (suites de 3 lettres -> mots) fournit les mots proches d'un mot
+ * mal saisi (faute de frappe).
+ *
+ * L'index d'une agence est chargé à la connexion (charger) puis tenu à jour
+ * par AccessClient.insertClient/updateClient (y compris pendant le chargement).
+ * Les Client retournés sont des copies.
+ */
+public class IndexClients {
+
+	// Index chargés, par agence
+	private static final ConcurrentHashMap<Integer, IndexClients> index = new ConcurrentHashMap<>();
+	// Index en cours de chargement, par agence (pas encore utilisés par la
+	// recherche, mais tenus à jour des modifications)
+	private static final ConcurrentHashMap<Integer, IndexClients> chargements = new ConcurrentHashMap<>();
+
+	// Ordre des résultats de recherche
+	private static final Comparator<Client> ORDRE = Comparator
+			.comparing((Client c) -> c.nom, String.CASE_INSENSITIVE_ORDER)
+			.thenComparing(c -> c.prenom, String.CASE_INSENSITIVE_ORDER).thenComparingInt(c -> c.idNumCli);
+
+	// Longueur minimum d'un mot pour chercher les mots proches (faute de frappe)
+	private static final int LONGUEUR_MIN_APPROCHE = 4;
+
+	private final int idAg;
+	private final HashMap<Integer, Client> clients = new HashMap<>();
+	private final HashMap<Integer, HashSet<String>> motsDesClients = new HashMap<>();
+	private final TreeMap<String, HashSet<Integer>> mots = new TreeMap<>();
+	private final HashMap<String, HashSet<String>> trigrammes = new HashMap<>();
+	// Pendant le chargement : clients modifiés depuis son début (la version lue
+	// en BD, éventuellement plus ancienne, est alors ignorée)
+	private HashSet<Integer> modifiesPendantChargement = null;
+
+	private IndexClients(int idAg) {
+		this.idAg = idAg;
+	}
+
+	/**
+	 * Charge (ou recharge) l'index des clients d'une agence. Les clients ajoutés
+	 * ou modifiés pendant le chargement (clientModifie) y sont répercutés.
+	 *
+	 * @param idAg id de l'agence
+	 * @return l'index chargé
+	 * @throws DataAccessException
+	 * @throws DatabaseConnexionException
+	 */
+	public static IndexClients charger(int idAg) throws DataAccessException, DatabaseConnexionException {
+		IndexClients ic = new IndexClients(idAg);
+		ic.modifiesPendantChargement = new HashSet<>();
+		IndexClients.chargements.put(idAg, ic);
+		try {
+			for (Client c : new AccessClient().getClients(idAg, -1, "", "")) {
+				ic.ajouterLu(c);
+			}
+			ic.finChargement();
+			// Publié avant d'être retiré des chargements : une modification
+			// concurrente le trouve toujours dans l'un ou l'autre
+			IndexClients.index.put(idAg, ic);
+		} finally {
+			IndexClients.chargements.remove(idAg, ic);
+		}
+		return ic;
+	}
+
+	/**
+	 * @param idAg id de l'agence
+	 * @return l'index des clients de l'agence, null si non chargé
+	 */
+	public static IndexClients getIndex(int idAg) {
+		return IndexClients.index.get(idAg);
+	}
+
+	/**
+	 * Oublie tous les index chargés (ex : à la déconnexion).
+	 */
+	public static void invalider() {
+		IndexClients.index.clear();
+	}
+
+	/**
+	 * Répercute l'ajout ou la modification d'un client dans l'index de son agence
+	 * (s'il est chargé).
+	 *
+	 * @param c le client ajouté ou modifié
+	 */
+	static void clientModifie(Client c) {
+		// Chargement lu avant l'index publié (cf. charger)
+		IndexClients enChargement = IndexClients.chargements.get(c.idAg);
+		if (enChargement != null) {
+			enChargement.modifie(c);
+		}
+		IndexClients ic = IndexClients.index.get(c.idAg);
+		if (ic != null && ic != enChargement) {
+			ic.ajouterOuModifier(c);
+		}
+	}
+
+	// Client lu en BD par charger (ignoré s'il a été modifié depuis le début du
+	// chargement)
+	private synchronized void ajouterLu(Client c) {
+		if (this.modifiesPendantChargement == null || !this.modifiesPendantChargement.contains(c.idNumCli)) {
+			this.ajouterOuModifier(c);
+		}
+	}
+
+	// Client ajouté ou modifié (clientModifie)
+	private synchronized void modifie(Client c) {
+		if (this.modifiesPendantChargement != null) {
+			this.modifiesPendantChargement.add(c.idNumCli);
+		}
+		this.ajouterOuModifier(c);
+	}
+
+	private synchronized void finChargement() {
+		this.modifiesPendantChargement = null;
+	}
+
+	/**
+	 * @return nombre de clients indexés
+	 */
+	public synchronized int size() {
+		return this.clients.size();
+	}
+
+	/**
+	 * @return id de l'agence indexée
+	 */
+	public int getIdAg() {
+		return this.idAg;
+	}
+
+	/**
+	 * Ajoute un client à l'index, ou le ré-indexe s'il y est déjà.
+	 *
+	 * @param c le client
+	 */
+	public synchronized void ajouterOuModifier(Client c) {
+		this.retirer(c.idNumCli);
+
+		Client copie = new Client(c);
+		HashSet<String> motsDuClient = new HashSet<>();
+		IndexClients.decouper(copie.nom, motsDuClient);
+		IndexClients.decouper(copie.prenom, motsDuClient);
+		IndexClients.decouper(copie.email, motsDuClient);
+		if (copie.telephone != null) {
+			String chiffres = copie.telephone.replaceAll("[^0-9]", "");
+			if (!chiffres.isEmpty()) {
+				motsDuClient.add(chiffres);
+			}
+		}
+
+		this.clients.put(copie.idNumCli, copie);
+		this.motsDesClients.put(copie.idNumCli, motsDuClient);
+		for (String mot : motsDuClient) {
+			HashSet<Integer> ids = this.mots.get(mot);
+			if (ids == null) {
+				ids = new HashSet<>();
+				this.mots.put(mot, ids);
+				for (String tri : IndexClients.trigrammes(mot)) {
+					this.trigrammes.computeIfAbsent(tri, k -> new HashSet<>()).add(mot);
+				}
+			}
+			ids.add(copie.idNumCli);
+		}
+	}
+
+	/**
+	 * Retire un client de l'index (sans effet s'il n'y est pas).
+	 *
+	 * @param idNumCli id du client
+	 */
+	public synchronized void retirer(int idNumCli) {
+		HashSet<String> motsDuClient = this.motsDesClients.remove(idNumCli);
+		this.clients.remove(idNumCli);
+		if (motsDuClient == null) {
+			return;
+		}
+		for (String mot : motsDuClient) {
+			HashSet<Integer> ids = this.mots.get(mot);
+			ids.remove(idNumCli);
+			if (ids.isEmpty()) {
+				this.mots.remove(mot);
+				for (String tri : IndexClients.trigrammes(mot)) {
+					HashSet<String> motsDuTri = this.trigrammes.get(tri);
+					motsDuTri.remove(mot);
+					if (motsDuTri.isEmpty()) {
+						this.trigrammes.remove(tri);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Recherche pendant la saisie : chaque mot de texte doit être le début d'un
+	 * mot du nom, du prénom, de l'email ou du téléphone du client (sans tenir
+	 * compte des majuscules ni des accents). Un mot qui ne débute aucun mot
+	 * indexé est cherché parmi les mots proches (une faute de frappe tolérée, deux
+	 * à partir de 8 lettres).
+	 *
+	 * @param texte le texte saisi
+	 * @param nbMax nombre maximum de clients retournés
+	 * @return les clients trouvés (copies), triés par nom, prénom et id
+	 */
+	public synchronized ArrayList<Client> rechercher(String texte, int nbMax) {
+		HashSet<String> termes = new HashSet<>();
+		IndexClients.decouper(texte, termes);
+
+		HashSet<Integer> resultat = null;
+		for (String terme : termes) {
+			HashSet<Integer> ids = this.clientsDuPrefixe(terme);
+			if (ids.isEmpty() && terme.length() >= IndexClients.LONGUEUR_MIN_APPROCHE) {
+				ids = this.clientsApproches(terme);
+			}
+			if (resultat == null) {
+				resultat = ids;
+			} else {
+				resultat.retainAll(ids);
+			}
+			if (resultat.isEmpty()) {
+				break;
+			}
+		}
+
+		ArrayList<Client> copies = new ArrayList<>();
+		if (resultat == null || nbMax <= 0) {
+			return copies;
+		}
+		// Seuls les nbMax premiers sont gardés (tas dont la tête est le dernier
+		// gardé) : pas de tri de tous les clients trouvés
+		PriorityQueue<Client> premiers = new PriorityQueue<>(Math.min(nbMax, resultat.size()) + 1,
+				IndexClients.ORDRE.reversed());
+		for (int id : resultat) {
+			Client c = this.clients.get(id);
+			if (premiers.size() < nbMax) {
+				premiers.add(c);
+			} else if (IndexClients.ORDRE.compare(c, premiers.peek()) < 0) {
+				premiers.poll();
+				premiers.add(c);
+			}
+		}
+		for (Client c : premiers) {
+			copies.add(new Client(c));
+		}
+		copies.sort(IndexClients.ORDRE);
+		return copies;
+	}
+
+	// Clients dont un mot commence par prefixe (intervalle de l'arbre trié)
+	private HashSet<Integer> clientsDuPrefixe(String prefixe) {
+		HashSet<Integer> ids = new HashSet<>();
+		for (HashSet<Integer> idsDuMot : this.mots.subMap(prefixe, prefixe + Character.MAX_VALUE).values()) {
+			ids.addAll(idsDuMot);
+		}
+		return ids;
+	}
+
+	// Clients dont un mot débute de façon proche de terme (faute de frappe)
+	private HashSet<Integer> clientsApproches(String terme) {
+		int distanceMax = terme.length() >= 8 ? 2 : 1;
+		HashSet<String> candidats = new HashSet<>();
+		for (String tri : IndexClients.trigrammes(terme)) {
+			HashSet<String> motsDuTri = this.trigrammes.get(tri);
+			if (motsDuTri != null) {
+				candidats.addAll(motsDuTri);
+			}
+		}
+		HashSet<Integer> ids = new HashSet<>();
+		for (String mot : candidats) {
+			if (IndexClients.distanceAuPrefixe(terme, mot) <= distanceMax) {
+				ids.addAll(this.mots.get(mot));
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * Découpe un texte en mots normalisés (majuscules sans accents, lettres et
+	 * chiffres uniquement) ajoutés à mots.
+	 */
+	private static void decouper(String texte, HashSet<String> mots) {
+		if (texte == null) {
+			return;
+		}
+		String sansAccents = Normalizer.normalize(texte, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+		for (String mot : sansAccents.toUpperCase(Locale.ROOT).split("[^A-Z0-9]+")) {
+			if (!mot.isEmpty()) {
+				mots.add(mot);
+			}
+		}
+	}
+
+	// Trigrammes d'un mot, le début du mot marqué (un mot court a au moins un
+	// trigramme)
+	private static HashSet<String> trigrammes(String mot) {
+		String m = "  " + mot;
+		HashSet<String> tris = new HashSet<>();
+		for (int i = 0; i + 3 <= m.length(); i++) {
+			tris.add(m.substring(i, i + 3));
+		}
+		return tris;
+	}
+
+	/**
+	 * Plus petite distance d'édition (Damerau-Levenshtein restreinte) entre
+	 * terme et un début de mot : "DUPNO" est à 1 de "DUPONT" (inversion).
+	 */
+	static int distanceAuPrefixe(String terme, String mot) {
+		int n = terme.length();
+		int m = mot.length();
+		int[][] d = new int[n + 1][m + 1];
+		for (int i = 0; i <= n; i++) {
+			d[i][0] = i;
+		}
+		for (int j = 0; j <= m; j++) {
+			d[0][j] = j;
+		}
+		for (int i = 1; i <= n; i++) {
+			for (int j = 1; j <= m; j++) {
+				int cout = terme.charAt(i - 1) == mot.charAt(j - 1) ? 0 : 1;
+				d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cout);
+				if (i > 1 && j > 1 && terme.charAt(i - 1) == mot.charAt(j - 2)
+						&& terme.charAt(i - 2) == mot.charAt(j - 1)) {
+					d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+				}
+			}
+		}
+		// terme entier contre n'importe quel début de mot
+		int min = Integer.MAX_VALUE;
+		for (int j = 0; j <= m; j++) {
+			min = Math.min(min, d[n][j]);
+		}
+		return min;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "IndexClients [idAg=" + this.idAg + ", nbClients=" + this.clients.size() + ", nbMots="
+				+ this.mots.size() + "]";
+	}
+}
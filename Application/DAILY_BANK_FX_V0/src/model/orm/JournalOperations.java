@@ -0,0 +1,431 @@
+package model.orm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Journal des opérations du moteur de soldes : fichier local en ajout seul,
+ * écrit avant que l'opération soit confirmée à l'appelant (cf. MoteurSoldes).
+ *
+ * Les entrées ajoutées pendant l'écriture du paquet précédent forment le paquet
+ * suivant, écrit puis forcé sur disque (fsync) en une fois : un seul fsync pour
+ * toutes les opérations arrivées pendant le précédent (« group commit »). Un
+ * paquet forcé sur disque est transmis au consommateur (écriture en BD), puis
+ * ses entrées sont déclarées durables (attendreDurable).
+ *
+ * Au redémarrage, lire() rend les entrées du fichier (une fin d'entrée
+ * incomplète ou altérée, écrite pendant un arrêt brutal, est ignorée et
+ * supprimée) : celles qui ne sont pas encore en BD (cf. table JournalApplique)
+ * sont rejouées. Le fichier est vidé (compacter) quand toutes ses entrées sont
+ * en BD.
+ *
+ * Un paquet dont l'écriture échoue n'a été confirmé à personne : le fichier est
+ * ramené à sa taille d'avant le paquet, pour que ses entrées (même arrivées sur
+ * disque) ne soient pas rejouées. Si c'est impossible, leurs numéros sont
+ * enregistrés dans le fichier des entrées annulées (fichier + ".annulees", une
+ * ligne « premier dernier » par paquet), ignorées par lire().
+ *
+ * Format d'une entrée : longueur (int), numéro (long), horodatage (long, ms),
+ * idNumCompte (int), montant en centimes (long), idTypeOp (short longueur +
+ * UTF-8), CRC32 des champs numéro à idTypeOp (int).
+ */
+class JournalOperations {
+
+	// Taille maximum d'une entrée (idTypeOp compris) : au delà, fin du fichier
+	// illisible
+	private static final int TAILLE_MAX_ENTREE = 1024;
+
+	/**
+	 * Opération enregistrée dans le journal.
+	 */
+	static class Entree {
+		final long numero;
+		final long horodatage;
+		final int idNumCompte;
+		final long centimes;
+		final String idTypeOp;
+
+		Entree(long numero, long horodatage, int idNumCompte, long centimes, String idTypeOp) {
+			this.numero = numero;
+			this.horodatage = horodatage;
+			this.idNumCompte = idNumCompte;
+			this.centimes = centimes;
+			this.idTypeOp = idTypeOp;
+		}
+	}
+
+	private final Path fichier;
+	private final Path annulees;
+	private final FileChannel canal;
+	private final Consumer<ArrayList<Entree>> consommateur;
+	private Thread ecriture;
+
+	// Protégés par this
+	private long prochainNumero;
+	private long dernierDurable;
+	private ArrayList<Entree> aEcrire = new ArrayList<>();
+	private boolean ecritureEnCours = false;
+	private IOException panne = null;
+	private boolean arret = false;
+	private long nbPaquets = 0;
+	private long nbEntrees = 0;
+
+	/**
+	 * Ouvre (crée si besoin) le journal. L'écriture ne démarre qu'à demarrer().
+	 *
+	 * @param fichier      fichier du journal
+	 * @param consommateur reçoit chaque paquet d'entrées forcé sur disque, dans
+	 *                     l'ordre des numéros (thread du journal)
+	 * @throws IOException
+	 */
+	JournalOperations(Path fichier, Consumer<ArrayList<Entree>> consommateur) throws IOException {
+		this(fichier, FileChannel.open(fichier, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE), consommateur);
+	}
+
+	/**
+	 * Journal sur un canal déjà ouvert sur fichier (contrôles de reprise après
+	 * une écriture en échec, cf. bench VerifJournalPanne).
+	 */
+	JournalOperations(Path fichier, FileChannel canal, Consumer<ArrayList<Entree>> consommateur) {
+		this.fichier = fichier;
+		this.annulees = fichier.resolveSibling(fichier.getFileName() + ".annulees");
+		this.canal = canal;
+		this.consommateur = consommateur;
+	}
+
+	/**
+	 * Lit les entrées du journal et place la fin du fichier après la dernière
+	 * entrée valide (suite illisible supprimée).
+	 *
+	 * @return les entrées du fichier, par numéro croissant, sans les entrées
+	 *         annulées
+	 * @throws IOException
+	 */
+	synchronized ArrayList<Entree> lire() throws IOException {
+		ArrayList<Entree> entrees = new ArrayList<>();
+		ArrayList<long[]> annulees = this.lireAnnulees();
+		long dernierNumero = 0;
+		for (long[] a : annulees) {
+			dernierNumero = Math.max(dernierNumero, a[1]);
+		}
+		int nbAnnulees = 0;
+		long taille = this.canal.size();
+		ByteBuffer buf = ByteBuffer.allocate((int) Math.min(Math.max(taille, 16), 1 << 20));
+		long position = 0; // fin de la dernière entrée valide
+		long lu = 0; // fin des octets lus dans le fichier
+		buf.limit(0);
+		CRC32 crc = new CRC32();
+		while (true) {
+			if (buf.remaining() < 4 + JournalOperations.TAILLE_MAX_ENTREE + 4 && lu < taille) {
+				buf.compact();
+				int n = 0;
+				while (buf.hasRemaining() && lu < taille && n >= 0) {
+					n = this.canal.read(buf, lu);
+					lu += Math.max(n, 0);
+				}
+				buf.flip();
+			}
+			if (buf.remaining() < 4) {
+				break;
+			}
+			int longueur = buf.getInt();
+			if (longueur < 30 || longueur > JournalOperations.TAILLE_MAX_ENTREE || buf.remaining() < longueur + 4) {
+				break;
+			}
+			crc.reset();
+			crc.update(buf.array(), buf.arrayOffset() + buf.position(), longueur);
+			long numero = buf.getLong();
+			long horodatage = buf.getLong();
+			int idNumCompte = buf.getInt();
+			long centimes = buf.getLong();
+			int lgType = buf.getShort();
+			if (lgType < 0 || 30 + lgType != longueur) {
+				break;
+			}
+			String idTypeOp = new String(buf.array(), buf.arrayOffset() + buf.position(), lgType,
+					StandardCharsets.UTF_8);
+			buf.position(buf.position() + lgType);
+			if ((int) crc.getValue() != buf.getInt()) {
+				break;
+			}
+			if (JournalOperations.estAnnulee(annulees, numero)) {
+				nbAnnulees++;
+			} else {
+				entrees.add(new Entree(numero, horodatage, idNumCompte, centimes, idTypeOp));
+			}
+			dernierNumero = Math.max(dernierNumero, numero);
+			position += 4 + longueur + 4;
+		}
+		if (nbAnnulees > 0) {
+			LogORM.log(LogORM.Niveau.WARN,
+					"Journal " + this.fichier + " : " + nbAnnulees + " entrées annulées (écriture en échec) ignorées");
+		}
+		if (position < taille) {
+			LogORM.log(LogORM.Niveau.WARN, "Journal " + this.fichier + " : " + (taille - position)
+					+ " octets illisibles en fin de fichier (arrêt brutal pendant une écriture) supprimés");
+			this.canal.truncate(position);
+			this.canal.force(true);
+		}
+		this.canal.position(position);
+		// Numéros des entrées annulées jamais réutilisés (encore dans le fichier)
+		this.prochainNumero = dernierNumero + 1;
+		this.dernierDurable = this.prochainNumero - 1;
+		return entrees;
+	}
+
+	/**
+	 * Démarre l'écriture des entrées ajoutées.
+	 *
+	 * @param dernierNumero numéro de la dernière entrée déjà utilisée (en BD ou
+	 *                      dans le fichier) : les nouvelles entrées sont
+	 *                      numérotées après
+	 */
+	synchronized void demarrer(long dernierNumero) {
+		this.prochainNumero = Math.max(this.prochainNumero, dernierNumero + 1);
+		this.dernierDurable = this.prochainNumero - 1;
+		this.ecriture = new Thread(this::ecrire, "JournalOperations");
+		this.ecriture.setDaemon(true);
+		this.ecriture.start();
+	}
+
+	/**
+	 * Ajoute une opération au prochain paquet (ne l'attend pas : cf.
+	 * attendreDurable).
+	 *
+	 * @return l'entrée ajoutée (numéro attribué)
+	 * @throws IOException si une écriture précédente a échoué (journal
+	 *                     inutilisable)
+	 */
+	synchronized Entree ajouter(int idNumCompte, long centimes, String idTypeOp) throws IOException {
+		if (this.panne != null) {
+			throw new IOException("Journal " + this.fichier + " en erreur", this.panne);
+		}
+		if (this.arret || this.ecriture == null) {
+			throw new IOException("Journal " + this.fichier + " fermé");
+		}
+		Entree e = new Entree(this.prochainNumero++, System.currentTimeMillis(), idNumCompte, centimes, idTypeOp);
+		this.aEcrire.add(e);
+		this.notifyAll();
+		return e;
+	}
+
+	/**
+	 * Attend que l'entrée numero soit sur disque (et transmise au consommateur).
+	 *
+	 * @throws IOException si son écriture a échoué
+	 */
+	synchronized void attendreDurable(long numero) throws IOException {
+		boolean interrompu = false;
+		while (this.dernierDurable < numero && this.panne == null) {
+			try {
+				this.wait();
+			} catch (InterruptedException e) {
+				interrompu = true; // l'entrée est peut-être déjà écrite : attente jusqu'au bout
+			}
+		}
+		if (interrompu) {
+			Thread.currentThread().interrupt();
+		}
+		if (this.dernierDurable < numero) {
+			throw new IOException("Journal " + this.fichier + " : écriture en échec", this.panne);
+		}
+	}
+
+	/**
+	 * Vide le fichier si toutes ses entrées sont en BD (et plus aucune en cours
+	 * d'écriture).
+	 *
+	 * @param dernierApplique numéro de la dernière entrée écrite en BD
+	 * @param tailleMin       taille en deçà de laquelle le fichier est conservé
+	 * @return vrai si le fichier a été vidé
+	 */
+	synchronized boolean compacter(long dernierApplique, long tailleMin) {
+		try {
+			if (this.panne != null || this.ecritureEnCours || !this.aEcrire.isEmpty()
+					|| dernierApplique < this.dernierDurable || this.canal.size() < tailleMin) {
+				return false;
+			}
+			this.canal.truncate(0);
+			this.canal.force(true);
+			this.canal.position(0);
+			Files.deleteIfExists(this.annulees); // plus aucune entrée à ignorer
+			return true;
+		} catch (IOException e) {
+			LogORM.erreur("Journal " + this.fichier + " : compactage impossible", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Arrête l'écriture (après le paquet en cours) et ferme le fichier.
+	 */
+	void fermer() {
+		Thread t;
+		synchronized (this) {
+			this.arret = true;
+			this.notifyAll();
+			t = this.ecriture;
+		}
+		try {
+			if (t != null) {
+				t.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			this.canal.close();
+		} catch (IOException e) {
+			LogORM.erreur("Journal " + this.fichier + " : fermeture", e);
+		}
+	}
+
+	// Boucle du thread du journal : un paquet (toutes les entrées en attente) par
+	// écriture + fsync
+	private void ecrire() {
+		ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+		CRC32 crc = new CRC32();
+		while (true) {
+			ArrayList<Entree> paquet;
+			synchronized (this) {
+				while (this.aEcrire.isEmpty() && !this.arret) {
+					try {
+						this.wait();
+					} catch (InterruptedException e) {
+						this.arret = true;
+					}
+				}
+				if (this.aEcrire.isEmpty()) {
+					return; // arrêt, tout est écrit
+				}
+				paquet = this.aEcrire;
+				this.aEcrire = new ArrayList<>();
+				this.ecritureEnCours = true;
+			}
+
+			long debutPaquet = -1;
+			try {
+				debutPaquet = this.canal.position();
+				for (Entree e : paquet) {
+					byte[] type = e.idTypeOp.getBytes(StandardCharsets.UTF_8);
+					int longueur = 30 + type.length;
+					if (buf.remaining() < 4 + longueur + 4) {
+						this.ecrireTampon(buf);
+						if (buf.capacity() < 4 + longueur + 4) {
+							buf = ByteBuffer.allocate(4 + longueur + 4);
+						}
+					}
+					buf.putInt(longueur);
+					int debut = buf.position();
+					buf.putLong(e.numero).putLong(e.horodatage).putInt(e.idNumCompte).putLong(e.centimes)
+							.putShort((short) type.length).put(type);
+					crc.reset();
+					crc.update(buf.array(), buf.arrayOffset() + debut, longueur);
+					buf.putInt((int) crc.getValue());
+				}
+				this.ecrireTampon(buf);
+				this.canal.force(false);
+			} catch (IOException ex) {
+				LogORM.erreur("Journal " + this.fichier + " : écriture de " + paquet.size() + " opérations en échec",
+						ex);
+				// Avant de réveiller les appelants (opérations annulées) : paquet hors du
+				// fichier ou déclaré annulé
+				this.annuler(paquet, debutPaquet);
+				synchronized (this) {
+					this.panne = ex;
+					this.ecritureEnCours = false;
+					this.notifyAll();
+				}
+				return;
+			}
+
+			this.consommateur.accept(paquet);
+			synchronized (this) {
+				this.dernierDurable = paquet.get(paquet.size() - 1).numero;
+				this.ecritureEnCours = false;
+				this.nbPaquets++;
+				this.nbEntrees += paquet.size();
+				this.notifyAll();
+			}
+		}
+	}
+
+	// Retire du fichier le paquet en échec commencé à debutPaquet (-1 : position
+	// inconnue), sinon enregistre ses numéros dans le fichier des entrées annulées
+	private void annuler(ArrayList<Entree> paquet, long debutPaquet) {
+		long premier = paquet.get(0).numero;
+		long dernier = paquet.get(paquet.size() - 1).numero;
+		if (debutPaquet >= 0) {
+			try {
+				this.canal.truncate(debutPaquet);
+				this.canal.force(true);
+				this.canal.position(debutPaquet);
+				return;
+			} catch (IOException e) {
+				LogORM.erreur("Journal " + this.fichier + " : retrait des entrées " + premier + " à " + dernier
+						+ " impossible", e);
+			}
+		}
+		try {
+			Files.write(this.annulees, (premier + " " + dernier + "\n").getBytes(StandardCharsets.UTF_8),
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND,
+					StandardOpenOption.SYNC);
+		} catch (IOException e) {
+			LogORM.erreur("Journal " + this.fichier + " : entrées " + premier + " à " + dernier
+					+ " non annulées (rejouées au redémarrage si lisibles)", e);
+		}
+	}
+
+	// Intervalles de numéros [premier, dernier] du fichier des entrées annulées
+	private ArrayList<long[]> lireAnnulees() throws IOException {
+		ArrayList<long[]> annulees = new ArrayList<>();
+		if (!Files.exists(this.annulees)) {
+			return annulees;
+		}
+		List<String> lignes = Files.readAllLines(this.annulees, StandardCharsets.UTF_8);
+		for (String ligne : lignes) {
+			String[] champs = ligne.trim().split(" ");
+			if (champs.length == 2) {
+				try {
+					annulees.add(new long[] { Long.parseLong(champs[0]), Long.parseLong(champs[1]) });
+				} catch (NumberFormatException e) {
+					// ligne incomplète (arrêt brutal pendant son écriture) : paquet non annulé
+				}
+			}
+		}
+		return annulees;
+	}
+
+	private static boolean estAnnulee(ArrayList<long[]> annulees, long numero) {
+		for (long[] a : annulees) {
+			if (numero >= a[0] && numero <= a[1]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void ecrireTampon(ByteBuffer buf) throws IOException {
+		buf.flip();
+		while (buf.hasRemaining()) {
+			this.canal.write(buf);
+		}
+		buf.clear();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "JournalOperations [" + this.fichier + ", prochainNumero=" + this.prochainNumero + ", nbPaquets="
+				+ this.nbPaquets + ", nbEntrees=" + this.nbEntrees + (this.panne != null ? ", EN ERREUR" : "") + "]";
+	}
+}
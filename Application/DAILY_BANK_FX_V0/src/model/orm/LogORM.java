@@ -0,0 +1,226 @@
+package model.orm;
+
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Journal des accès BD de la couche model.orm.
+ *
+ * Les messages sont déposés dans un tampon circulaire de taille fixe puis
+ * écrits (sur System.err) par un thread dédié : un DAO n'attend jamais la
+ * console. Si le tampon est plein, les messages les plus anciens sont perdus
+ * (et comptés).
+ *
+ * La trace SQL (texte et durée de chaque requête) est désactivée par défaut
+ * (activation : setTraceSql(true) ou -Ddailybank.traceSql=true). Désactivée,
+ * elle ne coûte qu'un test dans les DAO :
+ *
+ * long debut = LogORM.debutRequete(); ... pst.executeQuery(); ...
+ * LogORM.finRequete(query, debut);
+ */
+public class LogORM {
+
+	/**
+	 * Niveaux des messages, du plus détaillé au plus grave
+	 */
+	public enum Niveau {
+		TRACE, DEBUG, INFO, WARN, ERROR
+	}
+
+	// Nombre de messages en attente d'écriture au maximum
+	private static final int TAILLE_TAMPON = 4096;
+
+	private static volatile Niveau niveau = Niveau.INFO;
+	private static volatile boolean traceSql = Boolean.getBoolean("dailybank.traceSql");
+
+	// Tampon circulaire (protégé par le verrou de la classe)
+	private static final Message[] tampon = new Message[LogORM.TAILLE_TAMPON];
+	private static int debut = 0;
+	private static int nb = 0;
+	private static long nbPerdus = 0;
+
+	private static final PrintStream sortie = System.err;
+
+	/*
+	 * Message en attente d'écriture : mis en forme par le thread d'écriture
+	 */
+	private static class Message {
+		final long dateMs;
+		final Niveau niveau;
+		final String texte;
+		final long dureeNs; // -1 si non chronométré
+		final Throwable erreur;
+
+		Message(Niveau niveau, String texte, long dureeNs, Throwable erreur) {
+			this.dateMs = System.currentTimeMillis();
+			this.niveau = niveau;
+			this.texte = texte;
+			this.dureeNs = dureeNs;
+			this.erreur = erreur;
+		}
+	}
+
+	static {
+		Thread ecriture = new Thread(LogORM::ecrire, "LogORM");
+		ecriture.setDaemon(true);
+		ecriture.start();
+		// Ecrit les derniers messages à l'arrêt de l'application
+		Runtime.getRuntime().addShutdownHook(new Thread(LogORM::vider, "LogORM-arret"));
+	}
+
+	private LogORM() {
+	}
+
+	/**
+	 * @param n nouveau niveau minimum des messages écrits
+	 */
+	public static void setNiveau(Niveau n) {
+		LogORM.niveau = n;
+	}
+
+	/**
+	 * @param n niveau d'un message
+	 * @return vrai si les messages de niveau n sont écrits (à tester avant de
+	 *         construire un message coûteux)
+	 */
+	public static boolean estActif(Niveau n) {
+		return n.compareTo(LogORM.niveau) >= 0;
+	}
+
+	/**
+	 * @param active active / désactive la trace des requêtes SQL
+	 */
+	public static void setTraceSql(boolean active) {
+		LogORM.traceSql = active;
+	}
+
+	/**
+	 * @return vrai si la trace des requêtes SQL est active
+	 */
+	public static boolean isTraceSql() {
+		return LogORM.traceSql;
+	}
+
+	/**
+	 * Début d'une requête chronométrée (cf. finRequete).
+	 *
+	 * @return l'instant de début, 0 si la trace SQL est désactivée
+	 */
+	public static long debutRequete() {
+		return LogORM.traceSql ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Trace une requête exécutée et sa durée (sans effet si la trace SQL est
+	 * désactivée).
+	 *
+	 * @param query texte SQL exécuté
+	 * @param debut valeur retournée par debutRequete() avant l'exécution
+	 */
+	public static void finRequete(String query, long debut) {
+		if (!LogORM.traceSql || debut == 0) {
+			return;
+		}
+		LogORM.deposer(new Message(Niveau.DEBUG, query, System.nanoTime() - debut, null));
+	}
+
+	/**
+	 * Journalise un message (sans effet si son niveau n'est pas actif).
+	 *
+	 * @param n     niveau du message
+	 * @param texte message
+	 */
+	public static void log(Niveau n, String texte) {
+		if (LogORM.estActif(n)) {
+			LogORM.deposer(new Message(n, texte, -1, null));
+		}
+	}
+
+	/**
+	 * Journalise une erreur (niveau ERROR) et sa pile d'appels.
+	 *
+	 * @param texte  message
+	 * @param erreur erreur survenue
+	 */
+	public static void erreur(String texte, Throwable erreur) {
+		if (LogORM.estActif(Niveau.ERROR)) {
+			LogORM.deposer(new Message(Niveau.ERROR, texte, -1, erreur));
+		}
+	}
+
+	/**
+	 * @return nombre de messages perdus (tampon plein) depuis le démarrage
+	 */
+	public static synchronized long getNbPerdus() {
+		return LogORM.nbPerdus;
+	}
+
+	private static synchronized void deposer(Message m) {
+		if (LogORM.nb == LogORM.TAILLE_TAMPON) {
+			// Tampon plein : le plus ancien est écrasé
+			LogORM.debut = (LogORM.debut + 1) % LogORM.TAILLE_TAMPON;
+			LogORM.nb--;
+			LogORM.nbPerdus++;
+		}
+		LogORM.tampon[(LogORM.debut + LogORM.nb) % LogORM.TAILLE_TAMPON] = m;
+		LogORM.nb++;
+		if (LogORM.nb == 1) {
+			LogORM.class.notify();
+		}
+	}
+
+	private static synchronized Message retirer(boolean attendre) throws InterruptedException {
+		while (LogORM.nb == 0) {
+			if (!attendre) {
+				return null;
+			}
+			LogORM.class.wait();
+		}
+		Message m = LogORM.tampon[LogORM.debut];
+		LogORM.tampon[LogORM.debut] = null;
+		LogORM.debut = (LogORM.debut + 1) % LogORM.TAILLE_TAMPON;
+		LogORM.nb--;
+		return m;
+	}
+
+	// Boucle du thread d'écriture
+	private static void ecrire() {
+		SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss.SSS");
+		try {
+			while (true) {
+				LogORM.ecrire(LogORM.retirer(true), format);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// Ecrit les messages encore en attente (arrêt de l'application)
+	private static void vider() {
+		SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss.SSS");
+		try {
+			Message m;
+			while ((m = LogORM.retirer(false)) != null) {
+				LogORM.ecrire(m, format);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		LogORM.sortie.flush();
+	}
+
+	private static void ecrire(Message m, SimpleDateFormat format) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(format.format(new Date(m.dateMs))).append(' ').append(m.niveau).append(' ').append(m.texte);
+		if (m.dureeNs >= 0) {
+			sb.append(" [").append(String.format("%.3f", m.dureeNs / 1_000_000.0)).append(" ms]");
+		}
+		synchronized (LogORM.sortie) {
+			LogORM.sortie.println(sb);
+			if (m.erreur != null) {
+				m.erreur.printStackTrace(LogORM.sortie);
+			}
+		}
+	}
+}
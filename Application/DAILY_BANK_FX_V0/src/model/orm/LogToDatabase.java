@@ -1,104 +1,457 @@
 package model.orm;
 
+import java.sql.CallableStatement;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
 
 import model.orm.exception.DatabaseConnexionException;
 
 /*
- * Classe qui gÃ¨re la connexion Ã  la BD
+ * Classe qui gère la connexion à la BD
  *
- * Code source Ã  modifier pour user/mdp/hote/port/SID (attributs privÃ©s)
+ * Paramètres d'accès (base, compte, pool) : cf. ConfigurationBD (fichier
+ * dailybank.properties)
  *
  */
 public class LogToDatabase {
 
-	// Gloabl : accÃ¨s Ã  la base de donnÃ©e : Ã  ajuster selon le compte
-	private static final String user = "G2B1";
-	private static final String passwd = "Iut2022S2";
-
-	private static final String hoteOracle = "oracle.iut-blagnac.fr";
-	private static final String portOracle = "1521";
-	private static final String SIDOracle = "db11g";
+	// Nombre de lignes par envoi des insertions en masse (insertClients, ...)
+	static final int TAILLE_LOT_INSERT = 500;
 
 	// Local
-	private static Connection currentConnexion = null;
+	private static ConfigurationBD configuration = null;
+	private static volatile Dialecte dialecte = null;
+	private static ConnexionPool pool = null;
 
 	/*
-	 * Load du driver Code dit "static" (hors d'une mÃ©thode) => exÃ©cutÃ© au
-	 * chargement de la classe Permet de retrouver le diver => arrÃªt si driver non
-	 * trouvÃ©
+	 * Connexion empruntée par le thread courant et nombre d'appels getConnexion()
+	 * non encore suivis d'un releaseConnexion() (appels imbriqués de DAO)
 	 */
-	{
-		// driver oracle
-		String nomDriver = "oracle.jdbc.driver.OracleDriver";
+	private static class ConnexionDuThread {
+		final ConnexionPool pool;
+		final Connection con;
+		int nbUtilisations;
+		// Transactions (cf. Transaction) ouvertes sur la connexion : les commit des
+		// DAO sont alors différés jusqu'à la fin de la plus externe
+		int nbTransactions;
+		// Un DAO a demandé l'annulation dans une transaction : elle ne pourra pas
+		// être validée (sauf retour à un point de sauvegarde antérieur)
+		boolean annulationDemandee;
+		// Actions à exécuter à la validation ou l'annulation des écritures en cours
+		// (cf. aLaFinDesEcritures)
+		final ArrayList<Runnable> finEcritures = new ArrayList<>();
 
-		try {
-			Class.forName(nomDriver);
-		} catch (ClassNotFoundException cnfe) {
-			System.err.println("La classe " + nomDriver + " n'a pas Ã©tÃ© trouvÃ©e");
-			System.exit(0);
+		ConnexionDuThread(ConnexionPool pool, Connection con) {
+			this.pool = pool;
+			this.con = con;
+			this.nbUtilisations = 1;
+			this.nbTransactions = 0;
+			this.annulationDemandee = false;
 		}
 	}
 
+	private static final ThreadLocal<ConnexionDuThread> connexionDuThread = new ThreadLocal<>();
+
+	// Nombre de commit réellement envoyés à la BD (une écriture du journal chacun)
+	private static final AtomicLong nbCommits = new AtomicLong();
+
 	/**
-	 * MÃ©thode statique pour demander une connexion Ã  la BD.
+	 * Méthode statique pour demander une connexion à la BD.
 	 *
-	 * Retourne la derniÃ¨re connexion active ou une nouvelle connexion si besoin.
-	 * Connexion paramÃ©trÃ©e SANS COMMIT AUTOMATIQUE.
+	 * Emprunte une connexion au pool pour le thread courant. Tant que le thread ne
+	 * l'a pas rendue (releaseConnexion()), les appels suivants retournent la même
+	 * connexion. Connexion paramétrée SANS COMMIT AUTOMATIQUE.
 	 *
-	 * Appel : Connection c = LogToDatabase.getConnexion();
+	 * Appel : Connection c = LogToDatabase.getConnexion(); ... puis
+	 * LogToDatabase.releaseConnexion(); (dans un finally)
 	 *
-	 * @return Une connexion Ã  la base de donnÃ©e SANS commit automatique
+	 * @return Une connexion à la base de donnée SANS commit automatique
 	 * @throws DatabaseConnexionException
 	 */
 	public static Connection getConnexion() throws DatabaseConnexionException {
+		ConnexionDuThread cdt = LogToDatabase.connexionDuThread.get();
+		if (cdt != null) {
+			cdt.nbUtilisations++;
+			return cdt.con;
+		}
 
-		if (LogToDatabase.currentConnexion != null) {
-			try {
-				if (LogToDatabase.currentConnexion.isValid(0)) {
-					return LogToDatabase.currentConnexion;
-				}
-			} catch (SQLException e) {
-				// Let's continue
+		ConnexionPool p = LogToDatabase.getPool();
+		Connection con = p.borrowConnexion();
+		LogToDatabase.connexionDuThread.set(new ConnexionDuThread(p, con));
+		return con;
+	}
+
+	/**
+	 * Rend au pool la connexion du thread courant (obtenue par getConnexion()).
+	 *
+	 * La connexion n'est réellement rendue qu'au dernier appel (appels imbriqués).
+	 * Une transaction non validée est alors annulée. Sans effet si le thread n'a
+	 * pas de connexion.
+	 */
+	public static void releaseConnexion() {
+		ConnexionDuThread cdt = LogToDatabase.connexionDuThread.get();
+		if (cdt == null) {
+			return;
+		}
+		cdt.nbUtilisations--;
+		if (cdt.nbUtilisations == 0) {
+			LogToDatabase.connexionDuThread.remove();
+			// Si le pool a été fermé entre temps, la connexion est fermée
+			cdt.pool.releaseConnexion(cdt.con);
+			LogToDatabase.finEcritures(cdt);
+		}
+	}
+
+	/*
+	 * Lie au thread courant une connexion dédiée, hors du pool (cf.
+	 * ConnexionPool.ouvrirConnexionHorsPool) : ses getConnexion() la retournent
+	 * et ses releaseConnexion() ne la rendent pas, jusqu'à
+	 * fermerConnexionDediee(). Cf. MoteurSoldes (thread d'écriture).
+	 */
+	static void ouvrirConnexionDediee() throws DatabaseConnexionException {
+		ConnexionPool p = LogToDatabase.getPool();
+		Connection con = p.ouvrirConnexionHorsPool();
+		LogToDatabase.connexionDuThread.set(new ConnexionDuThread(p, con));
+	}
+
+	/*
+	 * Ferme la connexion dédiée du thread courant (cf. ouvrirConnexionDediee).
+	 */
+	static void fermerConnexionDediee() {
+		ConnexionDuThread cdt = LogToDatabase.connexionDuThread.get();
+		if (cdt == null) {
+			return;
+		}
+		LogToDatabase.connexionDuThread.remove();
+		cdt.pool.fermerConnexionHorsPool(cdt.con);
+		LogToDatabase.finEcritures(cdt);
+	}
+
+	/**
+	 * Valide la transaction en cours sur con (à utiliser par les DAO à la place de
+	 * con.commit()).
+	 *
+	 * Si une Transaction est ouverte sur la connexion, la validation est différée
+	 * à sa fin : plusieurs écritures ne font qu'un seul commit.
+	 *
+	 * @param con connexion obtenue par getConnexion()
+	 * @throws SQLException
+	 */
+	public static void commit(Connection con) throws SQLException {
+		ConnexionDuThread cdt = LogToDatabase.connexionDuThread.get();
+		if (cdt != null && cdt.con == con && cdt.nbTransactions > 0) {
+			return;
+		}
+		con.commit();
+		LogToDatabase.nbCommits.incrementAndGet();
+		if (cdt != null && cdt.con == con) {
+			LogToDatabase.finEcritures(cdt);
+		}
+	}
+
+	/**
+	 * Annule la transaction en cours sur con (à utiliser par les DAO à la place
+	 * de con.rollback()).
+	 *
+	 * Si une Transaction est ouverte sur la connexion, elle est seulement marquée
+	 * à annuler : elle sera annulée à sa fin (sauf retour à un point de
+	 * sauvegarde antérieur, cf. Transaction.pointDeSauvegarde).
+	 *
+	 * @param con connexion obtenue par getConnexion()
+	 * @throws SQLException
+	 */
+	public static void rollback(Connection con) throws SQLException {
+		ConnexionDuThread cdt = LogToDatabase.connexionDuThread.get();
+		if (cdt != null && cdt.con == con && cdt.nbTransactions > 0) {
+			cdt.annulationDemandee = true;
+			return;
+		}
+		con.rollback();
+		if (cdt != null && cdt.con == con) {
+			LogToDatabase.finEcritures(cdt);
+		}
+	}
+
+	/*
+	 * Exécute action à la validation ou l'annulation des écritures en cours sur la
+	 * connexion du thread courant : commit ou rollback hors Transaction, fin de
+	 * la Transaction la plus externe, ou à défaut connexion rendue.
+	 * Immédiatement si le thread n'a pas de connexion. Cf. MoteurSoldes.
+	 */
+	static void aLaFinDesEcritures(Runnable action) {
+		ConnexionDuThread cdt = LogToDatabase.connexionDuThread.get();
+		if (cdt == null) {
+			action.run();
+		} else {
+			cdt.finEcritures.add(action);
+		}
+	}
+
+	private static void finEcritures(ConnexionDuThread cdt) {
+		if (cdt.finEcritures.isEmpty()) {
+			return;
+		}
+		ArrayList<Runnable> actions = new ArrayList<>(cdt.finEcritures);
+		cdt.finEcritures.clear();
+		for (Runnable action : actions) {
+			action.run();
+		}
+	}
+
+	/**
+	 * @return nombre de commit envoyés à la BD depuis le démarrage
+	 */
+	public static long getNbCommits() {
+		return LogToDatabase.nbCommits.get();
+	}
+
+	/*
+	 * Ouvre une transaction (éventuellement imbriquée) sur la connexion du thread
+	 * courant, empruntée si besoin. Cf. Transaction.
+	 */
+	static Connection ouvrirTransaction() throws DatabaseConnexionException {
+		Connection con = LogToDatabase.getConnexion();
+		LogToDatabase.connexionDuThread.get().nbTransactions++;
+		return con;
+	}
+
+	/*
+	 * Termine la transaction ouverte par ouvrirTransaction() et rend la connexion.
+	 * La plus externe valide (si valider et qu'aucune annulation n'a été
+	 * demandée) ou annule. Une transaction imbriquée qui échoue fait annuler la
+	 * plus externe.
+	 *
+	 * Retourne faux si la validation demandée a été refusée (transaction
+	 * annulée).
+	 */
+	static boolean fermerTransaction(boolean valider) throws SQLException {
+		ConnexionDuThread cdt = LogToDatabase.connexionDuThread.get();
+		try {
+			cdt.nbTransactions--;
+			if (!valider) {
+				cdt.annulationDemandee = true;
 			}
-			try {
-				LogToDatabase.currentConnexion.close();
-			} catch (SQLException e) {
-				// Let's continue
+			if (cdt.nbTransactions > 0) {
+				return !cdt.annulationDemandee;
+			}
+			boolean annuler = cdt.annulationDemandee;
+			cdt.annulationDemandee = false;
+			if (annuler) {
+				cdt.con.rollback();
+				LogToDatabase.finEcritures(cdt);
+				return false;
 			}
-			LogToDatabase.currentConnexion = null;
+			cdt.con.commit();
+			LogToDatabase.nbCommits.incrementAndGet();
+			LogToDatabase.finEcritures(cdt);
+			return true;
+		} finally {
+			LogToDatabase.releaseConnexion();
 		}
+	}
+
+	/*
+	 * Lecture / restauration de la demande d'annulation de la transaction du
+	 * thread courant (retour à un point de sauvegarde)
+	 */
+	static boolean isAnnulationDemandee() {
+		return LogToDatabase.connexionDuThread.get().annulationDemandee;
+	}
 
-		String url = "jdbc:oracle:thin:" + "@" + LogToDatabase.hoteOracle + ":" + LogToDatabase.portOracle + ":"
-				+ LogToDatabase.SIDOracle;
+	static void setAnnulationDemandee(boolean annulationDemandee) {
+		LogToDatabase.connexionDuThread.get().annulationDemandee = annulationDemandee;
+	}
 
-		try {
-			LogToDatabase.currentConnexion = DriverManager.getConnection(url, LogToDatabase.user, LogToDatabase.passwd);
+	/*
+	 * Vrai si le thread courant est dans une Transaction (cf. MoteurSoldes : pas
+	 * d'écriture différée dans une transaction, qui doit pouvoir être annulée)
+	 */
+	static boolean isTransactionOuverte() {
+		ConnexionDuThread cdt = LogToDatabase.connexionDuThread.get();
+		return cdt != null && cdt.nbTransactions > 0;
+	}
 
-			LogToDatabase.currentConnexion.setAutoCommit(false);
+	/**
+	 * Retourne le PreparedStatement de query pour la connexion con, pris dans le
+	 * cache de requêtes de la connexion si possible.
+	 *
+	 * Le PreparedStatement ne doit PAS être fermé par l'appelant (seul son
+	 * ResultSet doit l'être).
+	 *
+	 * @param con   connexion obtenue par getConnexion()
+	 * @param query texte SQL
+	 * @return le PreparedStatement de query
+	 * @throws SQLException
+	 */
+	public static PreparedStatement prepareStatement(Connection con, String query) throws SQLException {
+		StatementCache cache = LogToDatabase.getStatementCache(con);
+		if (cache == null) {
+			return con.prepareStatement(query);
+		}
+		return cache.prepareStatement(query);
+	}
 
-		} catch (SQLTimeoutException e) {
-			LogToDatabase.currentConnexion = null;
-			throw new DatabaseConnexionException("Timeout sur connexion", e);
-		} catch (SQLException e) {
-			LogToDatabase.currentConnexion = null;
-			throw new DatabaseConnexionException("Connexion Impossible", e);
+	/**
+	 * Retourne le PreparedStatement d'un INSERT dont les clés générées (ex : id
+	 * pris dans une séquence) sont lues par getGeneratedKeys() après exécution,
+	 * sans second aller-retour vers la BD.
+	 *
+	 * Le PreparedStatement ne doit PAS être fermé par l'appelant (seul le
+	 * ResultSet de getGeneratedKeys() doit l'être).
+	 *
+	 * @param con          connexion obtenue par getConnexion()
+	 * @param query        texte SQL (INSERT)
+	 * @param colonnesCles colonnes générées à retourner (ex : {"idNumCli"})
+	 * @return le PreparedStatement de query
+	 * @throws SQLException
+	 */
+	public static PreparedStatement prepareStatement(Connection con, String query, String[] colonnesCles)
+			throws SQLException {
+		StatementCache cache = LogToDatabase.getStatementCache(con);
+		if (cache == null) {
+			return con.prepareStatement(query, colonnesCles);
 		}
+		return cache.prepareStatement(query, colonnesCles);
+	}
+
+	/**
+	 * Réserve nb valeurs d'une séquence en un seul aller-retour vers la BD, pour
+	 * les insertions en masse.
+	 *
+	 * Les valeurs réservées sont consommées même si la transaction est annulée
+	 * (comme tout NEXTVAL).
+	 *
+	 * @param con      connexion obtenue par getConnexion()
+	 * @param sequence nom de la séquence (ex : "seq_id_client")
+	 * @param nb       nombre de valeurs à réserver (au plus TAILLE_LOT_INSERT)
+	 * @return les valeurs réservées, en ordre croissant
+	 * @throws SQLException
+	 */
+	static int[] reserverIds(Connection con, String sequence, int nb) throws SQLException {
+		String query = LogToDatabase.getDialecte().reserverIds(sequence);
+		PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
+		pst.setInt(1, nb);
+		// Requête en cache : même taille de lecture pour tous les appels (un lot
+		// entier en un aller-retour)
+		pst.setFetchSize(LogToDatabase.TAILLE_LOT_INSERT);
 
-		return LogToDatabase.currentConnexion;
+		int[] ids = new int[nb];
+		int i = 0;
+		long chrono = LogORM.debutRequete();
+		ResultSet rs = pst.executeQuery();
+		LogORM.finRequete(query, chrono);
+		while (rs.next() && i < nb) {
+			ids[i++] = rs.getInt(1);
+		}
+		rs.close();
+		if (i != nb) {
+			throw new SQLException("Réservation de " + nb + " valeurs de " + sequence + " : " + i + " obtenues");
+		}
+		Arrays.sort(ids);
+		return ids;
 	}
 
-	public static void closeConnexion() throws DatabaseConnexionException {
-		if (LogToDatabase.currentConnexion != null) {
+	/**
+	 * Retourne le CallableStatement de l'appel q pour la connexion con, pris dans
+	 * le cache de requêtes de la connexion si possible.
+	 *
+	 * Le CallableStatement ne doit PAS être fermé par l'appelant.
+	 *
+	 * @param con connexion obtenue par getConnexion()
+	 * @param q   appel de procédure stockée ("{call ...}")
+	 * @return le CallableStatement de q
+	 * @throws SQLException
+	 */
+	public static CallableStatement prepareCall(Connection con, String q) throws SQLException {
+		StatementCache cache = LogToDatabase.getStatementCache(con);
+		if (cache == null) {
+			return con.prepareCall(q);
+		}
+		return cache.prepareCall(q);
+	}
+
+	private static StatementCache getStatementCache(Connection con) {
+		ConnexionDuThread cdt = LogToDatabase.connexionDuThread.get();
+		if (cdt == null || cdt.con != con) {
+			return null;
+		}
+		return cdt.pool.getStatementCache(con);
+	}
+
+	/**
+	 * Pool de connexions (créé au premier appel), permet aussi d'en consulter les
+	 * métriques (actives, inactives, attente, timeouts).
+	 *
+	 * @return le pool de connexions à la BD
+	 */
+	public static synchronized ConnexionPool getPool() {
+		if (LogToDatabase.pool == null) {
+			ConfigurationBD config = LogToDatabase.getConfiguration();
+			String nomDriver = config.getDriver();
 			try {
-				LogToDatabase.currentConnexion.close();
-				LogToDatabase.currentConnexion = null;
-			} catch (SQLException e) {
-				throw new DatabaseConnexionException("Fermeture Connexion Impossible", e);
+				Class.forName(nomDriver);
+			} catch (ClassNotFoundException cnfe) {
+				// la connexion échouera (driver absent des LIBS)
+				LogORM.erreur("La classe " + nomDriver + " n'a pas été trouvée", cnfe);
 			}
+			LogORM.log(LogORM.Niveau.INFO, config.toString());
+			LogToDatabase.pool = new ConnexionPool(config.getUrl(), config.getUtilisateur(), config.getMotDePasse(),
+					config.getTailleMinPool(), config.getTailleMaxPool(), config.getDelaiAttenteMaxMs(),
+					config.getDelaiInactiviteMaxMs(), config.getPeriodeValidationMs(), config.getTailleCacheRequetes());
+		}
+		return LogToDatabase.pool;
+	}
+
+	/**
+	 * Configuration d'accès à la BD (lue au premier appel, relue après
+	 * closeConnexion()).
+	 *
+	 * @return la configuration
+	 */
+	public static synchronized ConfigurationBD getConfiguration() {
+		if (LogToDatabase.configuration == null) {
+			LogToDatabase.configuration = ConfigurationBD.charger();
+			LogToDatabase.dialecte = LogToDatabase.configuration.getDialecte();
+		}
+		return LogToDatabase.configuration;
+	}
+
+	/**
+	 * @return le dialecte SQL de la BD configurée (cf. Dialecte)
+	 */
+	public static Dialecte getDialecte() {
+		Dialecte d = LogToDatabase.dialecte;
+		if (d == null) {
+			synchronized (LogToDatabase.class) {
+				LogToDatabase.getConfiguration();
+				d = LogToDatabase.dialecte;
+			}
+		}
+		return d;
+	}
+
+	/**
+	 * Ferme le pool et toutes ses connexions (déconnexion de l'application).
+	 *
+	 * @throws DatabaseConnexionException
+	 */
+	public static void closeConnexion() throws DatabaseConnexionException {
+		MoteurSoldes.arreter(); // écritures différées faites avant la fermeture
+		HistoriqueOperations.arreter();
+		ConnexionPool p;
+		synchronized (LogToDatabase.class) {
+			p = LogToDatabase.pool;
+			LogToDatabase.pool = null;
+			LogToDatabase.configuration = null; // relue à la prochaine connexion
+			LogToDatabase.dialecte = null;
+		}
+		if (p != null) {
+			p.close();
 		}
 	}
 }
@@ -0,0 +1,681 @@
+package model.orm;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import model.data.CompteCourant;
+import model.orm.exception.DataAccessException;
+import model.orm.exception.DatabaseConnexionException;
+import model.orm.exception.Order;
+import model.orm.exception.RowNotFoundOrTooManyRowsException;
+import model.orm.exception.Table;
+
+/**
+ * Soldes des comptes tenus en mémoire pour les opérations de guichet (débit,
+ * crédit), avec écriture différée en BD.
+ *
+ * Le contrôle du découvert autorisé et la mise à jour du solde se font en
+ * mémoire sous le verrou du compte (verrous répartis par numéro de compte :
+ * deux comptes différents ne s'attendent presque jamais). L'opération est
+ * confirmée à l'appelant une fois écrite sur disque dans le journal local
+ * (JournalOperations, un fsync pour toutes les opérations arrivées pendant le
+ * précédent), puis écrite en BD par un thread dédié, par lots (insertions des
+ * opérations, mises à jour des soldes et numéro de la dernière entrée du
+ * journal écrite, un commit par lot) : un débit ne coûte plus un aller-retour
+ * BD et un commit. Ce thread a sa propre connexion, hors du pool : les
+ * appelants qui l'attendent (synchroniser) en gardant une connexion du pool ne
+ * peuvent pas l'en priver. Au démarrage, les entrées du journal pas encore en BD (arrêt
+ * brutal) y sont écrites avant toute autre opération.
+ *
+ * Activé par bd.moteurSoldes=true (cf. ConfigurationBD) : UNIQUEMENT si cette
+ * application est la seule à modifier les soldes (base locale, poste de
+ * traitement par lots). Les DAO y passent alors d'eux-mêmes (insertDebit,
+ * insertCredit, insertDebitExceptionnel hors Transaction) ; avant de lire un
+ * compte ou ses opérations, ils attendent que ses écritures différées soient
+ * faites (synchroniser), et les autres écritures d'un compte en BD (virement,
+ * clôture, import, ...) le retirent de la mémoire (ecritureDirecte) : jusqu'à
+ * leur validation ou annulation, le compte n'est ni débité ni crédité par le
+ * moteur ni relu en BD (son solde n'y est pas encore définitif).
+ */
+public class MoteurSoldes {
+
+	// Nombre de verrous (puissance de 2) : verrou d'un compte = numéro & masque
+	private static final int NB_VERROUS = 64;
+	// Nombre maximum d'opérations écrites par transaction
+	private static final int TAILLE_LOT = 1000;
+	// Attente maximum des écritures différées par synchroniser()
+	private static final long ATTENTE_MAX_MS = 30_000;
+	// Taille du journal à partir de laquelle il est vidé dès que tout est en BD
+	private static final long TAILLE_COMPACTAGE = 16L << 20;
+
+	private static volatile MoteurSoldes moteur = null;
+	// Moteur non activé par la configuration lue (relue après arreter()) : get()
+	// ne prend alors aucun verrou
+	private static volatile boolean desactive = false;
+
+	/*
+	 * Compte tenu en mémoire (protégé par le verrou de son numéro). Montants en
+	 * centimes : pas d'erreur d'arrondi cumulée.
+	 */
+	private static class EtatCompte {
+		long soldeCentimes;
+		final long debitAutoriseCentimes; // négatif
+		int nbEnAttente; // opérations pas encore écrites en BD
+
+		EtatCompte(CompteCourant cc) {
+			this.soldeCentimes = Math.round(cc.solde * 100);
+			this.debitAutoriseCentimes = (long) cc.debitAutorise * 100;
+			this.nbEnAttente = 0;
+		}
+	}
+
+	private final ReentrantLock[] verrous = new ReentrantLock[MoteurSoldes.NB_VERROUS];
+	private final Condition[] ecrites = new Condition[MoteurSoldes.NB_VERROUS];
+	private final ConcurrentHashMap<Integer, EtatCompte> comptes = new ConcurrentHashMap<>();
+	// Ecritures directes en cours (pas encore validées ou annulées) : par compte
+	// (modifié sous le verrou du compte) et sur tous les comptes
+	private final ConcurrentHashMap<Integer, Integer> ecrituresDirectes = new ConcurrentHashMap<>();
+	private final AtomicInteger nbEcrituresDirectesToutes = new AtomicInteger();
+	private final LinkedBlockingQueue<JournalOperations.Entree> aEcrire = new LinkedBlockingQueue<>();
+	private final JournalOperations journal;
+	private final String nomJournal;
+	private final Thread ecriture;
+
+	// Opérations déposées / écrites depuis le démarrage (protégés par this)
+	private long nbDeposees = 0;
+	private long nbEcrites = 0;
+	private long dernierApplique; // dernière entrée du journal écrite en BD
+	private SQLException derniereErreur = null;
+	private volatile boolean arret = false;
+
+	private MoteurSoldes(String fichierJournal) throws DataAccessException, DatabaseConnexionException {
+		for (int i = 0; i < MoteurSoldes.NB_VERROUS; i++) {
+			this.verrous[i] = new ReentrantLock();
+			this.ecrites[i] = this.verrous[i].newCondition();
+		}
+
+		ArrayList<JournalOperations.Entree> entrees;
+		try {
+			this.journal = new JournalOperations(Paths.get(fichierJournal), this.aEcrire::addAll);
+			entrees = this.journal.lire();
+		} catch (IOException e) {
+			throw new DataAccessException(Table.Operation, Order.OTHER,
+					"Journal des opérations " + fichierJournal + " illisible", e);
+		}
+		this.nomJournal = Paths.get(fichierJournal).getFileName().toString();
+		try {
+			this.dernierApplique = this.lireDernierApplique();
+			// Reprise : entrées du journal pas encore en BD
+			ArrayList<JournalOperations.Entree> lot = new ArrayList<>();
+			for (JournalOperations.Entree e : entrees) {
+				if (e.numero > this.dernierApplique) {
+					lot.add(e);
+				}
+				if (lot.size() == MoteurSoldes.TAILLE_LOT) {
+					this.ecrireLot(lot);
+					lot.clear();
+				}
+			}
+			if (!lot.isEmpty()) {
+				this.ecrireLot(lot);
+			}
+		} catch (SQLException e) {
+			this.journal.fermer();
+			throw new DataAccessException(Table.Operation, Order.INSERT,
+					"Reprise du journal des opérations " + fichierJournal + " impossible", e);
+		} catch (DatabaseConnexionException e) {
+			this.journal.fermer();
+			throw e;
+		}
+		long dernier = entrees.isEmpty() ? 0 : entrees.get(entrees.size() - 1).numero;
+		if (dernier > 0) {
+			LogORM.log(LogORM.Niveau.INFO, "Journal " + fichierJournal + " : " + entrees.size()
+					+ " opérations relues, reprise jusqu'à l'entrée " + this.dernierApplique);
+		}
+		this.dernierApplique = Math.max(this.dernierApplique, dernier);
+		this.journal.demarrer(this.dernierApplique);
+		this.journal.compacter(this.dernierApplique, 0);
+
+		this.ecriture = new Thread(this::ecrire, "MoteurSoldes");
+		this.ecriture.setDaemon(true);
+		this.ecriture.start();
+	}
+
+	/**
+	 * @return le moteur (démarré au premier appel), null s'il n'est pas activé
+	 *         (bd.moteurSoldes)
+	 * @throws DataAccessException        démarrage impossible (journal illisible,
+	 *                                    reprise du journal en échec)
+	 * @throws DatabaseConnexionException
+	 */
+	public static MoteurSoldes get() throws DataAccessException, DatabaseConnexionException {
+		MoteurSoldes m = MoteurSoldes.moteur;
+		if (m != null || MoteurSoldes.desactive) {
+			return m;
+		}
+		synchronized (MoteurSoldes.class) {
+			if (MoteurSoldes.moteur != null || MoteurSoldes.desactive) {
+				return MoteurSoldes.moteur;
+			}
+			ConfigurationBD config = LogToDatabase.getConfiguration();
+			if (!config.isMoteurSoldes()) {
+				MoteurSoldes.desactive = true;
+				return null;
+			}
+			MoteurSoldes.moteur = new MoteurSoldes(config.getJournalOperations());
+			LogORM.log(LogORM.Niveau.INFO, "Moteur de soldes démarré (écriture différée des opérations)");
+			return MoteurSoldes.moteur;
+		}
+	}
+
+	/**
+	 * Arrête le moteur (s'il est démarré) après l'écriture en BD des opérations
+	 * en attente. Appelé par LogToDatabase.closeConnexion().
+	 */
+	static void arreter() {
+		MoteurSoldes m;
+		synchronized (MoteurSoldes.class) {
+			m = MoteurSoldes.moteur;
+			MoteurSoldes.moteur = null;
+			MoteurSoldes.desactive = false; // configuration relue au prochain get()
+		}
+		if (m == null) {
+			return;
+		}
+		try {
+			m.synchroniser();
+		} catch (DataAccessException e) {
+			LogORM.erreur("Arrêt du moteur de soldes : opérations non écrites en BD", e);
+		}
+		m.journal.fermer();
+		m.arret = true;
+		m.ecriture.interrupt();
+	}
+
+	/**
+	 * Débit (contrôle du découvert autorisé).
+	 *
+	 * @param idNumCompte compte débité
+	 * @param montant     montant débité (positif)
+	 * @param typeOp      type de l'opération
+	 * @return vrai si le débit est fait, faux si le découvert autorisé serait
+	 *         dépassé (rien n'est fait)
+	 * @throws DataAccessException        compte inexistant ou erreur de lecture
+	 * @throws DatabaseConnexionException
+	 */
+	public boolean debiter(int idNumCompte, double montant, String typeOp)
+			throws DataAccessException, DatabaseConnexionException {
+		return this.operation(idNumCompte, -montant, typeOp, true);
+	}
+
+	/**
+	 * Crédit (ou débit exceptionnel si montant négatif) : sans contrôle du
+	 * découvert autorisé.
+	 *
+	 * @param idNumCompte compte
+	 * @param montant     montant signé de l'opération
+	 * @param typeOp      type de l'opération
+	 * @throws DataAccessException        compte inexistant ou erreur de lecture
+	 * @throws DatabaseConnexionException
+	 */
+	public void crediter(int idNumCompte, double montant, String typeOp)
+			throws DataAccessException, DatabaseConnexionException {
+		this.operation(idNumCompte, montant, typeOp, false);
+	}
+
+	/**
+	 * @param idNumCompte numéro du compte
+	 * @return solde du compte, opérations non encore écrites en BD comprises
+	 * @throws DataAccessException        compte inexistant ou erreur de lecture
+	 * @throws DatabaseConnexionException
+	 */
+	public double getSolde(int idNumCompte) throws DataAccessException, DatabaseConnexionException {
+		ReentrantLock verrou = this.verrou(idNumCompte);
+		verrou.lock();
+		try {
+			return this.etat(idNumCompte).soldeCentimes / 100.0;
+		} finally {
+			verrou.unlock();
+		}
+	}
+
+	private boolean operation(int idNumCompte, double montant, String typeOp, boolean controle)
+			throws DataAccessException, DatabaseConnexionException {
+		long centimes = Math.round(montant * 100);
+		JournalOperations.Entree entree;
+		ReentrantLock verrou = this.verrou(idNumCompte);
+		verrou.lock();
+		try {
+			EtatCompte etat = this.etat(idNumCompte);
+			if (controle && etat.soldeCentimes + centimes < etat.debitAutoriseCentimes) {
+				return false;
+			}
+			try {
+				entree = this.journal.ajouter(idNumCompte, centimes, typeOp);
+			} catch (IOException e) {
+				throw new DataAccessException(Table.Operation, Order.INSERT, "Journal des opérations", e);
+			}
+			etat.soldeCentimes += centimes;
+			etat.nbEnAttente++;
+			synchronized (this) {
+				this.nbDeposees++;
+			}
+		} finally {
+			verrou.unlock();
+		}
+
+		// Attente hors verrou : les opérations des autres guichets partent dans le
+		// même fsync
+		try {
+			this.journal.attendreDurable(entree.numero);
+		} catch (IOException e) {
+			verrou.lock();
+			try {
+				EtatCompte etat = this.comptes.get(idNumCompte);
+				etat.soldeCentimes -= centimes;
+				etat.nbEnAttente--;
+				this.ecrites[idNumCompte & (MoteurSoldes.NB_VERROUS - 1)].signalAll();
+			} finally {
+				verrou.unlock();
+			}
+			synchronized (this) {
+				this.nbDeposees--;
+				this.notifyAll();
+			}
+			throw new DataAccessException(Table.Operation, Order.INSERT, "Journal des opérations", e);
+		}
+		return true;
+	}
+
+	/*
+	 * Etat du compte (lu en BD s'il n'est pas en mémoire), verrou du compte pris.
+	 * Attend d'abord la fin des écritures directes en cours sur le compte.
+	 */
+	private EtatCompte etat(int idNumCompte) throws DataAccessException, DatabaseConnexionException {
+		this.attendreEcrituresDirectes(idNumCompte);
+		EtatCompte etat = this.comptes.get(idNumCompte);
+		if (etat == null) {
+			CompteCourant cc;
+			try {
+				cc = new AccessCompteCourant().getCompteCourant(idNumCompte);
+			} catch (RowNotFoundOrTooManyRowsException e) {
+				throw new DataAccessException(Table.CompteCourant, Order.SELECT, "Erreur accès", e);
+			}
+			if (cc == null) {
+				throw new DataAccessException(Table.CompteCourant, Order.SELECT,
+						"Compte " + idNumCompte + " inexistant", null);
+			}
+			etat = new EtatCompte(cc);
+			this.comptes.put(idNumCompte, etat);
+		}
+		return etat;
+	}
+
+	/*
+	 * Attente (verrou du compte pris) de la validation ou de l'annulation des
+	 * écritures directes en cours sur le compte (cf. ecritureDirecte)
+	 */
+	private void attendreEcrituresDirectes(int idNumCompte) throws DataAccessException {
+		long finAttente = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MoteurSoldes.ATTENTE_MAX_MS);
+		try {
+			while (this.nbEcrituresDirectesToutes.get() > 0 || this.ecrituresDirectes.containsKey(idNumCompte)) {
+				long reste = finAttente - System.nanoTime();
+				if (reste <= 0) {
+					throw new DataAccessException(Table.CompteCourant, Order.SELECT,
+							"Compte " + idNumCompte + " en cours de modification hors du moteur de soldes", null);
+				}
+				this.ecrites[idNumCompte & (MoteurSoldes.NB_VERROUS - 1)].awaitNanos(reste);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DataAccessException(Table.CompteCourant, Order.SELECT,
+					"Compte " + idNumCompte + " en cours de modification hors du moteur de soldes", null);
+		}
+	}
+
+	private ReentrantLock verrou(int idNumCompte) {
+		return this.verrous[idNumCompte & (MoteurSoldes.NB_VERROUS - 1)];
+	}
+
+	/**
+	 * Attend que les opérations déjà faites sur un compte soient écrites en BD.
+	 *
+	 * @param idNumCompte numéro du compte
+	 * @throws DataAccessException si l'écriture en BD échoue encore après
+	 *                             ATTENTE_MAX_MS
+	 */
+	public void synchroniser(int idNumCompte) throws DataAccessException {
+		ReentrantLock verrou = this.verrou(idNumCompte);
+		long finAttente = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MoteurSoldes.ATTENTE_MAX_MS);
+		verrou.lock();
+		try {
+			EtatCompte etat = this.comptes.get(idNumCompte);
+			while (etat != null && etat.nbEnAttente > 0) {
+				long reste = finAttente - System.nanoTime();
+				if (reste <= 0) {
+					throw this.erreurEcriture();
+				}
+				this.ecrites[idNumCompte & (MoteurSoldes.NB_VERROUS - 1)].awaitNanos(reste);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw this.erreurEcriture();
+		} finally {
+			verrou.unlock();
+		}
+	}
+
+	/**
+	 * Attend que toutes les opérations déjà faites soient écrites en BD.
+	 *
+	 * @throws DataAccessException si l'écriture en BD échoue encore après
+	 *                             ATTENTE_MAX_MS
+	 */
+	public synchronized void synchroniser() throws DataAccessException {
+		long cible = this.nbDeposees;
+		long finAttente = System.currentTimeMillis() + MoteurSoldes.ATTENTE_MAX_MS;
+		try {
+			while (this.nbEcrites < cible) {
+				long reste = finAttente - System.currentTimeMillis();
+				if (reste <= 0) {
+					throw this.erreurEcriture();
+				}
+				this.wait(reste);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw this.erreurEcriture();
+		}
+	}
+
+	/**
+	 * A appeler avant une écriture en BD hors du moteur (virement, clôture,
+	 * import, ...), avec la connexion de l'écriture (après
+	 * LogToDatabase.getConnexion(), sans écriture déjà faite sur ces comptes) :
+	 * attend les écritures différées des comptes (faites sur la connexion du
+	 * thread d'écriture, hors du pool) puis les retire de la mémoire. Jusqu'à la validation ou l'annulation de
+	 * l'écriture sur cette connexion (commit, rollback, fin de la Transaction ou
+	 * connexion rendue), les débits et crédits des comptes par le moteur
+	 * attendent : ils relisent ensuite le solde écrit.
+	 *
+	 * @param idsComptes comptes modifiés, aucun pour tous les comptes
+	 * @throws DataAccessException        cf. synchroniser
+	 * @throws DatabaseConnexionException
+	 */
+	public static void ecritureDirecte(int... idsComptes)
+			throws DataAccessException, DatabaseConnexionException {
+		MoteurSoldes m = MoteurSoldes.get();
+		if (m == null) {
+			return;
+		}
+		if (idsComptes.length == 0) {
+			m.nbEcrituresDirectesToutes.incrementAndGet();
+			LogToDatabase.aLaFinDesEcritures(m::finEcrituresDirectesToutes);
+			// Opérations commencées avant terminées (verrous pris et rendus)
+			for (ReentrantLock verrou : m.verrous) {
+				verrou.lock();
+				verrou.unlock();
+			}
+			m.synchroniser();
+			m.comptes.clear();
+			return;
+		}
+		for (int id : idsComptes) {
+			ReentrantLock verrou = m.verrou(id);
+			verrou.lock();
+			try {
+				m.ecrituresDirectes.merge(id, 1, Integer::sum);
+			} finally {
+				verrou.unlock();
+			}
+			LogToDatabase.aLaFinDesEcritures(() -> m.finEcritureDirecte(id));
+		}
+		for (int id : idsComptes) {
+			m.synchroniser(id);
+			ReentrantLock verrou = m.verrou(id);
+			verrou.lock();
+			try {
+				EtatCompte etat = m.comptes.get(id);
+				if (etat != null && etat.nbEnAttente == 0) {
+					m.comptes.remove(id);
+				}
+			} finally {
+				verrou.unlock();
+			}
+		}
+	}
+
+	// Ecriture directe sur un compte validée ou annulée
+	private void finEcritureDirecte(int idNumCompte) {
+		ReentrantLock verrou = this.verrou(idNumCompte);
+		verrou.lock();
+		try {
+			this.ecrituresDirectes.computeIfPresent(idNumCompte, (id, nb) -> nb > 1 ? nb - 1 : null);
+			this.ecrites[idNumCompte & (MoteurSoldes.NB_VERROUS - 1)].signalAll();
+		} finally {
+			verrou.unlock();
+		}
+	}
+
+	// Ecriture directe sur tous les comptes validée ou annulée
+	private void finEcrituresDirectesToutes() {
+		this.nbEcrituresDirectesToutes.decrementAndGet();
+		for (int i = 0; i < MoteurSoldes.NB_VERROUS; i++) {
+			this.verrous[i].lock();
+			try {
+				this.ecrites[i].signalAll();
+			} finally {
+				this.verrous[i].unlock();
+			}
+		}
+	}
+
+	/**
+	 * A appeler avant une lecture en BD d'un compte ou de ses opérations : attend
+	 * ses écritures différées (sans effet si le moteur n'est pas activé).
+	 *
+	 * @param idsComptes comptes lus, aucun pour tous les comptes
+	 * @throws DataAccessException        cf. synchroniser
+	 * @throws DatabaseConnexionException
+	 */
+	public static void avantLecture(int... idsComptes)
+			throws DataAccessException, DatabaseConnexionException {
+		MoteurSoldes m = MoteurSoldes.get();
+		if (m == null) {
+			return;
+		}
+		if (idsComptes.length == 0) {
+			m.synchroniser();
+		}
+		for (int id : idsComptes) {
+			m.synchroniser(id);
+		}
+	}
+
+	private synchronized DataAccessException erreurEcriture() {
+		return new DataAccessException(Table.Operation, Order.INSERT,
+				"Opérations non écrites en BD (écriture différée en échec ou en retard)", this.derniereErreur);
+	}
+
+	// Boucle du thread d'écriture : lots d'opérations, réessayés jusqu'au succès,
+	// sur une connexion dédiée (rouverte après une erreur)
+	private void ecrire() {
+		ArrayList<JournalOperations.Entree> lot = new ArrayList<>();
+		long pauseMs = 100;
+		boolean connecte = false;
+		try {
+			while (!this.arret) {
+				if (lot.isEmpty()) {
+					lot.add(this.aEcrire.take());
+					this.aEcrire.drainTo(lot, MoteurSoldes.TAILLE_LOT - 1);
+				}
+				try {
+					if (!connecte) {
+						LogToDatabase.ouvrirConnexionDediee();
+						connecte = true;
+					}
+					this.ecrireLot(lot);
+					synchronized (this) {
+						this.dernierApplique = lot.get(lot.size() - 1).numero;
+					}
+				} catch (SQLException | DatabaseConnexionException e) {
+					synchronized (this) {
+						this.derniereErreur = e instanceof SQLException ? (SQLException) e
+								: new SQLException(e.getMessage(), e);
+					}
+					LogORM.erreur("Moteur de soldes : écriture de " + lot.size() + " opérations en échec, nouvel essai dans "
+							+ pauseMs + " ms", e);
+					if (connecte) {
+						LogToDatabase.fermerConnexionDediee();
+						connecte = false;
+					}
+					Thread.sleep(pauseMs);
+					pauseMs = Math.min(pauseMs * 2, 5_000);
+					continue;
+				}
+				pauseMs = 100;
+				this.lotEcrit(lot);
+				lot.clear();
+				if (this.aEcrire.isEmpty()) {
+					this.journal.compacter(this.getDernierApplique(), MoteurSoldes.TAILLE_COMPACTAGE);
+				}
+			}
+		} catch (InterruptedException e) {
+			// arrêt
+		} finally {
+			if (connecte) {
+				LogToDatabase.fermerConnexionDediee();
+			}
+		}
+	}
+
+	// Une transaction : insertion des opérations, un UPDATE de solde par compte,
+	// numéro de la dernière entrée du journal écrite
+	private void ecrireLot(ArrayList<JournalOperations.Entree> lot) throws SQLException, DatabaseConnexionException {
+		try {
+			Connection con = LogToDatabase.getConnexion();
+			try {
+				// dateOp : date de l'opération au guichet (pas celle de l'écriture en BD)
+				String query = "INSERT INTO Operation (idOperation, montant, dateOp, dateValeur, idNumCompte, idTypeOp)"
+						+ " VALUES (" + LogToDatabase.getDialecte().nextval("seq_id_operation") + ", ?, ?, ?, ?, ?)";
+				PreparedStatement pstOp = LogToDatabase.prepareStatement(con, query);
+				pstOp.clearBatch();
+				HashMap<Integer, Long> variations = new HashMap<>();
+				for (JournalOperations.Entree e : lot) {
+					pstOp.setDouble(1, e.centimes / 100.0);
+					pstOp.setTimestamp(2, new Timestamp(e.horodatage));
+					pstOp.setTimestamp(3, new Timestamp(e.horodatage + TimeUnit.DAYS.toMillis(2)));
+					pstOp.setInt(4, e.idNumCompte);
+					pstOp.setString(5, e.idTypeOp);
+					pstOp.addBatch();
+					variations.merge(e.idNumCompte, e.centimes, Long::sum);
+				}
+				long chrono = LogORM.debutRequete();
+				pstOp.executeBatch();
+				LogORM.finRequete(query, chrono);
+
+				query = "UPDATE CompteCourant SET solde = solde + ? WHERE idNumCompte = ?";
+				PreparedStatement pstSolde = LogToDatabase.prepareStatement(con, query);
+				pstSolde.clearBatch();
+				for (Map.Entry<Integer, Long> v : variations.entrySet()) {
+					pstSolde.setDouble(1, v.getValue() / 100.0);
+					pstSolde.setInt(2, v.getKey());
+					pstSolde.addBatch();
+				}
+				chrono = LogORM.debutRequete();
+				pstSolde.executeBatch();
+				LogORM.finRequete(query, chrono);
+
+				long dernier = lot.get(lot.size() - 1).numero;
+				query = "UPDATE JournalApplique SET dernierNumero = ? WHERE nomJournal = ?";
+				PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
+				pst.setLong(1, dernier);
+				pst.setString(2, this.nomJournal);
+				chrono = LogORM.debutRequete();
+				int result = pst.executeUpdate();
+				LogORM.finRequete(query, chrono);
+				if (result == 0) {
+					query = "INSERT INTO JournalApplique (nomJournal, dernierNumero) VALUES (?, ?)";
+					pst = LogToDatabase.prepareStatement(con, query);
+					pst.setString(1, this.nomJournal);
+					pst.setLong(2, dernier);
+					chrono = LogORM.debutRequete();
+					pst.executeUpdate();
+					LogORM.finRequete(query, chrono);
+				}
+
+				LogToDatabase.commit(con);
+			} catch (SQLException e) {
+				LogToDatabase.rollback(con);
+				throw e;
+			}
+		} finally {
+			LogToDatabase.releaseConnexion();
+		}
+	}
+
+	// Numéro de la dernière entrée du journal écrite en BD (0 si aucune)
+	private long lireDernierApplique() throws SQLException, DatabaseConnexionException {
+		try {
+			Connection con = LogToDatabase.getConnexion();
+			String query = "SELECT dernierNumero FROM JournalApplique WHERE nomJournal = ?";
+			PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
+			pst.setString(1, this.nomJournal);
+
+			long chrono = LogORM.debutRequete();
+			ResultSet rs = pst.executeQuery();
+			LogORM.finRequete(query, chrono);
+			long dernier = rs.next() ? rs.getLong(1) : 0;
+			rs.close();
+			return dernier;
+		} finally {
+			LogToDatabase.releaseConnexion();
+		}
+	}
+
+	private synchronized long getDernierApplique() {
+		return this.dernierApplique;
+	}
+
+	// Lot écrit : comptes et attentes à jour
+	private void lotEcrit(ArrayList<JournalOperations.Entree> lot) {
+		for (JournalOperations.Entree op : lot) {
+			ReentrantLock verrou = this.verrou(op.idNumCompte);
+			verrou.lock();
+			try {
+				EtatCompte etat = this.comptes.get(op.idNumCompte);
+				if (etat != null && --etat.nbEnAttente == 0) {
+					this.ecrites[op.idNumCompte & (MoteurSoldes.NB_VERROUS - 1)].signalAll();
+				}
+			} finally {
+				verrou.unlock();
+			}
+		}
+		synchronized (this) {
+			this.nbEcrites += lot.size();
+			this.derniereErreur = null;
+			this.notifyAll();
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "MoteurSoldes [nbComptes=" + this.comptes.size() + ", nbDeposees=" + this.nbDeposees
+				+ ", nbEcrites=" + this.nbEcrites + ", dernierApplique=" + this.dernierApplique + ", " + this.journal
+				+ "]";
+	}
+}
@@ -0,0 +1,182 @@
+package model.orm;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+
+/**
+ * Version Java (JDBC) des procédures stockées de scriptCreaBase.txt, pour les
+ * BD sans procédures stockées (cf. Dialecte.avecProceduresStockees(), base H2
+ * embarquée).
+ *
+ * Mêmes paramètres, mêmes écritures et mêmes valeurs de retour que les
+ * procédures ; comme elles, aucune ne valide (commit fait par le DAO
+ * appelant).
+ */
+class ProceduresJava {
+
+	private static final String TYPE_VIREMENT = "Virement Compte à Compte";
+	private static final String TYPE_DEPOT_INITIAL = "Dépôt Espèces";
+
+	private ProceduresJava() {
+	}
+
+	/**
+	 * Procédure Debiter : débit de montant (crédit si montant négatif) si le
+	 * découvert autorisé n'est pas dépassé.
+	 *
+	 * @return 0 si débit effectué, -1 si découvert autorisé dépassé
+	 */
+	static int debiter(Connection con, int idNumCompte, double montant, String typeOp) throws SQLException {
+		String query = "SELECT debitAutorise, solde FROM CompteCourant WHERE idNumCompte = ? FOR UPDATE";
+		PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
+		pst.setInt(1, idNumCompte);
+		double debitAutorise;
+		double solde;
+		long chrono = LogORM.debutRequete();
+		try (ResultSet rs = pst.executeQuery()) {
+			if (!rs.next()) {
+				throw new SQLException("Compte " + idNumCompte + " inexistant");
+			}
+			debitAutorise = rs.getDouble("debitAutorise");
+			solde = rs.getDouble("solde");
+		}
+		LogORM.finRequete(query, chrono);
+
+		double nouveauSolde = solde - montant;
+		if (nouveauSolde < debitAutorise) {
+			return -1;
+		}
+		ProceduresJava.insererOperation(con, idNumCompte, -montant, typeOp);
+		ProceduresJava.majSolde(con, idNumCompte, -montant);
+		return 0;
+	}
+
+	/**
+	 * Procédure DebiterExceptionnel : opération de montant (signé) sans contrôle
+	 * du découvert autorisé.
+	 *
+	 * @return 0
+	 */
+	static int debiterExceptionnel(Connection con, int idNumCompte, double montant, String typeOp)
+			throws SQLException {
+		ProceduresJava.insererOperation(con, idNumCompte, montant, typeOp);
+		ProceduresJava.majSolde(con, idNumCompte, montant);
+		return 0;
+	}
+
+	/**
+	 * Procédure CreerCompte : compte ouvert avec son opération de versement
+	 * initial (50 minimum).
+	 *
+	 * @param debitAutorise découvert autorisé (négatif)
+	 * @return id du compte créé, -1 si montantInitial &lt; 50
+	 */
+	static int creerCompte(Connection con, int debitAutorise, double montantInitial, int idNumCli)
+			throws SQLException {
+		if (montantInitial < 50) {
+			return -1;
+		}
+		String query = "INSERT INTO CompteCourant (idNumCompte, debitAutorise, solde, idNumCli, estCloture)"
+				+ " VALUES (" + LogToDatabase.getDialecte().nextval("seq_id_compte") + ", ?, ?, ?, 'N')";
+		PreparedStatement pst = LogToDatabase.prepareStatement(con, query, new String[] { "idNumCompte" });
+		pst.setInt(1, debitAutorise);
+		pst.setDouble(2, montantInitial);
+		pst.setInt(3, idNumCli);
+		long chrono = LogORM.debutRequete();
+		pst.executeUpdate();
+		LogORM.finRequete(query, chrono);
+		int idNumCompte;
+		try (ResultSet cles = pst.getGeneratedKeys()) {
+			cles.next();
+			idNumCompte = cles.getInt(1);
+		}
+
+		ProceduresJava.insererOperation(con, idNumCompte, montantInitial, ProceduresJava.TYPE_DEPOT_INITIAL);
+		return idNumCompte;
+	}
+
+	/**
+	 * Procédure Virer : débit et crédit des 2 comptes, verrouillés dans l'ordre
+	 * de leur numéro. Un virement refusé est annulé (retour à un point de
+	 * sauvegarde, verrous libérés).
+	 *
+	 * @return 0 si virement effectué, -1 si découvert autorisé dépassé sur le
+	 *         compte débité, -2 si compte clôturé ou virement vers le même compte
+	 */
+	static int virer(Connection con, int idNumCompteDeb, int idNumCompteCred, double montant) throws SQLException {
+		if (idNumCompteDeb == idNumCompteCred) {
+			return -2;
+		}
+		Savepoint debutVirer = con.setSavepoint();
+		try {
+			String query = "SELECT idNumCompte, debitAutorise, solde, estCloture FROM CompteCourant"
+					+ " WHERE idNumCompte IN (?, ?) ORDER BY idNumCompte FOR UPDATE";
+			PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
+			pst.setInt(1, Math.min(idNumCompteDeb, idNumCompteCred));
+			pst.setInt(2, Math.max(idNumCompteDeb, idNumCompteCred));
+			double debitAutorise = 0;
+			double solde = 0;
+			int nbComptes = 0;
+			boolean cloture = false;
+			long chrono = LogORM.debutRequete();
+			try (ResultSet rs = pst.executeQuery()) {
+				while (rs.next()) {
+					nbComptes++;
+					cloture = cloture || "O".equals(rs.getString("estCloture"));
+					if (rs.getInt("idNumCompte") == idNumCompteDeb) {
+						debitAutorise = rs.getDouble("debitAutorise");
+						solde = rs.getDouble("solde");
+					}
+				}
+			}
+			LogORM.finRequete(query, chrono);
+			if (nbComptes != 2) {
+				throw new SQLException("Compte inexistant (virement " + idNumCompteDeb + " -> " + idNumCompteCred + ")");
+			}
+
+			if (cloture) {
+				con.rollback(debutVirer);
+				return -2;
+			}
+			if (solde - montant < debitAutorise) {
+				con.rollback(debutVirer);
+				return -1;
+			}
+			ProceduresJava.insererOperation(con, idNumCompteDeb, -montant, ProceduresJava.TYPE_VIREMENT);
+			ProceduresJava.insererOperation(con, idNumCompteCred, montant, ProceduresJava.TYPE_VIREMENT);
+			ProceduresJava.majSolde(con, idNumCompteDeb, -montant);
+			ProceduresJava.majSolde(con, idNumCompteCred, montant);
+			return 0;
+		} catch (SQLException e) {
+			con.rollback(debutVirer);
+			throw e;
+		}
+	}
+
+	private static void insererOperation(Connection con, int idNumCompte, double montant, String typeOp)
+			throws SQLException {
+		Dialecte dialecte = LogToDatabase.getDialecte();
+		String query = "INSERT INTO Operation (idOperation, montant, dateValeur, idNumCompte, idTypeOp) VALUES ("
+				+ dialecte.nextval("seq_id_operation") + ", ?, " + dialecte.dateValeur() + ", ?, ?)";
+		PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
+		pst.setDouble(1, montant);
+		pst.setInt(2, idNumCompte);
+		pst.setString(3, typeOp);
+		long chrono = LogORM.debutRequete();
+		pst.executeUpdate();
+		LogORM.finRequete(query, chrono);
+	}
+
+	private static void majSolde(Connection con, int idNumCompte, double montant) throws SQLException {
+		String query = "UPDATE CompteCourant SET solde = solde + ? WHERE idNumCompte = ?";
+		PreparedStatement pst = LogToDatabase.prepareStatement(con, query);
+		pst.setDouble(1, montant);
+		pst.setInt(2, idNumCompte);
+		long chrono = LogORM.debutRequete();
+		pst.executeUpdate();
+		LogORM.finRequete(query, chrono);
+	}
+}
@@ -0,0 +1,155 @@
+package model.orm;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache LRU des PreparedStatement/CallableStatement d'une connexion, indexé par
+ * le texte SQL.
+ *
+ * Evite de faire re-analyser par la BD les mêmes requêtes à chaque appel d'un
+ * DAO. Les ordres obtenus ici ne doivent PAS être fermés par l'appelant (seuls
+ * leurs ResultSet le sont) : ils sont fermés à leur éviction du cache ou à la
+ * fermeture de la connexion.
+ *
+ * Une connexion n'étant utilisée que par un seul thread à la fois (cf.
+ * LogToDatabase), un cache n'est pas partagé entre threads.
+ */
+public class StatementCache {
+
+	// Compteurs globaux (tous caches confondus)
+	private static final AtomicLong nbHits = new AtomicLong();
+	private static final AtomicLong nbMisses = new AtomicLong();
+
+	private final Connection con;
+	private final LinkedHashMap<String, Statement> statements;
+
+	/**
+	 * @param con        connexion dont on met en cache les ordres
+	 * @param tailleMax  nombre maximum d'ordres gardés ouverts (les moins
+	 *                   récemment utilisés sont fermés au delà)
+	 */
+	public StatementCache(Connection con, final int tailleMax) {
+		this.con = con;
+		this.statements = new LinkedHashMap<String, Statement>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Statement> eldest) {
+				if (this.size() > tailleMax) {
+					StatementCache.fermerSilencieusement(eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Retourne le PreparedStatement de query (créé si absent du cache).
+	 *
+	 * @param query texte SQL
+	 * @return le PreparedStatement, paramètres à (re)positionner par l'appelant
+	 * @throws SQLException
+	 */
+	public PreparedStatement prepareStatement(String query) throws SQLException {
+		String cle = "S:" + query;
+		PreparedStatement pst = (PreparedStatement) this.statements.get(cle);
+		if (pst != null && !pst.isClosed()) {
+			StatementCache.nbHits.incrementAndGet();
+			return pst;
+		}
+		StatementCache.nbMisses.incrementAndGet();
+		pst = this.con.prepareStatement(query);
+		this.statements.put(cle, pst);
+		return pst;
+	}
+
+	/**
+	 * Retourne le PreparedStatement de query rendant les clés générées (créé si
+	 * absent du cache).
+	 *
+	 * @param query        texte SQL (INSERT)
+	 * @param colonnesCles colonnes dont les valeurs générées sont lues par
+	 *                     getGeneratedKeys()
+	 * @return le PreparedStatement, paramètres à (re)positionner par l'appelant
+	 * @throws SQLException
+	 */
+	public PreparedStatement prepareStatement(String query, String[] colonnesCles) throws SQLException {
+		String cle = "K:" + String.join(",", colonnesCles) + ":" + query;
+		PreparedStatement pst = (PreparedStatement) this.statements.get(cle);
+		if (pst != null && !pst.isClosed()) {
+			StatementCache.nbHits.incrementAndGet();
+			return pst;
+		}
+		StatementCache.nbMisses.incrementAndGet();
+		pst = this.con.prepareStatement(query, colonnesCles);
+		this.statements.put(cle, pst);
+		return pst;
+	}
+
+	/**
+	 * Retourne le CallableStatement de l'appel q (créé si absent du cache).
+	 *
+	 * @param q appel de procédure stockée ("{call ...}")
+	 * @return le CallableStatement, paramètres à (re)positionner par l'appelant
+	 * @throws SQLException
+	 */
+	public CallableStatement prepareCall(String q) throws SQLException {
+		String cle = "C:" + q;
+		CallableStatement call = (CallableStatement) this.statements.get(cle);
+		if (call != null && !call.isClosed()) {
+			StatementCache.nbHits.incrementAndGet();
+			return call;
+		}
+		StatementCache.nbMisses.incrementAndGet();
+		call = this.con.prepareCall(q);
+		this.statements.put(cle, call);
+		return call;
+	}
+
+	/**
+	 * Ferme tous les ordres du cache.
+	 */
+	public void clear() {
+		for (Statement st : this.statements.values()) {
+			StatementCache.fermerSilencieusement(st);
+		}
+		this.statements.clear();
+	}
+
+	/**
+	 * @return nombre d'ordres actuellement en cache
+	 */
+	public int size() {
+		return this.statements.size();
+	}
+
+	/**
+	 * @return nombre total de requêtes trouvées en cache
+	 */
+	public static long getNbSucces() {
+		return StatementCache.nbHits.get();
+	}
+
+	/**
+	 * @return nombre total de requêtes absentes du cache (donc préparées)
+	 */
+	public static long getNbEchecs() {
+		return StatementCache.nbMisses.get();
+	}
+
+	private static void fermerSilencieusement(Statement st) {
+		try {
+			st.close();
+		} catch (SQLException e) {
+			// Let's continue
+		}
+	}
+}
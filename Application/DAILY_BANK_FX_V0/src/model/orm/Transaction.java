@@ -0,0 +1,116 @@
+package model.orm;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+
+import model.orm.exception.ApplicationException;
+import model.orm.exception.DataAccessException;
+import model.orm.exception.Order;
+import model.orm.exception.Table;
+
+/**
+ * Transaction regroupant plusieurs appels de DAO (unité de travail).
+ *
+ * Pendant Transaction.executer(.), les DAO appelés par le thread courant
+ * utilisent tous la même connexion et leurs commit sont différés : l'ensemble
+ * est validé en un seul commit à la fin si tout a réussi, annulé sinon.
+ *
+ * Exemple :
+ *
+ * Transaction.executer(tx -> { acc.cloturerCompte(c1); acc.cloturerCompte(c2);
+ * ac.updateClient(client); return null; });
+ *
+ * Un pointDeSauvegarde(.) permet d'annuler une partie seulement (ex : un
+ * élément refusé d'un lot) sans annuler la transaction. Une transaction ouverte
+ * dans une autre fait partie de celle-ci (validée avec elle).
+ */
+public class Transaction {
+
+	/**
+	 * Travail exécuté dans une transaction
+	 *
+	 * @param <T> type du résultat
+	 */
+	@FunctionalInterface
+	public interface Travail<T> {
+		T executer(Transaction tx) throws ApplicationException;
+	}
+
+	private final Connection con;
+
+	private Transaction(Connection con) {
+		this.con = con;
+	}
+
+	/**
+	 * Exécute travail dans une transaction : validée (un seul commit) si travail
+	 * se termine normalement, annulée s'il lève une exception.
+	 *
+	 * @param travail les appels de DAO à regrouper
+	 * @return le résultat de travail
+	 * @throws ApplicationException l'exception levée par travail, ou
+	 *                              DataAccessException si la transaction a dû
+	 *                              être annulée (un DAO a échoué et son exception
+	 *                              a été ignorée par travail)
+	 */
+	public static <T> T executer(Travail<T> travail) throws ApplicationException {
+		Connection con = LogToDatabase.ouvrirTransaction();
+		T resultat;
+		try {
+			resultat = travail.executer(new Transaction(con));
+		} catch (Throwable t) {
+			try {
+				LogToDatabase.fermerTransaction(false);
+			} catch (SQLException e) {
+				t.addSuppressed(e);
+			}
+			throw t;
+		}
+
+		boolean validee;
+		try {
+			validee = LogToDatabase.fermerTransaction(true);
+		} catch (SQLException e) {
+			throw new DataAccessException(Table.NONE, Order.OTHER, "Erreur validation transaction", e);
+		}
+		if (!validee) {
+			throw new DataAccessException(Table.NONE, Order.OTHER,
+					"Transaction annulée : une opération a échoué dans la transaction", null);
+		}
+		return resultat;
+	}
+
+	/**
+	 * Exécute travail dans la transaction après un point de sauvegarde : si
+	 * travail lève une exception, seules ses écritures sont annulées (retour au
+	 * point de sauvegarde) et la transaction peut continuer.
+	 *
+	 * @param travail les appels de DAO à pouvoir annuler
+	 * @return le résultat de travail
+	 * @throws ApplicationException l'exception levée par travail (ses écritures
+	 *                              sont annulées)
+	 */
+	public <T> T pointDeSauvegarde(Travail<T> travail) throws ApplicationException {
+		Savepoint point;
+		try {
+			point = this.con.setSavepoint();
+		} catch (SQLException e) {
+			throw new DataAccessException(Table.NONE, Order.OTHER, "Erreur point de sauvegarde", e);
+		}
+		boolean annulationAvant = LogToDatabase.isAnnulationDemandee();
+		try {
+			return travail.executer(this);
+		} catch (Throwable t) {
+			try {
+				this.con.rollback(point);
+				LogToDatabase.setAnnulationDemandee(annulationAvant);
+			} catch (SQLException e) {
+				// Retour impossible : toute la transaction sera annulée
+				LogToDatabase.setAnnulationDemandee(true);
+				t.addSuppressed(e);
+			}
+			throw t;
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package model.orm.exception;
 
+import model.orm.LogORM;
+
 /**
  * Classe générale des exceptions applicatives
  */
@@ -22,7 +24,9 @@ public class ApplicationException extends Exception {
 		this.tablename = tablename;
 		this.order = order;
 
-		System.err.println("" + this.getClass().getName() + " -> " + this.getMessage());
+		if (LogORM.estActif(LogORM.Niveau.WARN)) {
+			LogORM.log(LogORM.Niveau.WARN, "" + this.getClass().getName() + " -> " + this.getMessage());
+		}
 	}
 
 	@Override